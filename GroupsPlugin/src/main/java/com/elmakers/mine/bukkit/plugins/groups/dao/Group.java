@@ -1,16 +1,28 @@
 package com.elmakers.mine.bukkit.plugins.groups.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
 
 import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
 import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
 
 /**
  * 
  * Represents a group of players
  * 
+ * A group inherits the grants and denies of its parent. Each group keeps a materialised
+ * closure of its effective grant and deny profiles, which is recomputed for the group
+ * and all of its descendants whenever its grants, denies or parent change.
+ * 
+ * A group's own grants override a denial inherited from its parent, and its own
+ * denies override an inherited grant.
+ * 
  * * TOOD: common base class between this in PlayerGroup, once i know that won't 
  * break persistence of these objects.
  * 
@@ -33,7 +45,7 @@ public class Group
 	public boolean isSet(String key)
 	{
 		// Check for deny first
-		for (ProfileData profile : deny)
+		for (ProfileData profile : effectiveDeny.values())
 		{
 			if (profile.isSet(key))
 			{
@@ -41,7 +53,7 @@ public class Group
 			}
 		}
 		
-		for (ProfileData profile : grant)
+		for (ProfileData profile : effectiveGrant.values())
 		{
 			if (profile.isSet(key))
 			{
@@ -52,6 +64,94 @@ public class Group
 		return false;
 	}
 	
+	/**
+	 * Get the profiles granted to this group, including inherited grants.
+	 * 
+	 * @return The effective grant profiles
+	 */
+	public Collection<ProfileData> getEffectiveGrant()
+	{
+		return effectiveGrant.values();
+	}
+	
+	/**
+	 * Get the profiles denied to this group, including inherited denies.
+	 * 
+	 * @return The effective deny profiles
+	 */
+	public Collection<ProfileData> getEffectiveDeny()
+	{
+		return effectiveDeny.values();
+	}
+	
+	/**
+	 * Get the version of this group's closure.
+	 * 
+	 * This changes whenever the closure is recomputed, including when an ancestor changes.
+	 * 
+	 * @return The current closure version
+	 */
+	public int getClosureVersion()
+	{
+		return closureVersion;
+	}
+	
+	/**
+	 * Check to see if this group is the given group, or inherits from it.
+	 * 
+	 * @param ancestor The group to look for
+	 * @return true if the group is in this group's parent chain
+	 */
+	public boolean inheritsFrom(Group ancestor)
+	{
+		Group check = this;
+		while (check != null)
+		{
+			if (check == ancestor) return true;
+			check = check.parent;
+		}
+		return false;
+	}
+	
+	/**
+	 * Recompute this group's closure, and the closures of all groups that inherit from it.
+	 */
+	protected void updateClosure()
+	{
+		Map<String, ProfileData> newGrant = new LinkedHashMap<String, ProfileData>();
+		Map<String, ProfileData> newDeny = new LinkedHashMap<String, ProfileData>();
+		if (parent != null)
+		{
+			newGrant.putAll(parent.effectiveGrant);
+			newDeny.putAll(parent.effectiveDeny);
+		}
+		if (deny != null)
+		{
+			for (ProfileData profile : deny)
+			{
+				newGrant.remove(profile.getId());
+				newDeny.put(profile.getId(), profile);
+			}
+		}
+		if (grant != null)
+		{
+			for (ProfileData profile : grant)
+			{
+				newDeny.remove(profile.getId());
+				newGrant.put(profile.getId(), profile);
+			}
+		}
+		
+		effectiveGrant = newGrant;
+		effectiveDeny = newDeny;
+		closureVersion++;
+		
+		for (Group child : children)
+		{
+			child.updateClosure();
+		}
+	}
+	
 	public <T> T get(final String key)
 	{
 		/*
@@ -104,6 +204,7 @@ public class Group
 				}
 			}
 		}
+		updateClosure();
 	}
 	
 	public void denyPermission(ProfileData profile)
@@ -136,6 +237,7 @@ public class Group
 				}
 			}
 		}
+		updateClosure();
 	}
 	
 	@PersistField(id=true)
@@ -164,6 +266,7 @@ public class Group
 		{
 			grantMap.put(profile.getId(), profile);
 		}
+		updateClosure();
 	}
 
 	@PersistField
@@ -181,6 +284,7 @@ public class Group
 		{
 			denyMap.put(profile.getId(), profile);
 		}
+		updateClosure();
 	}
 
 	@PersistField
@@ -191,7 +295,22 @@ public class Group
 
 	public void setParent(Group parent)
 	{
+		if (parent != null && parent.inheritsFrom(this))
+		{
+			log.warning("Groups: Can't make " + parent.getId() + " the parent of " + id + ", it would create a cycle");
+			return;
+		}
+		
+		if (this.parent != null)
+		{
+			this.parent.children.remove(this);
+		}
 		this.parent = parent;
+		if (parent != null)
+		{
+			parent.children.add(this);
+		}
+		updateClosure();
 	}
 	
 	protected List<ProfileData> grant;
@@ -202,4 +321,10 @@ public class Group
 	// Transient
 	private HashMap<String, ProfileData> grantMap;
 	private HashMap<String, ProfileData> denyMap;
+	private final List<Group> children = new ArrayList<Group>();
+	private Map<String, ProfileData> effectiveGrant = new LinkedHashMap<String, ProfileData>();
+	private Map<String, ProfileData> effectiveDeny = new LinkedHashMap<String, ProfileData>();
+	private int closureVersion = 0;
+	
+	protected static final Logger log = Persistence.getLogger();
 }
@@ -50,6 +50,7 @@ public class User implements IProfile
 			groups.remove(storedGroup);
 			groupMap.remove(storedGroup.getId());
 		}
+		clearDecisions();
 	}
 	
 	public void addToGroup(Group group)
@@ -68,6 +69,7 @@ public class User implements IProfile
 			groupMap.put(group.getId(), group);
 			groups.add(group);
 		}
+		clearDecisions();
 	}
 
 	public void grantPermission(ProfileData profile)
@@ -102,6 +104,7 @@ public class User implements IProfile
 				}
 			}
 		}
+		clearDecisions();
 	}
 	
 	public void denyPermission(ProfileData profile)
@@ -134,9 +137,61 @@ public class User implements IProfile
 				}
 			}
 		}
+		clearDecisions();
 	}
 	
+	/**
+	 * Check to see if a permission is set for this user.
+	 * 
+	 * Decisions made from this user's profiles and the closures of its groups are
+	 * remembered until the user or one of its groups changes, so repeated checks
+	 * are a single map lookup.
+	 * 
+	 * @param key The permission to check
+	 * @return true if the permission is set
+	 */
 	public boolean isSet(String key)
+	{
+		int stamp = getClosureStamp();
+		if (stamp != decisionStamp)
+		{
+			decisions.clear();
+			decisionStamp = stamp;
+		}
+		
+		Boolean decision = decisions.get(key);
+		if (decision == null && !decisions.containsKey(key))
+		{
+			decision = resolve(key);
+			if (decisions.size() < MAX_DECISIONS)
+			{
+				decisions.put(key, decision);
+			}
+		}
+		if (decision != null)
+		{
+			return decision;
+		}
+		
+		// Permissions backwards compatibility
+		if (permissions != null)
+		{
+			Player player = id.getPlayer();
+			if (player == null) return false;
+			
+			return permissions.has(player, key);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Decide a permission from this user's profiles and groups.
+	 * 
+	 * @param key The permission to check
+	 * @return The decision, or null if nothing here covers this permission
+	 */
+	protected Boolean resolve(String key)
 	{
 		// Check for deny first
 		if (deny != null)
@@ -162,7 +217,7 @@ public class User implements IProfile
 			}
 		}
 		
-		// Check groups
+		// Check groups, each group's closure already includes its parents
 		if (groups != null)
 		{
 			for (Group group : groups)
@@ -174,16 +229,32 @@ public class User implements IProfile
 			}		
 		}
 		
-		// Permissions backwards compatibility
-		if (permissions != null)
+		return null;
+	}
+	
+	/**
+	 * Combine the closure versions of this user's groups.
+	 * 
+	 * Closure versions only ever increase, so this changes whenever any group
+	 * this user belongs to, or any of their parents, is modified.
+	 */
+	protected int getClosureStamp()
+	{
+		int stamp = 0;
+		if (groups != null)
 		{
-			Player player = id.getPlayer();
-			if (player == null) return false;
-			
-			return permissions.has(player, key);
+			for (Group group : groups)
+			{
+				stamp += group.getClosureVersion();
+			}
 		}
-		
-		return false;
+		return stamp;
+	}
+	
+	protected void clearDecisions()
+	{
+		decisions.clear();
+		decisionStamp = -1;
 	}
 	
 	@PersistField(id=true)
@@ -212,6 +283,7 @@ public class User implements IProfile
 		{
 			groupMap.put(group.getId(), group);
 		}
+		clearDecisions();
 	}
 
 	@PersistField
@@ -229,6 +301,7 @@ public class User implements IProfile
 		{
 			grantMap.put(profile.getId(), profile);
 		}
+		clearDecisions();
 	}
 
 	@PersistField
@@ -246,6 +319,7 @@ public class User implements IProfile
 		{
 			denyMap.put(profile.getId(), profile);
 		}
+		clearDecisions();
 	}
 
 	private PlayerData			id;
@@ -257,6 +331,10 @@ public class User implements IProfile
 	private HashMap<String, Group> groupMap;
 	private HashMap<String, ProfileData> grantMap;
 	private HashMap<String, ProfileData> denyMap;
+	private final HashMap<String, Boolean> decisions = new HashMap<String, Boolean>();
+	private int decisionStamp = -1;
+	
+	private static final int MAX_DECISIONS = 1024;
 	
 	
 	// Permissions backwards-compatibility
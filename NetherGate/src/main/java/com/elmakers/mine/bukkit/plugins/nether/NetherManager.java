@@ -21,6 +21,7 @@ import org.bukkit.util.Vector;
 
 import com.elmakers.mine.bukkit.gameplay.BlockRequestListener;
 import com.elmakers.mine.bukkit.gameplay.dao.BoundingBox;
+import com.elmakers.mine.bukkit.persistence.PlayerSession;
 import com.elmakers.mine.bukkit.persistence.dao.LocationData;
 import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
 import com.elmakers.mine.bukkit.persistence.dao.WorldData;
@@ -142,13 +143,22 @@ public class NetherManager
 		PlayerData playerData = utilities.getPlayer(player);
 		if (playerData == null) return null;
 		
-		NetherPlayer tpPlayer = persistence.get(playerData, NetherPlayer.class);
+		// Keep NetherPlayer with the player's session while they're online
+		PlayerSession session = persistence.getSessions().get(player);
+		NetherPlayer tpPlayer = session == null ? null : session.get(NetherPlayer.class);
+		if (tpPlayer != null) return tpPlayer;
+		
+		tpPlayer = persistence.get(playerData, NetherPlayer.class);
 		if (tpPlayer == null)
 		{
 			tpPlayer = new NetherPlayer(playerData);
 			tpPlayer.setState(TeleportState.NONE);
 			persistence.put(tpPlayer);
 		}
+		if (session != null)
+		{
+			session.put(NetherPlayer.class, tpPlayer);
+		}
 		
 		return tpPlayer;
 	}
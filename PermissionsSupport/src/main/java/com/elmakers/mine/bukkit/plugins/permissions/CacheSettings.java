@@ -0,0 +1,78 @@
+package com.elmakers.mine.bukkit.plugins.permissions;
+
+import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
+import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
+import com.elmakers.mine.bukkit.persistence.dao.Persisted;
+
+/**
+ * Stores how long to remember decisions made by Permissions.
+ *
+ * There is only one instance of this class, with the id "default".
+ *
+ * @author NathanWolf
+ *
+ */
+@PersistClass(schema="global", name="permissioncache")
+public class CacheSettings extends Persisted
+{
+	public CacheSettings()
+	{
+
+	}
+
+	public CacheSettings(String id)
+	{
+		this.id = id;
+	}
+
+	@PersistField(id=true)
+	public String getId()
+	{
+		return id;
+	}
+
+	public void setId(String id)
+	{
+		this.id = id;
+	}
+
+	/**
+	 * How long each decision is remembered.
+	 *
+	 * @return The time to live in milliseconds, or 0 to disable caching
+	 */
+	@PersistField
+	public int getTtl()
+	{
+		return ttl;
+	}
+
+	public void setTtl(int ttl)
+	{
+		this.ttl = ttl;
+	}
+
+	/**
+	 * The most decisions remembered for each player.
+	 *
+	 * @return The maximum number of cached decisions per player
+	 */
+	@PersistField
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries)
+	{
+		this.maxEntries = maxEntries;
+	}
+
+	public static final String	DEFAULT_ID			= "default";
+	public static final int		DEFAULT_TTL			= 30000;
+	public static final int		DEFAULT_MAX_ENTRIES	= 256;
+
+	protected String			id;
+	protected int				ttl					= DEFAULT_TTL;
+	protected int				maxEntries			= DEFAULT_MAX_ENTRIES;
+}
@@ -0,0 +1,173 @@
+package com.elmakers.mine.bukkit.plugins.permissions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.entity.Player;
+
+import com.elmakers.mine.bukkit.permission.PermissionHandler;
+
+/**
+ * Wraps an external PermissionHandler, remembering its decisions for each player.
+ *
+ * Decisions expire after a fixed time, so changes made in the external plugin are
+ * picked up eventually even if nobody calls invalidate. Each player keeps at most a
+ * fixed number of decisions, dropping the least recently used ones first.
+ *
+ * @author NathanWolf
+ *
+ */
+public class CachingPermissionHandler implements PermissionHandler
+{
+	/**
+	 * Wrap a handler.
+	 *
+	 * @param handler The handler to cache decisions for
+	 * @param ttl How long to remember each decision, in milliseconds. 0 disables caching.
+	 * @param maxEntries The most decisions to remember for each player
+	 */
+	public CachingPermissionHandler(PermissionHandler handler, long ttl, int maxEntries)
+	{
+		this.handler = handler;
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+	}
+
+	public boolean isSet(Player player, String permissionNode)
+	{
+		if (player == null || ttl <= 0 || maxEntries <= 0)
+		{
+			misses.incrementAndGet();
+			return handler.isSet(player, permissionNode);
+		}
+
+		long now = System.currentTimeMillis();
+		PlayerCache cache = getCache(player.getName());
+		Decision decision = cache.get(permissionNode);
+		if (decision != null && decision.expires > now)
+		{
+			hits.incrementAndGet();
+			return decision.value;
+		}
+
+		misses.incrementAndGet();
+		boolean value = handler.isSet(player, permissionNode);
+		cache.put(permissionNode, new Decision(value, now + ttl));
+		return value;
+	}
+
+	/**
+	 * Forget every cached decision.
+	 *
+	 * Call this after the external plugin reloads its permissions.
+	 */
+	public void invalidate()
+	{
+		players.clear();
+	}
+
+	/**
+	 * Forget the cached decisions for one player.
+	 *
+	 * @param playerName The name of the player
+	 */
+	public void invalidate(String playerName)
+	{
+		players.remove(playerName);
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Get the fraction of checks that were answered from the cache.
+	 *
+	 * @return The hit rate, from 0 to 1
+	 */
+	public double getHitRate()
+	{
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double)hitCount / total;
+	}
+
+	public PermissionHandler getHandler()
+	{
+		return handler;
+	}
+
+	protected PlayerCache getCache(String playerName)
+	{
+		PlayerCache cache = players.get(playerName);
+		if (cache == null)
+		{
+			cache = new PlayerCache(maxEntries);
+			PlayerCache existing = players.putIfAbsent(playerName, cache);
+			if (existing != null)
+			{
+				cache = existing;
+			}
+		}
+		return cache;
+	}
+
+	protected static class Decision
+	{
+		public Decision(boolean value, long expires)
+		{
+			this.value = value;
+			this.expires = expires;
+		}
+
+		public final boolean	value;
+		public final long		expires;
+	}
+
+	/**
+	 * A player's decisions, in least-recently-used order.
+	 */
+	protected static class PlayerCache
+	{
+		public PlayerCache(final int maxEntries)
+		{
+			decisions = new LinkedHashMap<String, Decision>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest)
+				{
+					return size() > maxEntries;
+				}
+			};
+		}
+
+		public synchronized Decision get(String permissionNode)
+		{
+			return decisions.get(permissionNode);
+		}
+
+		public synchronized void put(String permissionNode, Decision decision)
+		{
+			decisions.put(permissionNode, decision);
+		}
+
+		protected final Map<String, Decision>	decisions;
+	}
+
+	protected final PermissionHandler						handler;
+	protected final long									ttl;
+	protected final int										maxEntries;
+	protected final ConcurrentHashMap<String, PlayerCache>	players	= new ConcurrentHashMap<String, PlayerCache>();
+	protected final AtomicLong								hits	= new AtomicLong();
+	protected final AtomicLong								misses	= new AtomicLong();
+}
@@ -0,0 +1,29 @@
+package com.elmakers.mine.bukkit.plugins.permissions;
+
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.player.PlayerListener;
+
+/**
+ * Drops a player's cached Permissions decisions when they leave.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class PermissionsSupportListener extends PlayerListener
+{
+	public void initialize(CachingPermissionHandler cache)
+	{
+		this.cache = cache;
+	}
+	
+	@Override
+	public void onPlayerQuit(PlayerEvent event)
+	{
+		if (cache != null)
+		{
+			cache.invalidate(event.getPlayer().getName());
+		}
+	}
+	
+	private CachingPermissionHandler cache;
+}
@@ -2,11 +2,14 @@ package com.elmakers.mine.bukkit.plugins.permissions;
 
 import java.util.logging.Logger;
 
+import org.bukkit.event.Event.Priority;
+import org.bukkit.event.Event.Type;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import com.elmakers.mine.bukkit.permission.PermissionManager;
+import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
 import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
 import com.elmakers.mine.craftbukkit.persistence.Persistence;
 import com.nijiko.permissions.PermissionHandler;
@@ -63,7 +66,13 @@ public class PermissionsSupportPlugin extends JavaPlugin
 	    	getServer().getPluginManager().enablePlugin(checkForPermissions);
 	    	PermissionHandler handler = ((Permissions)checkForPermissions).getHandler();
 	    	proxy = new PermissionsProxy(handler);
-	    	permissions.addHandler(proxy);
+	    	
+	    	CacheSettings settings = getCacheSettings();
+	    	cache = new CachingPermissionHandler(proxy, settings.getTtl(), settings.getMaxEntries());
+	    	permissions.addHandler(cache);
+	    	
+	    	listener.initialize(cache);
+	    	getServer().getPluginManager().registerEvent(Type.PLAYER_QUIT, listener, Priority.Monitor, this);
 	    	log.info("PermissionsSupport: Found Permissions, using it for permissions.");
 	    }
 	    else
@@ -73,8 +82,45 @@ public class PermissionsSupportPlugin extends JavaPlugin
 	    }
 	}
 
+	/**
+	 * Forget every decision cached from Permissions.
+	 * 
+	 * Call this after reloading Permissions, to pick up its changes right away.
+	 */
+	public void invalidatePermissions()
+	{
+		if (cache != null)
+		{
+			cache.invalidate();
+		}
+		PlayerData.invalidatePermissions();
+	}
+	
+	/**
+	 * Get the cache wrapped around Permissions, for its hit and miss counts.
+	 * 
+	 * @return The cache, or null if Permissions isn't installed
+	 */
+	public CachingPermissionHandler getCache()
+	{
+		return cache;
+	}
+	
+	protected CacheSettings getCacheSettings()
+	{
+		CacheSettings settings = persistence.get(CacheSettings.DEFAULT_ID, CacheSettings.class);
+		if (settings == null)
+		{
+			settings = new CacheSettings(CacheSettings.DEFAULT_ID);
+			persistence.put(settings);
+		}
+		return settings;
+	}
+
 	protected Persistence persistence = null;
 	protected PermissionManager permissions = null;
 	protected PermissionsProxy proxy = null;
+	protected CachingPermissionHandler cache = null;
+	protected final PermissionsSupportListener listener = new PermissionsSupportListener();
 	protected static final Logger log = Persistence.getLogger();
 }
@@ -0,0 +1,94 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.elmakers.mine.bukkit.persistence.exception.InvalidPersistedClassException;
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+import com.elmakers.mine.craftbukkit.persistence.core.PersistedClass;
+
+/**
+ * Sets up a standalone Persistence instance for benchmarks.
+ * 
+ * Data is kept in a temporary folder, which is removed when the JVM exits.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class BenchmarkData
+{
+	public static synchronized Persistence getPersistence()
+	{
+		if (persistence == null)
+		{
+			try
+			{
+				dataFolder = File.createTempFile("persistence-benchmark", "");
+			}
+			catch (IOException ex)
+			{
+				throw new IllegalStateException("Can't create a temporary data folder", ex);
+			}
+			dataFolder.delete();
+			dataFolder.mkdirs();
+			
+			persistence = Persistence.createInstance(dataFolder);
+			Runtime.getRuntime().addShutdownHook(new Thread()
+			{
+				public void run()
+				{
+					persistence.disconnect();
+					delete(dataFolder);
+				}
+			});
+		}
+		return persistence;
+	}
+	
+	/**
+	 * Get the benchmark entity class, with its tables dropped and its cache cleared.
+	 * 
+	 * @return The persisted benchmark entity class
+	 */
+	public static PersistedClass getEmptyEntityClass()
+	{
+		PersistedClass persistedClass;
+		try
+		{
+			persistedClass = getPersistence().getPersistedClass(BenchmarkEntity.class);
+		}
+		catch (InvalidPersistedClassException ex)
+		{
+			throw new IllegalStateException("Benchmark entity is not persistable", ex);
+		}
+		persistedClass.reset();
+		persistedClass.clear();
+		return persistedClass;
+	}
+	
+	public static String[] createIds(String prefix, int count)
+	{
+		String[] ids = new String[count];
+		for (int i = 0; i < count; i++)
+		{
+			ids[i] = prefix + i;
+		}
+		return ids;
+	}
+	
+	protected static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+	
+	protected static Persistence	persistence	= null;
+	protected static File			dataFolder	= null;
+}
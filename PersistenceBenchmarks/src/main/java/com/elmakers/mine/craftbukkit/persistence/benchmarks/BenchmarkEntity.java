@@ -0,0 +1,173 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
+import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
+import com.elmakers.mine.bukkit.persistence.dao.Orientation;
+
+/**
+ * A synthetic entity, with scalar, contained object and list fields.
+ * 
+ * @author NathanWolf
+ *
+ */
+@PersistClass(schema="benchmark", name="entity")
+public class BenchmarkEntity
+{
+	public enum Kind
+	{
+		PLAYER,
+		MOB,
+		ITEM,
+		BLOCK
+	}
+	
+	public BenchmarkEntity()
+	{
+		
+	}
+	
+	/**
+	 * Create an entity filled with predictable data.
+	 * 
+	 * @param index Used to build the id and vary the data
+	 * @return A new entity
+	 */
+	public static BenchmarkEntity create(int index)
+	{
+		BenchmarkEntity entity = new BenchmarkEntity();
+		entity.id = "entity" + index;
+		entity.count = index;
+		entity.value = index * 0.25;
+		entity.created = new Date(1300000000000L + index * 1000L);
+		entity.kind = Kind.values()[index % Kind.values().length];
+		entity.active = index % 2 == 0;
+		entity.orientation = new Orientation(index % 360, index % 90);
+		
+		entity.tags = new ArrayList<String>();
+		for (int i = 0; i < 4; i++)
+		{
+			entity.tags.add("tag" + ((index + i) % 16));
+		}
+		
+		entity.scores = new ArrayList<Integer>();
+		for (int i = 0; i < 8; i++)
+		{
+			entity.scores.add(index + i * 10);
+		}
+		
+		return entity;
+	}
+	
+	@PersistField(id=true)
+	public String getId()
+	{
+		return id;
+	}
+	
+	public void setId(String id)
+	{
+		this.id = id;
+	}
+	
+	@PersistField
+	public int getCount()
+	{
+		return count;
+	}
+	
+	public void setCount(int count)
+	{
+		this.count = count;
+	}
+	
+	@PersistField
+	public double getValue()
+	{
+		return value;
+	}
+	
+	public void setValue(double value)
+	{
+		this.value = value;
+	}
+	
+	@PersistField
+	public Date getCreated()
+	{
+		return created;
+	}
+	
+	public void setCreated(Date created)
+	{
+		this.created = created;
+	}
+	
+	@PersistField
+	public Kind getKind()
+	{
+		return kind;
+	}
+	
+	public void setKind(Kind kind)
+	{
+		this.kind = kind;
+	}
+	
+	@PersistField
+	public boolean isActive()
+	{
+		return active;
+	}
+	
+	public void setActive(boolean active)
+	{
+		this.active = active;
+	}
+	
+	@PersistField(contained=true)
+	public Orientation getOrientation()
+	{
+		return orientation;
+	}
+	
+	public void setOrientation(Orientation orientation)
+	{
+		this.orientation = orientation;
+	}
+	
+	@PersistField
+	public List<String> getTags()
+	{
+		return tags;
+	}
+	
+	public void setTags(List<String> tags)
+	{
+		this.tags = tags;
+	}
+	
+	@PersistField
+	public List<Integer> getScores()
+	{
+		return scores;
+	}
+	
+	public void setScores(List<Integer> scores)
+	{
+		this.scores = scores;
+	}
+	
+	protected String		id;
+	protected int			count;
+	protected double		value;
+	protected Date			created;
+	protected Kind			kind;
+	protected boolean		active;
+	protected Orientation	orientation;
+	protected List<String>	tags;
+	protected List<Integer>	scores;
+}
@@ -0,0 +1,127 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+
+/**
+ * Headless stand-ins for the Bukkit objects the benchmarks need.
+ *
+ * These are dynamic proxies, so they don't need to be kept up to date with the
+ * Bukkit interfaces. Methods that aren't given an answer do nothing, and return
+ * null, false or 0.
+ *
+ * @author NathanWolf
+ *
+ */
+public class BenchmarkStubs
+{
+	public static Server createServer()
+	{
+		Map<String, Object> answers = new HashMap<String, Object>();
+		answers.put("getName", "BenchmarkServer");
+		answers.put("getVersion", "benchmark");
+		return create(Server.class, answers);
+	}
+
+	public static World createWorld(String name)
+	{
+		Map<String, Object> answers = new HashMap<String, Object>();
+		answers.put("getName", name);
+		return create(World.class, answers);
+	}
+
+	/**
+	 * Create an online, non-op player.
+	 *
+	 * @param name The player's name
+	 * @param world The world the player is standing in
+	 * @return A new stub player
+	 */
+	public static Player createPlayer(String name, World world)
+	{
+		Map<String, Object> answers = new HashMap<String, Object>();
+		answers.put("getName", name);
+		answers.put("getDisplayName", name);
+		answers.put("isOnline", true);
+		answers.put("getWorld", world);
+		answers.put("getLocation", new Location(world, 0, 64, 0));
+		return create(Player.class, answers);
+	}
+
+	public static Plugin createPlugin(String name, Server server, File dataFolder)
+	{
+		PluginDescriptionFile description;
+		try
+		{
+			String yml = "name: " + name + "\nversion: 1.0\nmain: " + BenchmarkStubs.class.getName() + "\n";
+			description = new PluginDescriptionFile(new ByteArrayInputStream(yml.getBytes()));
+		}
+		catch (InvalidDescriptionException ex)
+		{
+			throw new IllegalStateException("Can't create a plugin description for " + name, ex);
+		}
+
+		Map<String, Object> answers = new HashMap<String, Object>();
+		answers.put("getDescription", description);
+		answers.put("getServer", server);
+		answers.put("getDataFolder", new File(dataFolder, name));
+		answers.put("isEnabled", true);
+		return create(Plugin.class, answers);
+	}
+
+	protected static <T> T create(Class<T> type, final Map<String, Object> answers)
+	{
+		final String description = type.getSimpleName() + answers;
+		Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler()
+		{
+			public Object invoke(Object proxy, Method method, Object[] args)
+			{
+				String name = method.getName();
+				if (name.equals("equals") && args != null && args.length == 1)
+				{
+					return proxy == args[0];
+				}
+				if (name.equals("hashCode") && args == null)
+				{
+					return System.identityHashCode(proxy);
+				}
+				if (name.equals("toString") && args == null)
+				{
+					return description;
+				}
+				if (answers.containsKey(name))
+				{
+					return answers.get(name);
+				}
+				return getDefault(method.getReturnType());
+			}
+		});
+		return type.cast(stub);
+	}
+
+	protected static Object getDefault(Class<?> returnType)
+	{
+		if (!returnType.isPrimitive() || returnType == void.class) return null;
+		if (returnType == boolean.class) return false;
+		if (returnType == char.class) return (char)0;
+		if (returnType == byte.class) return (byte)0;
+		if (returnType == short.class) return (short)0;
+		if (returnType == int.class) return 0;
+		if (returnType == long.class) return 0L;
+		if (returnType == float.class) return 0f;
+		return 0d;
+	}
+}
@@ -0,0 +1,88 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+import com.elmakers.mine.craftbukkit.persistence.core.PersistedClass;
+
+/**
+ * Measures get and put on a fully loaded entity cache.
+ * 
+ * @author NathanWolf
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark
+{
+	@Param({"1000", "100000"})
+	public int entityCount;
+	
+	@Setup
+	public void setup()
+	{
+		persistence = BenchmarkData.getPersistence();
+		PersistedClass persistedClass = BenchmarkData.getEmptyEntityClass();
+		
+		entities = new BenchmarkEntity[entityCount];
+		for (int i = 0; i < entityCount; i++)
+		{
+			entities[i] = BenchmarkEntity.create(i);
+			persistence.put(entities[i]);
+		}
+		persistedClass.save();
+		
+		ids = BenchmarkData.createIds("entity", entityCount);
+		missingIds = BenchmarkData.createIds("missing", entityCount);
+	}
+	
+	@Benchmark
+	public Object getHit()
+	{
+		return persistence.get(ids[next()], BenchmarkEntity.class);
+	}
+	
+	@Benchmark
+	public Object getMiss()
+	{
+		return persistence.get(missingIds[next()], BenchmarkEntity.class);
+	}
+	
+	@Benchmark
+	public boolean put()
+	{
+		return persistence.put(entities[next()]);
+	}
+	
+	protected int next()
+	{
+		index++;
+		if (index >= entityCount)
+		{
+			index = 0;
+		}
+		return index;
+	}
+	
+	protected Persistence		persistence;
+	protected BenchmarkEntity[]	entities;
+	protected String[]			ids;
+	protected String[]			missingIds;
+	protected int				index	= 0;
+}
@@ -0,0 +1,223 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elmakers.mine.bukkit.persistence.dao.Group;
+import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
+import com.elmakers.mine.bukkit.persistence.dao.PluginCommand;
+import com.elmakers.mine.bukkit.persistence.dao.ProfileData;
+import com.elmakers.mine.bukkit.utilities.PluginUtilities;
+import com.elmakers.mine.craftbukkit.permission.PermissionProfile;
+import com.elmakers.mine.craftbukkit.permission.RootPermissionDescription;
+
+/**
+ * Measures end-to-end command dispatch, from PluginUtilities.dispatch to the callback.
+ *
+ * A benchmark plugin registers a tree of player commands, three levels deep. Only the
+ * leaf commands have callbacks, and their permissions are described in the plugin's
+ * permissions and granted to every player through a group, so each dispatch walks the
+ * tree, checks the player's permissions and invokes the callback.
+ *
+ * Run with "-prof gc" to see the allocation rate of each dispatch.
+ *
+ * @author NathanWolf
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark
+{
+	@Param({"10", "50"})
+	public int rootCount;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		PermissionFixtures fixtures = new PermissionFixtures(PLUGIN_COUNT, PROFILE_COUNT, GROUP_COUNT, PLAYER_COUNT);
+
+		Plugin plugin = BenchmarkStubs.createPlugin(PLUGIN_NAME, fixtures.getServer(), new File("plugins"));
+		utilities = new PluginUtilities(plugin, BenchmarkData.getPersistence());
+
+		Map<String, Object> commandPermissions = new LinkedHashMap<String, Object>();
+		List<String> baseCommands = new ArrayList<String>();
+		List<String[]> parameters = new ArrayList<String[]>();
+		for (int r = 0; r < rootCount; r++)
+		{
+			String rootName = "bench" + r;
+			PluginCommand root = utilities.getPlayerCommand(rootName, "Benchmark command", null);
+			Map<String, Object> rootPermissions = new LinkedHashMap<String, Object>();
+			for (int s = 0; s < BRANCHING; s++)
+			{
+				String subName = "sub" + s;
+				PluginCommand sub = root.getSubCommand(subName, "Benchmark sub-command", null);
+				Map<String, Object> subPermissions = new LinkedHashMap<String, Object>();
+				for (int l = 0; l < BRANCHING; l++)
+				{
+					String leafName = "leaf" + l;
+					PluginCommand leaf = sub.getSubCommand(leafName, "Benchmark leaf command", "<value>");
+					leaf.bind("onBenchCommand");
+					subPermissions.put(leafName, createNode("boolean"));
+					baseCommands.add(rootName);
+					parameters.add(new String[] { subName, leafName, "value" + l });
+				}
+				rootPermissions.put(subName, createMapNode(subPermissions));
+			}
+			commandPermissions.put(rootName, createMapNode(rootPermissions));
+		}
+		this.baseCommands = baseCommands.toArray(new String[baseCommands.size()]);
+		this.parameters = parameters.toArray(new String[parameters.size()][]);
+
+		// Describe and grant every leaf command
+		Map<String, Object> pluginPermissions = new HashMap<String, Object>();
+		pluginPermissions.put("commands", createMapNode(commandPermissions));
+		Map<String, Object> root = new HashMap<String, Object>();
+		root.put(PLUGIN_NAME, createMapNode(pluginPermissions));
+		fixtures.getManager().addPluginRootPermission(PLUGIN_NAME, new RootPermissionDescription(root));
+
+		Map<String, Object> profileMap = new HashMap<String, Object>();
+		Map<String, Object> grantCommands = new HashMap<String, Object>();
+		grantCommands.put("commands", toGrants(commandPermissions));
+		profileMap.put(PLUGIN_NAME, grantCommands);
+		PermissionProfile profile = PermissionProfile.loadProfile(fixtures.getManager(), fixtures.getServer(), "commanders", profileMap);
+		ProfileData profileData = new ProfileData(profile.getName());
+		profileData.setProfile(profile);
+
+		Group commanders = new Group("commanders");
+		commanders.grantPermission(profileData);
+
+		PlayerData[] players = fixtures.getPlayers();
+		senders = new Player[players.length];
+		for (int i = 0; i < players.length; i++)
+		{
+			players[i].addToGroup(commanders);
+			senders[i] = players[i].getPlayer();
+		}
+
+		listeners = new ArrayList<Object>();
+		listeners.add(new BenchmarkListener());
+	}
+
+	@Benchmark
+	public boolean dispatch()
+	{
+		int invocation = nextInvocation();
+		return utilities.dispatch(listeners, senders[nextSender()], baseCommands[invocation], parameters[invocation]);
+	}
+
+	@Benchmark
+	public boolean dispatchUnknown()
+	{
+		return utilities.dispatch(listeners, senders[nextSender()], "unknown", UNKNOWN_PARAMETERS);
+	}
+
+	/**
+	 * Turn a map of permission descriptions into a profile granting all of them.
+	 */
+	@SuppressWarnings("unchecked")
+	protected static Map<String, Object> toGrants(Map<String, Object> descriptions)
+	{
+		Map<String, Object> grants = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, Object> entry : descriptions.entrySet())
+		{
+			Map<String, Object> node = (Map<String, Object>)entry.getValue();
+			if (node.containsKey("map"))
+			{
+				grants.put(entry.getKey(), toGrants((Map<String, Object>)node.get("map")));
+			}
+			else
+			{
+				grants.put(entry.getKey(), true);
+			}
+		}
+		return grants;
+	}
+
+	protected static Map<String, Object> createNode(String type)
+	{
+		Map<String, Object> node = new HashMap<String, Object>();
+		node.put("description", "Benchmark command permission");
+		node.put("type", type);
+		node.put("default", false);
+		return node;
+	}
+
+	protected static Map<String, Object> createMapNode(Map<String, Object> children)
+	{
+		Map<String, Object> node = new HashMap<String, Object>();
+		node.put("description", "Benchmark command permissions");
+		node.put("type", "map");
+		node.put("map", children);
+		return node;
+	}
+
+	protected int nextInvocation()
+	{
+		invocationIndex++;
+		if (invocationIndex >= baseCommands.length)
+		{
+			invocationIndex = 0;
+		}
+		return invocationIndex;
+	}
+
+	protected int nextSender()
+	{
+		senderIndex++;
+		if (senderIndex >= senders.length)
+		{
+			senderIndex = 0;
+		}
+		return senderIndex;
+	}
+
+	/**
+	 * The command callbacks- these do as little as possible, so the dispatch itself is measured.
+	 */
+	public static class BenchmarkListener
+	{
+		public boolean onBenchCommand(Player player, String[] parameters)
+		{
+			return parameters.length > 0;
+		}
+	}
+
+	protected PluginUtilities			utilities;
+	protected List<Object>				listeners;
+	protected Player[]					senders;
+	protected String[]					baseCommands;
+	protected String[][]				parameters;
+	protected int						invocationIndex		= 0;
+	protected int						senderIndex			= 0;
+
+	protected static final String		PLUGIN_NAME			= "Bench";
+	protected static final int			BRANCHING			= 4;
+	protected static final int			PLUGIN_COUNT		= 20;
+	protected static final int			PROFILE_COUNT		= 100;
+	protected static final int			GROUP_COUNT			= 50;
+	protected static final int			PLAYER_COUNT		= 100;
+	protected static final String[]		UNKNOWN_PARAMETERS	= { "sub0", "leaf0" };
+}
@@ -0,0 +1,157 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elmakers.mine.bukkit.permission.GroupManager;
+import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
+import com.elmakers.mine.craftbukkit.permission.PermissionDescriptionNode;
+import com.elmakers.mine.craftbukkit.permission.RootPermissionDescription;
+
+/**
+ * Measures permission checks against a server's worth of plugins, profiles, groups and players.
+ *
+ * Each call checks the next permission in a fixed list, for the next player, so checks
+ * are spread across players and permissions the way they would be on a live server.
+ *
+ * Run with "-prof gc" to see the allocation rate of each check.
+ *
+ * @author NathanWolf
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionBenchmark
+{
+	@Param({"40"})
+	public int pluginCount;
+
+	@Param({"100", "500"})
+	public int profileCount;
+
+	@Param({"100"})
+	public int groupCount;
+
+	@Param({"200"})
+	public int playerCount;
+
+	@Setup
+	public void setup()
+	{
+		PermissionFixtures fixtures = new PermissionFixtures(pluginCount, profileCount, groupCount, playerCount);
+		manager = fixtures.getManager();
+		roots = fixtures.getRoots();
+		players = fixtures.getPlayers();
+		keys = fixtures.getKeys();
+		missingKeys = fixtures.getMissingKeys();
+
+		// Each key's own plugin description, for checking without the compiled tree
+		keyRoots = new RootPermissionDescription[keys.length];
+		for (int i = 0; i < keys.length; i++)
+		{
+			String pluginName = keys[i].substring(0, keys[i].indexOf('.'));
+			keyRoots[i] = roots[Integer.parseInt(pluginName.substring("Plugin".length()))];
+		}
+
+		onlinePlayers = new Player[players.length];
+		for (int i = 0; i < players.length; i++)
+		{
+			onlinePlayers[i] = players[i].getPlayer();
+		}
+	}
+
+	/**
+	 * A full player check- their profiles, groups and the defaults.
+	 */
+	@Benchmark
+	public boolean playerIsSet()
+	{
+		return players[nextPlayer()].isSet(keys[nextKey()]);
+	}
+
+	/**
+	 * A player check for permissions no plugin describes.
+	 */
+	@Benchmark
+	public boolean playerIsSetMissing()
+	{
+		return players[nextPlayer()].isSet(missingKeys[nextKey()]);
+	}
+
+	/**
+	 * The fallback check, used when none of a player's profiles or groups decide.
+	 */
+	@Benchmark
+	public boolean groupManagerIsSet()
+	{
+		return manager.isSet(onlinePlayers[nextPlayer()], keys[nextKey()]);
+	}
+
+	/**
+	 * Default checks against a single plugin's description, without the compiled tree.
+	 */
+	@Benchmark
+	public boolean rootIsDefaultSet()
+	{
+		int key = nextKey();
+		return keyRoots[key].isDefaultSet(keys[key]);
+	}
+
+	@Benchmark
+	public PermissionDescriptionNode getPermissionPath()
+	{
+		return manager.getPermissionPath(keys[nextKey()]);
+	}
+
+	@Benchmark
+	public PermissionDescriptionNode getPermissionPathMissing()
+	{
+		return manager.getPermissionPath(missingKeys[nextKey()]);
+	}
+
+	protected int nextPlayer()
+	{
+		playerIndex++;
+		if (playerIndex >= players.length)
+		{
+			playerIndex = 0;
+		}
+		return playerIndex;
+	}
+
+	protected int nextKey()
+	{
+		keyIndex++;
+		if (keyIndex >= keys.length)
+		{
+			keyIndex = 0;
+		}
+		return keyIndex;
+	}
+
+	protected GroupManager					manager;
+	protected RootPermissionDescription[]	roots;
+	protected RootPermissionDescription[]	keyRoots;
+	protected PlayerData[]					players;
+	protected Player[]						onlinePlayers;
+	protected String[]						keys;
+	protected String[]						missingKeys;
+	protected int							playerIndex	= 0;
+	protected int							keyIndex	= 0;
+}
@@ -0,0 +1,319 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.bukkit.Server;
+import org.bukkit.World;
+
+import com.elmakers.mine.bukkit.permission.GroupManager;
+import com.elmakers.mine.bukkit.persistence.dao.Group;
+import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
+import com.elmakers.mine.bukkit.persistence.dao.ProfileData;
+import com.elmakers.mine.craftbukkit.permission.InvalidPermissionProfileException;
+import com.elmakers.mine.craftbukkit.permission.PermissionProfile;
+import com.elmakers.mine.craftbukkit.permission.RootPermissionDescription;
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+
+/**
+ * Builds a server's worth of permissions for the permission benchmarks.
+ *
+ * Each plugin describes a few categories of boolean permissions, some of them nested
+ * a level deeper. Profiles grant a random selection of those permissions, groups are
+ * granted several profiles and denied one, and players belong to several groups, with
+ * a few grants and denies of their own.
+ *
+ * Everything is generated from a fixed seed, so each run checks the same permissions.
+ *
+ * @author NathanWolf
+ *
+ */
+public class PermissionFixtures
+{
+	public PermissionFixtures(int pluginCount, int profileCount, int groupCount, int playerCount)
+	{
+		persistence = BenchmarkData.getPersistence();
+		server = BenchmarkStubs.createServer();
+		world = BenchmarkStubs.createWorld("world");
+		manager = new GroupManager(server, persistence, null);
+		PlayerData.setPermissionHandler(manager);
+
+		createPlugins(pluginCount);
+		createProfiles(profileCount);
+		createGroups(groupCount);
+		createPlayers(playerCount);
+		createKeys();
+	}
+
+	protected void createPlugins(int pluginCount)
+	{
+		roots = new RootPermissionDescription[pluginCount];
+		for (int i = 0; i < pluginCount; i++)
+		{
+			String pluginName = "Plugin" + i;
+			Map<String, Object> categories = new LinkedHashMap<String, Object>();
+			for (int c = 0; c < CATEGORY_COUNT; c++)
+			{
+				Map<String, Object> category = createNodes("category" + c);
+				category.put("nested", createMapNode(createNodes("nested" + c)));
+				categories.put("category" + c, createMapNode(category));
+			}
+
+			Map<String, Object> root = new HashMap<String, Object>();
+			root.put(pluginName, createMapNode(categories));
+			try
+			{
+				roots[i] = new RootPermissionDescription(root);
+			}
+			catch (Exception ex)
+			{
+				throw new IllegalStateException("Can't create permissions for " + pluginName, ex);
+			}
+			manager.addPluginRootPermission(pluginName, roots[i]);
+		}
+	}
+
+	protected Map<String, Object> createNodes(String prefix)
+	{
+		Map<String, Object> nodes = new LinkedHashMap<String, Object>();
+		for (int n = 0; n < NODE_COUNT; n++)
+		{
+			String name = prefix + "node" + n;
+			Map<String, Object> node = new HashMap<String, Object>();
+			node.put("description", "Benchmark permission " + name);
+			node.put("type", "boolean");
+			node.put("default", n % DEFAULT_INTERVAL == 0);
+			nodes.put(name, node);
+		}
+		return nodes;
+	}
+
+	protected Map<String, Object> createMapNode(Map<String, Object> children)
+	{
+		Map<String, Object> node = new HashMap<String, Object>();
+		node.put("description", "Benchmark permissions");
+		node.put("type", "map");
+		node.put("map", children);
+		return node;
+	}
+
+	/**
+	 * Get the full path of every permission each plugin describes.
+	 */
+	protected List<String> getPaths()
+	{
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < roots.length; i++)
+		{
+			String pluginName = "Plugin" + i;
+			for (int c = 0; c < CATEGORY_COUNT; c++)
+			{
+				String categoryPath = pluginName + ".category" + c;
+				for (int n = 0; n < NODE_COUNT; n++)
+				{
+					paths.add(categoryPath + ".category" + c + "node" + n);
+					paths.add(categoryPath + ".nested.nested" + c + "node" + n);
+				}
+			}
+		}
+		return paths;
+	}
+
+	protected void createProfiles(int profileCount)
+	{
+		List<String> paths = getPaths();
+		Map<String, Object> profileMaps = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < profileCount; i++)
+		{
+			Map<String, Object> profileMap = new LinkedHashMap<String, Object>();
+			for (int p = 0; p < PROFILE_GRANTS; p++)
+			{
+				addPath(profileMap, paths.get(random.nextInt(paths.size())));
+			}
+			profileMaps.put("profile" + i, profileMap);
+		}
+
+		PermissionProfile[] loaded;
+		try
+		{
+			loaded = PermissionProfile.loadProfiles(manager, server, profileMaps);
+		}
+		catch (InvalidPermissionProfileException ex)
+		{
+			throw new IllegalStateException("Can't load benchmark profiles", ex);
+		}
+
+		profiles = new ProfileData[loaded.length];
+		for (int i = 0; i < loaded.length; i++)
+		{
+			profiles[i] = new ProfileData(loaded[i].getName());
+			profiles[i].setProfile(loaded[i]);
+		}
+	}
+
+	/**
+	 * Add a path to a profile, as nested maps the way permissions.yml would load.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void addPath(Map<String, Object> profileMap, String path)
+	{
+		String[] keys = path.split("\\.");
+		Map<String, Object> current = profileMap;
+		for (int i = 0; i < keys.length - 1; i++)
+		{
+			Object child = current.get(keys[i]);
+			if (child == null)
+			{
+				child = new LinkedHashMap<String, Object>();
+				current.put(keys[i], child);
+			}
+			current = (Map<String, Object>)child;
+		}
+		current.put(keys[keys.length - 1], true);
+	}
+
+	protected void createGroups(int groupCount)
+	{
+		groups = new Group[groupCount];
+		for (int i = 0; i < groupCount; i++)
+		{
+			groups[i] = new Group("group" + i);
+			for (int g = 0; g < GROUP_GRANTS; g++)
+			{
+				groups[i].grantPermission(randomProfile());
+			}
+			groups[i].denyPermission(randomProfile());
+		}
+	}
+
+	protected void createPlayers(int playerCount)
+	{
+		players = new PlayerData[playerCount];
+		for (int i = 0; i < playerCount; i++)
+		{
+			PlayerData player = new PlayerData(BenchmarkStubs.createPlayer("player" + i, world));
+			for (int g = 0; g < PLAYER_GROUPS; g++)
+			{
+				player.addToGroup(groups[random.nextInt(groups.length)]);
+			}
+			for (int p = 0; p < PLAYER_GRANTS; p++)
+			{
+				player.grantPermission(randomProfile());
+			}
+			player.denyPermission(randomProfile());
+			player.login(player.getPlayer());
+			persistence.put(player);
+			players[i] = player;
+		}
+	}
+
+	/**
+	 * Build the permissions to check- mostly described ones, with some that no
+	 * plugin defines, since those are the most expensive to miss.
+	 */
+	protected void createKeys()
+	{
+		List<String> paths = getPaths();
+		keys = new String[KEY_COUNT];
+		missingKeys = new String[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; i++)
+		{
+			if (i % MISSING_INTERVAL == 0)
+			{
+				keys[i] = "Plugin" + random.nextInt(roots.length) + ".unknown.node" + i;
+			}
+			else
+			{
+				keys[i] = paths.get(random.nextInt(paths.size()));
+			}
+			missingKeys[i] = "Missing" + i + ".commands.node" + i;
+		}
+	}
+
+	protected ProfileData randomProfile()
+	{
+		return profiles[random.nextInt(profiles.length)];
+	}
+
+	public GroupManager getManager()
+	{
+		return manager;
+	}
+
+	public Server getServer()
+	{
+		return server;
+	}
+
+	public World getWorld()
+	{
+		return world;
+	}
+
+	public RootPermissionDescription[] getRoots()
+	{
+		return roots;
+	}
+
+	public ProfileData[] getProfiles()
+	{
+		return profiles;
+	}
+
+	public Group[] getGroups()
+	{
+		return groups;
+	}
+
+	public PlayerData[] getPlayers()
+	{
+		return players;
+	}
+
+	/**
+	 * Get a mix of permissions to check, most of which are described by a plugin.
+	 *
+	 * @return The permission paths
+	 */
+	public String[] getKeys()
+	{
+		return keys;
+	}
+
+	/**
+	 * Get permissions that no plugin describes, with unknown root names.
+	 *
+	 * @return The permission paths
+	 */
+	public String[] getMissingKeys()
+	{
+		return missingKeys;
+	}
+
+	protected final Persistence					persistence;
+	protected final Server						server;
+	protected final World						world;
+	protected final GroupManager				manager;
+	protected final Random						random				= new Random(SEED);
+	protected RootPermissionDescription[]		roots;
+	protected ProfileData[]						profiles;
+	protected Group[]							groups;
+	protected PlayerData[]						players;
+	protected String[]							keys;
+	protected String[]							missingKeys;
+
+	protected static final long					SEED				= 1234;
+	protected static final int					CATEGORY_COUNT		= 4;
+	protected static final int					NODE_COUNT			= 12;
+	protected static final int					DEFAULT_INTERVAL	= 5;
+	protected static final int					PROFILE_GRANTS		= 20;
+	protected static final int					GROUP_GRANTS		= 8;
+	protected static final int					PLAYER_GROUPS		= 4;
+	protected static final int					PLAYER_GRANTS		= 6;
+	protected static final int					KEY_COUNT			= 1024;
+	protected static final int					MISSING_INTERVAL	= 8;
+}
@@ -0,0 +1,80 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+import com.elmakers.mine.craftbukkit.persistence.core.PersistedClass;
+
+/**
+ * Measures full saves and cache loads against a SQLite database in a temporary folder.
+ * 
+ * @author NathanWolf
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RoundTripBenchmark
+{
+	@Param({"100", "1000"})
+	public int entityCount;
+	
+	@Setup
+	public void setup()
+	{
+		persistence = BenchmarkData.getPersistence();
+		persistedClass = BenchmarkData.getEmptyEntityClass();
+		
+		entities = new BenchmarkEntity[entityCount];
+		for (int i = 0; i < entityCount; i++)
+		{
+			entities[i] = BenchmarkEntity.create(i);
+			persistence.put(entities[i]);
+		}
+		persistedClass.save();
+	}
+	
+	/**
+	 * Mark every entity as changed, and save them all.
+	 */
+	@Benchmark
+	public void save()
+	{
+		for (BenchmarkEntity entity : entities)
+		{
+			persistence.put(entity);
+		}
+		persistedClass.save();
+	}
+	
+	/**
+	 * Drop the cache, and load every entity and its lists back from the store.
+	 * 
+	 * @return An entity, to make sure the load isn't optimized away
+	 */
+	@Benchmark
+	public Object loadCache()
+	{
+		persistedClass.clear();
+		return persistence.get(entities[0].getId(), BenchmarkEntity.class);
+	}
+	
+	protected Persistence		persistence;
+	protected PersistedClass	persistedClass;
+	protected BenchmarkEntity[]	entities;
+}
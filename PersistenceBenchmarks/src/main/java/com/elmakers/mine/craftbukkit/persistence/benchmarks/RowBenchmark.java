@@ -0,0 +1,110 @@
+package com.elmakers.mine.craftbukkit.persistence.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elmakers.mine.bukkit.persistence.exception.InvalidDataException;
+import com.elmakers.mine.craftbukkit.persistence.core.PersistedClass;
+import com.elmakers.mine.craftbukkit.persistence.core.PersistedField;
+import com.elmakers.mine.craftbukkit.persistence.core.PersistedList;
+import com.elmakers.mine.craftbukkit.persistence.data.DataRow;
+import com.elmakers.mine.craftbukkit.persistence.data.DataTable;
+
+/**
+ * Measures converting a single entity to and from data rows, without a data store.
+ * 
+ * The entity has scalar fields, a contained object and two lists.
+ * 
+ * @author NathanWolf
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowBenchmark
+{
+	@Setup
+	public void setup()
+	{
+		BenchmarkData.getPersistence();
+		persistedClass = BenchmarkData.getEmptyEntityClass();
+		entity = BenchmarkEntity.create(42);
+		
+		lists = new ArrayList<PersistedList>();
+		for (PersistedField field : persistedClass.getPersistedFields())
+		{
+			if (field instanceof PersistedList)
+			{
+				lists.add((PersistedList)field);
+			}
+		}
+		
+		row = populate();
+		listTables = populateLists();
+	}
+	
+	@Benchmark
+	public DataRow populate()
+	{
+		DataTable table = new DataTable(persistedClass.getTableName());
+		DataRow populated = new DataRow(table);
+		persistedClass.populate(populated, entity);
+		return populated;
+	}
+	
+	@Benchmark
+	public Object load() throws InvalidDataException
+	{
+		BenchmarkEntity loaded = new BenchmarkEntity();
+		persistedClass.load(row, loaded);
+		return loaded;
+	}
+	
+	@Benchmark
+	public List<DataTable> populateLists()
+	{
+		List<DataTable> tables = new ArrayList<DataTable>();
+		for (PersistedList list : lists)
+		{
+			DataTable listTable = new DataTable(list.getTableName());
+			list.save(listTable, entity);
+			tables.add(listTable);
+		}
+		return tables;
+	}
+	
+	@Benchmark
+	public Object loadLists() throws InvalidDataException
+	{
+		BenchmarkEntity loaded = new BenchmarkEntity();
+		loaded.setId(entity.getId());
+		List<Object> instances = Collections.<Object>singletonList(loaded);
+		for (int i = 0; i < lists.size(); i++)
+		{
+			lists.get(i).load(listTables.get(i), instances);
+		}
+		return loaded;
+	}
+	
+	protected PersistedClass		persistedClass;
+	protected BenchmarkEntity		entity;
+	protected List<PersistedList>	lists;
+	protected DataRow				row;
+	protected List<DataTable>		listTables;
+}
@@ -1,13 +1,12 @@
 package com.elmakers.mine.bukkit.permission;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.bukkit.Server;
@@ -21,9 +20,9 @@ import com.elmakers.mine.bukkit.persistence.dao.PluginCommand;
 import com.elmakers.mine.bukkit.persistence.dao.ProfileData;
 import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
 import com.elmakers.mine.bukkit.utilities.PluginUtilities;
-import com.elmakers.mine.craftbukkit.permission.InvalidPermissionProfileException;
 import com.elmakers.mine.craftbukkit.permission.PermissionDescriptionNode;
 import com.elmakers.mine.craftbukkit.permission.PermissionProfile;
+import com.elmakers.mine.craftbukkit.permission.PermissionTree;
 import com.elmakers.mine.craftbukkit.permission.RootPermissionDescription;
 import com.elmakers.mine.craftbukkit.persistence.Persistence;
 
@@ -51,6 +50,10 @@ public class GroupManager implements PermissionManager, PermissionHandler
 		playerNotFoundMessage = utilities.getMessage("playerNotFound", d.playerNotFoundMessage);
 		groupNotFoundMessage = utilities.getMessage("groupNotFound", d.groupNotFoundMessage);
 		unknownProfileMessage = utilities.getMessage("unknownProfile", d.unknownProfileMessage);
+		reloadingPermissionsMessage = utilities.getMessage("reloadingPermissions", d.reloadingPermissionsMessage);
+		reloadedPermissionsMessage = utilities.getMessage("reloadedPermissions", d.reloadedPermissionsMessage);
+		reloadPermissionsFailedMessage = utilities.getMessage("reloadPermissionsFailed", d.reloadPermissionsFailedMessage);
+		permissionsReloadRunningMessage = utilities.getMessage("permissionsReloadRunning", d.permissionsReloadRunningMessage);
 
 		// Commands
 		groupCommand = utilities.getGeneralCommand(d.groupCommand[0], d.groupCommand[1], d.groupCommand[2]);
@@ -66,6 +69,9 @@ public class GroupManager implements PermissionManager, PermissionHandler
 		grantPlayerCommand = grantCommand.getSubCommand(d.grantPlayerCommand[0], d.grantPlayerCommand[1], d.grantPlayerCommand[2]);
 		grantGroupCommand = grantCommand.getSubCommand(d.grantGroupCommand[0], d.grantGroupCommand[1], d.grantGroupCommand[2]);
 
+		permissionsCommand = utilities.getGeneralCommand(d.permissionsCommand[0], d.permissionsCommand[1], d.permissionsCommand[2]);
+		permissionsReloadCommand = permissionsCommand.getSubCommand(d.permissionsReloadCommand[0], d.permissionsReloadCommand[1], d.permissionsReloadCommand[2]);
+
 		// Bind commands
 
 		groupCreateCommand.bind("onCreateGroup");
@@ -75,31 +81,120 @@ public class GroupManager implements PermissionManager, PermissionHandler
 		denyGroupCommand.bind("onDenyGroupr");
 		grantPlayerCommand.bind("onGrantPlayer");
 		grantGroupCommand.bind("onGrantGroup");
+		permissionsReloadCommand.bind("onReloadPermissions");
 	}
 	
+	/**
+	 * Load permissions.yml, and start watching it for changes.
+	 * 
+	 * The file is parsed and compiled on a background thread, then swapped in on the
+	 * main thread. This should be called once all plugins have registered their
+	 * permissions, since profiles are checked against them.
+	 */
 	public void initializePermissions()
 	{		
 		if (permissionsInitialized) return;
 		permissionsInitialized = true;
 		
-		// Set up player profiles for permissions
-		FileReader loader = null;
-		try
+		File file = getPermissionsFile();
+		if (!file.exists())
 		{
-			loader = new FileReader(new File(dataFolder, permissionsFile));
-
-			if (!loadProfiles(loader, permissionsFile))
+			log.info("Persistence: Create a plugins/Persistence/" + permissionsFile + " to use internal permissions");
+		}
+		else
+		{
+			reloadPermissions(null);
+		}
+		
+		final PersistencePlugin plugin = PersistencePlugin.getInstance();
+		plugin.getServer().getScheduler().scheduleAsyncRepeatingTask(plugin, new Runnable()
+		{
+			public void run()
 			{
-				log.info("Persistence: There's an error with permissions.yml - hopefully more info about that above.");
+				checkPermissionsFile();
 			}
+		}, PERMISSIONS_CHECK_INTERVAL, PERMISSIONS_CHECK_INTERVAL);
+	}
+	
+	/**
+	 * Reload permissions.yml in the background.
+	 * 
+	 * @param messageOutput Who to report back to when the reload finishes, may be null
+	 * @return false if a reload is already running, or the reload couldn't be scheduled
+	 */
+	public boolean reloadPermissions(final CommandSender messageOutput)
+	{
+		final PersistencePlugin plugin = PersistencePlugin.getInstance();
+		final ProfileLoader loader = createLoader(messageOutput);
+		if (!loader.claim()) return false;
+		
+		permissionsModified = loader.getFile().lastModified();
+		if (plugin.getServer().getScheduler().scheduleAsyncDelayedTask(plugin, loader) == -1)
+		{
+			loader.release();
+			return false;
 		}
-		catch(FileNotFoundException ex)
+		return true;
+	}
+	
+	public boolean onReloadPermissions(CommandSender messageOutput, String[] parameters)
+	{
+		if (!reloadPermissions(messageOutput))
 		{
-			log.info("Persistence: Create a plugins/Persistence/" + permissionsFile + " to use internal permissions");
-			loader = null;
+			permissionsReloadRunningMessage.sendTo(messageOutput);
+			return true;
 		}
+		
+		reloadingPermissionsMessage.sendTo(messageOutput, permissionsFile);
+		return true;
 	}
-
+	
+	/**
+	 * Check permissions.yml for changes, reloading it if it has been modified.
+	 * 
+	 * This runs on a background thread, and loads the file on that same thread.
+	 */
+	protected void checkPermissionsFile()
+	{
+		File file = getPermissionsFile();
+		long modified = file.lastModified();
+		if (modified == permissionsModified) return;
+		
+		// If a reload is already running, check again next time
+		ProfileLoader loader = createLoader(null);
+		if (!loader.claim()) return;
+		
+		log.info("Persistence: " + permissionsFile + " has changed, reloading");
+		permissionsModified = modified;
+		loader.run();
+	}
+	
+	protected ProfileLoader createLoader(final CommandSender messageOutput)
+	{
+		final PersistencePlugin plugin = PersistencePlugin.getInstance();
+		final ProfileLoader loader = new ProfileLoader(this, server, getPermissionsFile());
+		loader.setOnComplete(new Runnable()
+		{
+			public void run()
+			{
+				// Swap the new profiles in on the main thread
+				plugin.getServer().getScheduler().scheduleSyncDelayedTask(plugin, new Runnable()
+				{
+					public void run()
+					{
+						applyProfiles(loader, messageOutput);
+					}
+				});
+			}
+		});
+		return loader;
+	}
+	
+	protected File getPermissionsFile()
+	{
+		return new File(dataFolder, permissionsFile);
+	}
+	
 	public boolean onCreateGroup(CommandSender messageOutput, String[] parameters)
 	{
 		if (parameters.length == 0)
@@ -323,69 +418,97 @@ public class GroupManager implements PermissionManager, PermissionHandler
 		return true;
 	}
 	
-	protected boolean loadProfiles(Reader reader, String filename)
+	/**
+	 * Swap in a newly loaded set of profiles.
+	 * 
+	 * This must be called on the main thread. If the load failed or was skipped, the
+	 * current profiles are kept. Profiles that are no longer in the file are cleared, and every player's
+	 * cached permissions are invalidated at once.
+	 * 
+	 * @param loader The finished loader
+	 * @param messageOutput Who to report the results to, may be null
+	 */
+	protected void applyProfiles(ProfileLoader loader, CommandSender messageOutput)
 	{
-		PermissionProfile[] profiles;
-		try
+		if (loader.isSkipped())
 		{
-			profiles = PermissionProfile.loadProfiles(this, server, reader);
-			log.info("Persistence: loaded " + profiles.length + " profiles from " + filename);
-			for (PermissionProfile profile : profiles)
+			if (messageOutput != null)
 			{
-				String profileName = profile.getName();
-				if (profileName.equalsIgnoreCase("default"))
-				{
-					defaultProfile = profile;
-				}
-				ProfileData profileData = persistence.get(profileName, ProfileData.class);
-				if (profileData == null)
-				{
-					profileData = new ProfileData(profileName);
-					persistence.put(profileData);
-				}
-				
-				/// This is setting a transient instance
-				profileData.setProfile(profile);
+				permissionsReloadRunningMessage.sendTo(messageOutput);
 			}
+			return;
 		}
-		catch (InvalidPermissionProfileException e)
+		
+		PermissionProfile[] profiles = loader.getProfiles();
+		if (profiles == null)
 		{
-			log.info(e.getMessage());
-			return false;
+			log.info("Persistence: There's an error with " + permissionsFile + ", keeping the current permissions: " + loader.getError());
+			if (messageOutput != null)
+			{
+				reloadPermissionsFailedMessage.sendTo(messageOutput, loader.getError());
+			}
+			return;
 		}
 		
-		return true;
+		PermissionProfile newDefault = null;
+		Set<String> newProfileNames = new HashSet<String>();
+		for (PermissionProfile profile : profiles)
+		{
+			String profileName = profile.getName();
+			if (profileName.equalsIgnoreCase("default"))
+			{
+				newDefault = profile;
+			}
+			ProfileData profileData = persistence.get(profileName, ProfileData.class);
+			if (profileData == null)
+			{
+				profileData = new ProfileData(profileName);
+				persistence.put(profileData);
+			}
+			
+			/// This is setting a transient instance
+			profileData.setProfile(profile);
+			newProfileNames.add(profileName);
+		}
+		
+		for (String profileName : loadedProfileNames)
+		{
+			if (newProfileNames.contains(profileName)) continue;
+			
+			ProfileData profileData = persistence.get(profileName, ProfileData.class);
+			if (profileData != null)
+			{
+				profileData.setProfile(null);
+			}
+		}
+		
+		loadedProfileNames = newProfileNames;
+		defaultProfile = newDefault;
+		PlayerData.invalidatePermissions();
+		
+		log.info("Persistence: loaded " + profiles.length + " profiles from " + permissionsFile);
+		if (messageOutput != null)
+		{
+			reloadedPermissionsMessage.sendTo(messageOutput, profiles.length, permissionsFile);
+		}
 	}
 	
 	public RootPermissionDescription getPermissionRoot(final String path)
 	{
-		String root = path.split("\\.", 2)[0];
-		return permissions.get(root);
+		int end = path.indexOf('.');
+		return permissions.get(end < 0 ? path : path.substring(0, end));
 	}
 
 	public PermissionDescriptionNode getPermissionPath(final String path)
 	{
-		RootPermissionDescription root = getPermissionRoot(path);
-
-		/*
-		 * TODO: Add a path cache to avoid having to keep searching for nodes It
-		 * will be much more efficient. Need to invalidate the cache every time
-		 * a plugin changes one of the node descriptions though (not that they
-		 * should...)
-		 */
-
-		if (root == null)
-		{
-			throw new IllegalArgumentException("No permissions are defined for " + path);
-		}
-
-		return root.getPath(path);
+		return permissionTree.getPath(path);
 	}
 	
 
 	public void addHandler(PermissionHandler handler)
 	{
 		permissionHandlers.add(handler);
+		PlayerData.invalidatePermissions();
 	}
 	
 	public void addPluginRootPermission(String pluginName, RootPermissionDescription rootNode)
@@ -399,6 +522,8 @@ public class GroupManager implements PermissionManager, PermissionHandler
 			{
 				permissions.put(name, rootNode);
 			}
+			permissionTree = new PermissionTree(permissions);
+			PlayerData.invalidatePermissions();
 		}
 	}
 	
@@ -412,12 +537,9 @@ public class GroupManager implements PermissionManager, PermissionHandler
 			}
 		}
 
-		for (RootPermissionDescription rootNodes : permissions.values())
+		if (permissionTree.isDefaultSet(permissionNode))
 		{
-			if (rootNodes.isDefaultSet(permissionNode))
-			{
-				return true;
-			}
+			return true;
 		}
 		for (PermissionHandler subHandler : permissionHandlers)
 		{
@@ -431,13 +553,16 @@ public class GroupManager implements PermissionManager, PermissionHandler
 	
 	private final Map<String, RootPermissionDescription> permissions = new HashMap<String, RootPermissionDescription>();
 	private final List<PermissionHandler> permissionHandlers = new ArrayList<PermissionHandler>();
+	private volatile PermissionTree permissionTree = new PermissionTree(permissions);
 
 	protected Persistence									persistence				= null;
 	protected Server										server					= null;
 	protected File											dataFolder				= null;
-	protected PermissionProfile								defaultProfile			= null;
+	protected volatile PermissionProfile					defaultProfile			= null;
+	protected Set<String>									loadedProfileNames		= new HashSet<String>();
 
-	protected boolean										permissionsInitialized = false;
+	protected boolean										permissionsInitialized	= false;
+	protected volatile long									permissionsModified		= 0;
 
 	private PluginCommand									groupCommand;
 	private PluginCommand									groupCreateCommand;
@@ -449,6 +574,8 @@ public class GroupManager implements PermissionManager, PermissionHandler
 	private PluginCommand									grantCommand;
 	private PluginCommand									grantPlayerCommand;
 	private PluginCommand									grantGroupCommand;
+	private PluginCommand									permissionsCommand;
+	private PluginCommand									permissionsReloadCommand;
 
 	private Message											groupExistsMessage;
 	private Message											addedPlayerToGroupMessage;
@@ -459,9 +586,16 @@ public class GroupManager implements PermissionManager, PermissionHandler
 	private Message											playerNotFoundMessage;
 	private Message											unknownProfileMessage;
 	private Message											groupNotFoundMessage;
+	private Message											reloadingPermissionsMessage;
+	private Message											reloadedPermissionsMessage;
+	private Message											reloadPermissionsFailedMessage;
+	private Message											permissionsReloadRunningMessage;
 
 	protected static final Logger log = Persistence.getLogger();
 	
 	// TOOD : support multiple perm files
 	private static final String permissionsFile = "permissions.yml";
+	
+	// Check for changes to permissions.yml every five seconds
+	private static final long PERMISSIONS_CHECK_INTERVAL = 5 * 20;
 }
@@ -12,6 +12,8 @@ class GroupManagerDefaults
 	public final String[] grantCommand = {"grant", "Grant players and groups access", null};
 	public final String[] grantPlayerCommand = {"player", "Grant a player access", "<player> <permission>"};
 	public final String[] grantGroupCommand = {"group", "Grant a group access", "<group> <permission>"};
+	public final String[] permissionsCommand = {"permissions", "Manage permissions", null};
+	public final String[] permissionsReloadCommand = {"reload", "Reload permissions.yml", null};
 
 	public final String addedPlayerToGroupMessage = "Added %s to %s";
 	public final String removedPlayerFromGroupMessage = "Removed %s from %s";
@@ -22,4 +24,8 @@ class GroupManagerDefaults
 	public final String groupNotFoundMessage = "Group %s is unknown";
 	public final String unknownProfileMessage = "Permission profile %s is unknown";
 	public final String groupExistsMessage = "Group %s already exists";
+	public final String reloadingPermissionsMessage = "Reloading %s";
+	public final String reloadedPermissionsMessage = "Loaded %d profiles from %s";
+	public final String reloadPermissionsFailedMessage = "Permissions not reloaded: %s";
+	public final String permissionsReloadRunningMessage = "Permissions are already being reloaded";
 }
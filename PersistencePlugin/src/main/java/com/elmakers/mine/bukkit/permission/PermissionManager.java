@@ -7,7 +7,15 @@ public interface PermissionManager
 {
 	public void addHandler(PermissionHandler handler);
 	public RootPermissionDescription getPermissionRoot(final String path);
+	
+	/**
+	 * Look up the description of a permission node.
+	 * 
+	 * @param path The full permission path
+	 * @return The description node, or null if the path isn't defined by any plugin
+	 */
 	public PermissionDescriptionNode getPermissionPath(final String path);
+	
 	public void addPluginRootPermission(String pluginName, RootPermissionDescription rootNode);
 	public void initializePermissions();
 }
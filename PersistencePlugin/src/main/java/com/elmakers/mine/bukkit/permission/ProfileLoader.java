@@ -0,0 +1,203 @@
+package com.elmakers.mine.bukkit.permission;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import org.bukkit.Server;
+
+import com.elmakers.mine.craftbukkit.permission.InvalidPermissionProfileException;
+import com.elmakers.mine.craftbukkit.permission.PermissionProfile;
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+
+/**
+ * Parses and compiles a permissions file into a set of profiles.
+ *
+ * This is meant to be run on a background thread. It only builds new PermissionProfile
+ * instances, it does not touch any live data- the results should be handed back to
+ * the main thread to be swapped in.
+ *
+ * Only one load may run at a time. Call claim() before scheduling a loader, so the
+ * caller knows right away whether it will run. A loader that wasn't claimed claims
+ * itself when run, and is skipped if another load is already running.
+ *
+ * @author NathanWolf
+ *
+ */
+public class ProfileLoader implements Runnable
+{
+	public ProfileLoader(PermissionManager manager, Server server, File file)
+	{
+		this.manager = manager;
+		this.server = server;
+		this.file = file;
+	}
+
+	public static boolean isRunning()
+	{
+		return running.get();
+	}
+
+	/**
+	 * Claim the right to run this load.
+	 *
+	 * @return false if another load is already running
+	 */
+	public boolean claim()
+	{
+		claimed = running.compareAndSet(false, true);
+		return claimed;
+	}
+
+	/**
+	 * Give up a claim, if this loader could not be scheduled after all.
+	 */
+	public void release()
+	{
+		if (claimed)
+		{
+			claimed = false;
+			running.set(false);
+		}
+	}
+
+	/**
+	 * Set a callback to be run when this load completes.
+	 *
+	 * The callback is run on the loader thread, and is also run if the load
+	 * was skipped- check isSkipped().
+	 *
+	 * @param onComplete The callback to run
+	 */
+	public void setOnComplete(Runnable onComplete)
+	{
+		this.onComplete = onComplete;
+	}
+
+	public void run()
+	{
+		if (!claimed && !claim())
+		{
+			log.info("Persistence: Permissions are already being loaded, skipping");
+			skipped = true;
+		}
+		else
+		{
+			try
+			{
+				load();
+			}
+			finally
+			{
+				release();
+			}
+		}
+
+		if (onComplete != null)
+		{
+			onComplete.run();
+		}
+	}
+
+	protected void load()
+	{
+		FileReader reader = null;
+		try
+		{
+			reader = new FileReader(file);
+			PermissionProfile[] loaded = PermissionProfile.loadProfiles(manager, server, reader);
+			validate(loaded);
+			profiles = loaded;
+		}
+		catch (FileNotFoundException ex)
+		{
+			error = "Create a plugins/Persistence/" + file.getName() + " to use internal permissions";
+		}
+		catch (InvalidPermissionProfileException ex)
+		{
+			error = ex.getMessage();
+		}
+		catch (Throwable ex)
+		{
+			// Mainly ClassCastExceptions and YAML errors from a malformed file
+			error = "Error reading " + file.getName() + ": " + ex.getMessage();
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (IOException ex)
+				{
+				}
+			}
+		}
+	}
+
+	protected void validate(PermissionProfile[] loaded) throws InvalidPermissionProfileException
+	{
+		Set<String> names = new HashSet<String>();
+		for (PermissionProfile profile : loaded)
+		{
+			if (!names.add(profile.getName().toLowerCase()))
+			{
+				throw new InvalidPermissionProfileException("Profile " + profile.getName() + " is defined more than once in " + file.getName());
+			}
+		}
+	}
+
+	/**
+	 * Get the compiled profiles.
+	 *
+	 * @return The profiles that were loaded, or null if the file could not be loaded
+	 */
+	public PermissionProfile[] getProfiles()
+	{
+		return profiles;
+	}
+
+	/**
+	 * Check to see if this load was skipped because another load was running.
+	 *
+	 * @return true if nothing was loaded
+	 */
+	public boolean isSkipped()
+	{
+		return skipped;
+	}
+
+	public boolean isSuccess()
+	{
+		return profiles != null;
+	}
+
+	public String getError()
+	{
+		return error;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	protected final PermissionManager		manager;
+	protected final Server					server;
+	protected final File					file;
+	protected Runnable						onComplete	= null;
+	protected volatile boolean				claimed		= false;
+	protected volatile boolean				skipped		= false;
+	protected volatile PermissionProfile[]	profiles	= null;
+	protected volatile String				error		= null;
+
+	protected static final AtomicBoolean	running		= new AtomicBoolean(false);
+	protected static final Logger			log			= Persistence.getLogger();
+}
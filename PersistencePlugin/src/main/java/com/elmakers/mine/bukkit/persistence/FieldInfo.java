@@ -1,5 +1,6 @@
 package com.elmakers.mine.bukkit.persistence;
 
+import com.elmakers.mine.bukkit.persistence.annotation.PersistEncoding;
 import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
 
 public class FieldInfo
@@ -20,6 +21,8 @@ public class FieldInfo
 		contained = fieldInfo.contained();
 		readonly = fieldInfo.readonly();
 		name = fieldInfo.name();
+		encoding = fieldInfo.encoding();
+		dedupe = fieldInfo.dedupe();
 	}
 	
 	public boolean isIdField()
@@ -72,6 +75,31 @@ public class FieldInfo
 		this.name = name;
 	}
 	
+	public PersistEncoding getEncoding()
+	{
+		return encoding;
+	}
+	
+	public void setEncoding(PersistEncoding encoding)
+	{
+		this.encoding = encoding;
+	}
+	
+	public boolean isPacked()
+	{
+		return encoding == PersistEncoding.PACKED;
+	}
+	
+	public boolean isDeduplicated()
+	{
+		return dedupe;
+	}
+	
+	public void setDeduplicated(boolean dedupe)
+	{
+		this.dedupe = dedupe;
+	}
+	
 	public void setGetter(String getter)
 	{
 		this.getter = getter;
@@ -110,4 +138,6 @@ public class FieldInfo
 	private String getter;
 	private String setter;
 	private String field;
+	private PersistEncoding encoding = PersistEncoding.DEFAULT;
+	private boolean dedupe = false;
 }
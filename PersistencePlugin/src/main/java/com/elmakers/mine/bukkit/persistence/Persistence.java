@@ -77,4 +77,33 @@ public interface Persistence
 	 * @return false if, for some reason, the storage failed.
 	 */
 	public boolean put(Object persist);
+	
+	/**
+	 * Retrieve an instance of the specified type, without blocking the calling thread.
+	 * 
+	 * Callbacks added to the returned future are run on the server's main thread.
+	 * 
+	 * @param <T> The base type of object. This is an invisible parameter, you don't need to worry about it
+	 * @param id The id of the object to lookup
+	 * @param objectType The type of object to search for
+	 * @return A future that completes with the object instance, or null if not found
+	 */
+	public <T> PersistenceFuture<T> getAsync(Object id, Class<T> objectType);
+	
+	/**
+	 * Retrieve all instances of the specified type, without blocking the calling thread.
+	 * 
+	 * @param <T> The base type of object. This is an invisible parameter, you don't need to worry about it
+	 * @param objectType The type of object to retrieve
+	 * @return A future that completes with a new List of object instances
+	 */
+	public <T> PersistenceFuture<List<T>> getAllAsync(Class<T> objectType);
+	
+	/**
+	 * Add an object to the data store, without blocking the calling thread.
+	 * 
+	 * @param persist The object to persist
+	 * @return A future that completes with false if the storage failed
+	 */
+	public PersistenceFuture<Boolean> putAsync(Object persist);
 }
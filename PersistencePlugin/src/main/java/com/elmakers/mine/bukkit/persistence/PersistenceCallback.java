@@ -0,0 +1,27 @@
+package com.elmakers.mine.bukkit.persistence;
+
+/**
+ * Receives the result of an asynchronous Persistence call.
+ * 
+ * Callbacks are run on the server's main thread, so it is safe to use the Bukkit API from them.
+ * 
+ * @author NathanWolf
+ *
+ * @param <T> The type of result
+ */
+public interface PersistenceCallback<T>
+{
+	/**
+	 * Called when the request completes.
+	 * 
+	 * @param result The result of the request, which may be null
+	 */
+	public void onComplete(T result);
+	
+	/**
+	 * Called if the request failed.
+	 * 
+	 * @param error The error that caused the failure
+	 */
+	public void onError(Throwable error);
+}
@@ -0,0 +1,183 @@
+package com.elmakers.mine.bukkit.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an asynchronous Persistence call.
+ * 
+ * Use addCallback to be notified on the main thread when the result is ready.
+ * The blocking get() methods are also available, but should not be called from the main thread,
+ * since that defeats the purpose.
+ * 
+ * Requests can't be cancelled once they have been submitted.
+ * 
+ * @author NathanWolf
+ *
+ * @param <T> The type of result
+ */
+public class PersistenceFuture<T> implements Future<T>
+{
+	/**
+	 * Create a new, incomplete future.
+	 * 
+	 * @param callbackExecutor Used to run callbacks, normally on the main thread
+	 */
+	public PersistenceFuture(Executor callbackExecutor)
+	{
+		this.callbackExecutor = callbackExecutor;
+	}
+	
+	/**
+	 * Add a callback to be run when this request completes.
+	 * 
+	 * If the request has already completed, the callback is scheduled right away.
+	 * 
+	 * @param callback The callback to run
+	 */
+	public void addCallback(PersistenceCallback<? super T> callback)
+	{
+		synchronized(this)
+		{
+			if (!done)
+			{
+				callbacks.add(callback);
+				return;
+			}
+		}
+		dispatch(callback);
+	}
+	
+	/**
+	 * Complete this request with a result.
+	 * 
+	 * @param value The result
+	 */
+	public void complete(T value)
+	{
+		finish(value, null);
+	}
+	
+	/**
+	 * Complete this request with an error.
+	 * 
+	 * @param cause The error that caused the request to fail
+	 */
+	public void fail(Throwable cause)
+	{
+		finish(null, cause);
+	}
+	
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		return false;
+	}
+	
+	public boolean isCancelled()
+	{
+		return false;
+	}
+	
+	public synchronized boolean isDone()
+	{
+		return done;
+	}
+	
+	public synchronized T get() throws InterruptedException, ExecutionException
+	{
+		while (!done)
+		{
+			wait();
+		}
+		return getResult();
+	}
+	
+	public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+	{
+		long remaining = unit.toMillis(timeout);
+		long end = System.currentTimeMillis() + remaining;
+		while (!done)
+		{
+			if (remaining <= 0)
+			{
+				throw new TimeoutException();
+			}
+			wait(remaining);
+			remaining = end - System.currentTimeMillis();
+		}
+		return getResult();
+	}
+	
+	protected T getResult() throws ExecutionException
+	{
+		if (error != null)
+		{
+			throw new PersistenceExecutionException(error);
+		}
+		return result;
+	}
+	
+	protected void finish(T value, Throwable cause)
+	{
+		List<PersistenceCallback<? super T>> pending;
+		synchronized(this)
+		{
+			if (done) return;
+			
+			result = value;
+			error = cause;
+			done = true;
+			notifyAll();
+			
+			pending = callbacks;
+			callbacks = null;
+		}
+		
+		for (PersistenceCallback<? super T> callback : pending)
+		{
+			dispatch(callback);
+		}
+	}
+	
+	protected void dispatch(final PersistenceCallback<? super T> callback)
+	{
+		callbackExecutor.execute(new Runnable()
+		{
+			public void run()
+			{
+				if (error != null)
+				{
+					callback.onError(error);
+				}
+				else
+				{
+					callback.onComplete(result);
+				}
+			}
+		});
+	}
+	
+	/*
+	 * ExecutionException's constructors are protected in Java 1.5
+	 */
+	static class PersistenceExecutionException extends ExecutionException
+	{
+		public PersistenceExecutionException(Throwable cause)
+		{
+			super(cause.getMessage(), cause);
+		}
+		
+		private static final long serialVersionUID = 1L;
+	}
+	
+	protected final Executor							callbackExecutor;
+	protected List<PersistenceCallback<? super T>>		callbacks	= new ArrayList<PersistenceCallback<? super T>>();
+	protected boolean									done		= false;
+	protected T											result		= null;
+	protected Throwable									error		= null;
+}
@@ -0,0 +1,97 @@
+package com.elmakers.mine.bukkit.persistence;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.entity.Player;
+
+import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
+
+/**
+ * The session of an online player.
+ *
+ * A session holds a player's PlayerData, which in turn holds their compiled permissions,
+ * along with any per-player data plugins want to keep handy while the player is online.
+ *
+ * Sessions are opened when a player joins and closed when they leave. Use
+ * SessionRegistry.get(player) to find the session for a player.
+ *
+ * @author NathanWolf
+ *
+ * @see SessionRegistry
+ */
+public class PlayerSession
+{
+	public PlayerSession(Player player, PlayerData data)
+	{
+		this.player = player;
+		this.data = data;
+	}
+
+	public Player getPlayer()
+	{
+		return player;
+	}
+
+	public PlayerData getData()
+	{
+		return data;
+	}
+
+	public String getName()
+	{
+		return data.getId();
+	}
+
+	/**
+	 * Check a permission for this player.
+	 *
+	 * @param permissionNode The permission to check
+	 * @return true if the player has this permission
+	 * @see PlayerData#isSet(String)
+	 */
+	public boolean isSet(String permissionNode)
+	{
+		return data.isSet(permissionNode);
+	}
+
+	/**
+	 * Get a plugin's data for this player.
+	 *
+	 * @param <T> The type of data
+	 * @param dataType The class of data to get, normally a plugin's own player DAO
+	 * @return The data, or null if none has been attached to this session
+	 */
+	public <T> T get(Class<T> dataType)
+	{
+		return dataType.cast(companions.get(dataType));
+	}
+
+	/**
+	 * Attach a plugin's data to this session, for as long as the player is online.
+	 *
+	 * @param <T> The type of data
+	 * @param dataType The class to store the data under
+	 * @param companion The data to attach, or null to remove it
+	 */
+	public <T> void put(Class<T> dataType, T companion)
+	{
+		if (companion == null)
+		{
+			companions.remove(dataType);
+		}
+		else
+		{
+			companions.put(dataType, companion);
+		}
+	}
+
+	protected void setPlayer(Player player)
+	{
+		this.player = player;
+	}
+
+	protected volatile Player					player;
+	protected final PlayerData					data;
+	protected final Map<Class<?>, Object>		companions	= new ConcurrentHashMap<Class<?>, Object>();
+}
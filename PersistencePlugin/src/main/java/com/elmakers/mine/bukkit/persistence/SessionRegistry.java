@@ -0,0 +1,165 @@
+package com.elmakers.mine.bukkit.persistence;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.entity.Player;
+
+import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+
+/**
+ * Keeps a session for each online player.
+ *
+ * Sessions are found by Player instance, so looking up an online player's data doesn't
+ * need a name lookup in the PlayerData cache. If Bukkit hands out a new Player instance
+ * for the same player, their session is found by name and re-bound to it.
+ *
+ * PersistencePlugin opens sessions when players join and closes them when they leave.
+ * Players that were online before Persistence was enabled get a session the first time
+ * their data is asked for.
+ *
+ * @author NathanWolf
+ *
+ */
+public class SessionRegistry
+{
+	public SessionRegistry(Persistence persistence)
+	{
+		this.persistence = persistence;
+	}
+
+	/**
+	 * Open a session for a player, replacing any existing session.
+	 *
+	 * @param player The player that joined
+	 * @param data The player's data
+	 * @return The new session
+	 */
+	public PlayerSession open(Player player, PlayerData data)
+	{
+		PlayerSession session = new PlayerSession(player, data);
+		synchronized (byPlayer)
+		{
+			PlayerSession existing = byName.put(player.getName(), session);
+			if (existing != null)
+			{
+				byPlayer.remove(existing.getPlayer());
+			}
+			byPlayer.put(player, session);
+		}
+		return session;
+	}
+
+	/**
+	 * Close a player's session.
+	 *
+	 * @param player The player that left
+	 * @return The session that was closed, or null if the player didn't have one
+	 */
+	public PlayerSession close(Player player)
+	{
+		synchronized (byPlayer)
+		{
+			PlayerSession session = byName.remove(player.getName());
+			byPlayer.remove(player);
+			if (session != null)
+			{
+				byPlayer.remove(session.getPlayer());
+			}
+			return session;
+		}
+	}
+
+	/**
+	 * Get the session of an online player.
+	 *
+	 * @param player The player
+	 * @return The player's session, or null if they don't have one
+	 */
+	public PlayerSession get(Player player)
+	{
+		if (player == null) return null;
+
+		// Look up and re-bind under one lock, so a concurrent close can't leave a stale binding
+		synchronized (byPlayer)
+		{
+			PlayerSession session = byPlayer.get(player);
+			if (session != null) return session;
+
+			session = byName.get(player.getName());
+			if (session != null)
+			{
+				byPlayer.remove(session.getPlayer());
+				session.setPlayer(player);
+				byPlayer.put(player, session);
+			}
+			return session;
+		}
+	}
+
+	/**
+	 * Get the session of an online player by name.
+	 *
+	 * @param playerName The player's name
+	 * @return The player's session, or null if they don't have one
+	 */
+	public PlayerSession get(String playerName)
+	{
+		return byName.get(playerName);
+	}
+
+	/**
+	 * Get a player's data, from their session if they have one.
+	 *
+	 * If an online player doesn't have a session yet, one is opened for them.
+	 *
+	 * @param player The player
+	 * @return The player's data, or null if they have none
+	 */
+	public PlayerData getPlayerData(Player player)
+	{
+		if (player == null) return null;
+
+		PlayerSession session = get(player);
+		if (session != null) return session.getData();
+
+		PlayerData data = persistence.get(player.getName(), PlayerData.class);
+		if (data != null && player.isOnline())
+		{
+			open(player, data);
+		}
+		return data;
+	}
+
+	/**
+	 * Get every open session.
+	 *
+	 * @return A copy of the list of sessions
+	 */
+	public List<PlayerSession> getSessions()
+	{
+		return new ArrayList<PlayerSession>(byName.values());
+	}
+
+	/**
+	 * Close every session.
+	 *
+	 * This is called when Persistence drops its cached data.
+	 */
+	public void clear()
+	{
+		synchronized (byPlayer)
+		{
+			byName.clear();
+			byPlayer.clear();
+		}
+	}
+
+	protected final Persistence						persistence;
+	protected final Map<String, PlayerSession>		byName		= new ConcurrentHashMap<String, PlayerSession>();
+	protected final Map<Player, PlayerSession>		byPlayer	= new IdentityHashMap<Player, PlayerSession>();
+}
@@ -11,9 +11,13 @@ import java.lang.annotation.Target;
  * 
  * A migration step can currently be one of the following MigrationType actions:
  * 
- * AUTO: This is an automatic migration- a backup, drop, and restore.
+ * AUTO: This is an automatic migration- new columns are added in place, and tables with
+ *       changed column types are rebuilt, keeping their data.
  * RESET: This is for auto-generated data, the data is dropped and data is list.
- * CUSTOM: A custom script is used to perform the migration.
+ * STATEMENT: A custom statement is run against the store to perform the migration.
+ * 
+ * Each step is run once, and recorded in the global migration table. Automatic 
+ * migration runs after any pending steps, whether or not this annotation is present.
  * 
  * @author NathanWolf
  * @see PersistClass
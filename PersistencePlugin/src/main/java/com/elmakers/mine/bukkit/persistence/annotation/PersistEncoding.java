@@ -0,0 +1,25 @@
+package com.elmakers.mine.bukkit.persistence.annotation;
+
+/**
+ * Specifies how a persisted List field is stored.
+ * 
+ * @author NathanWolf
+ * @see PersistField
+ *
+ */
+public enum PersistEncoding
+{
+	/**
+	 * Store each List element as a row in a sub-table.
+	 */
+	DEFAULT,
+	
+	/**
+	 * Pack the whole List into a single BLOB column in the owner's row.
+	 * 
+	 * This is only valid for Lists of primitive types, Strings, Dates, enums or BlockVectors.
+	 * Integer values are delta and varint encoded, so this works best for
+	 * large Lists of ordered data, such as blocks.
+	 */
+	PACKED
+}
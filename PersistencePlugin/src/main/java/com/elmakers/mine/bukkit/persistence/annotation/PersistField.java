@@ -77,4 +77,27 @@ public @interface PersistField
 	 * @return The field name to use
 	 */
 	String name() default "";
+	
+	/**
+	 * Specify how a List field is stored.
+	 * 
+	 * Use PACKED to store a List of simple values in a single column, instead of
+	 * a sub-table with one row per element. Packed Lists may not contain null values.
+	 * 
+	 * @return The encoding to use for this field
+	 */
+	PersistEncoding encoding() default PersistEncoding.DEFAULT;
+	
+	/**
+	 * Specify that loaded String values in this field should be shared.
+	 * 
+	 * Use this for String fields, or Lists of Strings, that only have a few distinct values,
+	 * such as world or plugin names. Each distinct value will only be kept in memory once.
+	 * 
+	 * The number of shared values is limited, so this is harmless (but useless) on a field
+	 * with many distinct values.
+	 * 
+	 * @return true to share duplicate String values
+	 */
+	boolean dedupe() default false;
 }
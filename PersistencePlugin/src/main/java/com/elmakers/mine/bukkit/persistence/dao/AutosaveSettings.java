@@ -0,0 +1,59 @@
+package com.elmakers.mine.bukkit.persistence.dao;
+
+import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
+import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
+
+/**
+ * Stores the autosave time budget.
+ * 
+ * There is only one instance of this class, with the id "default".
+ * 
+ * @author NathanWolf
+ *
+ */
+@PersistClass(schema="global", name="autosave")
+public class AutosaveSettings extends Persisted
+{
+	public AutosaveSettings()
+	{
+		
+	}
+	
+	public AutosaveSettings(String id)
+	{
+		this.id = id;
+	}
+	
+	@PersistField(id=true)
+	public String getId()
+	{
+		return id;
+	}
+	
+	public void setId(String id)
+	{
+		this.id = id;
+	}
+	
+	/**
+	 * The time autosave may spend saving each tick.
+	 * 
+	 * @return The budget in milliseconds, or 0 if autosave is disabled
+	 */
+	@PersistField
+	public int getBudget()
+	{
+		return budget;
+	}
+	
+	public void setBudget(int budget)
+	{
+		this.budget = budget;
+	}
+	
+	public static final String	DEFAULT_ID		= "default";
+	public static final int		DEFAULT_BUDGET	= 5;
+	
+	protected String			id;
+	protected int				budget			= DEFAULT_BUDGET;
+}
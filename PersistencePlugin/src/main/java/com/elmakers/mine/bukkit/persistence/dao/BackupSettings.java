@@ -0,0 +1,78 @@
+package com.elmakers.mine.bukkit.persistence.dao;
+
+import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
+import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
+
+/**
+ * Stores the backup schedule and retention policy.
+ * 
+ * There is only one instance of this class, with the id "default".
+ * 
+ * @author NathanWolf
+ *
+ */
+@PersistClass(schema="global", name="backup")
+public class BackupSettings extends Persisted
+{
+	public BackupSettings()
+	{
+		
+	}
+	
+	public BackupSettings(String id)
+	{
+		this.id = id;
+	}
+	
+	@PersistField(id=true)
+	public String getId()
+	{
+		return id;
+	}
+	
+	public void setId(String id)
+	{
+		this.id = id;
+	}
+	
+	/**
+	 * The interval between scheduled backups.
+	 * 
+	 * @return The backup interval in minutes, or 0 if backups are not scheduled
+	 */
+	@PersistField
+	public int getInterval()
+	{
+		return interval;
+	}
+	
+	public void setInterval(int interval)
+	{
+		this.interval = interval;
+	}
+	
+	/**
+	 * The number of backups to keep for each schema.
+	 * 
+	 * Older backups are deleted after each new backup.
+	 * 
+	 * @return The number of backups to keep
+	 */
+	@PersistField
+	public int getRetention()
+	{
+		return retention;
+	}
+	
+	public void setRetention(int retention)
+	{
+		this.retention = retention;
+	}
+	
+	public static final String	DEFAULT_ID			= "default";
+	public static final int		DEFAULT_RETENTION	= 5;
+	
+	protected String			id;
+	protected int				interval			= 0;
+	protected int				retention			= DEFAULT_RETENTION;
+}
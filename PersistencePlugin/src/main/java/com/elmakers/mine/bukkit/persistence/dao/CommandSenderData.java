@@ -59,7 +59,7 @@ public class CommandSenderData extends Persisted
 		this.id = id;
 	}
 	
-	@PersistField
+	@PersistField(dedupe=true)
 	public String getClassName()
 	{
 		return className;
@@ -1,6 +1,7 @@
 package com.elmakers.mine.bukkit.persistence.dao;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 
@@ -52,6 +53,34 @@ public class Group
 		return false;
 	}
 	
+	/**
+	 * Compile the permissions this group grants into a bitset.
+	 * 
+	 * A path is granted if any grant profile sets it, and no deny profile does-
+	 * the same as isSet.
+	 * 
+	 * @return A new bitset of PermissionIndex ids
+	 */
+	public BitSet getGrantedBits()
+	{
+		BitSet granted = new BitSet();
+		if (grant != null)
+		{
+			for (ProfileData profile : grant)
+			{
+				granted.or(profile.getSetBits());
+			}
+		}
+		if (deny != null)
+		{
+			for (ProfileData profile : deny)
+			{
+				granted.andNot(profile.getSetBits());
+			}
+		}
+		return granted;
+	}
+	
 	public <T> T get(final String key)
 	{
 		/*
@@ -104,6 +133,7 @@ public class Group
 				}
 			}
 		}
+		permissionsChanged();
 	}
 	
 	public void denyPermission(ProfileData profile)
@@ -136,6 +166,25 @@ public class Group
 				}
 			}
 		}
+		permissionsChanged();
+	}
+	
+	/**
+	 * Get the version of this group's permissions.
+	 * 
+	 * This changes whenever profiles are granted or denied to this group, so that
+	 * players in the group know to clear their cached permissions.
+	 * 
+	 * @return The current permission version
+	 */
+	public int getPermissionVersion()
+	{
+		return permissionVersion;
+	}
+	
+	protected void permissionsChanged()
+	{
+		permissionVersion++;
 	}
 	
 	@PersistField(id=true)
@@ -158,6 +207,7 @@ public class Group
 	public void setGrant(List<ProfileData> grant)
 	{
 		this.grant = grant;
+		permissionsChanged();
 
 		grantMap = new HashMap<String, ProfileData>();
 		for (ProfileData profile : grant)
@@ -175,6 +225,7 @@ public class Group
 	public void setDeny(List<ProfileData> deny)
 	{
 		this.deny = deny;
+		permissionsChanged();
 
 		denyMap = new HashMap<String, ProfileData>();
 		for (ProfileData profile : deny)
@@ -192,6 +243,7 @@ public class Group
 	public void setParent(Group parent)
 	{
 		this.parent = parent;
+		permissionsChanged();
 	}
 	
 	protected List<ProfileData> grant;
@@ -202,4 +254,5 @@ public class Group
 	// Transient
 	private HashMap<String, ProfileData> grantMap;
 	private HashMap<String, ProfileData> denyMap;
+	private volatile int permissionVersion = 0;
 }
@@ -1,9 +1,12 @@
 package com.elmakers.mine.bukkit.persistence.dao;
 
+import java.util.Collection;
+
 import org.bukkit.command.CommandSender;
 
 import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
 import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
+import com.elmakers.mine.bukkit.utilities.MessageTemplate;
 
 /**
  * A class to encapsulate and store in-game text.
@@ -13,6 +16,9 @@ import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
  * Each message can be parameterized, printf-style. The character '\r' will cause a newline,
  * allowing for multiline output.
  * 
+ * The message is compiled into a MessageTemplate when it is loaded or changed,
+ * so sending it doesn't need to re-parse the format string.
+ * 
  * @author NathanWolf
  *
  */
@@ -41,7 +47,7 @@ public class Message extends Persisted
 		this.plugin = plugin;
 		this.enabled = true;
 		this.messageId = id;
-		this.message = message;
+		setMessage(message);
 	}
 	
 	/**
@@ -62,13 +68,34 @@ public class Message extends Persisted
 	public void sendTo(CommandSender receiver, Object ... parameters)
 	{
 		if (!enabled) return;
-		String[] lines = getLines(parameters);
+		String[] lines = getTemplate().getLines(parameters);
 		for (String line : lines)
 		{
 			receiver.sendMessage(line);
 		}
 	}
 	
+	/**
+	 * Send this message to several receivers at once.
+	 * 
+	 * The message is only parameterized once, and the same lines are sent to each receiver.
+	 * 
+	 * @param receivers The CommandSenders to send the message to
+	 * @param parameters A list of optional parameters to parameterize the string with
+	 */
+	public void sendTo(Collection<? extends CommandSender> receivers, Object ... parameters)
+	{
+		if (!enabled || receivers.isEmpty()) return;
+		String[] lines = getTemplate().getLines(parameters);
+		for (CommandSender receiver : receivers)
+		{
+			for (String line : lines)
+			{
+				receiver.sendMessage(line);
+			}
+		}
+	}
+	
 	/**
 	 * Parameterize this message and break it up into multiple lines.
 	 *
@@ -77,16 +104,18 @@ public class Message extends Persisted
 	 */
 	public String[] getLines(Object ... parameters)
 	{
-		String baseMessage;
-		try
-		{
-			baseMessage = String.format(message, parameters);
-		}
-		catch(Throwable e)
+		return getTemplate().getLines(parameters).clone();
+	}
+	
+	protected MessageTemplate getTemplate()
+	{
+		MessageTemplate current = template;
+		if (current == null)
 		{
-			baseMessage = message;
+			current = MessageTemplate.compile(message);
+			template = current;
 		}
-		return baseMessage.split("\r");
+		return current;
 	}
 	
 	/* Return the basic message
@@ -117,6 +146,7 @@ public class Message extends Persisted
 	public void setMessage(String message)
 	{
 		this.message = message;
+		this.template = MessageTemplate.compile(message);
 	}
 	
 	@PersistField
@@ -169,4 +199,6 @@ public class Message extends Persisted
 	private String			messageId;
 	private String			message;
 	private boolean			enabled;
+	
+	private volatile MessageTemplate	template;
 }
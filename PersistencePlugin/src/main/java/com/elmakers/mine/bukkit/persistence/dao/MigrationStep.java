@@ -36,6 +36,7 @@ public class MigrationStep extends Persisted
 		pluginVersion = info.pluginVersion();
 		
 		// Figure out type from annotation
+		type = MigrationType.AUTO;
 		if (info.reset())
 		{
 			type = MigrationType.RESET;
@@ -47,7 +48,8 @@ public class MigrationStep extends Persisted
 		}
 		else if (info.script().length() > 0)
 		{
-			sqlData = info.statement();
+			sqlData = info.script();
+			type = MigrationType.SCRIPT;
 		}
 		
 		
@@ -102,7 +104,7 @@ public class MigrationStep extends Persisted
 		this.type = type;
 	}
 	
-	@PersistField
+	@PersistField(dedupe=true)
 	public String getSchema()
 	{
 		return schema;
@@ -113,7 +115,7 @@ public class MigrationStep extends Persisted
 		this.schema = schema;
 	}
 	
-	@PersistField
+	@PersistField(dedupe=true)
 	public String getEntity()
 	{
 		return entity;
@@ -146,7 +148,7 @@ public class MigrationStep extends Persisted
 		this.dependencies = dependencies;
 	}
 	
-	@PersistField
+	@PersistField(dedupe=true)
 	public String getPluginVersion()
 	{
 		return pluginVersion;
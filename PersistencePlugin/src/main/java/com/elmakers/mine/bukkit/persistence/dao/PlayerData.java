@@ -1,6 +1,7 @@
 package com.elmakers.mine.bukkit.persistence.dao;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -11,6 +12,7 @@ import org.bukkit.entity.Player;
 import com.elmakers.mine.bukkit.permission.PermissionHandler;
 import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
 import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
+import com.elmakers.mine.craftbukkit.permission.PermissionIndex;
 
 /**
  * Encapsulate a player in a persitable class.
@@ -82,6 +84,7 @@ public class PlayerData extends Persisted
 	public void setSuperUser(boolean su)
 	{
 		this.superUser = su;
+		clearPermissionCache();
 	}
 	
 	public boolean isSuperUser()
@@ -153,6 +156,7 @@ public class PlayerData extends Persisted
 	public void setGroups(List<Group> groups)
 	{
 		this.groups = groups;
+		clearPermissionCache();
 		
 		groupMap = new HashMap<String, Group>();
 		for (Group group : groups)
@@ -170,6 +174,7 @@ public class PlayerData extends Persisted
 	public void setGrant(List<ProfileData> grant)
 	{
 		this.grant = grant;
+		clearPermissionCache();
 		
 		grantMap = new HashMap<String, ProfileData>();
 		for (ProfileData profile : grant)
@@ -187,6 +192,7 @@ public class PlayerData extends Persisted
 	public void setDeny(List<ProfileData> deny)
 	{
 		this.deny = deny;
+		clearPermissionCache();
 		
 		denyMap = new HashMap<String, ProfileData>();
 		for (ProfileData profile : deny)
@@ -205,6 +211,7 @@ public class PlayerData extends Persisted
 			groups.remove(storedGroup);
 			groupMap.remove(storedGroup.getId());
 		}
+		clearPermissionCache();
 	}
 	
 	public void addToGroup(Group group)
@@ -223,6 +230,7 @@ public class PlayerData extends Persisted
 			groupMap.put(group.getId(), group);
 			groups.add(group);
 		}
+		clearPermissionCache();
 	}
 
 	public void grantPermission(ProfileData profile)
@@ -257,6 +265,7 @@ public class PlayerData extends Persisted
 				}
 			}
 		}
+		clearPermissionCache();
 	}
 	
 	public void denyPermission(ProfileData profile)
@@ -289,57 +298,127 @@ public class PlayerData extends Persisted
 				}
 			}
 		}
+		clearPermissionCache();
 	}
 	
+	/**
+	 * Check to see if a permission node is set for this player.
+	 * 
+	 * This player's grant, deny and group profiles are compiled into bitsets, so
+	 * most checks are a single bit lookup. Nodes that aren't decided by those profiles
+	 * fall through to the permission handler. Handlers are responsible for caching
+	 * their own decisions, since only they know when those decisions go stale.
+	 * 
+	 * Compiled permissions are rebuilt when this player's groups or profiles change,
+	 * when one of their groups changes, or when permissions change globally.
+	 * 
+	 * @param key The permission node to check
+	 * @return true if this player has the permission
+	 * @see #invalidatePermissions()
+	 */
 	public boolean isSet(String key)
 	{
 		if (superUser) return true;
 		
-		// Check for deny first
-		if (deny != null)
+		CompiledPermissions compiled = getCompiledPermissions();
+		int id = PermissionIndex.getId(key);
+		if (id >= 0)
+		{
+			// Check for deny first
+			if (compiled.denied.get(id)) return false;
+			if (compiled.granted.get(id)) return true;
+		}
+		
+		if (permissions == null) return false;
+		return permissions.isSet(player, key);
+	}
+	
+	/**
+	 * Clear all players' compiled permissions.
+	 * 
+	 * This is called when profiles are reloaded or permission handlers change.
+	 * External permission handlers should call this if their permissions change.
+	 */
+	public static void invalidatePermissions()
+	{
+		permissionVersion++;
+	}
+	
+	protected void clearPermissionCache()
+	{
+		compiledPermissions = null;
+	}
+	
+	protected CompiledPermissions getCompiledPermissions()
+	{
+		long stamp = getPermissionStamp();
+		CompiledPermissions compiled = compiledPermissions;
+		if (compiled == null || compiled.stamp != stamp)
+		{
+			compiled = new CompiledPermissions(stamp, grant, deny, groups);
+			compiledPermissions = compiled;
+		}
+		return compiled;
+	}
+	
+	/**
+	 * Combine the global permission version with the versions of this player's groups.
+	 * 
+	 * Versions only ever increase, so this changes whenever any of them do.
+	 */
+	protected long getPermissionStamp()
+	{
+		long stamp = permissionVersion;
+		if (groups != null)
 		{
-			for (ProfileData profile : deny)
+			for (Group group : groups)
 			{
-				if (profile.isSet(key))
-				{
-					return false;
-				}
+				stamp += group.getPermissionVersion();
 			}
 		}
-			
-		// Check grant
-		if (grant != null)
+		return stamp;
+	}
+	
+	/**
+	 * A player's profiles and groups, compiled into bitsets of PermissionIndex ids.
+	 * 
+	 * Denied paths always win. Otherwise a path is granted if a grant profile sets it,
+	 * or if any group grants it.
+	 */
+	protected static class CompiledPermissions
+	{
+		public CompiledPermissions(long stamp, List<ProfileData> grant, List<ProfileData> deny, List<Group> groups)
 		{
-			for (ProfileData profile : grant)
+			this.stamp = stamp;
+			if (deny != null)
 			{
-				if (profile.isSet(key))
+				for (ProfileData profile : deny)
 				{
-					return true;
+					denied.or(profile.getSetBits());
 				}
 			}
-		}
-		
-		// Check groups
-		if (groups != null)
-		{
-			for (Group group : groups)
+			if (grant != null)
 			{
-				if (group.isSet(key))
+				for (ProfileData profile : grant)
 				{
-					return true;
+					granted.or(profile.getSetBits());
 				}
-			}		
-		}
-		
-		if (permissions != null)
-		{
-			return permissions.isSet(player, key);
+			}
+			if (groups != null)
+			{
+				for (Group group : groups)
+				{
+					granted.or(group.getGrantedBits());
+				}
+			}
+			granted.andNot(denied);
 		}
 		
-		return false;
+		public final long					stamp;
+		public final BitSet					granted			= new BitSet();
+		public final BitSet					denied			= new BitSet();
 	}
 	
-
 	public void update(Location location)
 	{
 		this.location = new LocationData(location);
@@ -383,11 +462,13 @@ public class PlayerData extends Persisted
 	{
 		online = false;
 		lastDisconnect = new Date();
+		clearPermissionCache();
 	}
 	
 	public static void setPermissionHandler(PermissionHandler permissions)
 	{
 		PlayerData.permissions = permissions;
+		invalidatePermissions();
 	}
 
 	private String							name;
@@ -407,6 +488,8 @@ public class PlayerData extends Persisted
 	private HashMap<String, Group>			groupMap;
 	private HashMap<String, ProfileData>	grantMap;
 	private HashMap<String, ProfileData>	denyMap;
+	private volatile CompiledPermissions	compiledPermissions		= null;
 	
-	private static PermissionHandler		permissions = null;
+	private static PermissionHandler		permissions				= null;
+	private static volatile long			permissionVersion		= 0;
 }
@@ -61,6 +61,7 @@ public class PluginCommand implements Comparable<PluginCommand>
 	public void bind(String methodName)
 	{
 		callbackMethod = methodName;
+		commandsChanged();
 	}
 	
 	/**
@@ -98,6 +99,7 @@ public class PluginCommand implements Comparable<PluginCommand>
 		if (!senders.contains(sender))
 		{
 			senders.add(sender);
+			commandsChanged();
 		}
 	}
 	
@@ -184,7 +186,7 @@ public class PluginCommand implements Comparable<PluginCommand>
 		if (sender instanceof Player)
 		{
 			player = (Player)sender;
-			playerData = Persistence.getInstance().get(player.getName(), PlayerData.class);
+			playerData = Persistence.getInstance().getSessions().getPlayerData(player);
 		}
 		
 		if (permissionType == null)
@@ -304,6 +306,25 @@ public class PluginCommand implements Comparable<PluginCommand>
 		return pNode;
 	}
 	
+	/**
+	 * Get the current version of the command hierarchy.
+	 * 
+	 * This changes whenever any command is added, renamed, bound or given a new sender,
+	 * so that compiled command dispatchers know when to rebuild.
+	 * 
+	 * @return The current command hierarchy version
+	 * @see com.elmakers.mine.bukkit.utilities.CommandDispatcher
+	 */
+	public static int getDispatchVersion()
+	{
+		return dispatchVersion;
+	}
+	
+	protected static void commandsChanged()
+	{
+		dispatchVersion++;
+	}
+	
 	public int compareTo(PluginCommand compare)
 	{
 		return command.compareTo(compare.getCommand());
@@ -342,6 +363,7 @@ public class PluginCommand implements Comparable<PluginCommand>
 		removeFromParent();
 		this.command = command;
 		addToParent();
+		commandsChanged();
 	}
 
 	@PersistField
@@ -410,6 +432,7 @@ public class PluginCommand implements Comparable<PluginCommand>
 	public void setSenders(List<CommandSenderData> senders)
 	{
 		this.senders = senders;
+		commandsChanged();
 	}
 
 	public List<CommandSenderData> getSenders()
@@ -444,6 +467,7 @@ public class PluginCommand implements Comparable<PluginCommand>
 			{
 				parent.children.add(this);
 				parent.childMap.put(command, this);
+				commandsChanged();
 			}
 		}
 	}
@@ -456,6 +480,7 @@ public class PluginCommand implements Comparable<PluginCommand>
 			{
 				parent.children.remove(this);
 				parent.childMap.remove(command);
+				commandsChanged();
 			}
 		}
 	}
@@ -485,4 +510,5 @@ public class PluginCommand implements Comparable<PluginCommand>
 	// Transient data
 	private HashMap<String, PluginCommand>	childMap	= new HashMap<String, PluginCommand>();
 	private static final String				indent		= "  ";
+	private static volatile int				dispatchVersion	= 0;
 }
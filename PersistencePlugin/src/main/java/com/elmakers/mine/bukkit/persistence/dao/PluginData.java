@@ -66,6 +66,7 @@ public class PluginData extends Persisted
 				commands.add(command);
 			}
 		}
+		PluginCommand.commandsChanged();
 	}
 	
 	public Message getMessage(String messageId, String defaultValue)
@@ -122,6 +123,7 @@ public class PluginData extends Persisted
 		persistence.put(command);
 		commandMap.put(commandName, command);
 		commands.add(command);
+		PluginCommand.commandsChanged();
 		
 		return command;
 	}
@@ -148,7 +150,7 @@ public class PluginData extends Persisted
 		this.description = description;
 	}
 
-	@PersistField
+	@PersistField(dedupe=true)
 	public List<String> getAuthors()
 	{
 		return authors;
@@ -1,5 +1,7 @@
 package com.elmakers.mine.bukkit.persistence.dao;
 
+import java.util.BitSet;
+
 import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
 import com.elmakers.mine.bukkit.persistence.annotation.PersistField;
 import com.elmakers.mine.craftbukkit.permission.PermissionProfile;
@@ -26,6 +28,7 @@ public class ProfileData
 	public void setProfile(PermissionProfile profile)
 	{
 		this.profile = profile;
+		PlayerData.invalidatePermissions();
 	}
 
 	/*
@@ -59,6 +62,23 @@ public class ProfileData
 		return profile.isSet(key);
 	}
 	
+	/**
+	 * Get the ids of every permission path set in this profile.
+	 * 
+	 * The returned bitset must not be modified.
+	 * 
+	 * @return A bitset of PermissionIndex ids, empty if the profile hasn't been loaded
+	 */
+	public BitSet getSetBits()
+	{
+		if (this.profile == null)
+		{
+			return emptyBits;
+		}
+		
+		return profile.getSetBits();
+	}
+	
 	@PersistField(id=true)
 	public String getId() 
 	{
@@ -74,4 +94,6 @@ public class ProfileData
 	
 	// transient
 	protected PermissionProfile profile;
+	
+	private static final BitSet emptyBits = new BitSet();
 }
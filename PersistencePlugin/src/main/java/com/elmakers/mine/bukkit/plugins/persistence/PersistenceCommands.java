@@ -2,21 +2,32 @@ package com.elmakers.mine.bukkit.plugins.persistence;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitScheduler;
 
+import com.elmakers.mine.bukkit.persistence.PersistenceCallback;
+import com.elmakers.mine.bukkit.persistence.dao.AutosaveSettings;
+import com.elmakers.mine.bukkit.persistence.dao.BackupSettings;
 import com.elmakers.mine.bukkit.persistence.dao.Message;
 import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
 import com.elmakers.mine.bukkit.persistence.dao.PluginCommand;
 import com.elmakers.mine.bukkit.persistence.dao.PluginData;
 import com.elmakers.mine.bukkit.utilities.PluginUtilities;
 import com.elmakers.mine.craftbukkit.persistence.Persistence;
+import com.elmakers.mine.craftbukkit.persistence.core.AutosaveTask;
+import com.elmakers.mine.craftbukkit.persistence.core.BackupTask;
 import com.elmakers.mine.craftbukkit.persistence.core.PersistedClass;
 import com.elmakers.mine.craftbukkit.persistence.core.PersistedField;
 import com.elmakers.mine.craftbukkit.persistence.core.PersistedList;
 import com.elmakers.mine.craftbukkit.persistence.core.Schema;
+import com.elmakers.mine.craftbukkit.persistence.metrics.EntityMetrics;
+import com.elmakers.mine.craftbukkit.persistence.metrics.StoreMetrics;
 
 public class PersistenceCommands
 {
@@ -24,15 +35,21 @@ public class PersistenceCommands
 	{
 		PersistenceDefaults d = new PersistenceDefaults();
 		this.persistence = persistence;
+		this.plugin = plugin;
 
 		// Initialize Messages
 		
 		resettingEntityMessage = utilities.getMessage("resettingEntity", d.resettingEntityMessage);
 		reloadingEntityMessage = utilities.getMessage("reloadingEntity", d.reloadingEntityMessage);
+		reloadedMessage = utilities.getMessage("reloaded", d.reloadedMessage);
 		entityNotFoundMessage = utilities.getMessage("entityNotFound", d.entityNotFoundMessage);
 		entityDisplayMessage = utilities.getMessage("entityDisplay", d.entityDisplayMessage);
 		schemaDisplayMessage = utilities.getMessage("schemaDisplay", d.schemaDisplayMessage);
 		entityListMessage = utilities.getMessage("entityList", d.entityListMessage);
+		entityCountMessage = utilities.getMessage("entityCount", d.entityCountMessage);
+		invalidArgumentMessage = utilities.getMessage("invalidArgument", d.invalidArgumentMessage);
+		unknownFieldMessage = utilities.getMessage("unknownField", d.unknownFieldMessage);
+		queryFailedMessage = utilities.getMessage("queryFailed", d.queryFailedMessage);
 		schemaListMessage = utilities.getMessage("schemaList", d.schemaListMessage);
 		unknownSchemaMessage = utilities.getMessage("unknownSchema", d.unknownSchemaMessage);
 		unknownEntityMessage = utilities.getMessage("unknownEntity", d.unknownEntityMessage);
@@ -42,14 +59,32 @@ public class PersistenceCommands
 		pluginNotFoundMessage = utilities.getMessage("pluginNotFound", d.pluginNotFoundMessage);
 		suEnabledMessage = utilities.getMessage("suEnabled", d.suEnabledMessage);
 		suDisabledMessage = utilities.getMessage("suDisabled", d.suDisabledMessage);
+		statsSchemaMessage = utilities.getMessage("statsSchema", d.statsSchemaMessage);
+		statsLatencyMessage = utilities.getMessage("statsLatency", d.statsLatencyMessage);
+		statsEntityMessage = utilities.getMessage("statsEntity", d.statsEntityMessage);
+		statsEntityRowsMessage = utilities.getMessage("statsEntityRows", d.statsEntityRowsMessage);
+		statsDedupeMessage = utilities.getMessage("statsDedupe", d.statsDedupeMessage);
+		backupStartedMessage = utilities.getMessage("backupStarted", d.backupStartedMessage);
+		backupCompleteMessage = utilities.getMessage("backupComplete", d.backupCompleteMessage);
+		backupFailedMessage = utilities.getMessage("backupFailed", d.backupFailedMessage);
+		backupRunningMessage = utilities.getMessage("backupRunning", d.backupRunningMessage);
+		backupScheduledMessage = utilities.getMessage("backupScheduled", d.backupScheduledMessage);
+		backupUnscheduledMessage = utilities.getMessage("backupUnscheduled", d.backupUnscheduledMessage);
+		autosaveStatusMessage = utilities.getMessage("autosaveStatus", d.autosaveStatusMessage);
+		autosaveDisabledMessage = utilities.getMessage("autosaveDisabled", d.autosaveDisabledMessage);
+		autosaveBudgetMessage = utilities.getMessage("autosaveBudget", d.autosaveBudgetMessage);
 		
 		// Initialize Commands
 		persistCommand = utilities.getGeneralCommand(d.persistCommand[0], d.persistCommand[1], d.persistCommand[2]);
 		saveSubCommand = persistCommand.getSubCommand(d.saveSubCommand[0], d.saveSubCommand[1], d.saveSubCommand[2]);
 		describeSubCommand = persistCommand.getSubCommand(d.describeSubCommand[0], d.describeSubCommand[1], d.describeSubCommand[2]);
 		listSubCommand = persistCommand.getSubCommand(d.listSubCommand[0], d.listSubCommand[1], d.listSubCommand[2]);
+		countSubCommand = persistCommand.getSubCommand(d.countSubCommand[0], d.countSubCommand[1], d.countSubCommand[2]);
 		reloadSubCommand = persistCommand.getSubCommand(d.reloadSubCommand[0], d.reloadSubCommand[1], d.reloadSubCommand[2]);
 		resetSubCommand = persistCommand.getSubCommand(d.resetSubCommand[0], d.resetSubCommand[1], d.resetSubCommand[2]);
+		backupSubCommand = persistCommand.getSubCommand(d.backupSubCommand[0], d.backupSubCommand[1], d.backupSubCommand[2]);
+		statsSubCommand = persistCommand.getSubCommand(d.statsSubCommand[0], d.statsSubCommand[1], d.statsSubCommand[2]);
+		autosaveSubCommand = persistCommand.getSubCommand(d.autosaveSubCommand[0], d.autosaveSubCommand[1], d.autosaveSubCommand[2]);
 		suCommand = utilities.getPlayerCommand(d.suCommand[0], d.suCommand[1], d.suCommand[2]);	
 		helpCommand = utilities.getGeneralCommand(d.helpCommand[0], d.helpCommand[1], d.helpCommand[2]);
 	
@@ -63,19 +98,35 @@ public class PersistenceCommands
 			listSubCommand.addUsage(usage);
 		}
 		
+		for (String usage : d.backupUsage)
+		{
+			backupSubCommand.addUsage(usage);
+		}
+		
+		for (String usage : d.statsUsage)
+		{
+			statsSubCommand.addUsage(usage);
+		}
+		
 		saveSubCommand.bind("onSave");
 		describeSubCommand.bind("onDescribe");
 		listSubCommand.bind("onList");
+		countSubCommand.bind("onCount");
 		reloadSubCommand.bind("onReload");
 		resetSubCommand.bind("onReset");
+		backupSubCommand.bind("onBackup");
+		statsSubCommand.bind("onStats");
+		autosaveSubCommand.bind("onAutosave");
 		suCommand.bind("onSU");
 		
 		helpCommand.bind("onHelp");
+		
+		scheduleBackups();
 	}
 
 	public boolean onSU(Player player, String[] parameters)
 	{
-		PlayerData playerData = persistence.get(player.getName(), PlayerData.class);
+		PlayerData playerData = persistence.getSessions().getPlayerData(player);
 		if (playerData == null) return false;
 		
 		if (playerData.isSuperUser())
@@ -104,6 +155,266 @@ public class PersistenceCommands
     	return true;    	
     }
 	
+	public boolean onStats(CommandSender messageOutput, String[] parameters)
+	{
+		if (parameters.length == 0)
+		{
+			for (Schema schema : persistence.getSchemaList())
+			{
+				showStoreStats(messageOutput, schema, false);
+			}
+			return true;
+		}
+		
+		if (parameters.length > 1)
+		{
+			PersistedClass persisted = getEntity(messageOutput, parameters[0], parameters[1]);
+			if (persisted != null)
+			{
+				showEntityStats(messageOutput, persisted, true);
+			}
+			return true;
+		}
+		
+		Schema schema = persistence.getSchema(parameters[0]);
+		if (schema == null)
+		{
+			unknownSchemaMessage.sendTo(messageOutput, parameters[0]);
+			return true;
+		}
+		showStoreStats(messageOutput, schema, true);
+		for (PersistedClass persisted : schema.getPersistedClasses())
+		{
+			showEntityStats(messageOutput, persisted, false);
+		}
+		return true;
+	}
+	
+	protected void showStoreStats(CommandSender messageOutput, Schema schema, boolean showLatency)
+	{
+		StoreMetrics metrics = schema.getStore().getMetrics();
+		statsSchemaMessage.sendTo(messageOutput, schema.getName(), schema.getPersistedClasses().size(), metrics.getRowsLoaded(), metrics.getRowsSaved(), metrics.getRowsDeleted());
+		if (!showLatency) return;
+		
+		statsLatencyMessage.sendTo(messageOutput, "load", metrics.getLoadLatency());
+		statsLatencyMessage.sendTo(messageOutput, "save", metrics.getSaveLatency());
+		statsLatencyMessage.sendTo(messageOutput, "delete", metrics.getDeleteLatency());
+		statsLatencyMessage.sendTo(messageOutput, "connect", metrics.getConnectLatency());
+	}
+	
+	protected void showEntityStats(CommandSender messageOutput, PersistedClass persisted, boolean showRows)
+	{
+		EntityMetrics metrics = persisted.getMetrics();
+		statsEntityMessage.sendTo(messageOutput, persisted.getName(), metrics.getCachedCount(), metrics.getDirtyCount(), metrics.getHits(), metrics.getMisses(), metrics.getHitRate() * 100);
+		if (!showRows) return;
+		
+		statsEntityRowsMessage.sendTo(messageOutput, metrics.getRowsLoaded(), metrics.getRowsSaved(), metrics.getIdConversions());
+		long dedupedStrings = metrics.getDedupedStrings();
+		if (dedupedStrings > 0)
+		{
+			statsDedupeMessage.sendTo(messageOutput, dedupedStrings, formatBytes(metrics.getDedupedBytes()));
+		}
+	}
+	
+	public boolean onBackup(CommandSender messageOutput, String[] parameters)
+	{
+		if (parameters.length > 0 && parameters[0].equalsIgnoreCase("schedule"))
+		{
+			return onScheduleBackup(messageOutput, parameters);
+		}
+		
+		List<Schema> schemas = new ArrayList<Schema>();
+		if (parameters.length > 0)
+		{
+			Schema schema = persistence.getSchema(parameters[0]);
+			if (schema == null)
+			{
+				unknownSchemaMessage.sendTo(messageOutput, parameters[0]);
+				return true;
+			}
+			schemas.add(schema);
+		}
+		else
+		{
+			schemas.addAll(persistence.getSchemaList());
+		}
+		
+		if (BackupTask.isRunning())
+		{
+			backupRunningMessage.sendTo(messageOutput);
+			return true;
+		}
+		
+		// Save first, so the backup is current
+		persistence.save();
+		backupStartedMessage.sendTo(messageOutput, schemas.size());
+		
+		final CommandSender sender = messageOutput;
+		final BackupTask backup = persistence.createBackup(schemas, getBackupSettings().getRetention());
+		backup.setOnComplete(new Runnable()
+		{
+			public void run()
+			{
+				// Report back on the main thread
+				plugin.getServer().getScheduler().scheduleSyncDelayedTask(plugin, new Runnable()
+				{
+					public void run()
+					{
+						reportBackup(sender, backup);
+					}
+				});
+			}
+		});
+		plugin.getServer().getScheduler().scheduleAsyncDelayedTask(plugin, backup);
+		
+		return true;
+	}
+	
+	protected boolean onScheduleBackup(CommandSender messageOutput, String[] parameters)
+	{
+		if (parameters.length < 2)
+		{
+			backupSubCommand.sendShortHelp(messageOutput);
+			return true;
+		}
+		
+		BackupSettings settings = getBackupSettings();
+		try
+		{
+			settings.setInterval(Integer.parseInt(parameters[1]));
+			if (parameters.length > 2)
+			{
+				settings.setRetention(Integer.parseInt(parameters[2]));
+			}
+		}
+		catch (NumberFormatException ex)
+		{
+			backupSubCommand.sendShortHelp(messageOutput);
+			return true;
+		}
+		
+		persistence.put(settings);
+		persistence.save();
+		scheduleBackups();
+		
+		if (settings.getInterval() > 0)
+		{
+			backupScheduledMessage.sendTo(messageOutput, settings.getInterval(), settings.getRetention());
+		}
+		else
+		{
+			backupUnscheduledMessage.sendTo(messageOutput);
+		}
+		
+		return true;
+	}
+	
+	public boolean onAutosave(CommandSender messageOutput, String[] parameters)
+	{
+		AutosaveTask autosave = plugin.getAutosave();
+		if (autosave == null) return true;
+		
+		if (parameters.length == 0)
+		{
+			if (autosave.getBudget() <= 0)
+			{
+				autosaveDisabledMessage.sendTo(messageOutput, autosave.getBacklog());
+				return true;
+			}
+			double saveTime = (double)autosave.getObjectSaveTime() / 1000000;
+			autosaveStatusMessage.sendTo(messageOutput, autosave.getBudget(), autosave.getBacklog(), autosave.getSavedCount(), saveTime);
+			return true;
+		}
+		
+		int budget;
+		try
+		{
+			budget = Integer.parseInt(parameters[0]);
+		}
+		catch (NumberFormatException ex)
+		{
+			autosaveSubCommand.sendShortHelp(messageOutput);
+			return true;
+		}
+		
+		AutosaveSettings settings = persistence.get(AutosaveSettings.DEFAULT_ID, AutosaveSettings.class);
+		if (settings == null)
+		{
+			settings = new AutosaveSettings(AutosaveSettings.DEFAULT_ID);
+		}
+		settings.setBudget(Math.max(budget, 0));
+		persistence.put(settings);
+		autosave.setBudget(settings.getBudget());
+		
+		if (settings.getBudget() > 0)
+		{
+			autosaveBudgetMessage.sendTo(messageOutput, settings.getBudget());
+		}
+		else
+		{
+			autosaveDisabledMessage.sendTo(messageOutput, autosave.getBacklog());
+		}
+		return true;
+	}
+	
+	protected String formatBytes(long bytes)
+	{
+		return (bytes + 1023) / 1024 + " KB";
+	}
+	
+	protected void reportBackup(CommandSender messageOutput, BackupTask backup)
+	{
+		for (BackupTask.BackupResult result : backup.getResults())
+		{
+			if (result.isSuccess())
+			{
+				backupCompleteMessage.sendTo(messageOutput, result.getSchemaName(), result.getFile().getName(), formatBytes(result.getSize()), result.getTime());
+			}
+			else
+			{
+				backupFailedMessage.sendTo(messageOutput, result.getSchemaName());
+			}
+		}
+	}
+	
+	protected BackupSettings getBackupSettings()
+	{
+		BackupSettings settings = persistence.get(BackupSettings.DEFAULT_ID, BackupSettings.class);
+		if (settings == null)
+		{
+			settings = new BackupSettings(BackupSettings.DEFAULT_ID);
+		}
+		return settings;
+	}
+	
+	/**
+	 * Start or stop scheduled backups, based on the current backup settings.
+	 * 
+	 * Scheduled backups run on a background thread, and only report to the log.
+	 */
+	protected void scheduleBackups()
+	{
+		BukkitScheduler scheduler = plugin.getServer().getScheduler();
+		if (backupTaskId >= 0)
+		{
+			scheduler.cancelTask(backupTaskId);
+			backupTaskId = -1;
+		}
+		
+		BackupSettings settings = getBackupSettings();
+		if (settings.getInterval() <= 0) return;
+		
+		final int retention = settings.getRetention();
+		long intervalTicks = (long)settings.getInterval() * 60 * TICKS_PER_SECOND;
+		backupTaskId = scheduler.scheduleAsyncRepeatingTask(plugin, new Runnable()
+		{
+			public void run()
+			{
+				persistence.createBackup(persistence.getSchemaList(), retention).run();
+			}
+		}, intervalTicks, intervalTicks);
+	}
+	
 	public boolean onHelpPlugins(CommandSender messageOutput, String[] parameters)
 	{
 		List<PluginData> plugins = new ArrayList<PluginData>();
@@ -199,10 +510,12 @@ public class PersistenceCommands
 	{
 		if (parameters.length < 1)
 		{
-			reloadSubCommand.sendShortHelp(messageOutput);
+			long start = System.currentTimeMillis();
+			int changed = persistence.reload();
+			reloadedMessage.sendTo(messageOutput, changed, System.currentTimeMillis() - start);
 			return true;
 		}
-		String[] entityPath = parameters[1].split("\\.");
+		String[] entityPath = parameters[0].split("\\.");
 		if (entityPath.length < 2)
 		{
 			reloadSubCommand.sendShortHelp(messageOutput);
@@ -271,7 +584,7 @@ public class PersistenceCommands
 		
 		if (entityPath.length == 2)
 		{
-			listEntityIds(messageOutput, schemaName, entityName);
+			listEntityIds(messageOutput, schemaName, entityName, parameters);
 			return true;
 		}
 		
@@ -281,6 +594,126 @@ public class PersistenceCommands
 		return true;
 	}
 	
+	public boolean onCount(CommandSender messageOutput, String[] parameters)
+	{
+		if (parameters.length < 1)
+		{
+			return false;
+		}
+		
+		String[] entityPath = parameters[0].split("\\.");
+		if (entityPath.length < 2)
+		{
+			return false;
+		}
+		
+		final String schemaName = entityPath[0];
+		final String entityName = entityPath[1];
+		final PersistedClass persisted = getEntity(messageOutput, schemaName, entityName);
+		if (persisted == null) return true;
+		
+		// Loaded entities are counted from the cache, anything else needs a query
+		Callable<List<String>> count = new Callable<List<String>>()
+		{
+			public List<String> call()
+			{
+				List<String> lines = new ArrayList<String>();
+				int entityCount = persisted.count();
+				if (entityCount < 0)
+				{
+					addLines(lines, queryFailedMessage);
+				}
+				else
+				{
+					addLines(lines, entityCountMessage, schemaName, entityName, entityCount);
+				}
+				return lines;
+			}
+		};
+		
+		if (persisted.isLoaded())
+		{
+			try
+			{
+				sendLines(messageOutput, count.call());
+			}
+			catch (Exception ex)
+			{
+				queryFailedMessage.sendTo(messageOutput);
+			}
+			return true;
+		}
+		
+		sendAsync(messageOutput, count);
+		return true;
+	}
+	
+	/**
+	 * Run a query on the Persistence worker thread, and send the results back
+	 * to the sender from the main thread.
+	 * 
+	 * @param messageOutput The sender to send the results to
+	 * @param query The query, which returns the lines to send
+	 */
+	protected void sendAsync(final CommandSender messageOutput, Callable<List<String>> query)
+	{
+		persistence.submit(query).addCallback(new PersistenceCallback<List<String>>()
+		{
+			public void onComplete(List<String> lines)
+			{
+				sendLines(messageOutput, lines);
+			}
+			
+			public void onError(Throwable error)
+			{
+				Persistence.getLogger().warning("Persistence: Error running query: " + error.getMessage());
+				queryFailedMessage.sendTo(messageOutput);
+			}
+		});
+	}
+	
+	/**
+	 * Send lines to a sender a few at a time, spread out over several ticks.
+	 * 
+	 * This must be called from the main thread.
+	 * 
+	 * @param messageOutput The sender to send the lines to
+	 * @param lines The lines to send
+	 */
+	protected void sendLines(final CommandSender messageOutput, final List<String> lines)
+	{
+		BukkitScheduler scheduler = plugin.getServer().getScheduler();
+		for (int start = 0; start < lines.size(); start += linesPerTick)
+		{
+			final List<String> chunk = lines.subList(start, Math.min(start + linesPerTick, lines.size()));
+			Runnable send = new Runnable()
+			{
+				public void run()
+				{
+					for (String line : chunk)
+					{
+						messageOutput.sendMessage(line);
+					}
+				}
+			};
+			
+			if (start == 0)
+			{
+				send.run();
+			}
+			else
+			{
+				scheduler.scheduleSyncDelayedTask(plugin, send, start / linesPerTick);
+			}
+		}
+	}
+	
+	protected void addLines(List<String> lines, Message message, Object ... parameters)
+	{
+		if (!message.isEnabled()) return;
+		Collections.addAll(lines, message.getLines(parameters));
+	}
+	
 	protected String listCompactEntity(PersistedClass type, Object instance)
 	{
 		String output = " [";
@@ -321,20 +754,32 @@ public class PersistenceCommands
 		return output + "]";
 	}
 	
-	protected void listEntity(CommandSender messageOutput, String schemaName, String entityName, String id)
+	protected void listEntity(CommandSender messageOutput, final String schemaName, final String entityName, final String id)
 	{
-   		PersistedClass persisted = getEntity(messageOutput, schemaName, entityName);
+   		final PersistedClass persisted = getEntity(messageOutput, schemaName, entityName);
 		if (persisted == null) return;
 		
+		sendAsync(messageOutput, new Callable<List<String>>()
+		{
+			public List<String> call()
+			{
+				return getEntityLines(persisted, schemaName, entityName, id);
+			}
+		});
+	}
+	
+	protected List<String> getEntityLines(PersistedClass persisted, String schemaName, String entityName, String id)
+	{
+		List<String> rows = new ArrayList<String>();
 		Object instance = persisted.get(id);
 		
 		if (instance == null)
 		{
-			entityNotFoundMessage.sendTo(messageOutput, schemaName, entityName, persisted.getIdField().getName(), id);
-			return;
+			addLines(rows, entityNotFoundMessage, schemaName, entityName, persisted.getIdField().getName(), id);
+			return rows;
 		}
 		
-		List<String> rows = new ArrayList<String>();
+		addLines(rows, entityDisplayMessage, schemaName, entityName);
 		for (PersistedField field : persisted.getPersistedFields())
 		{
 			String fieldName = field.getName();
@@ -393,11 +838,7 @@ public class PersistenceCommands
 			rows.add(row);
 		}
 		
-		entityDisplayMessage.sendTo(messageOutput, schemaName, entityName);
-		for (String row : rows)
-		{
-			messageOutput.sendMessage(row);
-		}
+		return rows;
 	}
 	
 	protected void listEntities(CommandSender messageOutput, String schemaName, String entityName)
@@ -465,56 +906,169 @@ public class PersistenceCommands
 		return String.format("%1$-" + maxColumnWidth + "s", column);
 	}
 	
-	protected void listEntityIds(CommandSender messageOutput, String schemaName, String entityName)
+	protected void listEntityIds(CommandSender messageOutput, final String schemaName, final String entityName, String[] parameters)
 	{
-		PersistedClass persisted = getEntity(messageOutput, schemaName, entityName);
+		final PersistedClass persisted = getEntity(messageOutput, schemaName, entityName);
 		if (persisted == null) return;
 		
+		// Parse [page] [limit] [field=value ...]
+		int page = 1;
+		int limit = maxIdCount;
+		int numberCount = 0;
+		final Map<PersistedField, String> filters = new HashMap<PersistedField, String>();
+		for (int i = 1; i < parameters.length; i++)
+		{
+			String parameter = parameters[i];
+			int equalsIndex = parameter.indexOf('=');
+			if (equalsIndex > 0)
+			{
+				String fieldName = parameter.substring(0, equalsIndex);
+				PersistedField field = getField(persisted, fieldName);
+				if (field == null)
+				{
+					unknownFieldMessage.sendTo(messageOutput, schemaName, entityName, fieldName);
+					return;
+				}
+				filters.put(field, parameter.substring(equalsIndex + 1));
+				continue;
+			}
+			
+			try
+			{
+				int value = Integer.parseInt(parameter);
+				if (numberCount++ == 0)
+				{
+					page = value;
+				}
+				else
+				{
+					limit = value;
+				}
+			}
+			catch (NumberFormatException ex)
+			{
+				invalidArgumentMessage.sendTo(messageOutput, parameter);
+				return;
+			}
+		}
+		
+		final int listPage = Math.max(page, 1);
+		final int listLimit = Math.max(1, Math.min(limit, maxPageSize));
+		sendAsync(messageOutput, new Callable<List<String>>()
+		{
+			public List<String> call()
+			{
+				return getEntityIdLines(persisted, schemaName, entityName, listPage, listLimit, filters);
+			}
+		});
+	}
+	
+	protected List<String> getEntityIdLines(PersistedClass persisted, String schemaName, String entityName, int page, int limit, Map<PersistedField, String> filters)
+	{
 		List<Object> entities = new ArrayList<Object>();
 		persisted.getAll(entities);
 		
-		entityListMessage.sendTo(messageOutput, schemaName, entityName, entities.size());
+		List<String> ids = new ArrayList<String>();
+		for (Object entity : entities)
+		{
+			if (!matches(entity, filters)) continue;
+			
+			Object id = persisted.getIdData(entity);
+			ids.add(id == null ? "null" : id.toString());
+		}
+		
+		// Sort, so that pages are consistent from one call to the next
+		Collections.sort(ids);
+		
+		int pageCount = Math.max(1, (ids.size() + limit - 1) / limit);
+		page = Math.min(page, pageCount);
 		
-		int idCount = 0;
 		List<String> idLines = new ArrayList<String>();
+		addLines(idLines, entityListMessage, schemaName, entityName, ids.size(), page, pageCount);
+		
+		int first = (page - 1) * limit;
+		int last = Math.min(first + limit, ids.size());
 		String currentLine = "";
-		for (Object entity : entities)
+		for (String thisId : ids.subList(first, last))
 		{
-			boolean firstInLine = currentLine.length() == 0;
-			
-			if (!firstInLine)
+			if (currentLine.length() == 0)
 			{
-				currentLine += ", ";
-			}
-			else
-			{
-				currentLine = " ";
+				currentLine = " " + thisId;
+				continue;
 			}
-			String thisId = persisted.getIdData(entity).toString();
-			String newLine = currentLine + thisId;
+			
+			String newLine = currentLine + ", " + thisId;
 			if (newLine.length() > maxLineLength)
 			{
-				idLines.add(currentLine);
+				idLines.add(currentLine + ",");
 				currentLine = " " + thisId;
 			}
 			else
 			{
 				currentLine = newLine;
 			}
-			idCount++;
-			if (idCount >= maxIdCount)
-			{
-				currentLine += "...";
-			}
 		}
 		if (currentLine.length() > 0)
 		{
 			idLines.add(currentLine);
 		}
-		for (String idLine : idLines)
+		return idLines;
+	}
+	
+	protected PersistedField getField(PersistedClass persisted, String fieldName)
+	{
+		for (PersistedField field : persisted.getPersistedFields())
 		{
-			messageOutput.sendMessage(idLine);
+			if (field.getName().equalsIgnoreCase(fieldName))
+			{
+				return field;
+			}
 		}
+		return null;
+	}
+	
+	protected boolean matches(Object entity, Map<PersistedField, String> filters)
+	{
+		for (Map.Entry<PersistedField, String> filter : filters.entrySet())
+		{
+			PersistedField field = filter.getKey();
+			String value = filter.getValue();
+			Object data = field.get(entity);
+			PersistedClass refType = field.getReferenceType();
+			
+			if (field instanceof PersistedList)
+			{
+				// Lists match if any element matches
+				boolean found = false;
+				if (data instanceof List<?>)
+				{
+					for (Object element : (List<?>)data)
+					{
+						if (refType != null)
+						{
+							element = refType.getIdData(element);
+						}
+						if (String.valueOf(element).equalsIgnoreCase(value))
+						{
+							found = true;
+							break;
+						}
+					}
+				}
+				if (!found) return false;
+				continue;
+			}
+			
+			if (refType != null)
+			{
+				data = refType.getIdData(data);
+			}
+			if (!String.valueOf(data).equalsIgnoreCase(value))
+			{
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	protected void listSchemas(CommandSender messageOutput)
@@ -583,7 +1137,12 @@ public class PersistenceCommands
 		if (persisted == null) return;
 		
 		reloadingEntityMessage.sendTo(messageOutput, schemaName, entityName);
-		persisted.clear();
+		long start = System.currentTimeMillis();
+		int changed = persisted.reload();
+		if (changed >= 0)
+		{
+			reloadedMessage.sendTo(messageOutput, changed, System.currentTimeMillis() - start);
+		}
 	}
 	
 	protected void resetEntity(CommandSender messageOutput, String schemaName, String entityName)
@@ -604,21 +1163,35 @@ public class PersistenceCommands
 	private int maxColumnWidth = 10;
 	private int maxLineLength = 50;
 	private int maxIdCount = 50;
+	private int maxPageSize = 200;
+	private int linesPerTick = 10;
+	private int backupTaskId = -1;
+	
+	private static final int TICKS_PER_SECOND = 20;
 	
 	private PluginCommand persistCommand;	
 	private PluginCommand saveSubCommand;
 	private PluginCommand describeSubCommand;
 	private PluginCommand listSubCommand;
+	private PluginCommand countSubCommand;
 	private PluginCommand reloadSubCommand;
 	private PluginCommand resetSubCommand;
+	private PluginCommand backupSubCommand;
+	private PluginCommand statsSubCommand;
+	private PluginCommand autosaveSubCommand;
 	private PluginCommand helpCommand;
 	private PluginCommand suCommand;
 	
 	private Message resettingEntityMessage;
 	private Message reloadingEntityMessage;
+	private Message reloadedMessage;
 	private Message entityNotFoundMessage;
 	private Message entityDisplayMessage;
 	private Message entityListMessage;
+	private Message entityCountMessage;
+	private Message invalidArgumentMessage;
+	private Message unknownFieldMessage;
+	private Message queryFailedMessage;
 	private Message schemaDisplayMessage;
 	private Message schemaListMessage;
 	private Message unknownSchemaMessage;
@@ -629,7 +1202,22 @@ public class PersistenceCommands
 	private Message pluginNotFoundMessage;
 	private Message suEnabledMessage;
 	private Message suDisabledMessage;
+	private Message statsSchemaMessage;
+	private Message statsLatencyMessage;
+	private Message statsEntityMessage;
+	private Message statsEntityRowsMessage;
+	private Message statsDedupeMessage;
+	private Message backupStartedMessage;
+	private Message backupCompleteMessage;
+	private Message backupFailedMessage;
+	private Message backupRunningMessage;
+	private Message backupScheduledMessage;
+	private Message backupUnscheduledMessage;
+	private Message autosaveStatusMessage;
+	private Message autosaveDisabledMessage;
+	private Message autosaveBudgetMessage;
 	
 	private Persistence persistence;
+	private PersistencePlugin plugin;
 
 }
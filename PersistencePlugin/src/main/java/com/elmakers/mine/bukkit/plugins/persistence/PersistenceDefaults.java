@@ -6,21 +6,32 @@ class PersistenceDefaults
 	public final String[] persistCommand = {"persist", "Manage Persistence", null};
 	public final String[] saveSubCommand = {"save", "Save cached data", null};
 	public final String[] describeSubCommand = {"describe", "Describe entities and schema", null};
-	public final String[] listSubCommand = {"list", "List entities or data", "<schema>.<entity>"};
-	public final String[] reloadSubCommand = {"reload", "Reload an entity",  null};
+	public final String[] listSubCommand = {"list", "List entities or data", "<schema>.<entity> [page] [limit] [field=value]"};
+	public final String[] countSubCommand = {"count", "Count entities", "<schema>.<entity>"};
+	public final String[] reloadSubCommand = {"reload", "Reload changed data",  "<schema>.<entity>"};
 	public final String[] resetSubCommand = {"RESET", "DROP an entity table", "<schema>.<entity>"};
+	public final String[] backupSubCommand = {"backup", "Back up data", "<schema>"};
+	public final String[] statsSubCommand = {"stats", "Show cache and store statistics", "<schema>"};
+	public final String[] autosaveSubCommand = {"autosave", "Show or set the autosave budget", "<milliseconds per tick>"};
 	public final String[] suCommand = {"su", "Enable full permission access", null};
 	public final String[] helpCommand = {"phelp", "Get help on Persistence plugins", "<command | plugin>"};
 	
 	public final String[] describeUsage = {"<schema>", "<schema>.<entity>"};
 	public final String[] listUsage = {"<schema>.<entity>.<id>"};
+	public final String[] backupUsage = {"schedule <minutes> [keep]"};
+	public final String[] statsUsage = {"<schema> <entity>"};
 	
 	public final String dataSavedMessage = "Data saved.";
 	public final String resettingEntityMessage = "RESETTING entity: %s.%s";
 	public final String reloadingEntityMessage = "Reloading entity: %s.%s";
+	public final String reloadedMessage = "Reloaded %d changed objects in %dms";
 	public final String entityNotFoundMessage = "Can't find entity: %s.%s with %s=%s";
 	public final String entityDisplayMessage = "Entity %s.%s:";
-	public final String entityListMessage = "%s, %s : %d entities:";
+	public final String entityListMessage = "%s.%s : %d entities, page %d of %d:";
+	public final String entityCountMessage = "%s.%s : %d entities";
+	public final String invalidArgumentMessage = "Invalid argument: %s";
+	public final String unknownFieldMessage = "Unknown field: %s.%s.%s";
+	public final String queryFailedMessage = "Query failed, check the server log";
 	public final String schemaListMessage = "Schemas:";
 	public final String schemaDisplayMessage = "Schema %s:";
 	public final String unknownSchemaMessage = "Unknown schema: %s";
@@ -30,4 +41,18 @@ class PersistenceDefaults
 	public final String pluginNotFoundMessage = "Plugin %s not found";
 	public final String suEnabledMessage = "Full access enabled. Use /su again to revert to normal user.";
 	public final String suDisabledMessage = "Normal access restored.";
+	public final String statsSchemaMessage = "%s: %d entities, %d rows loaded, %d saved, %d deleted";
+	public final String statsLatencyMessage = " %s: %s";
+	public final String statsEntityMessage = " %s: %d cached, %d dirty, %d hits, %d misses (%.1f%%)";
+	public final String statsEntityRowsMessage = " %d rows loaded, %d saved, %d id conversions";
+	public final String statsDedupeMessage = " %d duplicate strings shared, %s saved";
+	public final String backupStartedMessage = "Backing up %d schemas...";
+	public final String backupCompleteMessage = "Backed up %s to %s, %s in %dms";
+	public final String backupFailedMessage = "Backup of %s failed, check the server log";
+	public final String backupRunningMessage = "A backup is already running";
+	public final String backupScheduledMessage = "Backing up every %d minutes, keeping %d backups";
+	public final String backupUnscheduledMessage = "Scheduled backups disabled";
+	public final String autosaveStatusMessage = "Autosave: %dms per tick, %d objects waiting, %d saved, %.3fms per object";
+	public final String autosaveDisabledMessage = "Autosave is disabled, %d objects waiting";
+	public final String autosaveBudgetMessage = "Autosave budget set to %dms per tick";
 }
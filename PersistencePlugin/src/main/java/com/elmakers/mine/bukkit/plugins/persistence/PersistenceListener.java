@@ -18,8 +18,6 @@ public class PersistenceListener extends PlayerListener
 	@Override
 	public void onPlayerJoin(PlayerEvent event)
 	{
-		PersistencePlugin.getInstance().getPermissions().initializePermissions();
-		
 		Player player = event.getPlayer();
 		String playerName = player.getName();
 		PlayerData playerData = persistence.get(playerName, PlayerData.class);
@@ -28,6 +26,7 @@ public class PersistenceListener extends PlayerListener
 			playerData = new PlayerData(player);
 		}
 		playerData.login(player);
+		persistence.getSessions().open(player, playerData);
 		if (!commands.getSUCommand().checkPermission(player))
 		{
 			playerData.setSuperUser(false);
@@ -39,8 +38,8 @@ public class PersistenceListener extends PlayerListener
 	public void onPlayerQuit(PlayerEvent event)
 	{
 		Player player = event.getPlayer();
-		String playerName = player.getName();
-		PlayerData playerData = persistence.get(playerName, PlayerData.class);
+		PlayerData playerData = persistence.getSessions().getPlayerData(player);
+		persistence.getSessions().close(player);
 		if (playerData != null)
 		{
 			playerData.disconnect(player);
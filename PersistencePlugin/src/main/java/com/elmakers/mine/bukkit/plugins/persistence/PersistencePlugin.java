@@ -14,9 +14,11 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import com.elmakers.mine.bukkit.permission.GroupManager;
 import com.elmakers.mine.bukkit.permission.PermissionManager;
+import com.elmakers.mine.bukkit.persistence.dao.AutosaveSettings;
 import com.elmakers.mine.bukkit.persistence.dao.PlayerData;
 import com.elmakers.mine.bukkit.utilities.PluginUtilities;
 import com.elmakers.mine.craftbukkit.persistence.Persistence;
+import com.elmakers.mine.craftbukkit.persistence.core.AutosaveTask;
 
 /** 
  * The JavaPlugin interface for Persistence- binds Persistence to Bukkit.
@@ -82,11 +84,12 @@ public class PersistencePlugin extends JavaPlugin
 	 */
 	public void onDisable()
 	{
+		// Stop autosave and scheduled backups
+		getServer().getScheduler().cancelTasks(this);
+		
 		if (persistence != null)
 		{
-			persistence.save();
-			persistence.clear();
-			persistence.disconnect();
+			persistence.shutdown();
 		}
 	}
 
@@ -151,6 +154,41 @@ public class PersistencePlugin extends JavaPlugin
 		
 		pm.registerEvent(Type.PLAYER_QUIT, listener, Priority.Normal, this);
 		pm.registerEvent(Type.PLAYER_JOIN, listener, Priority.Normal, this);
+		
+		scheduleAutosave();
+		
+		// Load permissions once the server has started, so every plugin has
+		// registered its permissions first.
+		getServer().getScheduler().scheduleSyncDelayedTask(this, new Runnable()
+		{
+			public void run()
+			{
+				getPermissions().initializePermissions();
+			}
+		});
+	}
+	
+	/**
+	 * Start the autosave task, which saves dirty data a little at a time, every tick.
+	 * 
+	 * The time budget comes from the global autosave settings.
+	 */
+	protected void scheduleAutosave()
+	{
+		AutosaveSettings settings = getPersistence().get(AutosaveSettings.DEFAULT_ID, AutosaveSettings.class);
+		if (settings == null)
+		{
+			settings = new AutosaveSettings(AutosaveSettings.DEFAULT_ID);
+		}
+		
+		autosave = new AutosaveTask(getPersistence());
+		autosave.setBudget(settings.getBudget());
+		getServer().getScheduler().scheduleSyncRepeatingTask(this, autosave, 1, 1);
+	}
+	
+	public AutosaveTask getAutosave()
+	{
+		return autosave;
 	}
 	
 	public PluginUtilities getUtilities()
@@ -188,6 +226,7 @@ public class PersistencePlugin extends JavaPlugin
 	private GroupManager				permissions		= null;
 	private PluginUtilities				utilities		= null;
 	private List<Object>				listeners 		= null;
+	private AutosaveTask				autosave		= null;
 	private static final Logger			log				= Logger.getLogger("Minecraft");
 	
 }
@@ -0,0 +1,300 @@
+package com.elmakers.mine.bukkit.utilities;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.bukkit.command.CommandSender;
+
+import com.elmakers.mine.bukkit.persistence.dao.CommandSenderData;
+import com.elmakers.mine.bukkit.persistence.dao.PluginCommand;
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+
+/**
+ * A compiled tree of a plugin's commands, used to dispatch command callbacks.
+ *
+ * The tree is built from a snapshot of the plugin's command hierarchy, keyed by
+ * command name. It is rebuilt by PluginUtilities whenever a command is added,
+ * renamed, re-bound or given a new sender type.
+ *
+ * Several commands may share a name. Each of them is tried in the order they were
+ * registered, until one of them handles the command.
+ *
+ * Callback methods are looked up once per listener class, and cached with each
+ * command along with the sender types they accept.
+ *
+ * Sub-command parameters are passed down as an offset into the original parameter
+ * array, which is only copied once a callback is invoked.
+ *
+ * @author NathanWolf
+ *
+ */
+public class CommandDispatcher
+{
+	public CommandDispatcher(List<PluginCommand> rootCommands, int version, String pluginId)
+	{
+		this.version = version;
+		this.pluginId = pluginId;
+		this.roots = compile(rootCommands);
+	}
+
+	/**
+	 * Dispatch a command to the first listener that has a matching callback.
+	 *
+	 * @param listeners The objects to look for callbacks on
+	 * @param sender The sender of this command
+	 * @param baseCommand The base command issued
+	 * @param parameters Any parameters (or sub-commands) passed to the base command
+	 * @return true if the command was handled
+	 * @see PluginUtilities#dispatch(List, CommandSender, String, String[])
+	 */
+	public boolean dispatch(List<Object> listeners, CommandSender sender, String baseCommand, String[] parameters)
+	{
+		return dispatch(roots, listeners, sender, baseCommand, parameters, 0);
+	}
+
+	public int getVersion()
+	{
+		return version;
+	}
+
+	protected Map<String, List<Node>> compile(List<PluginCommand> commands)
+	{
+		Map<String, List<Node>> nodes = new HashMap<String, List<Node>>();
+		if (commands == null) return nodes;
+
+		for (PluginCommand command : commands)
+		{
+			String name = command.getCommand();
+			if (name == null) continue;
+
+			List<Node> named = nodes.get(name);
+			if (named == null)
+			{
+				named = new ArrayList<Node>(1);
+				nodes.put(name, named);
+			}
+			named.add(new Node(command));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Try each command matching a command string, until one of them handles it.
+	 */
+	protected static boolean dispatch(Map<String, List<Node>> nodes, List<Object> listeners, CommandSender sender, String commandString, String[] parameters, int offset)
+	{
+		if (nodes.isEmpty() || commandString == null) return false;
+
+		if (dispatch(nodes.get(commandString), listeners, sender, parameters, offset)) return true;
+
+		String lowerCase = commandString.toLowerCase();
+		if (lowerCase.equals(commandString)) return false;
+		return dispatch(nodes.get(lowerCase), listeners, sender, parameters, offset);
+	}
+
+	protected static boolean dispatch(List<Node> matches, List<Object> listeners, CommandSender sender, String[] parameters, int offset)
+	{
+		if (matches == null) return false;
+
+		for (Node node : matches)
+		{
+			if (node.dispatch(listeners, sender, parameters, offset)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * A callback method, and the sender type it handles.
+	 */
+	protected static class Handler
+	{
+		public Handler(Class<?> senderType, Method method)
+		{
+			this.senderType = senderType;
+			this.method = method;
+		}
+
+		public final Class<?>	senderType;
+		public final Method		method;
+	}
+
+	protected class Node
+	{
+		public Node(PluginCommand command)
+		{
+			this.command = command;
+			this.children = compile(command.getChildren());
+			this.callbackName = command.getCallbackMethod();
+
+			List<CommandSenderData> senders = command.getSenders();
+			if (senders == null)
+			{
+				senderTypes = null;
+			}
+			else
+			{
+				senderTypes = new ArrayList<Class<?>>();
+				for (CommandSenderData senderData : senders)
+				{
+					Class<?> senderType = senderData.getType();
+					if (senderType != null)
+					{
+						senderTypes.add(senderType);
+					}
+				}
+			}
+		}
+
+		public boolean dispatch(List<Object> listeners, CommandSender sender, String[] parameters, int offset)
+		{
+			if (parameters != null && offset < parameters.length)
+			{
+				if (CommandDispatcher.dispatch(children, listeners, sender, parameters[offset], parameters, offset + 1))
+				{
+					return true;
+				}
+			}
+
+			// Not handled by a sub-child, so handle it ourselves.
+
+			if (!command.checkPermission(sender))
+			{
+				return true;
+			}
+
+			if (callbackName == null || callbackName.length() <= 0)
+			{
+				// auto help for commands that only have sub-commands
+				command.sendUse(sender);
+				return true;
+			}
+
+			for (Object listener : listeners)
+			{
+				Handler[] handlers = getHandlers(listener.getClass());
+				for (Handler handler : handlers)
+				{
+					if (!handler.senderType.isInstance(sender)) continue;
+
+					return invoke(handler, listener, sender, getParameters(parameters, offset));
+				}
+			}
+
+			log.info("Persistence: Can't find callback '" + callbackName + " for plugin " + pluginId);
+			return false;
+		}
+
+		protected boolean invoke(Handler handler, Object listener, CommandSender sender, String[] parameters)
+		{
+			try
+			{
+				return (Boolean)handler.method.invoke(listener, sender, parameters);
+			}
+			catch (InvocationTargetException ex)
+			{
+				log.severe("Persistence: Error invoking callback method " + callbackName + " of " + listener.getClass().getName());
+				ex.getTargetException().printStackTrace();
+			}
+			catch (IllegalAccessException ex)
+			{
+				log.warning("Persistence: Can't access callback method " + callbackName + " of " + listener.getClass().getName());
+			}
+			catch (Throwable ex)
+			{
+				log.severe("Persistence: Error trying to invoke callback method " + callbackName + " of " + listener.getClass().getName());
+				ex.printStackTrace();
+			}
+			return false;
+		}
+
+		/**
+		 * Find the callback methods on a listener class, in the order they should be tried.
+		 *
+		 * Methods taking one of this command's sender types come first, followed by a
+		 * generic CommandSender method.
+		 */
+		protected Handler[] getHandlers(Class<?> listenerClass)
+		{
+			Handler[] handlers = handlerMap.get(listenerClass);
+			if (handlers != null) return handlers;
+
+			List<Handler> found = new ArrayList<Handler>();
+			if (senderTypes != null)
+			{
+				try
+				{
+					for (Class<?> senderType : senderTypes)
+					{
+						Method method = getMethod(listenerClass, senderType);
+						if (method != null)
+						{
+							found.add(new Handler(senderType, method));
+						}
+					}
+
+					Method genericMethod = getMethod(listenerClass, CommandSender.class);
+					if (genericMethod != null)
+					{
+						found.add(new Handler(CommandSender.class, genericMethod));
+					}
+				}
+				catch (SecurityException ex)
+				{
+					log.warning("Persistence: Can't access callback method " + callbackName + " of " + listenerClass.getName() + ", make sure it's public");
+					found.clear();
+				}
+			}
+
+			handlers = found.toArray(new Handler[found.size()]);
+			handlerMap.put(listenerClass, handlers);
+			return handlers;
+		}
+
+		protected Method getMethod(Class<?> listenerClass, Class<?> senderType)
+		{
+			Method method;
+			try
+			{
+				method = listenerClass.getMethod(callbackName, senderType, String[].class);
+			}
+			catch (NoSuchMethodException ex)
+			{
+				return null;
+			}
+
+			Class<?> returnType = method.getReturnType();
+			if (returnType != boolean.class && returnType != Boolean.class)
+			{
+				log.warning("Persistence: Can't find callback method " + callbackName + " of " + listenerClass.getName() + " with the correct signature, please consult the docs.");
+				return null;
+			}
+			return method;
+		}
+
+		protected final PluginCommand					command;
+		protected final String							callbackName;
+		protected final Map<String, List<Node>>			children;
+		protected final List<Class<?>>					senderTypes;
+		protected final Map<Class<?>, Handler[]>		handlerMap	= new HashMap<Class<?>, Handler[]>();
+	}
+
+	protected static String[] getParameters(String[] parameters, int offset)
+	{
+		if (parameters == null || offset == 0) return parameters;
+
+		String[] view = new String[parameters.length - offset];
+		System.arraycopy(parameters, offset, view, 0, view.length);
+		return view;
+	}
+
+	protected final int						version;
+	protected final String					pluginId;
+	protected final Map<String, List<Node>>	roots;
+
+	protected static final Logger			log		= Persistence.getLogger();
+}
@@ -0,0 +1,370 @@
+package com.elmakers.mine.bukkit.utilities;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A printf-style message, parsed once into literal text, argument slots and line breaks.
+ *
+ * Rendering a template gives the same lines as calling String.format and then
+ * splitting the result on '\r', without re-parsing the format string or running
+ * a regular expression on every send.
+ *
+ * Plain %s and %d arguments are appended directly, anything else is passed through
+ * a Formatter one argument at a time. If a message can't be formatted, the raw
+ * message text is used instead, as String.format would have failed.
+ *
+ * The last set of immutable arguments rendered is remembered, so sending the same
+ * message to several players in a row only renders it once.
+ *
+ * Templates are immutable, and safe to render from any thread.
+ *
+ * @author NathanWolf
+ *
+ */
+public class MessageTemplate
+{
+	/**
+	 * Compile a message format string.
+	 *
+	 * @param message The printf-style message, with '\r' marking new lines
+	 * @return A template for this message
+	 */
+	public static MessageTemplate compile(String message)
+	{
+		return new MessageTemplate(message);
+	}
+
+	protected MessageTemplate(String message)
+	{
+		if (message == null)
+		{
+			rawLines = new String[0];
+			parts = null;
+			constantLines = rawLines;
+			return;
+		}
+
+		rawLines = message.split("\r");
+		parts = parse(message);
+		if (parts == null)
+		{
+			// Not a valid format string, String.format would always fail
+			constantLines = rawLines;
+			return;
+		}
+
+		boolean hasArguments = false;
+		for (Part part : parts)
+		{
+			if (part.type == PartType.ARGUMENT)
+			{
+				hasArguments = true;
+				break;
+			}
+		}
+
+		constantLines = hasArguments ? null : render(null);
+	}
+
+	/**
+	 * Render this message into lines.
+	 *
+	 * The returned array may be shared, and should not be modified.
+	 *
+	 * @param parameters The message parameters
+	 * @return The lines of this message
+	 */
+	public String[] getLines(Object ... parameters)
+	{
+		if (constantLines != null) return constantLines;
+
+		boolean cacheable = isImmutable(parameters);
+		if (cacheable)
+		{
+			RenderedLines last = lastRendered;
+			if (last != null && Arrays.equals(last.parameters, parameters))
+			{
+				return last.lines;
+			}
+		}
+
+		String[] lines = render(parameters);
+		if (cacheable)
+		{
+			lastRendered = new RenderedLines(parameters.clone(), lines);
+		}
+		return lines;
+	}
+
+	protected String[] render(Object[] parameters)
+	{
+		RenderBuffer buffer = buffers.get();
+		StringBuilder builder = buffer.builder;
+		builder.setLength(0);
+
+		List<String> lines = new ArrayList<String>(lineCount);
+		boolean split = false;
+		try
+		{
+			for (Part part : parts)
+			{
+				switch (part.type)
+				{
+					case LITERAL:
+						builder.append(part.text);
+						break;
+					case LINE_BREAK:
+						lines.add(builder.toString());
+						builder.setLength(0);
+						split = true;
+						break;
+					case ARGUMENT:
+						int start = builder.length();
+						part.render(buffer, parameters);
+						split = splitLines(builder, start, lines) || split;
+						break;
+				}
+			}
+		}
+		catch (Throwable ex)
+		{
+			return rawLines;
+		}
+		lines.add(builder.toString());
+
+		// Match String.split, which drops trailing empty lines
+		if (split)
+		{
+			while (lines.size() > 0 && lines.get(lines.size() - 1).length() == 0)
+			{
+				lines.remove(lines.size() - 1);
+			}
+		}
+
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * Break out any lines created by an argument value.
+	 */
+	protected static boolean splitLines(StringBuilder builder, int start, List<String> lines)
+	{
+		boolean split = false;
+		for (int i = start; i < builder.length(); i++)
+		{
+			if (builder.charAt(i) != '\r') continue;
+
+			lines.add(builder.substring(0, i));
+			builder.delete(0, i + 1);
+			i = -1;
+			split = true;
+		}
+		return split;
+	}
+
+	protected List<Part> parse(String message)
+	{
+		List<Part> parsed = new ArrayList<Part>();
+		Matcher matcher = formatPattern.matcher(message);
+		int ordinaryIndex = 0;
+		int lastIndex = -1;
+		int position = 0;
+		lineCount = 1;
+		while (position < message.length())
+		{
+			int next = message.indexOf('%', position);
+			int lineBreak = message.indexOf('\r', position);
+			if (lineBreak >= 0 && (next < 0 || lineBreak < next))
+			{
+				addLiteral(parsed, message.substring(position, lineBreak));
+				parsed.add(new Part(PartType.LINE_BREAK, null));
+				lineCount++;
+				position = lineBreak + 1;
+				continue;
+			}
+			if (next < 0)
+			{
+				addLiteral(parsed, message.substring(position));
+				break;
+			}
+
+			addLiteral(parsed, message.substring(position, next));
+			matcher.region(next, message.length());
+			if (!matcher.lookingAt())
+			{
+				return null;
+			}
+			position = matcher.end();
+
+			String explicitIndex = matcher.group(1);
+			String flags = matcher.group(2);
+			String width = matcher.group(3);
+			String precision = matcher.group(4);
+			String conversion = matcher.group(5);
+
+			if (conversion.equals("%") || conversion.equals("n"))
+			{
+				// These don't take an argument, so can be formatted up front
+				try
+				{
+					addLiteral(parsed, String.format(matcher.group()));
+				}
+				catch (Throwable ex)
+				{
+					return null;
+				}
+				continue;
+			}
+
+			int index;
+			if (flags.indexOf('<') >= 0)
+			{
+				if (lastIndex < 0) return null;
+				index = lastIndex;
+				flags = flags.replace("<", "");
+			}
+			else if (explicitIndex != null)
+			{
+				index = Integer.parseInt(explicitIndex.substring(0, explicitIndex.length() - 1)) - 1;
+				if (index < 0) return null;
+			}
+			else
+			{
+				index = ordinaryIndex++;
+			}
+			lastIndex = index;
+
+			String spec = "%" + flags + (width == null ? "" : width) + (precision == null ? "" : precision) + conversion;
+			boolean simple = flags.length() == 0 && width == null && precision == null;
+			parsed.add(new Part(index, spec, simple ? conversion.charAt(0) : 0));
+		}
+
+		return parsed;
+	}
+
+	protected static void addLiteral(List<Part> parsed, String text)
+	{
+		if (text.length() == 0) return;
+		parsed.add(new Part(PartType.LITERAL, text));
+	}
+
+	protected static boolean isImmutable(Object[] parameters)
+	{
+		if (parameters == null) return false;
+		for (Object parameter : parameters)
+		{
+			if (parameter == null) continue;
+			if (parameter instanceof String || parameter instanceof Integer || parameter instanceof Long
+				|| parameter instanceof Double || parameter instanceof Float || parameter instanceof Boolean
+				|| parameter instanceof Short || parameter instanceof Byte || parameter instanceof Character
+				|| parameter instanceof Enum<?>)
+			{
+				continue;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	protected enum PartType
+	{
+		LITERAL,
+		LINE_BREAK,
+		ARGUMENT
+	}
+
+	protected static class Part
+	{
+		public Part(PartType type, String text)
+		{
+			this.type = type;
+			this.text = text;
+			this.index = -1;
+			this.conversion = 0;
+		}
+
+		public Part(int index, String spec, char conversion)
+		{
+			this.type = PartType.ARGUMENT;
+			this.text = spec;
+			this.index = index;
+			this.conversion = conversion;
+		}
+
+		public void render(RenderBuffer buffer, Object[] parameters)
+		{
+			if (parameters == null || index >= parameters.length)
+			{
+				throw new IllegalArgumentException("Missing message parameter " + (index + 1));
+			}
+			Object value = parameters[index];
+
+			switch (conversion)
+			{
+				case 's':
+					if (!(value instanceof Formattable))
+					{
+						buffer.builder.append(value);
+						return;
+					}
+					break;
+				case 'd':
+					if (plainDigits && (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte))
+					{
+						buffer.builder.append(((Number)value).longValue());
+						return;
+					}
+					break;
+			}
+
+			buffer.formatter.format(text, value);
+		}
+
+		public final PartType	type;
+		public final String		text;
+		public final int		index;
+		public final char		conversion;
+	}
+
+	protected static class RenderBuffer
+	{
+		public final StringBuilder	builder		= new StringBuilder();
+		public final Formatter		formatter	= new Formatter(builder);
+	}
+
+	protected static class RenderedLines
+	{
+		public RenderedLines(Object[] parameters, String[] lines)
+		{
+			this.parameters = parameters;
+			this.lines = lines;
+		}
+
+		public final Object[]	parameters;
+		public final String[]	lines;
+	}
+
+	protected final String[]						rawLines;
+	protected final List<Part>						parts;
+	protected final String[]						constantLines;
+	protected int									lineCount		= 1;
+	protected volatile RenderedLines				lastRendered	= null;
+
+	protected static final Pattern					formatPattern	= Pattern.compile("%(\\d+\\$)?([-#+ 0,(<]*)(\\d+)?(\\.\\d+)?([tT]?[a-zA-Z%])");
+	protected static final boolean					plainDigits		= new DecimalFormatSymbols().getZeroDigit() == '0';
+	protected static final ThreadLocal<RenderBuffer>	buffers		= new ThreadLocal<RenderBuffer>()
+	{
+		@Override
+		protected RenderBuffer initialValue()
+		{
+			return new RenderBuffer();
+		}
+	};
+}
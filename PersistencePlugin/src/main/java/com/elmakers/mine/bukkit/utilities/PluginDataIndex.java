@@ -0,0 +1,108 @@
+package com.elmakers.mine.bukkit.utilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.elmakers.mine.bukkit.persistence.dao.Message;
+import com.elmakers.mine.bukkit.persistence.dao.PluginCommand;
+import com.elmakers.mine.bukkit.persistence.dao.PluginData;
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+
+/**
+ * Groups stored messages and root commands by the plugin that owns them.
+ * 
+ * The index is built from a single pass over all messages and commands, the
+ * first time a plugin needs to bind its cache. Each plugin then only looks at
+ * its own entries, instead of every plugin scanning every message and command.
+ * 
+ * Entries are handed out once, since each PluginData keeps its own cache after that.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class PluginDataIndex
+{
+	public PluginDataIndex(Persistence persistence)
+	{
+		this.persistence = persistence;
+	}
+	
+	/**
+	 * Bind a plugin's stored messages and commands to its PluginData.
+	 * 
+	 * @param plugin The plugin to initialize
+	 */
+	public void initializeCache(PluginData plugin)
+	{
+		List<Message> messages;
+		List<PluginCommand> commands;
+		synchronized (this)
+		{
+			if (!indexed)
+			{
+				index();
+			}
+			
+			String pluginKey = getKey(plugin.getId());
+			messages = messageMap.remove(pluginKey);
+			commands = commandMap.remove(pluginKey);
+		}
+		
+		if (messages == null)
+		{
+			messages = new ArrayList<Message>();
+		}
+		if (commands == null)
+		{
+			commands = new ArrayList<PluginCommand>();
+		}
+		plugin.initializeCache(messages, commands);
+	}
+	
+	protected void index()
+	{
+		List<Message> allMessages = new ArrayList<Message>();
+		persistence.getAll(allMessages, Message.class);
+		for (Message message : allMessages)
+		{
+			if (message.getPlugin() == null) continue;
+			getList(messageMap, message.getPlugin().getId()).add(message);
+		}
+		
+		// Only index root commands- the rest are in tree form
+		List<PluginCommand> allCommands = new ArrayList<PluginCommand>();
+		persistence.getAll(allCommands, PluginCommand.class);
+		for (PluginCommand command : allCommands)
+		{
+			if (command.getParent() != null || command.getPlugin() == null) continue;
+			getList(commandMap, command.getPlugin().getId()).add(command);
+		}
+		
+		indexed = true;
+	}
+	
+	protected static <T> List<T> getList(Map<String, List<T>> map, String pluginId)
+	{
+		String pluginKey = getKey(pluginId);
+		List<T> list = map.get(pluginKey);
+		if (list == null)
+		{
+			list = new ArrayList<T>();
+			map.put(pluginKey, list);
+		}
+		return list;
+	}
+	
+	// Plugin ids are matched without case
+	protected static String getKey(String pluginId)
+	{
+		return pluginId == null ? "" : pluginId.toLowerCase();
+	}
+	
+	protected final Persistence							persistence;
+	protected boolean									indexed		= false;
+	protected final Map<String, List<Message>>			messageMap	= new HashMap<String, List<Message>>();
+	protected final Map<String, List<PluginCommand>>	commandMap	= new HashMap<String, List<PluginCommand>>();
+}
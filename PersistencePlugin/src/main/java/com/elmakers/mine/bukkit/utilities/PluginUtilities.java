@@ -4,9 +4,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.jar.JarEntry;
@@ -50,13 +49,25 @@ public class PluginUtilities
 	/**
 	 * Messaging constructor. Use to create an instance of Messaging for your plugin.
 	 * 
-	 * This can also be done via persistence.getMessaging(plugin)
+	 * This can also be done via persistence.getUtilities(plugin), which caches
+	 * one instance per plugin.
 	 * 
 	 * @param requestingPlugin The plugin requesting the messaging interface
 	 * @param persistence The Persistence reference to use for retrieving data
-	 * @param permissions The permissions manager
 	 */
 	public PluginUtilities(Plugin requestingPlugin, Persistence persistence)
+	{
+		this(requestingPlugin, persistence, persistence.getPluginIndex());
+	}
+	
+	/**
+	 * Create an instance of PluginUtilities, binding stored messages and commands from an index.
+	 * 
+	 * @param requestingPlugin The plugin requesting the messaging interface
+	 * @param persistence The Persistence reference to use for retrieving data
+	 * @param index The index of stored messages and commands by plugin
+	 */
+	public PluginUtilities(Plugin requestingPlugin, Persistence persistence, PluginDataIndex index)
 	{
 		this.persistence = persistence;
 		this.owner = requestingPlugin;
@@ -74,11 +85,7 @@ public class PluginUtilities
 		// Let the plugin bind its transient command and message instances
 		if (plugin.getCommands().isEmpty() && plugin.getMessages().isEmpty())
 		{
-			List<Message> allMessages = new ArrayList<Message>();
-			List<PluginCommand> allCommands = new ArrayList<PluginCommand>();
-			persistence.getAll(allMessages, Message.class);
-			persistence.getAll(allCommands, PluginCommand.class);
-			plugin.initializeCache(allMessages, allCommands);
+			index.initializeCache(plugin);
 		}
 		
 		playerSender = persistence.get("player", CommandSenderData.class);
@@ -91,61 +98,129 @@ public class PluginUtilities
 		File file = new File(dataFolder.getParentFile(), pluginName + ".jar");
 		try
 		{
-			if (!file.exists())
+			RootPermissionDescription rootNode = getRootPermissions(file);
+			if (rootNode != null)
 			{
-				throw new InvalidPluginException(new FileNotFoundException(String.format("%s does not exist",
-						file.getPath())));
+				permissions.addPluginRootPermission(pluginName, rootNode);
 			}
-			try
+		}
+		catch (Throwable ex)
+		{
+			log.log(Level.INFO, "Error reading plugin permissions: ", ex);
+		}
+	}
+	
+	/**
+	 * Read the permissions defined in a plugin jar's plugin.yml.
+	 * 
+	 * Parsed permissions are cached by jar path and modification time, so
+	 * a jar is only opened again if it has changed.
+	 * 
+	 * @param file The plugin jar
+	 * @return The root permission node, or null if the plugin defines no permissions
+	 * @throws InvalidPluginException If the jar can't be read
+	 * @throws InvalidDescriptionException If the permissions are invalid
+	 */
+	protected static RootPermissionDescription getRootPermissions(File file) throws InvalidPluginException, InvalidDescriptionException
+	{
+		if (!file.exists())
+		{
+			throw new InvalidPluginException(new FileNotFoundException(String.format("%s does not exist",
+					file.getPath())));
+		}
+		
+		String path = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		synchronized (permissionCache)
+		{
+			CachedPermissions cached = permissionCache.get(path);
+			if (cached != null && cached.lastModified == lastModified)
 			{
-				JarFile jar = new JarFile(file);
-				JarEntry entry = jar.getJarEntry("plugin.yml");
+				return cached.rootNode;
+			}
+		}
+		
+		RootPermissionDescription rootNode = readRootPermissions(file);
+		synchronized (permissionCache)
+		{
+			permissionCache.put(path, new CachedPermissions(lastModified, rootNode));
+		}
+		return rootNode;
+	}
+	
+	protected static RootPermissionDescription readRootPermissions(File file) throws InvalidPluginException, InvalidDescriptionException
+	{
+		JarFile jar = null;
+		try
+		{
+			jar = new JarFile(file);
+			JarEntry entry = jar.getJarEntry("plugin.yml");
 
-				if (entry == null)
-				{
-					throw new InvalidPluginException(new FileNotFoundException("Jar does not contain plugin.yml"));
-				}
+			if (entry == null)
+			{
+				throw new InvalidPluginException(new FileNotFoundException("Jar does not contain plugin.yml"));
+			}
 
-				InputStream stream = jar.getInputStream(entry);
-				
+			InputStream stream = jar.getInputStream(entry);
+			
+			@SuppressWarnings("unchecked")
+			Map<String, Object> map = (Map<String, Object>)yaml.load(stream);
+			stream.close();
+			
+			if (map == null || !map.containsKey("permissions"))
+			{
+				return null;
+			}
+			
+			try
+			{
 				@SuppressWarnings("unchecked")
-				Map<String, Object> map = (Map<String, Object>)yaml.load(stream);
-				if (map.containsKey("permissions"))
-				{
-					try
-					{
-						@SuppressWarnings("unchecked")
-						Map<String, Object> perms = (Map<String, Object>)map.get("permissions");
-						
-						RootPermissionDescription rootNode = new RootPermissionDescription(perms);
-						permissions.addPluginRootPermission(pluginName, rootNode);
-					}
-					catch (ClassCastException ex)
-					{
-						throw new InvalidDescriptionException(ex, "permissions are of wrong type");
-					}
-					catch (PermissionDescriptionException ex)
-					{
-						throw new InvalidDescriptionException(ex, "permissions are invalid");
-					}
-					catch (PermissionDescriptionNodeException ex)
-					{
-						throw new InvalidDescriptionException(ex, "permissions are invalid");
-					}
-				}
-
-				stream.close();
-				jar.close();
+				Map<String, Object> perms = (Map<String, Object>)map.get("permissions");
+				
+				return new RootPermissionDescription(perms);
+			}
+			catch (ClassCastException ex)
+			{
+				throw new InvalidDescriptionException(ex, "permissions are of wrong type");
 			}
-			catch (IOException ex)
+			catch (PermissionDescriptionException ex)
 			{
-				throw new InvalidPluginException(ex);
+				throw new InvalidDescriptionException(ex, "permissions are invalid");
+			}
+			catch (PermissionDescriptionNodeException ex)
+			{
+				throw new InvalidDescriptionException(ex, "permissions are invalid");
 			}
 		}
-		catch (Throwable ex)
+		catch (IOException ex)
 		{
-			log.log(Level.INFO, "Error reading plugin permissions: ", ex);
+			throw new InvalidPluginException(ex);
 		}
+		finally
+		{
+			if (jar != null)
+			{
+				try
+				{
+					jar.close();
+				}
+				catch (IOException ex)
+				{
+				}
+			}
+		}
+	}
+	
+	protected static class CachedPermissions
+	{
+		public CachedPermissions(long lastModified, RootPermissionDescription rootNode)
+		{
+			this.lastModified = lastModified;
+			this.rootNode = rootNode;
+		}
+		
+		public final long						lastModified;
+		public final RootPermissionDescription	rootNode;
 	}
 	
 	public Plugin getOwningPlugin()
@@ -155,7 +230,7 @@ public class PluginUtilities
 	
 	public PlayerData getPlayer(Player player)
 	{
-		PlayerData playerData = persistence.get(player.getName(), PlayerData.class);
+		PlayerData playerData = persistence.getSessions().getPlayerData(player);
 		if (playerData == null)
 		{
 			playerData = new PlayerData(player);
@@ -326,9 +401,7 @@ public class PluginUtilities
 	 */
 	public boolean dispatch(Object listener, CommandSender sender, String baseCommand, String[] baseParameters)
 	{
-		List<Object> listeners = new ArrayList<Object>();
-		listeners.add(listener);
-		return dispatch(listeners, sender, baseCommand, baseParameters);
+		return dispatch(Collections.singletonList(listener), sender, baseCommand, baseParameters);
 	}
 	
 	/**
@@ -352,139 +425,24 @@ public class PluginUtilities
 	 */
 	public boolean dispatch(List<Object> listeners, CommandSender sender, String baseCommand, String[] baseParameters)
 	{
-		List<PluginCommand> baseCommands = plugin.getCommands();
-		if (baseCommands == null) return false;
-		
-		List<PluginCommand> commandsCopy = new ArrayList<PluginCommand>();
-		commandsCopy.addAll(baseCommands);
-		
-		for (PluginCommand command : commandsCopy)
-		{
-			boolean success = dispatch(listeners, sender, command, baseCommand, baseParameters);
-			if (success) return true;
-		}
-		return false;
+		return getDispatcher().dispatch(listeners, sender, baseCommand, baseParameters);
 	}
 	
-	protected boolean dispatch(List<Object> listeners, CommandSender sender, PluginCommand command, String commandString, String[] parameters)
-	{		
-		if (command != null && command.checkCommand(sender, commandString))
-		{			
-			boolean handledByChild = false;
-			if (parameters != null && parameters.length > 0)
-			{
-				String[] childParameters = new String[parameters.length - 1];
-				for (int i = 0; i < childParameters.length; i++)
-				{
-					childParameters[i] = parameters[i + 1];
-				}
-				String childCommand = parameters[0];
-				
-				List<PluginCommand> subCommands = command.getChildren();
-				if (subCommands != null)
-				{
-					List<PluginCommand> commandsCopy = new ArrayList<PluginCommand>();
-					commandsCopy.addAll(subCommands);
-					
-					for (PluginCommand child : commandsCopy)
-					{
-						handledByChild = dispatch(listeners, sender, child, childCommand, childParameters);
-						if (handledByChild)
-						{
-							return true;
-						}
-					}
-				}
-			}
-			
-			// Not handled by a sub-child, so handle it ourselves.
-			
-			if (!command.checkPermission(sender))
-			{
-				return true;
-			}
-
-			String callbackName = command.getCallbackMethod();
-			if (callbackName == null || callbackName.length() <= 0) 
-			{
-				// auto help for commands that only have sub-commands
-				command.sendUse(sender);
-				return true;
-			}
-			
-			for (Object listener : listeners)
-			{
-				try
-				{
-					List<CommandSenderData> senders = command.getSenders();
-					
-					if (senders != null)
-					{
-						for (CommandSenderData senderData : senders)
-						{
-							Class<?> senderType = senderData.getType();
-							if (senderType == null) continue;
-							if (!senderType.isAssignableFrom(sender.getClass())) continue;
-							try
-							{
-								Method customHandler;
-								customHandler = listener.getClass().getMethod(callbackName, senderType, String[].class);
-								try
-								{
-									return (Boolean)customHandler.invoke(listener, senderType.cast(sender), parameters);
-								}
-								catch(InvocationTargetException clientEx)
-								{
-									log.severe("Error invoking callback '" + callbackName);
-									clientEx.getTargetException().printStackTrace();
-									return false;
-								}
-								catch(Throwable clientEx)
-								{
-									log.severe("Error invoking trying to invoke callback '" + callbackName);
-									clientEx.printStackTrace();
-									return false;
-								}
-							}
-							catch (NoSuchMethodException e)
-							{
-							}					
-						}
-		
-						try
-						{
-							Method genericHandler;
-							genericHandler = listener.getClass().getMethod(callbackName, CommandSender.class, String[].class);
-							return (Boolean)genericHandler.invoke(listener, sender, parameters);
-						}
-						catch (NoSuchMethodException ex)
-						{
-						}	
-					}
-				}
-				catch (SecurityException ex)
-				{
-					log.warning("Persistence: Can't access callback method " + callbackName + " of " + listener.getClass().getName() + ", make sure it's public");
-				}
-				catch (IllegalArgumentException ex)
-				{
-					log.warning("Persistence: Can't find callback method " + callbackName + " of " + listener.getClass().getName() + " with the correct signature, please consult the docs.");
-				}
-				catch (IllegalAccessException ex)
-				{
-					log.warning("Persistence: Can't access callback method " + callbackName + " of " + listener.getClass().getName());
-				}
-				catch (InvocationTargetException ex)
-				{
-					log.severe("Persistence: Error invoking callback method " + callbackName + " of " + listener.getClass().getName());
-					ex.printStackTrace();
-				}
-			}
-			
-			log.info("Peristence: Can't find callback '" + callbackName + " for plugin " + plugin.getId());
+	/**
+	 * Get the compiled command tree for this plugin.
+	 * 
+	 * The tree is rebuilt if any commands have changed since it was last compiled.
+	 * 
+	 * @return The current command dispatcher
+	 */
+	protected CommandDispatcher getDispatcher()
+	{
+		int version = PluginCommand.getDispatchVersion();
+		if (dispatcher == null || dispatcher.getVersion() != version)
+		{
+			dispatcher = new CommandDispatcher(plugin.getCommands(), version, plugin.getId());
 		}
-		
-		return false;
+		return dispatcher;
 	}
 	
 	// TODO : These should go in Server!
@@ -501,6 +459,9 @@ public class PluginUtilities
 	private Plugin				owner;
 	private PluginData			plugin;
 	private CommandSenderData	playerSender;
+	private CommandDispatcher	dispatcher;
 	private static final Logger	log		= Persistence.getLogger();
 	private static final Yaml	yaml	= new Yaml(new SafeConstructor());
+	
+	private static final Map<String, CachedPermissions>	permissionCache	= new HashMap<String, CachedPermissions>();
 }
@@ -0,0 +1,53 @@
+package com.elmakers.mine.craftbukkit.permission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents the dense integer ids assigned to permission paths
+ *
+ * Every path described by a plugin is registered when the PermissionTree is compiled,
+ * and every path set in a profile is registered as the profile is loaded. Ids never
+ * change once assigned, so compiled bitsets stay valid when the tree is rebuilt.
+ */
+public final class PermissionIndex {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    private PermissionIndex() {
+    }
+
+    /**
+     * Gets the id of a permission path
+     *
+     * @param path The full permission path
+     * @return The path's id, or -1 if no plugin or profile uses this path
+     */
+    public static int getId(final String path) {
+        Integer id = ids.get(path);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the id of a permission path, assigning a new one if needed
+     *
+     * @param path The full permission path
+     * @return The path's id
+     */
+    public static synchronized int register(final String path) {
+        Integer id = ids.get(path);
+        if (id == null) {
+            id = ids.size();
+            ids.put(path.intern(), id);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the number of ids that have been assigned
+     *
+     * @return The number of known paths
+     */
+    public static int size() {
+        return ids.size();
+    }
+}
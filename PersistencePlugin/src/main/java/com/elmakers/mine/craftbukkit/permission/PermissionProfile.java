@@ -4,7 +4,7 @@ package com.elmakers.mine.craftbukkit.permission;
 import java.io.InputStream;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -17,10 +17,15 @@ import com.elmakers.mine.bukkit.permission.PermissionManager;
 
 /**
  * Represents a profile of permissions
+ *
+ * Values are stored by PermissionIndex id- a bitset marks which paths are set, boolean values
+ * are kept in a second bitset, and any other values are kept in a side array.
  */
 public class PermissionProfile implements Permissions {
     private String name;
-    private final Map<String, Object> values = new HashMap<String, Object>();
+    private final BitSet setBits = new BitSet();
+    private final BitSet trueBits = new BitSet();
+    private Object[] values = new Object[0];
     private final Server server;
     private final PermissionManager manager;
     private static final Yaml yaml = new Yaml(new SafeConstructor());
@@ -43,27 +48,72 @@ public class PermissionProfile implements Permissions {
     public void set(final String key, final Object value) {
         PermissionDescriptionNode desc = manager.getPermissionPath(key);
 
+        if (desc == null) {
+            throw new IllegalArgumentException("No permissions are defined for " + key);
+        }
         if (desc.isValid(value)) {
-            values.put(key, value);
+            put(key, value);
         } else {
             throw new IllegalArgumentException("Cannot set " + key + " to " + value);
         }
     }
 
     public <T> T get(final String key) {
-        T result = (T)values.get(key);
+        T result = (T)getValue(PermissionIndex.getId(key));
 
         if (result == null) {
             PermissionDescriptionNode desc = manager.getPermissionPath(key);
 
-            result = (T)desc.getDefault();
+            if (desc != null) {
+                result = (T)desc.getDefault();
+            }
         }
 
         return result;
     }
 
     public boolean isSet(final String key) {
-        return values.containsKey(key);
+        int id = PermissionIndex.getId(key);
+        return id >= 0 && setBits.get(id);
+    }
+
+    /**
+     * Gets the ids of every path set in this profile
+     *
+     * The returned bitset must not be modified.
+     *
+     * @return A bitset of PermissionIndex ids
+     */
+    public BitSet getSetBits() {
+        return setBits;
+    }
+
+    private void put(final String key, final Object value) {
+        int id = PermissionIndex.register(key);
+        setBits.set(id);
+        if (value instanceof Boolean) {
+            trueBits.set(id, (Boolean)value);
+            if (id < values.length) {
+                values[id] = null;
+            }
+        } else {
+            if (id >= values.length) {
+                Object[] newValues = new Object[Math.max(id + 1, values.length * 2)];
+                System.arraycopy(values, 0, newValues, 0, values.length);
+                values = newValues;
+            }
+            values[id] = value;
+        }
+    }
+
+    private Object getValue(final int id) {
+        if (id < 0 || !setBits.get(id)) {
+            return null;
+        }
+        if (id < values.length && values[id] != null) {
+            return values[id];
+        }
+        return trueBits.get(id);
     }
 
     private void loadNode(final String path, Object node) throws InvalidPermissionProfileException {
@@ -86,7 +136,7 @@ public class PermissionProfile implements Permissions {
 			 List<Object> list = (List<Object>)node;
         	 for (Object key : list) {
         		 if (key instanceof String) {
-        			 values.put(path + "." + (String)key, (Boolean)true);
+        			 put(path + "." + (String)key, (Boolean)true);
         		 }
         	 }
         } else {
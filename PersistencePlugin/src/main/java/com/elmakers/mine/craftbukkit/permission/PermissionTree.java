@@ -0,0 +1,215 @@
+package com.elmakers.mine.craftbukkit.permission;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents the permission descriptions of all plugins, compiled into a single tree
+ *
+ * The tree is immutable- it should be rebuilt whenever a plugin adds its root permissions.
+ * Each path in the tree is registered with the PermissionIndex as it is compiled.
+ * Paths are walked one segment at a time, without splitting them, and the results are
+ * cached per path. Unknown paths resolve to null rather than throwing.
+ *
+ * Each cache holds up to MAX_CACHE_SIZE paths. Once full, the least recently used
+ * path is dropped for each new one, so the cache follows the paths currently in use.
+ */
+public class PermissionTree {
+    private final Node top = new Node(null, null, null);
+    private final Map<String, Node> pathCache = createCache();
+    private final Map<String, Boolean> defaultCache = createCache();
+
+    private static final int MAX_CACHE_SIZE = 4096;
+
+    /**
+     * Marks a path that is not defined, so that misses can be cached too
+     */
+    private static final Node NOT_FOUND = new Node(null, null, null);
+
+    /**
+     * Compiles a set of root permission descriptions
+     *
+     * @param roots The root descriptions, keyed by their top-level names
+     */
+    public PermissionTree(final Map<String, RootPermissionDescription> roots) {
+        for (Map.Entry<String, RootPermissionDescription> entry : roots.entrySet()) {
+            PermissionDescriptionNode description = entry.getValue().getNode(entry.getKey());
+            if (description != null) {
+                top.addChild(null, entry.getKey(), description);
+            }
+        }
+    }
+
+    /**
+     * Gets the description node at the given path
+     *
+     * Like RootPermissionDescription.getPath, path segments that aren't defined are skipped.
+     *
+     * @param path The full permission path, including the plugin's root name
+     * @return The description node, or null if the path is not defined
+     */
+    public PermissionDescriptionNode getPath(final String path) {
+        Node node = pathCache.get(path);
+        if (node == null) {
+            node = findPath(trimPath(path));
+            pathCache.put(path, node);
+        }
+
+        return node.description;
+    }
+
+    /**
+     * Checks to see if the given path is granted by default
+     *
+     * This gives the same result as RootPermissionDescription.isDefaultSet, checked
+     * against every plugin's permissions.
+     *
+     * @param path The full permission path
+     * @return true if the path is set by default
+     */
+    public boolean isDefaultSet(final String path) {
+        Boolean result = defaultCache.get(path);
+        if (result == null) {
+            result = findDefault(trimPath(path));
+            defaultCache.put(path, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a path cache that drops the least recently used path once it is full
+     */
+    private static <V> Map<String, V> createCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, V> eldest) {
+                return size() > MAX_CACHE_SIZE;
+            }
+        });
+    }
+
+    /**
+     * Strips any trailing separators, which String.split would have ignored
+     */
+    private static String trimPath(final String path) {
+        int length = path.length();
+        while (length > 0 && path.charAt(length - 1) == '.') {
+            length--;
+        }
+        return length == path.length() ? path : path.substring(0, length);
+    }
+
+    private Node findPath(final String path) {
+        int end = path.indexOf('.');
+        String rootName = end < 0 ? path : path.substring(0, end);
+        if (top.getChild(rootName) == null) {
+            return NOT_FOUND;
+        }
+
+        Node current = top;
+        int start = 0;
+        while (end >= 0) {
+            Node node = current.getChild(path.substring(start, end));
+            if (node != null) {
+                if (!node.isMap()) {
+                    return NOT_FOUND;
+                }
+                current = node;
+            }
+            start = end + 1;
+            end = path.indexOf('.', start);
+        }
+
+        Node node = current.getChild(path.substring(start));
+        return node == null ? NOT_FOUND : node;
+    }
+
+    private boolean findDefault(final String path) {
+        Node current = top;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('.', start);
+            boolean last = end < 0;
+            if (last) {
+                end = path.length();
+            }
+
+            Node node = current.getChild(path.substring(start, end));
+            start = end + 1;
+            if (node == null) continue;
+
+            if (node.isMap()) {
+                current = node;
+            } else if (last && (node.isList() || node.isBoolean())) {
+                return node.defaultSet;
+            } else {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private static class Node {
+        private final PermissionDescriptionNode description;
+        private final boolean defaultSet;
+        private Map<String, Node> children = Collections.emptyMap();
+
+        public Node(final String path, final String name, final PermissionDescriptionNode description) {
+            this.description = description;
+            this.defaultSet = getDefaultSet(name, description);
+
+            if (path != null) {
+                PermissionIndex.register(path);
+            }
+
+            if (description instanceof MapPermissionDescriptionNode) {
+                MapPermissionDescriptionNode map = (MapPermissionDescriptionNode)description;
+                for (String childName : map.getNames()) {
+                    addChild(path, childName, map.getNode(childName));
+                }
+            }
+        }
+
+        public void addChild(final String parentPath, final String name, final PermissionDescriptionNode childDescription) {
+            if (children.isEmpty()) {
+                children = new HashMap<String, Node>();
+            }
+            String path = parentPath == null ? name : parentPath + "." + name;
+            children.put(name.intern(), new Node(path, name, childDescription));
+        }
+
+        public Node getChild(final String name) {
+            return children.get(name);
+        }
+
+        public boolean isMap() {
+            return description instanceof MapPermissionDescriptionNode;
+        }
+
+        public boolean isList() {
+            return description instanceof ListPermissionDescriptionNode;
+        }
+
+        public boolean isBoolean() {
+            return description instanceof BooleanPermissionDescriptionNode;
+        }
+
+        private static boolean getDefaultSet(final String name, final PermissionDescriptionNode description) {
+            if (description instanceof BooleanPermissionDescriptionNode) {
+                return (Boolean)description.getDefault();
+            }
+            if (description instanceof ListPermissionDescriptionNode) {
+                Object list = description.getDefault();
+                return list instanceof List<?> && ((List<?>)list).contains(name);
+            }
+            return false;
+        }
+    }
+}
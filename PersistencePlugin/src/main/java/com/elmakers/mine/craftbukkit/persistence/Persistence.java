@@ -4,7 +4,14 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.bukkit.Server;
@@ -15,16 +22,21 @@ import org.bukkit.util.BlockVector;
 import com.elmakers.mine.bukkit.persistence.EntityInfo;
 import com.elmakers.mine.bukkit.persistence.FieldInfo;
 import com.elmakers.mine.bukkit.persistence.MigrationInfo;
+import com.elmakers.mine.bukkit.persistence.PersistenceFuture;
+import com.elmakers.mine.bukkit.persistence.SessionRegistry;
 import com.elmakers.mine.bukkit.persistence.annotation.Migrate;
 import com.elmakers.mine.bukkit.persistence.annotation.PersistClass;
 import com.elmakers.mine.bukkit.persistence.dao.CommandSenderData;
 import com.elmakers.mine.bukkit.persistence.exception.InvalidPersistedClassException;
 import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
+import com.elmakers.mine.bukkit.utilities.PluginDataIndex;
 import com.elmakers.mine.bukkit.utilities.PluginUtilities;
+import com.elmakers.mine.craftbukkit.persistence.core.BackupTask;
 import com.elmakers.mine.craftbukkit.persistence.core.PersistedClass;
 import com.elmakers.mine.craftbukkit.persistence.core.Schema;
 import com.elmakers.mine.craftbukkit.persistence.data.DataStore;
 import com.elmakers.mine.craftbukkit.persistence.data.sql.SqlLiteStore;
+import com.elmakers.mine.craftbukkit.persistence.metrics.MetricsRegistry;
 
 /** 
  * The main Persistence interface.
@@ -46,7 +58,12 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 	 */
 	protected Persistence()
 	{
-		this.server = PersistencePlugin.getInstance().getServer();
+		this(PersistencePlugin.getInstance().getServer());
+	}
+	
+	protected Persistence(Server server)
+	{
+		this.server = server;
 	}
 	
 	/**
@@ -55,17 +72,63 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 	 * Pass in your own plugin instance for access to data-driven in-game message strings and commands,
 	 * and other useful utilities.
 	 * 
+	 * There is one PluginUtilities instance per plugin, so this may be called as often as needed.
+	 * 
 	 * @param plugin The plugin for which to retrieve messages and commands
 	 * @return A PluginUtilities instance for sending messages and processing commands
 	 */
 	public PluginUtilities getUtilities(Plugin plugin)
 	{
-		PluginUtilities utilities = new PluginUtilities(plugin, this);
+		String pluginName = plugin.getDescription().getName();
+		PluginUtilities utilities = utilitiesMap.get(pluginName);
+		
+		// A reloaded plugin gets a new instance
+		if (utilities != null && utilities.getOwningPlugin() == plugin)
+		{
+			return utilities;
+		}
+		
+		utilities = new PluginUtilities(plugin, this, getPluginIndex());
+		
+		// Cache this before loading permissions, the permission manager may ask for it
+		utilitiesMap.put(pluginName, utilities);
+		
 		// TODO: This should be temporary...
 		utilities.loadPermissions(PersistencePlugin.getInstance().getPermissions());
 		return utilities;
 	}
 	
+	/**
+	 * Retrieve the index of stored messages and commands by plugin.
+	 * 
+	 * This is used by PluginUtilities to bind each plugin's messages and commands.
+	 * 
+	 * @return The plugin data index
+	 */
+	public PluginDataIndex getPluginIndex()
+	{
+		synchronized (utilitiesLock)
+		{
+			if (pluginIndex == null)
+			{
+				pluginIndex = new PluginDataIndex(this);
+			}
+			return pluginIndex;
+		}
+	}
+	
+	/**
+	 * Retrieve the sessions of online players.
+	 * 
+	 * Use this to get an online player's data without looking it up by name.
+	 * 
+	 * @return The session registry
+	 */
+	public SessionRegistry getSessions()
+	{
+		return sessions;
+	}
+	
 	/**
 	 * Retrieve the Logger that Persistence uses for debug messages and errors.
 	 * 
@@ -266,17 +329,264 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 		}
 	}
 	
+	/**
+	 * Run a task on the Persistence worker thread.
+	 * 
+	 * Tasks are run in order, one at a time, after any pending async requests.
+	 * 
+	 * @param <T> The type of result
+	 * @param task The task to run
+	 * @return A future that completes with the task's result
+	 */
+	public <T> PersistenceFuture<T> submit(final Callable<T> task)
+	{
+		final PersistenceFuture<T> future = new PersistenceFuture<T>(mainThreadExecutor);
+		try
+		{
+			getWorker().execute(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						future.complete(task.call());
+					}
+					catch (Throwable ex)
+					{
+						future.fail(ex);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException ex)
+		{
+			future.fail(ex);
+		}
+		return future;
+	}
+	
+	/**
+	 * Retrieve an instance of the specified type, without blocking the calling thread.
+	 * 
+	 * If the class has not been loaded yet, the load happens on the Persistence worker thread.
+	 * Callbacks added to the returned future are run on the server's main thread.
+	 * 
+	 * @param <T> The base type of object. This is an invisible parameter, you don't need to worry about it
+	 * @param id The id of the object to lookup
+	 * @param objectType The type of object to search for
+	 * @return A future that completes with the object instance, or null if not found
+	 * @see #get(Object, Class)
+	 */
+	public <T> PersistenceFuture<T> getAsync(final Object id, final Class<T> objectType)
+	{
+		if (isLoaded(objectType))
+		{
+			return completed(get(id, objectType));
+		}
+		return submit(new Callable<T>()
+		{
+			public T call()
+			{
+				return get(id, objectType);
+			}
+		});
+	}
+	
+	/**
+	 * Retrieve all instances of the specified type, without blocking the calling thread.
+	 * 
+	 * @param <T> The base type of object. This is an invisible parameter, you don't need to worry about it
+	 * @param objectType The type of object to retrieve
+	 * @return A future that completes with a new List of object instances
+	 * @see #getAll(List, Class)
+	 */
+	public <T> PersistenceFuture<List<T>> getAllAsync(final Class<T> objectType)
+	{
+		Callable<List<T>> getAll = new Callable<List<T>>()
+		{
+			public List<T> call()
+			{
+				List<T> objects = new ArrayList<T>();
+				getAll(objects, objectType);
+				return objects;
+			}
+		};
+		if (isLoaded(objectType))
+		{
+			return completed(call(getAll));
+		}
+		return submit(getAll);
+	}
+	
+	/**
+	 * Add an object to the data store, without blocking the calling thread.
+	 * 
+	 * @param persist The object to persist
+	 * @return A future that completes with false if the storage failed
+	 * @see #put(Object)
+	 */
+	public PersistenceFuture<Boolean> putAsync(final Object persist)
+	{
+		if (persist == null || isLoaded(persist.getClass()))
+		{
+			return completed(put(persist));
+		}
+		return submit(new Callable<Boolean>()
+		{
+			public Boolean call()
+			{
+				return put(persist);
+			}
+		});
+	}
+	
+	/**
+	 * Save all cached data on the Persistence worker thread.
+	 * 
+	 * Objects should not be modified while a save is in progress, or the changes
+	 * may not be saved until the next save.
+	 * 
+	 * @return A future that completes when the save is finished
+	 * @see #save()
+	 */
+	public PersistenceFuture<Void> saveAsync()
+	{
+		return submit(new Callable<Void>()
+		{
+			public Void call()
+			{
+				save();
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Load all of a class's data into the cache, on the Persistence worker thread.
+	 * 
+	 * Call this on startup, or before a player joins, so that the first synchronous
+	 * get or put of this class does not have to wait on the data store.
+	 * 
+	 * @param persistType The type of object to load
+	 * @return A future that completes with the loaded PersistedClass
+	 */
+	public PersistenceFuture<PersistedClass> loadClassAsync(final Class<? extends Object> persistType)
+	{
+		return submit(new Callable<PersistedClass>()
+		{
+			public PersistedClass call() throws InvalidPersistedClassException
+			{
+				PersistedClass persistedClass = getPersistedClass(persistType);
+				if (persistedClass == null)
+				{
+					throw new InvalidPersistedClassException(persistType, "Not a persistable class");
+				}
+				persistedClass.preload();
+				return persistedClass;
+			}
+		});
+	}
+	
+	/**
+	 * Write a cache snapshot of each schema.
+	 * 
+	 * Snapshots are used on startup to hydrate the cache without querying each table.
+	 * A snapshot is ignored if the data store has been modified since it was written.
+	 * 
+	 * This should be called after a save, when shutting down cleanly.
+	 */
+	public void saveSnapshots()
+	{
+		for (Schema schema : schemaMap.values())
+		{
+			schema.writeSnapshot();
+		}
+	}
+	
+	/**
+	 * Create a task that will back up the specified schemas.
+	 * 
+	 * Backups are written to the backups folder under the Persistence data folder.
+	 * The returned task should be run on a background thread.
+	 * 
+	 * @param schemas The schemas to back up
+	 * @param retention The number of backups to keep for each schema, or 0 to keep all backups
+	 * @return A backup task, ready to run
+	 */
+	public BackupTask createBackup(List<Schema> schemas, int retention)
+	{
+		return new BackupTask(schemas, new File(dataFolder, BACKUP_FOLDER), retention);
+	}
+	
+	/**
+	 * Reload any data that has changed in the data store.
+	 * 
+	 * Only rows with a change stamp newer than the last one loaded are read, and these are
+	 * merged into the existing cached objects, so references to them stay valid.
+	 * 
+	 * Entities that have not been loaded yet are skipped, they will be loaded when first used.
+	 * 
+	 * @return The number of objects that were reloaded or removed
+	 */
+	public int reload()
+	{
+		int changed = 0;
+		for (PersistedClass persistedClass : persistedClassMap.values())
+		{
+			int count = persistedClass.reload();
+			if (count > 0)
+			{
+				changed += count;
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * Get a new change stamp, to mark saved rows with.
+	 * 
+	 * Stamps are based on the current time, but are always increasing, even if the clock moves backwards.
+	 * 
+	 * @return A change stamp, greater than any stamp previously returned
+	 */
+	public long nextChangeStamp()
+	{
+		synchronized(changeStampLock)
+		{
+			lastChangeStamp = Math.max(System.currentTimeMillis(), lastChangeStamp + 1);
+			return lastChangeStamp;
+		}
+	}
 	
 	/**
 	 * Clear all data.
 	 * 
-	 * This is currently the method used to clear the cache and reload data, however it is flawed.
-	 * It will probably be replaced with a "reload" method eventually.
+	 * This drops all entities and cached objects, so any references held to them are no longer managed.
+	 * 
+	 * Use reload() to pick up changes from the data store instead.
 	 */
 	public void clear()
 	{
+		for (PersistedClass persistedClass : persistedClassMap.values())
+		{
+			MetricsRegistry.unregister(MetricsRegistry.getEntityName(persistedClass.getSchemaName(), persistedClass.getName()));
+		}
+		for (Schema schema : schemaMap.values())
+		{
+			MetricsRegistry.unregister(MetricsRegistry.getStoreName(schema.getName()));
+		}
 		persistedClassMap.clear();
 		schemaMap.clear();
+		
+		// Cached objects are gone, so utilities need to re-bind
+		utilitiesMap.clear();
+		synchronized (utilitiesLock)
+		{
+			pluginIndex = null;
+		}
+		
+		// Sessions hold cached PlayerData, they will re-open on the next lookup
+		sessions.clear();
 	}
 	
 	/**
@@ -306,6 +616,30 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 		return instance;
 	}
 	
+	/**
+	 * Create the singleton instance without a PersistencePlugin, storing data in the given folder.
+	 * 
+	 * This is for tools and benchmarks that use Persistence outside of a server.
+	 * It must be called before anything else asks for the instance.
+	 * 
+	 * @param dataFolder The folder to store data in
+	 * @return the new Persistence singleton instance
+	 * @throws IllegalStateException if the instance already exists
+	 */
+	public static Persistence createInstance(File dataFolder)
+	{
+		synchronized(instanceLock)
+		{
+			if (instance != null)
+			{
+				throw new IllegalStateException("Persistence has already been created");
+			}
+			instance = new Persistence(null);
+			instance.initialize(dataFolder, null);
+		}
+		return instance;
+	}
+	
 	/**
 	 * Retrieve a Schema definition, with a list of PersistedClasses.
 	 * 
@@ -333,6 +667,18 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 		return schemaList;
 	}
 	
+	/**
+	 * Retrieve a list of all persisted classes, in all schemas.
+	 * 
+	 * @return The list of persisted classes
+	 */
+	public List<PersistedClass> getPersistedClasses()
+	{
+		List<PersistedClass> classList = new ArrayList<PersistedClass>();
+		classList.addAll(persistedClassMap.values());
+		return classList;
+	}
+	
 	/**
 	 * Retrieve or create a persisted class, using the annotations built into the class.
 	 * 
@@ -388,6 +734,7 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 		persistedClass.setSchema(schema);
 		
 		persistedClassMap.put(persistType, persistedClass);
+		MetricsRegistry.register(persistedClass.getMetrics(), MetricsRegistry.getEntityName(schemaName, persistedClass.getName()));
 		
 		// Deferred bind refernces- to avoid circular reference issues
 		persistedClass.bindReferences();
@@ -404,7 +751,9 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 			DataStore store = createStore();
 			store.initialize(schemaName, this);
 			schema = new Schema(schemaName, store);
+			schema.setSnapshotFile(new File(dataFolder, schemaName + ".snapshot"));
 			schemaMap.put(schemaName, schema);
+			MetricsRegistry.register(store.getMetrics(), MetricsRegistry.getStoreName(schemaName));
 		}
 		return schema;
 	}
@@ -448,6 +797,86 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 	 * Protected members
 	 */
 	
+	protected boolean isLoaded(Class<? extends Object> persistType)
+	{
+		PersistedClass persistedClass = persistedClassMap.get(persistType);
+		return persistedClass != null && persistedClass.isLoaded();
+	}
+	
+	protected <T> PersistenceFuture<T> completed(T result)
+	{
+		PersistenceFuture<T> future = new PersistenceFuture<T>(mainThreadExecutor);
+		future.complete(result);
+		return future;
+	}
+	
+	protected <T> T call(Callable<T> task)
+	{
+		try
+		{
+			return task.call();
+		}
+		catch (Exception ex)
+		{
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Each store has a single connection, so there is only one worker thread.
+	 * Requests are handled in the order they are submitted.
+	 * 
+	 * No new requests are accepted while shutting down.
+	 */
+	protected ExecutorService getWorker()
+	{
+		synchronized (workerLock)
+		{
+			if (shuttingDown)
+			{
+				throw new RejectedExecutionException("Persistence is shutting down");
+			}
+			if (worker == null)
+			{
+				worker = Executors.newSingleThreadExecutor(new ThreadFactory()
+				{
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "Persistence worker");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			return worker;
+		}
+	}
+	
+	protected void shutdownWorker()
+	{
+		ExecutorService stopping;
+		synchronized (workerLock)
+		{
+			stopping = worker;
+			worker = null;
+		}
+		if (stopping == null) return;
+		
+		stopping.shutdown();
+		try
+		{
+			if (!stopping.awaitTermination(WORKER_SHUTDOWN_SECONDS, TimeUnit.SECONDS))
+			{
+				log.warning("Persistence: Timed out waiting for pending requests to finish");
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
 	protected DataStore createStore()
 	{
 		// Only SqlLite supported for now!
@@ -525,8 +954,40 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 		return sender;
 	}
 	
+	/**
+	 * Save everything and disconnect, on server shutdown.
+	 * 
+	 * Pending async requests are finished first, so that anything they put is saved.
+	 * The main thread is busy shutting down and won't run scheduled tasks, so any
+	 * callbacks are run right away, on whichever thread completes the request.
+	 */
+	public void shutdown()
+	{
+		synchronized (workerLock)
+		{
+			shuttingDown = true;
+		}
+		try
+		{
+			shutdownWorker();
+			save();
+			saveSnapshots();
+			clear();
+			disconnect();
+		}
+		finally
+		{
+			synchronized (workerLock)
+			{
+				shuttingDown = false;
+			}
+		}
+	}
+	
 	public void disconnect()
 	{
+		shutdownWorker();
+		
 		for (Schema schema : schemaMap.values())
 		{
 			schema.disconnect();
@@ -549,6 +1010,11 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 	
 	private File dataFolder = null;
 	
+	private static final String BACKUP_FOLDER = "backups";
+	
+	private long lastChangeStamp = 0;
+	private final Object changeStampLock = new Object();
+	
 	private static boolean allowOpsSUAccess = true;
 	
 	private static final Logger log = Logger.getLogger("Minecraft");
@@ -556,9 +1022,35 @@ public class Persistence implements com.elmakers.mine.bukkit.persistence.Persist
 	private final Map<Class<? extends Object>, PersistedClass> persistedClassMap = new ConcurrentHashMap<Class<? extends Object>, PersistedClass>(); 
 	private final Map<String, Schema> schemaMap = new ConcurrentHashMap<String, Schema>();
 	
+	private final Map<String, PluginUtilities> utilitiesMap = new ConcurrentHashMap<String, PluginUtilities>();
+	private PluginDataIndex pluginIndex = null;
+	private final Object utilitiesLock = new Object();
+	
+	private final SessionRegistry sessions = new SessionRegistry(this);
+	
 	private static Persistence instance = null;
 	private Server server;
 	
+	private ExecutorService worker = null;
+	private volatile boolean shuttingDown = false;
+	private final Object workerLock = new Object();
+	private static final long WORKER_SHUTDOWN_SECONDS = 30;
+	
+	// Completions are delivered on the main thread, when running in a server that isn't shutting down
+	private final Executor mainThreadExecutor = new Executor()
+	{
+		public void execute(Runnable task)
+		{
+			PersistencePlugin plugin = PersistencePlugin.getInstance();
+			if (shuttingDown || server == null || plugin == null || !plugin.isEnabled())
+			{
+				task.run();
+				return;
+			}
+			server.getScheduler().scheduleSyncDelayedTask(plugin, task);
+		}
+	};
+	
 	// Locks for manual synchronization
 	
 	// Make sure that we don't create a persisted class twice at the same time
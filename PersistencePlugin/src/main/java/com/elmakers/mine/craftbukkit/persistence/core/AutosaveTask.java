@@ -0,0 +1,162 @@
+package com.elmakers.mine.craftbukkit.persistence.core;
+
+import java.util.List;
+
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
+import com.elmakers.mine.craftbukkit.persistence.data.DataStore;
+
+/**
+ * Saves dirty objects a little at a time, under a time budget.
+ * 
+ * This is meant to be run on the main thread, once per tick. Each run saves
+ * slices of dirty objects from one class after another, round-robin, until
+ * the budget is used up. The next run picks up with the next class.
+ * 
+ * The slice size adapts to the measured save time. Each save has a fixed cost
+ * as well as a cost per object, so the slice is scaled by how much of the budget
+ * the last full slice used, rather than estimated from a per-object time alone.
+ * A slow store will save fewer objects per tick, but at least one object is saved
+ * each tick, so dirty data is always written out eventually.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class AutosaveTask implements Runnable
+{
+	public AutosaveTask(Persistence persistence)
+	{
+		this.persistence = persistence;
+	}
+	
+	/**
+	 * Set the time budget for each tick.
+	 * 
+	 * @param budget The budget in milliseconds, or 0 to disable autosave
+	 */
+	public void setBudget(int budget)
+	{
+		this.budget = Math.max(budget, 0);
+	}
+	
+	public int getBudget()
+	{
+		return budget;
+	}
+	
+	public void run()
+	{
+		if (budget <= 0) return;
+		
+		List<PersistedClass> classes = persistence.getPersistedClasses();
+		if (classes.size() == 0) return;
+		
+		long start = System.nanoTime();
+		long deadline = start + budget * NANOS_PER_MILLI;
+		for (int visited = 0; visited < classes.size(); visited++)
+		{
+			long now = System.nanoTime();
+			if (now >= deadline) break;
+			
+			PersistedClass persisted = classes.get(nextClass % classes.size());
+			nextClass = (nextClass + 1) % classes.size();
+			if (!persisted.isDirty()) continue;
+			
+			DataStore store = persisted.getDefaultStore();
+			if (store == null) continue;
+			
+			int requested = getSliceSize(deadline - now);
+			int saved = persisted.save(store, requested);
+			if (saved > 0)
+			{
+				recordSave(saved, requested, System.nanoTime() - now);
+			}
+		}
+		lastRunTime = System.nanoTime() - start;
+	}
+	
+	/**
+	 * Count the objects waiting to be saved.
+	 * 
+	 * This checks every cached object, so it should not be called every tick.
+	 * 
+	 * @return The number of dirty objects
+	 */
+	public int getBacklog()
+	{
+		int backlog = 0;
+		for (PersistedClass persisted : persistence.getPersistedClasses())
+		{
+			backlog += persisted.getDirtyCount();
+		}
+		return backlog;
+	}
+	
+	public long getSavedCount()
+	{
+		return savedCount;
+	}
+	
+	/**
+	 * The average time to save one object, including the per-save overhead.
+	 * 
+	 * @return The estimated save time in nanoseconds
+	 */
+	public long getObjectSaveTime()
+	{
+		return objectSaveTime;
+	}
+	
+	/**
+	 * The time the last run took.
+	 * 
+	 * @return The time in nanoseconds
+	 */
+	public long getLastRunTime()
+	{
+		return lastRunTime;
+	}
+	
+	public int getSliceSize()
+	{
+		return sliceSize;
+	}
+	
+	/**
+	 * Scale the slice size to the time left in this run.
+	 * 
+	 * @param remaining The time left in nanoseconds
+	 * @return The number of objects to save
+	 */
+	protected int getSliceSize(long remaining)
+	{
+		long size = sliceSize * remaining / (budget * NANOS_PER_MILLI);
+		return (int)Math.max(MIN_SLICE_SIZE, Math.min(sliceSize, size));
+	}
+	
+	protected void recordSave(int objectCount, int requested, long elapsed)
+	{
+		savedCount += objectCount;
+		objectSaveTime = (objectSaveTime * 7 + elapsed / objectCount) / 8;
+		
+		// A short slice says nothing about how long a full one would take
+		if (objectCount < requested && elapsed < budget * NANOS_PER_MILLI) return;
+		
+		// Fit the slice to the budget, shrinking right away but growing at most 2x
+		long fitted = (long)objectCount * budget * NANOS_PER_MILLI / Math.max(elapsed, 1);
+		fitted = Math.min(fitted, (long)sliceSize * 2);
+		sliceSize = (int)Math.max(MIN_SLICE_SIZE, Math.min(MAX_SLICE_SIZE, fitted));
+	}
+	
+	protected final Persistence		persistence;
+	protected volatile int			budget			= 0;
+	protected int					nextClass		= 0;
+	protected volatile long			savedCount		= 0;
+	protected volatile int			sliceSize		= INITIAL_SLICE_SIZE;
+	protected volatile long			objectSaveTime	= 0;
+	protected volatile long			lastRunTime		= 0;
+	
+	protected static final long		NANOS_PER_MILLI		= 1000000;
+	protected static final int		INITIAL_SLICE_SIZE	= 50;
+	protected static final int		MIN_SLICE_SIZE		= 1;
+	protected static final int		MAX_SLICE_SIZE		= 1000;
+}
@@ -0,0 +1,173 @@
+package com.elmakers.mine.craftbukkit.persistence.core;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
+
+/**
+ * Backs up a list of schemas, and rotates old backups.
+ * 
+ * This is meant to be run on a background thread. Only one backup may run 
+ * at a time- if another backup is already running, this task will do nothing.
+ * 
+ * Backups are named schema-yyyyMMdd-HHmmss.db, so they sort by age.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class BackupTask implements Runnable
+{
+	public BackupTask(List<Schema> schemas, File backupFolder, int retention)
+	{
+		this.schemas = new ArrayList<Schema>(schemas);
+		this.backupFolder = backupFolder;
+		this.retention = retention;
+	}
+	
+	public static boolean isRunning()
+	{
+		return running.get();
+	}
+	
+	/**
+	 * Set a callback to be run when this backup completes.
+	 * 
+	 * The callback is run on the backup thread.
+	 * 
+	 * @param onComplete The callback to run
+	 */
+	public void setOnComplete(Runnable onComplete)
+	{
+		this.onComplete = onComplete;
+	}
+	
+	public void run()
+	{
+		if (!running.compareAndSet(false, true))
+		{
+			log.info("Persistence: A backup is already running, skipping");
+			return;
+		}
+		
+		try
+		{
+			backupFolder.mkdirs();
+			String timestamp = new SimpleDateFormat(TIMESTAMP_FORMAT).format(new Date());
+			for (Schema schema : schemas)
+			{
+				File backupFile = new File(backupFolder, schema.getName() + "-" + timestamp + BACKUP_EXTENSION);
+				long backupStart = System.currentTimeMillis();
+				boolean success = schema.getStore().backup(backupFile);
+				long backupTime = System.currentTimeMillis() - backupStart;
+				
+				BackupResult result = new BackupResult(schema.getName(), backupFile, success, backupTime);
+				results.add(result);
+				if (success)
+				{
+					log.info("Persistence: Backed up " + schema.getName() + " to " + backupFile.getName() + ", " + result.getSize() + " bytes in " + backupTime + "ms");
+					rotate(schema.getName());
+				}
+			}
+		}
+		finally
+		{
+			running.set(false);
+		}
+		
+		if (onComplete != null)
+		{
+			onComplete.run();
+		}
+	}
+	
+	public List<BackupResult> getResults()
+	{
+		return results;
+	}
+	
+	protected void rotate(final String schemaName)
+	{
+		if (retention <= 0) return;
+		
+		File[] backups = backupFolder.listFiles(new FilenameFilter()
+		{
+			public boolean accept(File dir, String name)
+			{
+				return name.startsWith(schemaName + "-") && name.endsWith(BACKUP_EXTENSION);
+			}
+		});
+		if (backups == null || backups.length <= retention) return;
+		
+		// Names sort by timestamp, oldest first
+		Arrays.sort(backups);
+		for (int i = 0; i < backups.length - retention; i++)
+		{
+			if (backups[i].delete())
+			{
+				log.info("Persistence: Removed old backup " + backups[i].getName());
+			}
+		}
+	}
+	
+	public static class BackupResult
+	{
+		public BackupResult(String schemaName, File file, boolean success, long time)
+		{
+			this.schemaName = schemaName;
+			this.file = file;
+			this.success = success;
+			this.time = time;
+			this.size = success ? file.length() : 0;
+		}
+		
+		public String getSchemaName()
+		{
+			return schemaName;
+		}
+		
+		public File getFile()
+		{
+			return file;
+		}
+		
+		public boolean isSuccess()
+		{
+			return success;
+		}
+		
+		public long getTime()
+		{
+			return time;
+		}
+		
+		public long getSize()
+		{
+			return size;
+		}
+		
+		protected final String	schemaName;
+		protected final File	file;
+		protected final boolean	success;
+		protected final long	time;
+		protected final long	size;
+	}
+	
+	protected final List<Schema>			schemas;
+	protected final File					backupFolder;
+	protected final int						retention;
+	protected final List<BackupResult>		results				= new ArrayList<BackupResult>();
+	protected Runnable						onComplete			= null;
+	
+	protected static final String			TIMESTAMP_FORMAT	= "yyyyMMdd-HHmmss";
+	protected static final String			BACKUP_EXTENSION	= ".db";
+	protected static final AtomicBoolean	running				= new AtomicBoolean(false);
+	protected static Logger					log					= PersistencePlugin.getLogger();
+}
@@ -4,8 +4,10 @@ class CachedObject
 {
 	private Object object;
 	private boolean cached;
-	private boolean dirty;
+	private volatile boolean dirty;
 	private long cacheTime;
+	private long changeStamp;
+	private volatile long version;
 	
 	public CachedObject(Object o)
 	{
@@ -41,19 +43,58 @@ class CachedObject
 		return cacheTime;
 	}
 	
+	/**
+	 * The change stamp of this object's row, as of the last load or save.
+	 * 
+	 * @return The change stamp, or 0 if this object has never been stored
+	 */
+	public long getChangeStamp()
+	{
+		return changeStamp;
+	}
+	
+	public void setChangeStamp(long stamp)
+	{
+		changeStamp = stamp;
+	}
+	
 	public void setObject(Object o)
 	{
 		object = o;
+		version++;
 		dirty = true;
 		updateCacheTime();
 	}
 	
+	/**
+	 * Incremented every time this object is put, used to tell if it changed during a save.
+	 * 
+	 * @return The current version of this object
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+	
 	public void setSaved()
 	{
 		dirty = false;
 		updateCacheTime();
 	}
 	
+	/**
+	 * Mark this object as saved, unless it has been put again since the save started.
+	 * 
+	 * @param savedVersion The version of the object that was saved
+	 */
+	public void setSaved(long savedVersion)
+	{
+		if (version == savedVersion)
+		{
+			setSaved();
+		}
+	}
+	
 	protected void updateCacheTime()
 	{
 		cacheTime = System.currentTimeMillis();
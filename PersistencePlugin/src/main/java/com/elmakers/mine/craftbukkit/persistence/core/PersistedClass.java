@@ -4,8 +4,10 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
@@ -19,11 +21,15 @@ import com.elmakers.mine.bukkit.persistence.dao.Persisted;
 import com.elmakers.mine.bukkit.persistence.exception.InvalidDataException;
 import com.elmakers.mine.bukkit.persistence.exception.InvalidPersistedClassException;
 import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
+import com.elmakers.mine.craftbukkit.persistence.Persistence;
 import com.elmakers.mine.craftbukkit.persistence.data.DataField;
 import com.elmakers.mine.craftbukkit.persistence.data.DataRow;
 import com.elmakers.mine.craftbukkit.persistence.data.DataStore;
 import com.elmakers.mine.craftbukkit.persistence.data.DataTable;
 import com.elmakers.mine.craftbukkit.persistence.data.DataType;
+import com.elmakers.mine.craftbukkit.persistence.data.snapshot.SnapshotReader;
+import com.elmakers.mine.craftbukkit.persistence.data.snapshot.SnapshotWriter;
+import com.elmakers.mine.craftbukkit.persistence.metrics.EntityMetrics;
 
 /**
  * Represents and manages a single persisted class.
@@ -334,6 +340,7 @@ public class PersistedClass
 		{
 			// Try to do some fancy casting.
 			// This is mainly here to avoid the Integer/int problem.
+			metrics.recordIdConversion();
 			
 			DataField requestId = new DataField(id);
 			id = requestId.getValue(idField.getType());
@@ -376,6 +383,15 @@ public class PersistedClass
 			result = getById(idField, concreteIdMap, id);
 		}
 		
+		if (result != null)
+		{
+			metrics.recordHit();
+		}
+		else
+		{
+			metrics.recordMiss();
+		}
+		
 		return result;
 	}
 	
@@ -404,6 +420,110 @@ public class PersistedClass
 		cacheMap.clear();
 		concreteIdMap.clear();
 		loadState = LoadState.UNLOADED;
+		loadedStamp = 0;
+	}
+	
+	public int reload()
+	{
+		try
+		{
+			return reload(getDefaultStore());
+		}
+		catch (InvalidDataException e)
+		{
+			log.warning("Persistence: Error reloading " + schemaName + "." + name + ": " + e.getMessage());
+			return -1;
+		}
+	}
+	
+	/**
+	 * Reload any objects that have changed in the data store since they were loaded.
+	 * 
+	 * Only rows with a newer change stamp are read. Changed objects are updated in place,
+	 * so existing references to them stay valid, and new objects are added to the cache.
+	 * Objects that have been deleted from the store are dropped from the cache.
+	 * 
+	 * Objects with unsaved changes are left alone, they will overwrite the stored data on the next save.
+	 * 
+	 * Anything else writing to the store must update the change stamp of each row it changes,
+	 * including when it only changes that object's list data.
+	 * 
+	 * @param store The store to reload from
+	 * @return The number of objects reloaded or removed, or -1 on error
+	 * @throws InvalidDataException
+	 */
+	public int reload(DataStore store) throws InvalidDataException
+	{
+		// Unloaded entities will pick up any changes when they're first used
+		if (loadState != LoadState.LOADED) return 0;
+		if (!store.connect()) return -1;
+		
+		DataTable classTable = getClassTable();
+		if (!store.loadChanged(classTable, CHANGE_STAMP_COLUMN, loadedStamp)) return -1;
+		metrics.recordRowsLoaded(classTable.getRows().size());
+		
+		PersistedField concreteIdField = getConcreteIdField();
+		List<Object> changedInstances = new ArrayList<Object>();
+		List<Object> changedIds = new ArrayList<Object>();
+		long newStamp = loadedStamp;
+		
+		PersistedObject.beginDefer();
+		for (DataRow row : classTable.getRows())
+		{
+			long stamp = getChangeStamp(row);
+			if (stamp > newStamp) newStamp = stamp;
+			
+			DataField idData = row.get(idField.getDataName());
+			if (idData == null) continue;
+			Object concreteId = idData.getValue();
+			
+			// Don't bring back objects that are waiting to be deleted
+			if (getById(concreteIdField, removedMap, concreteId) != null) continue;
+			
+			CachedObject cached = getCached(concreteIdField, concreteId);
+			if (cached == null)
+			{
+				Object newInstance = createInstance(row);
+				if (newInstance == null) continue;
+				
+				if (idField.isAutogenerated())
+				{
+					int id = (Integer)idField.get(newInstance);
+					if (id >= maxId) maxId = id + 1;
+				}
+				cached = addToCache(newInstance, concreteId);
+				if (cached == null) continue;
+			}
+			else
+			{
+				// Skip unsaved changes, and rows we wrote ourselves
+				if (cached.isDirty() || cached.getChangeStamp() == stamp) continue;
+				load(row, cached.getObject());
+			}
+			
+			cached.setChangeStamp(stamp);
+			changedInstances.add(cached.getObject());
+			changedIds.add(concreteId);
+		}
+		PersistedObject.endDefer();
+		
+		// Reload lists for changed objects only
+		if (changedInstances.size() > 0 && externalFields.size() > 0)
+		{
+			PersistedList.beginDefer();
+			for (PersistedList list : externalFields)
+			{
+				DataTable listTable = getListTable(list);
+				if (!store.loadIds(listTable, getContainedIdName(), changedIds)) continue;
+				list.load(listTable, changedInstances);
+			}
+			PersistedList.endDefer();
+		}
+		
+		loadedStamp = newStamp;
+		int removedCount = removeDeleted(store);
+		
+		return changedInstances.size() + removedCount;
 	}
 	
 	public void reset()
@@ -423,12 +543,15 @@ public class PersistedClass
 		
 		DataTable resetTable = getClassTable(); 
 		store.drop(resetTable.getName());
+		invalidateSnapshot(resetTable.getName());
+		loadedStamp = 0;
 		
 		// Reset any list sub-tables
 		for (PersistedList list : externalFields)
 		{
 			DataTable listTable = getListTable(list);
 			store.drop(listTable.getName());
+			invalidateSnapshot(listTable.getName());
 		}
 		
 		maxId = 1;
@@ -439,6 +562,87 @@ public class PersistedClass
 		return dirty;
 	}
 	
+	public int getCachedCount()
+	{
+		return cacheMap.size();
+	}
+	
+	/**
+	 * Count the objects of this type, without loading them.
+	 * 
+	 * If the cache has been loaded, this is the number of cached objects.
+	 * Otherwise, the rows are counted in the data store.
+	 * 
+	 * @return The number of objects, or -1 on error
+	 */
+	public int count()
+	{
+		if (isLoaded())
+		{
+			return cacheMap.size();
+		}
+		
+		DataStore store = getDefaultStore();
+		if (store == null || !store.connect()) return -1;
+		if (!store.tableExists(getTableName())) return 0;
+		
+		return store.count(getTableName());
+	}
+	
+	public int getDirtyCount()
+	{
+		int dirtyCount = 0;
+		for (CachedObject cached : cacheMap.values())
+		{
+			if (cached.isDirty())
+			{
+				dirtyCount++;
+			}
+		}
+		return dirtyCount;
+	}
+	
+	/**
+	 * The number of loaded String values that were shared, over all dedupe fields.
+	 * 
+	 * @return The number of duplicate Strings avoided
+	 */
+	public long getDedupedCount()
+	{
+		long dedupedCount = 0;
+		for (PersistedField field : fields)
+		{
+			if (field.isDeduplicated())
+			{
+				dedupedCount += field.getDictionary().getDedupedCount();
+			}
+		}
+		return dedupedCount;
+	}
+	
+	/**
+	 * An estimate of the heap saved by sharing String values, over all dedupe fields.
+	 * 
+	 * @return The approximate number of bytes saved
+	 */
+	public long getDedupedBytes()
+	{
+		long savedBytes = 0;
+		for (PersistedField field : fields)
+		{
+			if (field.isDeduplicated())
+			{
+				savedBytes += field.getDictionary().getSavedBytes();
+			}
+		}
+		return savedBytes;
+	}
+	
+	public EntityMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
 	public int getFieldCount()
 	{
 		return fields.size();
@@ -494,16 +698,47 @@ public class PersistedClass
 		if (loadState != LoadState.LOADED) return;
 		if (!dirty) return;
 		
-		// Drop removed objects
-		Collection<CachedObject> removedList = removedMap.values();
-		if (removedList.size() > 0)
+		// Saves may come from the main thread or from the async worker
+		synchronized(saveLock)
 		{
-			DataTable clearTable = getClassTable();
-			populate(clearTable, removedList);			
-			store.clear(clearTable);
-			
-			removedMap.clear();
+			saveDirty(store);
 		}
+	}
+	
+	/**
+	 * Save some of this class' dirty objects.
+	 * 
+	 * This is used by the autosave task to spread a save out over several ticks.
+	 * Removed objects are always deleted in full. If objects are left unsaved,
+	 * this class stays dirty.
+	 * 
+	 * @param store The store to save to
+	 * @param maxObjects The maximum number of objects to save
+	 * @return The number of objects saved or deleted
+	 */
+	public int save(DataStore store, int maxObjects)
+	{
+		if (loadState != LoadState.LOADED) return 0;
+		if (!dirty) return 0;
+		
+		synchronized(saveLock)
+		{
+			return saveDirty(store, maxObjects);
+		}
+	}
+	
+	protected void saveDirty(DataStore store)
+	{
+		saveDirty(store, Integer.MAX_VALUE);
+	}
+	
+	protected int saveDirty(DataStore store, int maxObjects)
+	{
+		// Clear this first, so a put during the save will mark this class dirty again
+		dirty = false;
+		
+		// Drop removed objects
+		int removedCount = saveRemoved(store);
 		
 		// Save dirty objects
 		List<CachedObject> dirtyObjects = new ArrayList<CachedObject>();
@@ -511,12 +746,54 @@ public class PersistedClass
 		{
 			if (cached.isDirty())
 			{
+				if (dirtyObjects.size() >= maxObjects)
+				{
+					dirty = true;
+					break;
+				}
 				dirtyObjects.add(cached);
 			}
 		}
 		
-		save(dirtyObjects, store);
-		dirty = false;
+		// Saving an empty table would clear it
+		if (dirtyObjects.size() > 0)
+		{
+			save(dirtyObjects, store);
+		}
+		
+		return removedCount + dirtyObjects.size();
+	}
+	
+	protected int saveRemoved(DataStore store)
+	{
+		if (removedMap.size() == 0) return 0;
+		if (!store.connect()) return 0;
+		
+		List<Object> removedKeys = new ArrayList<Object>();
+		List<Object> removedIds = new ArrayList<Object>();
+		for (Map.Entry<Object, CachedObject> removed : removedMap.entrySet())
+		{
+			removedKeys.add(removed.getKey());
+			removedIds.add(getIdData(removed.getValue().getObject()));
+		}
+		
+		DataTable clearTable = getClassTable();
+		clearTable.addIdFieldName(idField.getDataName());
+		store.clearIds(clearTable, removedIds);
+		
+		for (PersistedList list : externalFields)
+		{
+			DataTable listTable = getListTable(list);
+			listTable.addIdFieldName(getContainedIdName());
+			store.clearIds(listTable, removedIds);
+		}
+		
+		// Anything removed during the save is left for next time
+		for (Object removedKey : removedKeys)
+		{
+			removedMap.remove(removedKey);
+		}
+		return removedIds.size();
 	}
 	
 	protected void populate(DataTable dataTable, Collection<CachedObject> instances)
@@ -525,6 +802,7 @@ public class PersistedClass
 		{
 			DataRow instanceRow = new DataRow(dataTable);
 			populate(instanceRow, instance.getObject());
+			instanceRow.add(new DataField(CHANGE_STAMP_COLUMN, DataType.LONG, instance.getChangeStamp()));
 			dataTable.addRow(instanceRow);	
 		}
 	}
@@ -554,10 +832,20 @@ public class PersistedClass
 	{
 		if (!store.connect()) return;
 		
+		long stamp = Persistence.getInstance().nextChangeStamp();
+		long[] versions = new long[instances.size()];
+		for (int i = 0; i < versions.length; i++)
+		{
+			CachedObject cached = instances.get(i);
+			cached.setChangeStamp(stamp);
+			versions[i] = cached.getVersion();
+		}
+		
 		// Save main class data
 		DataTable classTable = getClassTable();
 		populate(classTable, instances);
 		store.save(classTable);
+		metrics.recordRowsSaved(instances.size());
 		
 		// Save list data
 		for (PersistedList list : externalFields)
@@ -579,9 +867,10 @@ public class PersistedClass
 			store.save(listTable);
 		}	
 		
-		for (CachedObject cached : instances)
+		// Objects put again while saving stay dirty
+		for (int i = 0; i < versions.length; i++)
 		{
-			cached.setSaved();
+			instances.get(i).setSaved(versions[i]);
 		}
 	}
 	
@@ -616,13 +905,25 @@ public class PersistedClass
 	
 	protected void checkLoadCache(DataStore store) throws InvalidDataException
 	{
-		if (loadState == LoadState.UNLOADED && cacheObjects)
+		if (loadState == LoadState.LOADED || !cacheObjects) return;
+		
+		// If another thread is loading, wait for it to finish.
+		// One lock is shared by all classes, since loading one class may load the classes it references.
+		// A class already loading on this thread is skipped, to allow for circular references.
+		synchronized(loadLock)
 		{
+			if (loadState != LoadState.UNLOADED) return;
+			
 			loadState = LoadState.LOADING;
 			try
 			{
 				if (store.connect())
 				{
+					// Open the snapshot before validating, since migration may write to the store
+					if (schema != null)
+					{
+						schema.getSnapshot();
+					}
 					validateTables(store);
 					loadCache();
 					loadState = LoadState.LOADED;
@@ -636,27 +937,121 @@ public class PersistedClass
 		}
 	}
 	
+	/**
+	 * Make sure this class's data has been loaded into the cache.
+	 * 
+	 * This happens automatically on first access, but can be called ahead of time
+	 * from a background thread.
+	 */
+	public void preload()
+	{
+		checkLoadCache();
+	}
+	
+	public boolean isLoaded()
+	{
+		return loadState == LoadState.LOADED;
+	}
+	
 	protected void validateTables(DataStore store)
 	{
 		if (!store.connect())
 		{
 			return;
 		}
-		DataTable classTable = getClassTable();
+		List<DataTable> tables = new ArrayList<DataTable>();
+		tables.add(getClassHeader());
+		
+		// Validate any list sub-tables
+		for (PersistedList list : externalFields)
+		{
+			tables.add(getListHeader(list));
+		}
 		
+		store.migrateEntity(this, tables);
+	}
+	
+	protected DataTable getClassHeader()
+	{
+		DataTable classTable = getClassTable();
 		classTable.createHeader();
 		populateHeader(classTable);
+		classTable.getHeader().add(new DataField(CHANGE_STAMP_COLUMN, DataType.LONG));
+		return classTable;
+	}
+	
+	protected DataTable getListHeader(PersistedList list)
+	{
+		DataTable listTable = getListTable(list);
+		listTable.createHeader();
+		list.populateHeader(listTable);
+		return listTable;
+	}
+	
+	/**
+	 * Load a table, from the schema's snapshot if possible, or else from the store.
+	 * 
+	 * @param store The store to fall back to
+	 * @param table The table to load
+	 * @param header A table with the current header definition, used to validate the snapshot
+	 */
+	protected void loadTable(DataStore store, DataTable table, DataTable header)
+	{
+		SnapshotReader snapshot = schema == null ? null : schema.getSnapshot();
+		if (snapshot != null && snapshot.load(table, header.getHeader()))
+		{
+			DataStore.logStoreAccess("Persistence: loaded %d objects from snapshot " + schemaName + "." + table.getName(), table.getRows().size());
+			return;
+		}
+		
+		store.load(table);
+	}
+	
+	protected void invalidateSnapshot(String tableName)
+	{
+		if (schema != null)
+		{
+			schema.invalidateSnapshot(tableName);
+		}
+	}
+	
+	/**
+	 * Add this entity's data to a cache snapshot.
+	 * 
+	 * If this entity has been loaded, its cached data is written. Otherwise,
+	 * its tables are copied from the previous snapshot, if there is one.
+	 * 
+	 * @param writer The snapshot to add to
+	 * @param previous The snapshot this entity's data was loaded from, may be null
+	 */
+	public void snapshot(SnapshotWriter writer, SnapshotReader previous)
+	{
+		if (loadState != LoadState.LOADED)
+		{
+			if (loadState == LoadState.UNLOADED && previous != null)
+			{
+				writer.copyTable(previous, getClassTable().getName());
+				for (PersistedList list : externalFields)
+				{
+					writer.copyTable(previous, getListTable(list).getName());
+				}
+			}
+			return;
+		}
 		
-		store.migrateEntity(classTable, this);
+		DataTable classTable = getClassTable();
+		populate(classTable, cacheMap.values());
+		writer.addTable(getClassHeader().getHeader(), classTable);
 		
-		// Validate any list sub-tables
 		for (PersistedList list : externalFields)
 		{
 			DataTable listTable = getListTable(list);
-			listTable.createHeader();
-			list.populateHeader(listTable);
-			store.migrateEntity(listTable, this);
-		}		
+			for (CachedObject cached : cacheMap.values())
+			{
+				list.save(listTable, cached.getObject());
+			}
+			writer.addTable(getListHeader(list).getHeader(), listTable);
+		}
 	}
 	
 	public String getContainedIdName()
@@ -697,7 +1092,8 @@ public class PersistedClass
 		if (!store.connect()) return;
 		
 		DataTable classTable = getClassTable();
-		store.load(classTable);
+		loadTable(store, classTable, getClassHeader());
+		metrics.recordRowsLoaded(classTable.getRows().size());
 		
 		// Begin deferred referencing, to prevent the problem of DAO's referencing unloaded DAOs.
 		// DAOs will be loaded recursively as needed,
@@ -723,7 +1119,16 @@ public class PersistedClass
 				DataField idData = row.get(idField.getDataName());
 				Object concreteId = idData.getValue();
 				
-				addToCache(newInstance, concreteId);
+				CachedObject cached = addToCache(newInstance, concreteId);
+				long stamp = getChangeStamp(row);
+				if (cached != null)
+				{
+					cached.setChangeStamp(stamp);
+				}
+				if (stamp > loadedStamp)
+				{
+					loadedStamp = stamp;
+				}
 			}
 		}
 		
@@ -747,7 +1152,7 @@ public class PersistedClass
 			for (PersistedList list : externalFields)
 			{
 				DataTable listTable = getListTable(list);
-				store.load(listTable);
+				loadTable(store, listTable, getListHeader(list));
 				list.load(listTable, instances);
 			}
 		}
@@ -948,6 +1353,81 @@ public class PersistedClass
 		return cached;
 	}
 	
+	protected CachedObject getCached(PersistedField concreteIdField, Object concreteId)
+	{
+		if (concreteIdField == null || concreteId == null) return null;
+		
+		CachedObject cached = concreteIdMap.get(concreteId);
+		if (cached == null && !concreteId.getClass().isAssignableFrom(concreteIdField.getType()))
+		{
+			DataField requestId = new DataField(concreteId);
+			Object id = requestId.getValue(concreteIdField.getType());
+			if (id != null)
+			{
+				cached = concreteIdMap.get(id);
+			}
+		}
+		return cached;
+	}
+	
+	protected static long getChangeStamp(DataRow row)
+	{
+		DataField stampField = row.get(CHANGE_STAMP_COLUMN);
+		if (stampField == null) return 0;
+		
+		Object stamp = stampField.getValue();
+		if (stamp instanceof Number)
+		{
+			return ((Number)stamp).longValue();
+		}
+		return 0;
+	}
+	
+	/**
+	 * Drop any cached objects that have been deleted from the data store.
+	 * 
+	 * Deletes don't leave a change stamp behind, so the row count is checked first,
+	 * and the table's ids are only read if it doesn't match the cache.
+	 * 
+	 * @param store The store to check
+	 * @return The number of objects removed
+	 */
+	protected int removeDeleted(DataStore store)
+	{
+		int storedCount = store.count(getTableName());
+		if (storedCount < 0 || storedCount == cacheMap.size()) return 0;
+		
+		List<Object> storedIds = store.getIds(getTableName(), idField.getDataName());
+		if (storedIds == null) return 0;
+		
+		PersistedField concreteIdField = getConcreteIdField();
+		Set<Object> storedIdSet = new HashSet<Object>();
+		for (Object storedId : storedIds)
+		{
+			if (storedId == null) continue;
+			if (!storedId.getClass().isAssignableFrom(concreteIdField.getType()))
+			{
+				storedId = new DataField(storedId).getValue(concreteIdField.getType());
+			}
+			storedIdSet.add(storedId);
+		}
+		
+		int removedCount = 0;
+		for (Map.Entry<Object, CachedObject> entry : cacheMap.entrySet())
+		{
+			CachedObject cached = entry.getValue();
+			
+			// Objects with unsaved changes may not be in the store yet
+			if (cached.isDirty()) continue;
+			if (storedIdSet.contains(getIdData(cached.getObject()))) continue;
+			
+			cacheMap.remove(entry.getKey());
+			concreteIdMap.values().remove(cached);
+			removedCount++;
+		}
+		return removedCount;
+	}
+	
 	protected void removeFromCache(Object id)
 	{
 		CachedObject co = cacheMap.get(id);
@@ -988,11 +1468,15 @@ public class PersistedClass
 		LOADED,
 	}
 	
-	protected boolean						dirty				= false;
-	protected LoadState						loadState			= LoadState.UNLOADED;
+	protected volatile boolean				dirty				= false;
+	protected volatile LoadState			loadState			= LoadState.UNLOADED;
+	protected final Object					saveLock			= new Object();
+	protected static final Object			loadLock			= new Object();
 
 	protected boolean						cacheObjects		= false;
 	protected long							maxId				= 1;
+	protected long							loadedStamp			= 0;
+	protected final EntityMetrics			metrics				= new EntityMetrics(this);
 
 	protected Map<Object, CachedObject>		cacheMap			= new ConcurrentHashMap<Object, CachedObject>();
 	protected Map<Object, CachedObject>		concreteIdMap		= new ConcurrentHashMap<Object, CachedObject>();
@@ -1019,4 +1503,6 @@ public class PersistedClass
 	protected String						name 				= null;
 
 	protected static Logger					log					= PersistencePlugin.getLogger();
+	
+	public static final String				CHANGE_STAMP_COLUMN	= "change_stamp";
 }
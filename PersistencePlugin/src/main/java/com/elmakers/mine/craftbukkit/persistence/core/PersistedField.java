@@ -13,6 +13,8 @@ import com.elmakers.mine.craftbukkit.persistence.data.DataField;
 import com.elmakers.mine.craftbukkit.persistence.data.DataRow;
 import com.elmakers.mine.craftbukkit.persistence.data.DataTable;
 import com.elmakers.mine.craftbukkit.persistence.data.DataType;
+import com.elmakers.mine.craftbukkit.persistence.data.TypeConverter;
+import com.elmakers.mine.craftbukkit.persistence.data.TypeConverters;
 
 public class PersistedField
 {
@@ -236,10 +238,83 @@ public class PersistedField
 		// TODO: Log print here?
 		if (dataField != null)
 		{
-			set(o, dataField.getValue(getType()));
+			Object value = convert(dataField.getValue());
+			
+			// Columns added by a migration will be null for existing rows, keep the default value
+			if (value == null && DataType.isPrimitive(getType())) return;
+			
+			set(o, value);
 		}
 	}
 
+	/**
+	 * Convert a loaded value to this field's type.
+	 * 
+	 * The converter is resolved from TypeConverters the first time a value is
+	 * seen, and re-resolved only if the store returns a different Class.
+	 * 
+	 * @param value The value to convert
+	 * @return The converted value
+	 */
+	protected Object convert(Object value)
+	{
+		if (value == null) return null;
+		
+		BoundConverter bound = boundConverter;
+		Class<?> valueClass = value.getClass();
+		if (bound == null || bound.sourceClass != valueClass)
+		{
+			bound = new BoundConverter(valueClass, TypeConverters.getConverter(valueClass, getConvertedType()));
+			boundConverter = bound;
+		}
+		Object converted = bound.converter.convert(value);
+		
+		if (converted instanceof String && fieldInfo.isDeduplicated())
+		{
+			converted = getDictionary().get((String)converted);
+		}
+		return converted;
+	}
+	
+	/**
+	 * Get the dictionary used to share loaded String values.
+	 * 
+	 * This is only used if the field is marked with dedupe=true.
+	 * 
+	 * @return The String dictionary for this field
+	 */
+	public StringDictionary getDictionary()
+	{
+		StringDictionary currentDictionary = dictionary;
+		if (currentDictionary == null)
+		{
+			synchronized (this)
+			{
+				if (dictionary == null)
+				{
+					dictionary = new StringDictionary(MAX_DICTIONARY_SIZE);
+				}
+				currentDictionary = dictionary;
+			}
+		}
+		return currentDictionary;
+	}
+	
+	public boolean isDeduplicated()
+	{
+		return fieldInfo.isDeduplicated();
+	}
+
+	/**
+	 * The Class that loaded values are converted to.
+	 * 
+	 * @return The target Class for convert()
+	 */
+	protected Class<?> getConvertedType()
+	{
+		return getType();
+	}
+
 	public DataType getDataType()
 	{
 		Class<?> fieldType = getType();
@@ -255,6 +330,10 @@ public class PersistedField
 		{
 			pField = new PersistedObject(fieldInfo, field, owningClass);
 		}
+		else if (dataType == DataType.LIST && fieldInfo.isPacked())
+		{
+			pField = createPacked(new PersistedPackedList(fieldInfo, field, owningClass));
+		}
 		else if (dataType == DataType.LIST)
 		{
 			pField = new PersistedList(fieldInfo, field, owningClass);
@@ -333,6 +412,10 @@ public class PersistedField
 		{
 			pField = new PersistedObject(fieldInfo, getter, setter, owningClass);
 		}
+		else if (dataType == DataType.LIST && fieldInfo.isPacked())
+		{
+			pField = createPacked(new PersistedPackedList(fieldInfo, getter, setter, owningClass));
+		}
 		else if (dataType == DataType.LIST)
 		{
 			pField = new PersistedList(fieldInfo, getter, setter, owningClass);
@@ -345,6 +428,17 @@ public class PersistedField
 		return pField;
 	}
 
+	protected static PersistedField createPacked(PersistedPackedList packedList)
+	{
+		if (!packedList.isPackable())
+		{
+			Class<?> listType = packedList.getListType();
+			log.warning("Persistence: Field " + packedList.getName() + " can't be packed, type=" + (listType == null ? "unknown" : listType.getName()));
+			return null;
+		}
+		return packedList;
+	}
+
 	protected static String dePluralize(String plural)
 	{
 		// Special cases- kinda hacky, but makes for clean schemas.
@@ -534,6 +628,18 @@ public class PersistedField
 		return field;
 	}
 
+	protected static class BoundConverter
+	{
+		public BoundConverter(Class<?> sourceClass, TypeConverter converter)
+		{
+			this.sourceClass = sourceClass;
+			this.converter = converter;
+		}
+		
+		public final Class<?>		sourceClass;
+		public final TypeConverter	converter;
+	}
+
 	protected final PersistedClass	owningClass;
 	protected PersistedField		container	= null;
 	protected Method				getter		= null;
@@ -541,6 +647,10 @@ public class PersistedField
 	protected Field					field		= null;
 	protected String				name		= null;
 	protected FieldInfo				fieldInfo	= null;
+	protected BoundConverter		boundConverter	= null;
+	protected volatile StringDictionary	dictionary	= null;
+	
+	protected static final int		MAX_DICTIONARY_SIZE	= 4096;
 
 	protected static Logger			log			= PersistencePlugin.getLogger();
 }
@@ -221,6 +221,15 @@ public class PersistedList extends PersistedField implements PersistedReference
 		tableName = owningClass.getTableName() + tableName;
 	}
 	
+	/**
+	 * List elements are converted individually, to the List's element type.
+	 */
+	@Override
+	protected Class<?> getConvertedType()
+	{
+		return listType;
+	}
+	
 	public Class<?> getListType()
 	{
 		return listType;
@@ -302,7 +311,7 @@ public class PersistedList extends PersistedField implements PersistedReference
 				if (referenceType == null)
 				{
 					DataField dataField = row.get(dataIdName);
-					Object data = dataField.getValue();
+					Object data = convert(dataField.getValue());
 					list.add(data);
 				}
 				else if (isContained())
@@ -173,7 +173,7 @@ public class PersistedObject extends PersistedField implements PersistedReferenc
 			Object newInstance = null;
 			try
 			{
-				referenceType.createInstance(row);
+				newInstance = referenceType.createInstance(row);
 			}
 			catch (InvalidDataException e)
 			{
@@ -0,0 +1,359 @@
+package com.elmakers.mine.craftbukkit.persistence.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bukkit.util.BlockVector;
+
+import com.elmakers.mine.bukkit.persistence.FieldInfo;
+import com.elmakers.mine.bukkit.persistence.exception.InvalidDataException;
+import com.elmakers.mine.craftbukkit.persistence.data.DataField;
+import com.elmakers.mine.craftbukkit.persistence.data.DataRow;
+import com.elmakers.mine.craftbukkit.persistence.data.DataType;
+import com.elmakers.mine.craftbukkit.persistence.data.PackedEncoding;
+
+/**
+ * A variant of PersistedField that stores a whole List in a single BLOB column.
+ *
+ * This is used for List fields marked with encoding=PACKED. Instead of a
+ * sub-table with one row per element, the List is stored in the owner's row.
+ *
+ * The blob starts with the element count, followed by the elements:
+ *
+ * Integer types and Dates are stored as zig-zag varint deltas from the previous element.
+ * BlockVectors are stored as x, y, z deltas from the previous vector.
+ * Enums are stored as varint ordinals, Booleans as a bitmap.
+ * Floats and Doubles are stored raw, and Strings are length-prefixed UTF-8.
+ *
+ * @author NathanWolf
+ *
+ */
+public class PersistedPackedList extends PersistedField
+{
+	public PersistedPackedList(PersistedPackedList copy)
+	{
+		super(copy);
+		this.listType = copy.listType;
+		this.listDataType = copy.listDataType;
+	}
+
+	public PersistedPackedList clone()
+	{
+		PersistedPackedList field = new PersistedPackedList(this);
+		return field;
+	}
+
+	public PersistedPackedList(FieldInfo fieldInfo, Field field, PersistedClass owningClass)
+	{
+		super(fieldInfo, field, owningClass);
+		findListType();
+	}
+
+	public PersistedPackedList(FieldInfo fieldInfo, Method getter, Method setter, PersistedClass owningClass)
+	{
+		super(fieldInfo, getter, setter, owningClass);
+		findListType();
+	}
+
+	/**
+	 * Check to see if this List's element type can be packed.
+	 *
+	 * @return true if this List can be stored as a BLOB
+	 */
+	public boolean isPackable()
+	{
+		if (listType == null) return false;
+
+		switch (listDataType)
+		{
+			case BYTE:
+			case INTEGER:
+			case LONG:
+			case BOOLEAN:
+			case FLOAT:
+			case DOUBLE:
+			case STRING:
+			case DATE:
+			case ENUMERATION:
+				return true;
+			case OBJECT:
+				return listType == BlockVector.class;
+		}
+
+		return false;
+	}
+
+	@Override
+	public DataType getDataType()
+	{
+		return DataType.BLOB;
+	}
+
+	@Override
+	public void save(DataRow row, Object o) throws InvalidDataException
+	{
+		byte[] data = null;
+		if (o != null)
+		{
+			@SuppressWarnings("unchecked")
+			List<? extends Object> list = (List<? extends Object>)get(o);
+			if (list != null)
+			{
+				data = pack(list);
+			}
+		}
+		DataField field = new DataField(getDataName(), DataType.BLOB, data);
+		row.add(field);
+	}
+
+	@Override
+	public void load(DataRow row, Object o) throws InvalidDataException
+	{
+		DataField dataField = row.get(getDataName());
+		if (dataField == null) return;
+
+		Object data = dataField.getValue();
+		if (data == null)
+		{
+			set(o, null);
+			return;
+		}
+		if (!(data instanceof byte[]))
+		{
+			throw new InvalidDataException(owningClass, "Packed field " + getName() + " does not contain binary data");
+		}
+
+		set(o, unpack((byte[])data));
+	}
+
+	public Class<?> getListType()
+	{
+		return listType;
+	}
+
+	public DataType getListDataType()
+	{
+		return listDataType;
+	}
+
+	protected byte[] pack(List<? extends Object> list) throws InvalidDataException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PackedEncoding.writeVarLong(out, list.size());
+
+		if (listDataType == DataType.BOOLEAN)
+		{
+			byte[] bits = new byte[(list.size() + 7) / 8];
+			for (int i = 0; i < list.size(); i++)
+			{
+				if ((Boolean)getElement(list, i))
+				{
+					bits[i >> 3] |= 1 << (i & 7);
+				}
+			}
+			out.write(bits, 0, bits.length);
+			return out.toByteArray();
+		}
+
+		long previous = 0;
+		int previousX = 0;
+		int previousY = 0;
+		int previousZ = 0;
+		for (int i = 0; i < list.size(); i++)
+		{
+			Object value = getElement(list, i);
+			switch (listDataType)
+			{
+				case BYTE:
+				case INTEGER:
+				case LONG:
+					long longValue = ((Number)value).longValue();
+					PackedEncoding.writeSignedVarLong(out, longValue - previous);
+					previous = longValue;
+					break;
+				case DATE:
+					long time = ((Date)value).getTime();
+					PackedEncoding.writeSignedVarLong(out, time - previous);
+					previous = time;
+					break;
+				case ENUMERATION:
+					PackedEncoding.writeVarLong(out, ((Enum<?>)value).ordinal());
+					break;
+				case FLOAT:
+					PackedEncoding.writeInt(out, Float.floatToIntBits((Float)value));
+					break;
+				case DOUBLE:
+					PackedEncoding.writeLong(out, Double.doubleToLongBits((Double)value));
+					break;
+				case STRING:
+					byte[] stringData = getStringBytes((String)value);
+					PackedEncoding.writeVarLong(out, stringData.length);
+					out.write(stringData, 0, stringData.length);
+					break;
+				case OBJECT:
+					BlockVector vector = (BlockVector)value;
+					PackedEncoding.writeSignedVarLong(out, vector.getBlockX() - previousX);
+					PackedEncoding.writeSignedVarLong(out, vector.getBlockY() - previousY);
+					PackedEncoding.writeSignedVarLong(out, vector.getBlockZ() - previousZ);
+					previousX = vector.getBlockX();
+					previousY = vector.getBlockY();
+					previousZ = vector.getBlockZ();
+					break;
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	protected List<Object> unpack(byte[] data) throws InvalidDataException
+	{
+		ByteBuffer in = ByteBuffer.wrap(data);
+		List<Object> list = null;
+		try
+		{
+			int count = PackedEncoding.readVarInt(in);
+			list = new ArrayList<Object>(count);
+
+			if (listDataType == DataType.BOOLEAN)
+			{
+				byte[] bits = new byte[(count + 7) / 8];
+				in.get(bits);
+				for (int i = 0; i < count; i++)
+				{
+					list.add((bits[i >> 3] & (1 << (i & 7))) != 0);
+				}
+				return list;
+			}
+
+			long previous = 0;
+			int previousX = 0;
+			int previousY = 0;
+			int previousZ = 0;
+			Object[] enumValues = listType.getEnumConstants();
+			for (int i = 0; i < count; i++)
+			{
+				switch (listDataType)
+				{
+					case BYTE:
+						previous += PackedEncoding.readSignedVarLong(in);
+						list.add((byte)previous);
+						break;
+					case INTEGER:
+						previous += PackedEncoding.readSignedVarLong(in);
+						list.add((int)previous);
+						break;
+					case LONG:
+						previous += PackedEncoding.readSignedVarLong(in);
+						list.add(previous);
+						break;
+					case DATE:
+						previous += PackedEncoding.readSignedVarLong(in);
+						list.add(new Date(previous));
+						break;
+					case ENUMERATION:
+						list.add(enumValues[PackedEncoding.readVarInt(in)]);
+						break;
+					case FLOAT:
+						list.add(in.getFloat());
+						break;
+					case DOUBLE:
+						list.add(in.getDouble());
+						break;
+					case STRING:
+						byte[] stringData = new byte[PackedEncoding.readVarInt(in)];
+						in.get(stringData);
+						list.add(getString(stringData));
+						break;
+					case OBJECT:
+						previousX += (int)PackedEncoding.readSignedVarLong(in);
+						previousY += (int)PackedEncoding.readSignedVarLong(in);
+						previousZ += (int)PackedEncoding.readSignedVarLong(in);
+						list.add(new BlockVector(previousX, previousY, previousZ));
+						break;
+				}
+			}
+		}
+		catch (BufferUnderflowException ex)
+		{
+			throw new InvalidDataException(owningClass, "Packed field " + getName() + " is truncated");
+		}
+		catch (ArrayIndexOutOfBoundsException ex)
+		{
+			throw new InvalidDataException(owningClass, "Packed field " + getName() + " has an invalid enum value");
+		}
+
+		return list;
+	}
+
+	protected Object getElement(List<? extends Object> list, int index) throws InvalidDataException
+	{
+		Object value = list.get(index);
+		if (value == null)
+		{
+			throw new InvalidDataException(owningClass, "Packed field " + getName() + " can't contain null values");
+		}
+		return value;
+	}
+
+	protected static byte[] getStringBytes(String value)
+	{
+		try
+		{
+			return value.getBytes(CHARSET);
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			// UTF-8 is always supported
+			return value.getBytes();
+		}
+	}
+
+	protected static String getString(byte[] data)
+	{
+		try
+		{
+			return new String(data, CHARSET);
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			return new String(data);
+		}
+	}
+
+	protected void findListType()
+	{
+		Type type = null;
+		if (getter != null)
+		{
+			type = getter.getGenericReturnType();
+		}
+		else if (field != null)
+		{
+			type = field.getGenericType();
+		}
+
+		if (type instanceof ParameterizedType)
+		{
+			ParameterizedType pt = (ParameterizedType)type;
+			if (pt.getActualTypeArguments().length > 0 && pt.getActualTypeArguments()[0] instanceof Class<?>)
+			{
+				listType = (Class<?>)pt.getActualTypeArguments()[0];
+			}
+		}
+		listDataType = listType == null ? DataType.NULL : DataType.getTypeFromClass(listType);
+	}
+
+	protected Class<?>				listType		= null;
+	protected DataType				listDataType	= DataType.NULL;
+
+	protected static final String	CHARSET			= "UTF-8";
+}
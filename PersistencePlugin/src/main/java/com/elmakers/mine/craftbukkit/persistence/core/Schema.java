@@ -1,10 +1,15 @@
 package com.elmakers.mine.craftbukkit.persistence.core;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.logging.Logger;
 
+import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
 import com.elmakers.mine.craftbukkit.persistence.data.DataStore;
+import com.elmakers.mine.craftbukkit.persistence.data.snapshot.SnapshotReader;
+import com.elmakers.mine.craftbukkit.persistence.data.snapshot.SnapshotWriter;
 
 /**
  * Describes a schema.
@@ -60,9 +65,97 @@ public class Schema
 			defaultStore.disconnect();
 		}
 	}
+	
+	public void setSnapshotFile(File snapshotFile)
+	{
+		this.snapshotFile = snapshotFile;
+	}
+	
+	public File getSnapshotFile()
+	{
+		return snapshotFile;
+	}
+	
+	/**
+	 * Retrieve the cache snapshot for this schema, opening it if necessary.
+	 * 
+	 * The snapshot is opened once, the first time an entity in this schema
+	 * is loaded. This needs to happen before anything writes to the store, or
+	 * the snapshot will be considered stale.
+	 * 
+	 * @return The snapshot, or null if there is no valid snapshot
+	 */
+	public SnapshotReader getSnapshot()
+	{
+		if (snapshotChecked) return snapshot;
+		snapshotChecked = true;
+		
+		if (snapshotFile == null || defaultStore == null || !defaultStore.connect()) return null;
+		
+		long startTime = System.currentTimeMillis();
+		snapshot = SnapshotReader.open(snapshotFile, defaultStore.getChangeCounter());
+		if (snapshot != null)
+		{
+			long openTime = System.currentTimeMillis() - startTime;
+			log.info("Persistence: Opened snapshot for " + name + ", " + snapshot.getTableCount() + " tables in " + openTime + "ms");
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Make sure a table is not loaded from the snapshot.
+	 * 
+	 * @param tableName The table that has been modified
+	 */
+	public void invalidateSnapshot(String tableName)
+	{
+		if (snapshot != null)
+		{
+			snapshot.invalidate(tableName);
+		}
+	}
+	
+	/**
+	 * Write a cache snapshot of this schema's entities.
+	 * 
+	 * Loaded entities are written from the cache, unloaded entities
+	 * are carried over from the previous snapshot if it's still valid.
+	 * 
+	 * This should only be called after a save, on shutdown.
+	 */
+	public void writeSnapshot()
+	{
+		// If nothing was loaded, the previous snapshot is as good as it gets.
+		if (snapshotFile == null || !snapshotChecked || defaultStore == null) return;
+		if (!defaultStore.connect()) return;
+		
+		long startTime = System.currentTimeMillis();
+		SnapshotWriter writer = new SnapshotWriter();
+		for (PersistedClass persistedClass : persistedClasses)
+		{
+			persistedClass.snapshot(writer, snapshot);
+		}
+		
+		long changeCounter = defaultStore.getChangeCounter();
+		if (changeCounter < 0) return;
+		
+		long size = writer.write(snapshotFile, changeCounter);
+		if (size >= 0)
+		{
+			defaultStore.markUnchanged();
+			long writeTime = System.currentTimeMillis() - startTime;
+			log.info("Persistence: Wrote snapshot for " + name + ", " + writer.getTableCount() + " tables, " + size + " bytes in " + writeTime + "ms");
+		}
+	}
 
 	private String									name;
 	private DataStore								defaultStore;
+	private File									snapshotFile		= null;
+	private SnapshotReader							snapshot			= null;
+	private boolean									snapshotChecked		= false;
 	private final List<PersistedClass>				persistedClasses	= new ArrayList<PersistedClass>();
 	private final HashMap<String, PersistedClass>	nameMap				= new HashMap<String, PersistedClass>();
+	
+	private static Logger							log					= PersistencePlugin.getLogger();
 }
@@ -0,0 +1,108 @@
+package com.elmakers.mine.craftbukkit.persistence.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded dictionary of loaded String values.
+ * 
+ * Each distinct value in a column is kept once, and loaded rows share that
+ * instance instead of holding their own copy. This is only useful for columns
+ * with a small number of distinct values, such as world or plugin names.
+ * 
+ * Once the dictionary is full, new values are returned as-is, so a column with
+ * many distinct values will not grow it any further.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class StringDictionary
+{
+	public StringDictionary(int maxSize)
+	{
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Look up the shared instance of a String value.
+	 * 
+	 * @param value The loaded value
+	 * @return The shared instance, or the value itself if it is new
+	 */
+	public synchronized String get(String value)
+	{
+		if (value == null) return null;
+		
+		String shared = strings.get(value);
+		if (shared != null)
+		{
+			if (shared != value)
+			{
+				dedupedCount++;
+				savedBytes += getSize(value);
+			}
+			return shared;
+		}
+		
+		if (strings.size() < maxSize)
+		{
+			strings.put(value, value);
+		}
+		return value;
+	}
+	
+	public synchronized int size()
+	{
+		return strings.size();
+	}
+	
+	public boolean isFull()
+	{
+		return size() >= maxSize;
+	}
+	
+	/**
+	 * The number of loaded values that were replaced with a shared instance.
+	 * 
+	 * @return The number of duplicate Strings avoided
+	 */
+	public synchronized long getDedupedCount()
+	{
+		return dedupedCount;
+	}
+	
+	/**
+	 * An estimate of the heap saved by sharing values.
+	 * 
+	 * @return The approximate number of bytes saved
+	 */
+	public synchronized long getSavedBytes()
+	{
+		return savedBytes;
+	}
+	
+	public synchronized void clear()
+	{
+		strings.clear();
+	}
+	
+	/**
+	 * Estimate the heap size of a String, including its char array.
+	 * 
+	 * @param value The String to measure
+	 * @return The approximate size in bytes
+	 */
+	protected static long getSize(String value)
+	{
+		long size = STRING_OVERHEAD + 2L * value.length();
+		return (size + 7) & ~7L;
+	}
+	
+	protected final int					maxSize;
+	protected final Map<String, String>	strings			= new HashMap<String, String>();
+	protected long						dedupedCount	= 0;
+	protected long						savedBytes		= 0;
+	
+	// Object headers and fields for a String and its char[]
+	protected static final int			STRING_OVERHEAD	= 40;
+}
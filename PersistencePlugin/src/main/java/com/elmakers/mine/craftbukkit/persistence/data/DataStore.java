@@ -1,12 +1,19 @@
 package com.elmakers.mine.craftbukkit.persistence.data;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
 import com.elmakers.mine.bukkit.persistence.MigrationInfo;
+import com.elmakers.mine.bukkit.persistence.dao.MigrationStep;
+import com.elmakers.mine.bukkit.persistence.dao.MigrationType;
+import com.elmakers.mine.bukkit.persistence.exception.InvalidPersistedClassException;
 import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
 import com.elmakers.mine.craftbukkit.persistence.Persistence;
 import com.elmakers.mine.craftbukkit.persistence.core.PersistedClass;
+import com.elmakers.mine.craftbukkit.persistence.core.Schema;
+import com.elmakers.mine.craftbukkit.persistence.metrics.StoreMetrics;
 
 /**
  * An abstract class representing a data store.
@@ -40,10 +47,44 @@ public abstract class DataStore
 	 */
 	public abstract boolean create(DataTable table);
 	
+	/**
+	 * Run any pending migration steps for an entity, and then migrate each of its tables.
+	 * 
+	 * Migration steps come from the entity's @Migrate annotation. Each step is
+	 * run once, and then recorded in the global migration table.
+	 * 
+	 * @param entity The entity to migrate
+	 * @param tables The entity's table definitions, starting with the class table
+	 * @return true if success
+	 * @see #migrateEntity(DataTable, PersistedClass)
+	 */
+	public synchronized boolean migrateEntity(PersistedClass entity, List<DataTable> tables)
+	{
+		List<MigrationStep> pendingSteps = getPendingMigrationSteps(entity);
+		for (MigrationStep step : pendingSteps)
+		{
+			if (!runMigrationStep(step, entity, tables))
+			{
+				logMigrateError(entity.getSchemaName(), entity.getName());
+				return false;
+			}
+		}
+		
+		boolean success = true;
+		for (DataTable table : tables)
+		{
+			success = migrateEntity(table, entity) && success;
+		}
+		return success;
+	}
+	
 	/**
 	 * Will create a table if it does not exist, and migrate data as
 	 * necessary if it does exist.
 	 * 
+	 * New columns are added in place. If a column changes type, or a new id column
+	 * is added, the table is rebuilt and existing data is copied over.
+	 * 
 	 * @param table The table definition. If this differs from the stored definition, data migration will occur.
 	 * @return true if success
 	 * @see #tableExists(DataTable)
@@ -60,46 +101,243 @@ public abstract class DataStore
 		DataTable currentTable = getTableHeader(table.getName());
 		DataRow tableHeader = table.getHeader();
 		DataRow currentHeader = currentTable.getHeader();
-		if (tableHeader.isMigrationRequired(currentHeader))
+		
+		List<DataField> addedColumns = new ArrayList<DataField>();
+		boolean rebuild = false;
+		for (DataField column : tableHeader.getFields())
 		{
-			MigrationInfo migrateInfo = entity.getMigrationInfo();
-			
-			// TODO: Support types other than auto reset
-			if (migrateInfo == null)
+			DataField currentColumn = currentHeader.get(column.getName());
+			if (currentColumn == null)
 			{
-				log.info("Persistence: Auto-migrating entity " + entity.getSchema() + "." + entity.getName());
-				
-				/* TODO!
-				String autoBackupTable = table.getName() + "_autoBackup";
-				if (tableExists(autoBackupTable))
+				// Id columns can't be added in place, since they are part of the primary key
+				if (column.isIdField())
 				{
-					drop(autoBackupTable);
+					rebuild = true;
 				}
-				currentTable.setName(autoBackupTable);
-				create(currentTable);
-				*/
-				drop(currentTable.getName());
-				create(table);
+				addedColumns.add(column);
 			}
-			else
+			else if (!isColumnCompatible(currentColumn, column))
 			{
-				// Custom migration not supported- just dump error.
-				logMigrateError(entity.getSchemaName(), entity.getName());
+				rebuild = true;
 			}
 		}
 		
+		if (!rebuild && addedColumns.size() == 0)
+		{
+			return true;
+		}
+		
+		long migrateStart = System.currentTimeMillis();
+		boolean migrated = false;
+		String migration = null;
+		if (rebuild)
+		{
+			migration = "rebuilt table";
+			migrated = rebuildTable(table, currentTable);
+		}
+		else
+		{
+			migration = "added " + addedColumns.size() + " column(s)";
+			migrated = addColumns(table, addedColumns);
+		}
+		
+		invalidateSnapshot(entity, table.getName());
+		if (!migrated)
+		{
+			logMigrateError(entity.getSchemaName(), table.getName());
+			return false;
+		}
+		
+		long migrateTime = System.currentTimeMillis() - migrateStart;
+		log.info("Persistence: Migrated " + entity.getSchemaName() + "." + table.getName() + ", " + migration + " in " + migrateTime + "ms");
+		
 		return true;
 	}
 	
+	protected List<MigrationStep> getPendingMigrationSteps(PersistedClass entity)
+	{
+		List<MigrationStep> pendingSteps = new ArrayList<MigrationStep>();
+		MigrationInfo migrateInfo = entity.getMigrationInfo();
+		if (migrateInfo == null || migrateInfo.getSteps() == null || migrateInfo.getSteps().size() == 0)
+		{
+			return pendingSteps;
+		}
+		
+		List<MigrationStep> completedSteps = new ArrayList<MigrationStep>();
+		persistence.getAll(completedSteps, MigrationStep.class);
+		for (MigrationStep step : migrateInfo.getSteps())
+		{
+			boolean completed = false;
+			for (MigrationStep completedStep : completedSteps)
+			{
+				if 
+				(
+					step.getStepId().equals(completedStep.getStepId()) 
+				&&	step.getSchema().equals(completedStep.getSchema())
+				&&	step.getEntity().equals(completedStep.getEntity())
+				)
+				{
+					completed = true;
+					break;
+				}
+			}
+			if (!completed)
+			{
+				pendingSteps.add(step);
+			}
+		}
+		
+		return pendingSteps;
+	}
+	
+	protected boolean runMigrationStep(MigrationStep step, PersistedClass entity, List<DataTable> tables)
+	{
+		long migrateStart = System.currentTimeMillis();
+		MigrationType type = step.getType() == null ? MigrationType.AUTO : step.getType();
+		switch (type)
+		{
+			case RESET:
+				for (DataTable table : tables)
+				{
+					drop(table.getName());
+					create(table);
+				}
+				break;
+			case STATEMENT:
+				if (!execute(step.getSQLStatement()))
+				{
+					return false;
+				}
+				break;
+			case SCRIPT:
+				log.warning("Persistence: Script migrations are not supported, skipping step " + step.getStepId());
+				return false;
+			case AUTO:
+				// Automatic migration always runs after any migration steps
+				break;
+		}
+		
+		// Steps change table contents behind the cache, so don't load these tables from the snapshot
+		for (DataTable table : tables)
+		{
+			invalidateSnapshot(entity, table.getName());
+		}
+		
+		persistence.put(step);
+		try
+		{
+			persistence.getPersistedClass(MigrationStep.class).save();
+		}
+		catch (InvalidPersistedClassException e)
+		{
+			log.warning("Persistence: Can't record migration step " + step.getStepId() + ": " + e.getMessage());
+		}
+		
+		long migrateTime = System.currentTimeMillis() - migrateStart;
+		log.info("Persistence: Ran " + type.name().toLowerCase() + " migration step " + step.getStepId() + " for " + entity.getSchemaName() + "." + entity.getName() + " in " + migrateTime + "ms");
+		return true;
+	}
+	
+	/**
+	 * Make sure a migrated table is not loaded from its schema's snapshot.
+	 * 
+	 * @param entity The entity that owns the table
+	 * @param tableName The table that has been migrated
+	 */
+	protected void invalidateSnapshot(PersistedClass entity, String tableName)
+	{
+		Schema schema = entity.getSchema();
+		if (schema != null)
+		{
+			schema.invalidateSnapshot(tableName);
+		}
+	}
+	
 	protected void logMigrateError(String schema, String table)
 	{
 		log.warning("Persistence: Can't migrate entity " + schema + "." + table);
 		log.warning("             If you continue to have issues, please delete the table " +table + " in the " + schema + " database");		
 	}
 	
-	public void copyTable(String sourceTable, String destinationTable)
+	/**
+	 * Check to see if a stored column can hold data for a column definition.
+	 * 
+	 * @param currentColumn The column as it exists in the store
+	 * @param column The new column definition
+	 * @return false if the column's type has changed, and the table needs to be rebuilt
+	 */
+	protected boolean isColumnCompatible(DataField currentColumn, DataField column)
 	{
-		
+		return true;
+	}
+	
+	/**
+	 * Add new columns to an existing table, keeping its data.
+	 * 
+	 * The default implementation rebuilds the table.
+	 * 
+	 * @param table The new table definition
+	 * @param columns The columns to add
+	 * @return true if success
+	 */
+	protected boolean addColumns(DataTable table, List<DataField> columns)
+	{
+		return rebuildTable(table, getTableHeader(table.getName()));
+	}
+	
+	/**
+	 * Re-create a table with a new definition, copying over the data in any
+	 * columns that exist in both the old and new definitions.
+	 * 
+	 * Stores that support migration should override this. 
+	 * 
+	 * @param table The new table definition
+	 * @param currentTable The current table header
+	 * @return true if success, false if the table was left unchanged
+	 */
+	protected boolean rebuildTable(DataTable table, DataTable currentTable)
+	{
+		return false;
+	}
+	
+	/**
+	 * Copy the data from one table to another. 
+	 * 
+	 * Only columns that exist in both tables are copied.
+	 * 
+	 * @param sourceTable The table to copy from
+	 * @param destinationTable The table to copy to, which must exist
+	 * @return true if success
+	 */
+	public boolean copyTable(String sourceTable, String destinationTable)
+	{
+		return false;
+	}
+	
+	/**
+	 * Write a backup copy of this store to a file.
+	 * 
+	 * This is called from a background thread, so implementations must not use
+	 * the store's own connection. Data should be copied in small steps, so that 
+	 * the store can still be written to while a backup is running.
+	 * 
+	 * @param backupFile The file to write the backup to
+	 * @return true if success, false if failed or not supported by this store
+	 */
+	public boolean backup(File backupFile)
+	{
+		return false;
+	}
+	
+	/**
+	 * Execute a store-specific statement, such as a custom migration statement.
+	 * 
+	 * @param statement The statement to execute
+	 * @return true if success, false if failed or not supported by this store
+	 */
+	public boolean execute(String statement)
+	{
+		return false;
 	}
 	
 	/**
@@ -144,6 +382,47 @@ public abstract class DataStore
 	 */
 	public abstract boolean load(DataTable table);
 	
+	/**
+	 * Load only the rows of a table that have changed since a given stamp.
+	 * 
+	 * Rows without a change stamp are not loaded.
+	 * 
+	 * @param table The table to load
+	 * @param stampColumn The name of the change stamp column
+	 * @param since Only rows with a stamp greater than this are loaded
+	 * @return true if success
+	 */
+	public abstract boolean loadChanged(DataTable table, String stampColumn, long since);
+	
+	/**
+	 * Load only the rows of a table that match a list of ids.
+	 * 
+	 * This is used to load list sub-tables for a set of changed objects.
+	 * 
+	 * @param table The table to load
+	 * @param idColumn The column to match ids against
+	 * @param ids The ids to load
+	 * @return true if success
+	 */
+	public abstract boolean loadIds(DataTable table, String idColumn, List<Object> ids);
+	
+	/**
+	 * Get the ids of all rows in a table.
+	 * 
+	 * @param tableName The table to check
+	 * @param idColumn The id column to read
+	 * @return A list of ids, or null on error
+	 */
+	public abstract List<Object> getIds(String tableName, String idColumn);
+	
+	/**
+	 * Count the rows in a table.
+	 * 
+	 * @param tableName The table to count
+	 * @return The number of rows, or -1 on error
+	 */
+	public abstract int count(String tableName);
+	
 	/**
 	 * Save a table to the data store.
 	 * 
@@ -181,6 +460,60 @@ public abstract class DataStore
 	 */
 	public abstract DataTable getTableHeader(String tableName);
 	
+	/**
+	 * Retrieve this store's change counter.
+	 * 
+	 * The change counter is incremented the first time the store is written to
+	 * after connecting, or after a snapshot has been taken. It is used to check
+	 * whether a cache snapshot is still up to date.
+	 * 
+	 * @return The current change counter, or -1 if this store does not track changes
+	 * @see #markUnchanged()
+	 */
+	public long getChangeCounter()
+	{
+		return -1;
+	}
+	
+	/**
+	 * Store a new change counter value.
+	 * 
+	 * Stores that support snapshots should override this and getChangeCounter.
+	 * 
+	 * @param changeCounter The new counter value
+	 */
+	protected void setChangeCounter(long changeCounter)
+	{
+	}
+	
+	/**
+	 * Called by stores before any write, to keep the change counter current.
+	 * 
+	 * Only the first write after connecting (or after a snapshot) will
+	 * update the counter.
+	 */
+	protected void markChanged()
+	{
+		if (changed) return;
+		
+		changed = true;
+		long changeCounter = getChangeCounter();
+		if (changeCounter >= 0)
+		{
+			setChangeCounter(changeCounter + 1);
+		}
+	}
+	
+	/**
+	 * Reset change tracking, so that the next write will increment the change counter.
+	 * 
+	 * This is called after a cache snapshot has been written.
+	 */
+	public void markUnchanged()
+	{
+		changed = false;
+	}
+	
 	/**
 	 * Initialize this data store.
 	 * 
@@ -195,6 +528,11 @@ public abstract class DataStore
 		this.schema = schema;
 	}
 	
+	public StoreMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
 	public static void logStoreAccess(String message, int rowCount)
 	{
 		if (logStoreAccess)
@@ -213,6 +551,9 @@ public abstract class DataStore
 	
 	protected static boolean logStoreAccess = false;
 	
+	protected boolean changed = false;
+	protected final StoreMetrics metrics = new StoreMetrics();
+	
 	protected Persistence persistence = null;
 	protected String schema;
 	protected static Logger log = PersistencePlugin.getLogger();
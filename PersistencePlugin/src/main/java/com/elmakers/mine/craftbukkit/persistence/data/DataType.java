@@ -13,6 +13,7 @@ public enum DataType
 	DOUBLE,
 	STRING,
 	DATE,
+	BLOB,
 	ENUMERATION,
 	OBJECT,
 	LIST,
@@ -95,6 +96,10 @@ public enum DataType
 		{
 			sqlType = DataType.BYTE;
 		}
+		else if (byte[].class.isAssignableFrom(fieldType))
+		{
+			sqlType = DataType.BLOB;
+		}
 		else
 		{
 			// Don't get the PersistedClass here, or you might cause recursion issues with circular dependencies.
@@ -117,6 +122,7 @@ public enum DataType
 			case INTEGER: return java.sql.Types.INTEGER;
 			case BYTE: return java.sql.Types.TINYINT;
 			case STRING: return java.sql.Types.VARCHAR;
+			case BLOB: return java.sql.Types.BLOB;
 		}
 		
 		return java.sql.Types.NULL;
@@ -200,6 +206,18 @@ public enum DataType
 			case java.sql.Types.VARCHAR:
 				dataType = DataType.STRING;
 				break;	
+			case java.sql.Types.BLOB:
+				dataType = DataType.BLOB;
+				break;	
+			case java.sql.Types.BINARY:
+				dataType = DataType.BLOB;
+				break;	
+			case java.sql.Types.VARBINARY:
+				dataType = DataType.BLOB;
+				break;	
+			case java.sql.Types.LONGVARBINARY:
+				dataType = DataType.BLOB;
+				break;	
 		}
 		
 		return dataType;
@@ -220,6 +238,16 @@ public enum DataType
 		);
 	}
 	
+	/**
+	 * Convert a value to a target Class.
+	 * 
+	 * This looks up a converter for each call, if you are converting many
+	 * values of the same type, get a TypeConverter from TypeConverters instead.
+	 * 
+	 * @param value The value to convert
+	 * @param targetClass The Class to convert to
+	 * @return The converted value, or the original value if no conversion is possible
+	 */
 	public static Object convertValue(Object value, Class<?> targetClass)
 	{
 		if (value == null) 
@@ -227,179 +255,7 @@ public enum DataType
 			return null;
 		}
 		
-		Class<?> valueClass = value.getClass();
-		
-		if (targetClass.isAssignableFrom(valueClass))
-		{
-			return value;
-		}
-		
-		if (targetClass.isEnum() && (int.class.isAssignableFrom(valueClass) || Integer.class.isAssignableFrom(valueClass)))
-		{
-			int ordinal = (Integer)value;
-			return targetClass.getEnumConstants()[ordinal];
-		}
-		
-		// Handle dates- converting to int for now, should be encapsulated in a DataStore-specific way, but
-		// _not_ by moving this whole function to DataStore, since it's static.
-		if (Date.class.isAssignableFrom(targetClass))
-		{
-			if (Integer.class.isAssignableFrom(valueClass) || int.class.isAssignableFrom(valueClass))
-			{
-				Integer intDate = (Integer)value;
-				Date d = new Date(intDate * 1000);
-				return d;
-			}
-			
-			if (Long.class.isAssignableFrom(valueClass) || long.class.isAssignableFrom(valueClass))
-			{
-				Long intDate = (Long)value;
-				Date d = new Date(intDate * 1000);
-				return d;
-			}
-		}
-		
-		// Handle bools- again, assume we can't handle them and change to ints.
-		if (boolean.class.isAssignableFrom(targetClass) || Boolean.class.isAssignableFrom(targetClass))
-		{
-			if (Boolean.class.isAssignableFrom(valueClass) || boolean.class.isAssignableFrom(valueClass))
-			{
-				return value;	
-			}
-			if (Integer.class.isAssignableFrom(valueClass) || int.class.isAssignableFrom(valueClass))
-			{
-				Integer intBoolean = (Integer)value;
-				Boolean b = intBoolean != 0;
-				return b;	
-			}
-		}
-		
-		// Handle conversion to byte
-		if (byte.class.isAssignableFrom(targetClass) || Byte.class.isAssignableFrom(targetClass))
-		{
-			if (Byte.class.isAssignableFrom(valueClass) || byte.class.isAssignableFrom(valueClass))
-			{
-				return value;	
-			}
-			if (Long.class.isAssignableFrom(valueClass) || long.class.isAssignableFrom(valueClass))
-			{
-				return (Byte)(byte)(long)(Long)value;	
-			}
-			if (Float.class.isAssignableFrom(valueClass) || float.class.isAssignableFrom(valueClass))
-			{
-				return (Byte)(byte)(float)(Float)value;	
-			}
-			if (Double.class.isAssignableFrom(valueClass) || double.class.isAssignableFrom(valueClass))
-			{
-				return (Byte)(byte)(double)(Double)value;	
-			}
-			if (Integer.class.isAssignableFrom(valueClass) || int.class.isAssignableFrom(valueClass))
-			{
-				return (Byte)(byte)(int)(Integer)value;	
-			}
-		}
-		
-		// Handle conversion to int
-		if (int.class.isAssignableFrom(targetClass) || Integer.class.isAssignableFrom(targetClass))
-		{
-			if (Integer.class.isAssignableFrom(valueClass) || int.class.isAssignableFrom(valueClass))
-			{
-				return value;	
-			}
-			if (Long.class.isAssignableFrom(valueClass) || long.class.isAssignableFrom(valueClass))
-			{
-				return (Integer)(int)(long)(Long)value;	
-			}
-			if (Float.class.isAssignableFrom(valueClass) || float.class.isAssignableFrom(valueClass))
-			{
-				return (Integer)(int)(float)(Float)value;	
-			}
-			if (Double.class.isAssignableFrom(valueClass) || double.class.isAssignableFrom(valueClass))
-			{
-				return (Integer)(int)(double)(Double)value;	
-			}
-			if (Byte.class.isAssignableFrom(valueClass) || byte.class.isAssignableFrom(valueClass))
-			{
-				return (Integer)(int)(byte)(Byte)value;	
-			}
-		}
-		
-		// Conversion to long
-		if (long.class.isAssignableFrom(targetClass) || Long.class.isAssignableFrom(targetClass))
-		{
-			if (Long.class.isAssignableFrom(valueClass) || long.class.isAssignableFrom(valueClass))
-			{
-				return value;
-			}
-			if (Float.class.isAssignableFrom(valueClass) || float.class.isAssignableFrom(valueClass))
-			{
-				return (Long)(long)(float)(Float)value;	
-			}
-			if (Integer.class.isAssignableFrom(valueClass) || int.class.isAssignableFrom(valueClass))
-			{
-				return (Long)(long)(int)(Integer)value;	
-			}
-			if (Double.class.isAssignableFrom(valueClass) || double.class.isAssignableFrom(valueClass))
-			{
-				return (Long)(long)(double)(Double)value;	
-			}
-			if (Byte.class.isAssignableFrom(valueClass) || byte.class.isAssignableFrom(valueClass))
-			{
-				return (Long)(long)(byte)(Byte)value;	
-			}
-		}
-		
-		// Conversion to flaot
-		if (float.class.isAssignableFrom(targetClass) || Float.class.isAssignableFrom(targetClass))
-		{
-			if (Float.class.isAssignableFrom(valueClass) || float.class.isAssignableFrom(valueClass))
-			{
-				return value;
-			}
-			if (Long.class.isAssignableFrom(valueClass) || long.class.isAssignableFrom(valueClass))
-			{
-				return (Float)(float)(long)(Long)value;	
-			}
-			if (Integer.class.isAssignableFrom(valueClass) || int.class.isAssignableFrom(valueClass))
-			{
-				return (Float)(float)(Integer)value;	
-			}
-			if (Double.class.isAssignableFrom(valueClass) || double.class.isAssignableFrom(valueClass))
-			{
-				return (Float)(float)(double)(Double)value;	
-			}
-			if (Byte.class.isAssignableFrom(valueClass) || byte.class.isAssignableFrom(valueClass))
-			{
-				return (Float)(float)(byte)(Byte)value;	
-			}
-		}
-		
-		// Conversion to double
-		if (double.class.isAssignableFrom(targetClass) || Double.class.isAssignableFrom(targetClass))
-		{
-			if (Double.class.isAssignableFrom(valueClass) || double.class.isAssignableFrom(valueClass))
-			{
-				return value;
-			}
-			if (Long.class.isAssignableFrom(valueClass) || long.class.isAssignableFrom(valueClass))
-			{
-				return (Integer)(int)(long)(Long)value;	
-			}
-			if (Integer.class.isAssignableFrom(valueClass) || int.class.isAssignableFrom(valueClass))
-			{
-				return (Double)(double)(Integer)value;	
-			}
-			if (Float.class.isAssignableFrom(valueClass) || float.class.isAssignableFrom(valueClass))
-			{
-				return (Double)(double)(float)(Float)value;	
-			}
-			if (Byte.class.isAssignableFrom(valueClass) || byte.class.isAssignableFrom(valueClass))
-			{
-				return (Double)(double)(byte)(Byte)value;	
-			}
-		}
-				
-		return value;
+		return TypeConverters.getConverter(value.getClass(), targetClass).convert(value);
 	}
 	
 }
@@ -0,0 +1,74 @@
+package com.elmakers.mine.craftbukkit.persistence.data;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length integer encoding helpers.
+ *
+ * Unsigned values are written 7 bits at a time, low bits first, with the high
+ * bit of each byte set if more bytes follow. Signed values are zig-zag encoded
+ * first, so that small negative numbers stay small.
+ *
+ * These are used by binary snapshots and packed BLOB fields.
+ *
+ * @author NathanWolf
+ *
+ */
+public class PackedEncoding
+{
+	public static void writeVarLong(ByteArrayOutputStream out, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+
+	public static void writeSignedVarLong(ByteArrayOutputStream out, long value)
+	{
+		writeVarLong(out, (value << 1) ^ (value >> 63));
+	}
+
+	public static void writeInt(ByteArrayOutputStream out, int value)
+	{
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	public static void writeLong(ByteArrayOutputStream out, long value)
+	{
+		writeInt(out, (int)(value >>> 32));
+		writeInt(out, (int)value);
+	}
+
+	public static long readVarLong(ByteBuffer in)
+	{
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return value;
+	}
+
+	public static int readVarInt(ByteBuffer in)
+	{
+		return (int)readVarLong(in);
+	}
+
+	public static long readSignedVarLong(ByteBuffer in)
+	{
+		long value = readVarLong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,22 @@
+package com.elmakers.mine.craftbukkit.persistence.data;
+
+/**
+ * Converts a value from one specific Class to another.
+ * 
+ * Converters are resolved once per source and target Class pair by
+ * TypeConverters, so implementations should not need to check types.
+ * 
+ * @author NathanWolf
+ * @see TypeConverters
+ *
+ */
+public interface TypeConverter
+{
+	/**
+	 * Convert a value.
+	 * 
+	 * @param value The non-null value to convert, which must be of this converter's source type
+	 * @return The converted value
+	 */
+	public Object convert(Object value);
+}
@@ -0,0 +1,191 @@
+package com.elmakers.mine.craftbukkit.persistence.data;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of TypeConverters.
+ * 
+ * A converter is created the first time a source and target Class pair is
+ * requested, and cached from then on. This keeps the type checks out of the
+ * per-value load path.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class TypeConverters
+{
+	/**
+	 * Get a converter from one Class to another.
+	 * 
+	 * If no conversion is possible, the returned converter passes values through unchanged.
+	 * 
+	 * @param sourceClass The Class of the values to convert
+	 * @param targetClass The Class to convert to, primitives are allowed
+	 * @return A converter, never null
+	 */
+	public static TypeConverter getConverter(Class<?> sourceClass, Class<?> targetClass)
+	{
+		ConverterKey key = new ConverterKey(sourceClass, targetClass);
+		TypeConverter converter = converters.get(key);
+		if (converter == null)
+		{
+			converter = createConverter(getBoxedClass(sourceClass), getBoxedClass(targetClass));
+			converters.put(key, converter);
+		}
+		return converter;
+	}
+	
+	protected static TypeConverter createConverter(Class<?> sourceClass, final Class<?> targetClass)
+	{
+		if (targetClass.isAssignableFrom(sourceClass))
+		{
+			return IDENTITY;
+		}
+		
+		if (targetClass.isEnum() && Integer.class == sourceClass)
+		{
+			final Object[] enumValues = targetClass.getEnumConstants();
+			return new TypeConverter()
+			{
+				public Object convert(Object value)
+				{
+					return enumValues[(Integer)value];
+				}
+			};
+		}
+		
+		// Dates are stored as seconds
+		if (Date.class == targetClass && (Integer.class == sourceClass || Long.class == sourceClass))
+		{
+			return new TypeConverter()
+			{
+				public Object convert(Object value)
+				{
+					return new Date(((Number)value).longValue() * 1000);
+				}
+			};
+		}
+		
+		// Booleans are stored as ints
+		if (Boolean.class == targetClass && Integer.class == sourceClass)
+		{
+			return new TypeConverter()
+			{
+				public Object convert(Object value)
+				{
+					return (Integer)value != 0;
+				}
+			};
+		}
+		
+		if (Number.class.isAssignableFrom(sourceClass))
+		{
+			if (Byte.class == targetClass)
+			{
+				return new TypeConverter()
+				{
+					public Object convert(Object value)
+					{
+						return ((Number)value).byteValue();
+					}
+				};
+			}
+			if (Integer.class == targetClass)
+			{
+				return new TypeConverter()
+				{
+					public Object convert(Object value)
+					{
+						return ((Number)value).intValue();
+					}
+				};
+			}
+			if (Long.class == targetClass)
+			{
+				return new TypeConverter()
+				{
+					public Object convert(Object value)
+					{
+						return ((Number)value).longValue();
+					}
+				};
+			}
+			if (Float.class == targetClass)
+			{
+				return new TypeConverter()
+				{
+					public Object convert(Object value)
+					{
+						return ((Number)value).floatValue();
+					}
+				};
+			}
+			if (Double.class == targetClass)
+			{
+				return new TypeConverter()
+				{
+					public Object convert(Object value)
+					{
+						return ((Number)value).doubleValue();
+					}
+				};
+			}
+		}
+		
+		return IDENTITY;
+	}
+	
+	protected static Class<?> getBoxedClass(Class<?> primitiveClass)
+	{
+		if (!primitiveClass.isPrimitive()) return primitiveClass;
+		
+		if (primitiveClass == int.class) return Integer.class;
+		if (primitiveClass == long.class) return Long.class;
+		if (primitiveClass == boolean.class) return Boolean.class;
+		if (primitiveClass == double.class) return Double.class;
+		if (primitiveClass == float.class) return Float.class;
+		if (primitiveClass == byte.class) return Byte.class;
+		if (primitiveClass == short.class) return Short.class;
+		if (primitiveClass == char.class) return Character.class;
+		
+		return primitiveClass;
+	}
+	
+	protected static class ConverterKey
+	{
+		public ConverterKey(Class<?> sourceClass, Class<?> targetClass)
+		{
+			this.sourceClass = sourceClass;
+			this.targetClass = targetClass;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return sourceClass.hashCode() * 31 + targetClass.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof ConverterKey)) return false;
+			ConverterKey otherKey = (ConverterKey)other;
+			return sourceClass == otherKey.sourceClass && targetClass == otherKey.targetClass;
+		}
+		
+		protected final Class<?> sourceClass;
+		protected final Class<?> targetClass;
+	}
+	
+	public static final TypeConverter IDENTITY = new TypeConverter()
+	{
+		public Object convert(Object value)
+		{
+			return value;
+		}
+	};
+	
+	protected static final Map<ConverterKey, TypeConverter> converters = new ConcurrentHashMap<ConverterKey, TypeConverter>();
+}
@@ -0,0 +1,27 @@
+package com.elmakers.mine.craftbukkit.persistence.data.snapshot;
+
+/**
+ * Constants shared by the snapshot reader and writer.
+ *
+ * A snapshot file is laid out as:
+ *
+ * magic, format version, store change counter
+ * string dictionary (count, then length-prefixed UTF-8 strings)
+ * table count, then one length-prefixed block per table
+ *
+ * Each table block holds the table name, its column header (name, type, id flag),
+ * the row count and then the column data, stored one column at a time.
+ * Each column starts with a null bitmap, followed by the packed non-null values.
+ *
+ * Integers are stored as zig-zag varints, strings as varint dictionary indices.
+ * The varint helpers themselves are in PackedEncoding.
+ *
+ * @author NathanWolf
+ *
+ */
+class SnapshotFormat
+{
+	public static final int		MAGIC			= 0x50534E50; // "PSNP"
+	public static final int		FORMAT_VERSION	= 1;
+	public static final String	CHARSET			= "UTF-8";
+}
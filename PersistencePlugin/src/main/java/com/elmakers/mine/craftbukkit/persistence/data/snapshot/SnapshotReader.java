@@ -0,0 +1,345 @@
+package com.elmakers.mine.craftbukkit.persistence.data.snapshot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
+import com.elmakers.mine.craftbukkit.persistence.data.DataField;
+import com.elmakers.mine.craftbukkit.persistence.data.DataRow;
+import com.elmakers.mine.craftbukkit.persistence.data.DataTable;
+import com.elmakers.mine.craftbukkit.persistence.data.DataType;
+import com.elmakers.mine.craftbukkit.persistence.data.PackedEncoding;
+
+/**
+ * Reads tables from a memory-mapped binary snapshot.
+ *
+ * A snapshot is only opened if its change counter matches the store's
+ * current counter- otherwise, the store has been written to since the snapshot
+ * was taken, and the snapshot is ignored.
+ *
+ * Each table is also checked against the current table header before it is used,
+ * so a changed entity definition will fall back to loading from the store.
+ *
+ * If any table turns out to be corrupt, the whole snapshot is dropped, and every
+ * table is loaded from the store instead.
+ *
+ * @author NathanWolf
+ *
+ */
+public class SnapshotReader
+{
+	/**
+	 * Open a snapshot file.
+	 *
+	 * @param file The snapshot file
+	 * @param changeCounter The store's current change counter
+	 * @return A snapshot reader, or null if the snapshot is missing or stale
+	 */
+	public static SnapshotReader open(File file, long changeCounter)
+	{
+		if (changeCounter < 0 || !file.exists()) return null;
+
+		FileInputStream input = null;
+		try
+		{
+			input = new FileInputStream(file);
+			FileChannel channel = input.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			SnapshotReader reader = new SnapshotReader(buffer);
+			if (!reader.readIndex(changeCounter))
+			{
+				return null;
+			}
+			return reader;
+		}
+		catch (IOException ex)
+		{
+			log.warning("Persistence: Error reading snapshot " + file.getName() + ": " + ex.getMessage());
+		}
+		catch (BufferUnderflowException ex)
+		{
+			log.warning("Persistence: Snapshot " + file.getName() + " is truncated, ignoring");
+		}
+		catch (RuntimeException ex)
+		{
+			log.warning("Persistence: Snapshot " + file.getName() + " is corrupt, ignoring: " + ex);
+		}
+		finally
+		{
+			// The mapping stays valid after the channel is closed
+			if (input != null)
+			{
+				try
+				{
+					input.close();
+				}
+				catch (IOException ex)
+				{
+				}
+			}
+		}
+
+		return null;
+	}
+
+	protected SnapshotReader(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+	}
+
+	public int getTableCount()
+	{
+		return tableMap.size();
+	}
+
+	public boolean hasTable(String tableName)
+	{
+		return tableMap.containsKey(tableName);
+	}
+
+	/**
+	 * Remove a table from this snapshot, so that it will be loaded from the store.
+	 *
+	 * Use this if a table is modified or dropped before it has been loaded.
+	 *
+	 * @param tableName The table to invalidate
+	 */
+	public void invalidate(String tableName)
+	{
+		tableMap.remove(tableName);
+	}
+
+	/**
+	 * Retrieve the header that was stored with a table.
+	 *
+	 * @param tableName The table to look up
+	 * @return A header row, or null if the table isn't in this snapshot
+	 */
+	public DataRow getHeader(String tableName)
+	{
+		try
+		{
+			ByteBuffer in = getTableData(tableName);
+			if (in == null) return null;
+
+			DataTable headerTable = new DataTable(tableName);
+			headerTable.createHeader();
+			DataRow header = headerTable.getHeader();
+			readHeader(in, header);
+			return header;
+		}
+		catch (RuntimeException ex)
+		{
+			invalidateCorrupt(tableName, ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Load a table's rows from this snapshot.
+	 *
+	 * The stored columns must match the expected header exactly, by name and type.
+	 *
+	 * @param table The table to populate
+	 * @param expectedHeader The current header definition for this table
+	 * @return false if the table is not in this snapshot, is out of date, or is corrupt
+	 */
+	public boolean load(DataTable table, DataRow expectedHeader)
+	{
+		try
+		{
+			return readTable(table, expectedHeader);
+		}
+		catch (RuntimeException ex)
+		{
+			invalidateCorrupt(table.getName(), ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Drop every table from this snapshot after finding corrupt data.
+	 *
+	 * Corrupt data shows up as buffer underflows, bad string indices, bad positions and
+	 * unknown type names. Once one table is bad none of the others can be trusted, and
+	 * dropping them also keeps them from being carried over into the next snapshot.
+	 *
+	 * @param tableName The table that was being read
+	 * @param ex The exception that was thrown while reading it
+	 */
+	protected void invalidateCorrupt(String tableName, RuntimeException ex)
+	{
+		log.warning("Persistence: Snapshot table " + tableName + " is corrupt, loading from the store instead: " + ex);
+		tableMap.clear();
+	}
+
+	protected boolean readTable(DataTable table, DataRow expectedHeader)
+	{
+		ByteBuffer in = getTableData(table.getName());
+		if (in == null || expectedHeader == null) return false;
+
+		DataTable storedTable = new DataTable(table.getName());
+		storedTable.createHeader();
+		DataRow storedHeader = storedTable.getHeader();
+		readHeader(in, storedHeader);
+
+		List<DataField> columns = storedHeader.getFields();
+		List<DataField> expected = expectedHeader.getFields();
+		if (columns.size() != expected.size()) return false;
+		for (int i = 0; i < columns.size(); i++)
+		{
+			DataField column = columns.get(i);
+			DataField expectedColumn = expected.get(i);
+			if (!column.getName().equals(expectedColumn.getName()) || column.getType() != expectedColumn.getType())
+			{
+				return false;
+			}
+		}
+
+		int columnCount = columns.size();
+		int rowCount = PackedEncoding.readVarInt(in);
+		Object[][] values = new Object[columnCount][];
+		for (int c = 0; c < columnCount; c++)
+		{
+			values[c] = readColumn(in, columns.get(c).getType(), rowCount);
+		}
+
+		for (int r = 0; r < rowCount; r++)
+		{
+			DataRow row = new DataRow(table);
+			for (int c = 0; c < columnCount; c++)
+			{
+				DataField column = columns.get(c);
+				DataField field = new DataField(column.getName(), column.getType(), values[c][r]);
+				field.setIdField(column.isIdField());
+				row.add(field);
+			}
+			table.addRow(row);
+		}
+
+		return true;
+	}
+
+	protected ByteBuffer getTableData(String tableName)
+	{
+		Integer offset = tableMap.get(tableName);
+		if (offset == null) return null;
+
+		ByteBuffer in = buffer.duplicate();
+		in.position(offset);
+
+		// Skip the table name
+		PackedEncoding.readVarLong(in);
+		return in;
+	}
+
+	protected void readHeader(ByteBuffer in, DataRow header)
+	{
+		int columnCount = PackedEncoding.readVarInt(in);
+		for (int i = 0; i < columnCount; i++)
+		{
+			String name = strings[PackedEncoding.readVarInt(in)];
+			DataType type = DataType.valueOf(strings[PackedEncoding.readVarInt(in)]);
+			boolean idField = in.get() != 0;
+
+			DataField column = new DataField(name, type);
+			column.setIdField(idField);
+			header.add(column);
+		}
+	}
+
+	protected Object[] readColumn(ByteBuffer in, DataType type, int rowCount)
+	{
+		byte[] nullMap = new byte[(rowCount + 7) / 8];
+		in.get(nullMap);
+
+		Object[] values = new Object[rowCount];
+		for (int i = 0; i < rowCount; i++)
+		{
+			if ((nullMap[i >> 3] & (1 << (i & 7))) != 0) continue;
+
+			switch (type)
+			{
+				case BYTE:
+					values[i] = (byte)PackedEncoding.readSignedVarLong(in);
+					break;
+				case INTEGER:
+					values[i] = (int)PackedEncoding.readSignedVarLong(in);
+					break;
+				case LONG:
+					values[i] = PackedEncoding.readSignedVarLong(in);
+					break;
+				case ENUMERATION:
+					// Enums are stored by ordinal, the same as in a data store
+					values[i] = PackedEncoding.readVarInt(in);
+					break;
+				case BOOLEAN:
+					values[i] = in.get() != 0;
+					break;
+				case FLOAT:
+					values[i] = in.getFloat();
+					break;
+				case DOUBLE:
+					values[i] = in.getDouble();
+					break;
+				case DATE:
+					values[i] = new Date(PackedEncoding.readSignedVarLong(in));
+					break;
+				case STRING:
+					values[i] = strings[PackedEncoding.readVarInt(in)];
+					break;
+				case BLOB:
+					byte[] data = new byte[PackedEncoding.readVarInt(in)];
+					in.get(data);
+					values[i] = data;
+					break;
+			}
+		}
+		return values;
+	}
+
+	protected boolean readIndex(long changeCounter) throws IOException
+	{
+		if (buffer.getInt() != SnapshotFormat.MAGIC) return false;
+		if (buffer.getInt() != SnapshotFormat.FORMAT_VERSION) return false;
+		if (buffer.getLong() != changeCounter) return false;
+
+		int stringCount = PackedEncoding.readVarInt(buffer);
+		strings = new String[stringCount];
+		for (int i = 0; i < stringCount; i++)
+		{
+			byte[] data = new byte[PackedEncoding.readVarInt(buffer)];
+			buffer.get(data);
+			strings[i] = new String(data, SnapshotFormat.CHARSET);
+		}
+
+		int tableCount = PackedEncoding.readVarInt(buffer);
+		for (int i = 0; i < tableCount; i++)
+		{
+			int length = PackedEncoding.readVarInt(buffer);
+			int offset = buffer.position();
+			String tableName = strings[PackedEncoding.readVarInt(buffer)];
+			tableMap.put(tableName, offset);
+			buffer.position(offset + length);
+		}
+
+		return true;
+	}
+
+	protected final ByteBuffer				buffer;
+	protected String[]						strings		= null;
+	protected final Map<String, Integer>	tableMap	= new HashMap<String, Integer>();
+
+	protected static Logger					log			= PersistencePlugin.getLogger();
+}
@@ -0,0 +1,315 @@
+package com.elmakers.mine.craftbukkit.persistence.data.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
+import com.elmakers.mine.craftbukkit.persistence.data.DataField;
+import com.elmakers.mine.craftbukkit.persistence.data.DataRow;
+import com.elmakers.mine.craftbukkit.persistence.data.DataTable;
+import com.elmakers.mine.craftbukkit.persistence.data.DataType;
+import com.elmakers.mine.craftbukkit.persistence.data.PackedEncoding;
+
+/**
+ * Builds a binary snapshot of a schema's tables, and writes it to disk.
+ *
+ * Tables are added one at a time, using the same DataTable format that
+ * would be saved to a DataStore. Strings from all tables share a single
+ * dictionary.
+ *
+ * @author NathanWolf
+ *
+ */
+public class SnapshotWriter
+{
+	/**
+	 * Add a table to this snapshot.
+	 *
+	 * Tables with columns that can't be packed are skipped, they will
+	 * be loaded from the store instead.
+	 *
+	 * @param header The header row describing this table's columns
+	 * @param table The table data, with no header row
+	 * @return true if the table was added
+	 */
+	public boolean addTable(DataRow header, DataTable table)
+	{
+		if (header == null) return false;
+
+		List<DataField> columns = header.getFields();
+		List<DataRow> rows = table.getRows();
+		int rowCount = rows.size();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try
+		{
+			PackedEncoding.writeVarLong(out, getStringIndex(table.getName()));
+			PackedEncoding.writeVarLong(out, columns.size());
+			for (DataField column : columns)
+			{
+				if (column.getType() == null)
+				{
+					throw new IllegalArgumentException("column " + column.getName() + " has no type");
+				}
+				PackedEncoding.writeVarLong(out, getStringIndex(column.getName()));
+				PackedEncoding.writeVarLong(out, getStringIndex(column.getType().name()));
+				out.write(column.isIdField() ? 1 : 0);
+			}
+
+			PackedEncoding.writeVarLong(out, rowCount);
+			for (DataField column : columns)
+			{
+				String columnName = column.getName();
+				DataType columnType = column.getType();
+
+				Object[] values = new Object[rowCount];
+				byte[] nullMap = new byte[(rowCount + 7) / 8];
+				for (int i = 0; i < rowCount; i++)
+				{
+					DataField field = rows.get(i).get(columnName);
+					values[i] = field == null ? null : field.getValue();
+					if (values[i] == null)
+					{
+						nullMap[i >> 3] |= 1 << (i & 7);
+					}
+				}
+				out.write(nullMap, 0, nullMap.length);
+
+				for (Object value : values)
+				{
+					if (value != null)
+					{
+						writeValue(out, columnType, value);
+					}
+				}
+			}
+		}
+		catch (IllegalArgumentException ex)
+		{
+			log.info("Persistence: Not snapshotting table " + table.getName() + ": " + ex.getMessage());
+			return false;
+		}
+
+		tables.add(out.toByteArray());
+		return true;
+	}
+
+	/**
+	 * Carry a table over from a previous snapshot.
+	 *
+	 * This is used for entities that were not loaded this session, so their
+	 * cached data is still valid.
+	 *
+	 * @param previous The snapshot to copy from
+	 * @param tableName The table to copy
+	 * @return true if the table was copied
+	 */
+	public boolean copyTable(SnapshotReader previous, String tableName)
+	{
+		if (previous == null) return false;
+
+		DataRow header = previous.getHeader(tableName);
+		if (header == null) return false;
+
+		DataTable table = new DataTable(tableName);
+		if (!previous.load(table, header)) return false;
+
+		return addTable(header, table);
+	}
+
+	public int getTableCount()
+	{
+		return tables.size();
+	}
+
+	/**
+	 * Write this snapshot to a file.
+	 *
+	 * The file is written to a temporary file first, and then moved into place,
+	 * so a failed write will never leave a partial snapshot behind.
+	 *
+	 * @param file The file to write to
+	 * @param changeCounter The change counter of the store this snapshot was taken from
+	 * @return The number of bytes written, or -1 on failure
+	 */
+	public long write(File file, long changeCounter)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PackedEncoding.writeInt(out, SnapshotFormat.MAGIC);
+		PackedEncoding.writeInt(out, SnapshotFormat.FORMAT_VERSION);
+		PackedEncoding.writeLong(out, changeCounter);
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		FileOutputStream fileOut = null;
+		try
+		{
+			PackedEncoding.writeVarLong(out, strings.size());
+			for (String string : strings)
+			{
+				byte[] data = string.getBytes(SnapshotFormat.CHARSET);
+				PackedEncoding.writeVarLong(out, data.length);
+				out.write(data);
+			}
+
+			PackedEncoding.writeVarLong(out, tables.size());
+			for (byte[] table : tables)
+			{
+				PackedEncoding.writeVarLong(out, table.length);
+				out.write(table);
+			}
+
+			fileOut = new FileOutputStream(tempFile);
+			out.writeTo(fileOut);
+			fileOut.close();
+			fileOut = null;
+
+			if (file.exists() && !file.delete())
+			{
+				log.warning("Persistence: Can't replace snapshot " + file.getName());
+				tempFile.delete();
+				return -1;
+			}
+			if (!tempFile.renameTo(file))
+			{
+				log.warning("Persistence: Can't rename snapshot " + tempFile.getName());
+				tempFile.delete();
+				return -1;
+			}
+		}
+		catch (IOException ex)
+		{
+			log.warning("Persistence: Error writing snapshot " + file.getName() + ": " + ex.getMessage());
+			tempFile.delete();
+			return -1;
+		}
+		finally
+		{
+			if (fileOut != null)
+			{
+				try
+				{
+					fileOut.close();
+				}
+				catch (IOException ex)
+				{
+				}
+			}
+		}
+
+		return out.size();
+	}
+
+	protected void writeValue(ByteArrayOutputStream out, DataType type, Object value)
+	{
+		switch (type)
+		{
+			case BYTE:
+			case INTEGER:
+			case LONG:
+				PackedEncoding.writeSignedVarLong(out, getLong(value));
+				return;
+			case ENUMERATION:
+				if (value instanceof Enum<?>)
+				{
+					PackedEncoding.writeVarLong(out, ((Enum<?>)value).ordinal());
+				}
+				else
+				{
+					PackedEncoding.writeVarLong(out, getLong(value));
+				}
+				return;
+			case BOOLEAN:
+				if (value instanceof Boolean)
+				{
+					out.write((Boolean)value ? 1 : 0);
+				}
+				else
+				{
+					out.write(getLong(value) != 0 ? 1 : 0);
+				}
+				return;
+			case FLOAT:
+				PackedEncoding.writeInt(out, Float.floatToIntBits(getNumber(value).floatValue()));
+				return;
+			case DOUBLE:
+				PackedEncoding.writeLong(out, Double.doubleToLongBits(getNumber(value).doubleValue()));
+				return;
+			case DATE:
+				if (value instanceof Date)
+				{
+					PackedEncoding.writeSignedVarLong(out, ((Date)value).getTime());
+				}
+				else
+				{
+					// Stores keep dates in seconds
+					PackedEncoding.writeSignedVarLong(out, getLong(value) * 1000);
+				}
+				return;
+			case STRING:
+				PackedEncoding.writeVarLong(out, getStringIndex(value.toString()));
+				return;
+			case BLOB:
+				if (value instanceof byte[])
+				{
+					byte[] data = (byte[])value;
+					PackedEncoding.writeVarLong(out, data.length);
+					out.write(data, 0, data.length);
+					return;
+				}
+				break;
+		}
+
+		throw new IllegalArgumentException("unsupported column type " + type);
+	}
+
+	protected Number getNumber(Object value)
+	{
+		if (value instanceof Number)
+		{
+			return (Number)value;
+		}
+
+		Object converted = DataType.convertValue(value, Long.class);
+		if (converted instanceof Number)
+		{
+			return (Number)converted;
+		}
+
+		throw new IllegalArgumentException("can't pack value of type " + value.getClass().getName());
+	}
+
+	protected long getLong(Object value)
+	{
+		if (value instanceof Boolean)
+		{
+			return (Boolean)value ? 1 : 0;
+		}
+		return getNumber(value).longValue();
+	}
+
+	protected int getStringIndex(String value)
+	{
+		Integer index = stringMap.get(value);
+		if (index == null)
+		{
+			index = strings.size();
+			strings.add(value);
+			stringMap.put(value, index);
+		}
+		return index;
+	}
+
+	protected final List<String>			strings		= new ArrayList<String>();
+	protected final Map<String, Integer>	stringMap	= new HashMap<String, Integer>();
+	protected final List<byte[]>			tables		= new ArrayList<byte[]>();
+
+	protected static Logger					log			= PersistencePlugin.getLogger();
+}
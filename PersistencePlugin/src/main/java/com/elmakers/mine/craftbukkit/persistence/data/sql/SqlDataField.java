@@ -34,39 +34,38 @@ public class SqlDataField extends DataField
 			return;
 		}
 		
-		Class<?> valueClass = value.getClass();
 		switch (dataType)
 		{
 			case FLOAT:
-				if (float.class.isAssignableFrom(valueClass) || Float.class.isAssignableFrom(valueClass))
+				if (value instanceof Float)
 				{
 					ps.setFloat(fieldIndex, (Float)value);
 					return;
 				}
 				break;
 			case DOUBLE:
-				if (double.class.isAssignableFrom(valueClass) || Double.class.isAssignableFrom(valueClass))
+				if (value instanceof Double)
 				{
 					ps.setDouble(fieldIndex, (Double)value);
 					return;
 				}
 				break;	
 			case INTEGER:
-				if (int.class.isAssignableFrom(valueClass) || Integer.class.isAssignableFrom(valueClass))
+				if (value instanceof Integer)
 				{
 					ps.setInt(fieldIndex, (Integer)value);
 					return;
 				}
 				break;	
 			case BYTE:
-				if (byte.class.isAssignableFrom(valueClass) || Byte.class.isAssignableFrom(valueClass))
+				if (value instanceof Byte)
 				{
 					ps.setByte(fieldIndex, (Byte)value);
 					return;
 				}
 				break;	
 			case LONG:
-				if (long.class.isAssignableFrom(valueClass) || Long.class.isAssignableFrom(valueClass))
+				if (value instanceof Long)
 				{
 					ps.setLong(fieldIndex, (Long)value);
 					return;
@@ -76,7 +75,7 @@ public class SqlDataField extends DataField
 				ps.setString(fieldIndex, (String)value);
 				return;
 			case ENUMERATION:
-				if (valueClass.isEnum())
+				if (value instanceof Enum<?>)
 				{
 					Enum<?> enumValue = (Enum<?>)value;
 					ps.setInt(fieldIndex, enumValue.ordinal());
@@ -93,6 +92,13 @@ public class SqlDataField extends DataField
 				int intValue = flag ? 1 : 0;
 				ps.setInt(fieldIndex, intValue);
 				return;
+			case BLOB:
+				if (value instanceof byte[])
+				{
+					ps.setBytes(fieldIndex, (byte[])value);
+					return;
+				}
+				break;
 		}
 		ps.setObject(fieldIndex, value);
 	}
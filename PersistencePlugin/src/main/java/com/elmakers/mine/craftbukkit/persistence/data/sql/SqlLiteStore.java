@@ -1,6 +1,12 @@
 package com.elmakers.mine.craftbukkit.persistence.data.sql;
 
 import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.List;
 
 import com.elmakers.mine.craftbukkit.persistence.data.DataField;
@@ -47,6 +53,8 @@ public class SqlLiteStore extends SqlStore
 				return "REAL";
 			case STRING:
 				return "TEXT";
+			case BLOB:
+				return "BLOB";
 		}
 		return null;
 	}
@@ -66,12 +74,16 @@ public class SqlLiteStore extends SqlStore
 		{
 			return DataType.STRING;
 		}
+		else if (typeName.equalsIgnoreCase("BLOB"))
+		{
+			return DataType.BLOB;
+		}
 		
 		return DataType.NULL;
 	}
 
 	@Override
-	public DataTable getTableHeader(String tableName)
+	public synchronized DataTable getTableHeader(String tableName)
 	{
 		DataTable currentTable = new DataTable(tableName);
 		currentTable.createHeader();
@@ -99,5 +111,131 @@ public class SqlLiteStore extends SqlStore
 		
 		return currentTable;
 	}
+
+	/**
+	 * SqlLite keeps the change counter in the database's user_version header field.
+	 * 
+	 * This means that the counter is stored atomically with the data it tracks.
+	 */
+	@Override
+	public long getChangeCounter()
+	{
+		if (!isConnected()) return -1;
+		
+		String versionQuery = "PRAGMA user_version";
+		long changeCounter = -1;
+		try
+		{
+			PreparedStatement ps = connection.prepareStatement(versionQuery);
+			logSqlStatement(versionQuery);
+			ResultSet rs = ps.executeQuery();
+			if (rs.next())
+			{
+				changeCounter = rs.getLong(1);
+			}
+			rs.close();
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error reading change counter for " + schema + ": " + ex.getMessage());
+			return -1;
+		}
+		return changeCounter;
+	}
 	
+	@Override
+	protected void setChangeCounter(long changeCounter)
+	{
+		if (!isConnected()) return;
+		
+		// user_version is a 32-bit value, wrap rather than overflow
+		int version = (int)(changeCounter & 0x7FFFFFFF);
+		String versionUpdate = "PRAGMA user_version = " + version;
+		try
+		{
+			PreparedStatement ps = connection.prepareStatement(versionUpdate);
+			logSqlStatement(versionUpdate);
+			ps.execute();
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error updating change counter for " + schema + ": " + ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Back up this database using SqlLite's online backup API, from a separate connection.
+	 * 
+	 * The database is copied a few pages at a time, so the main connection is only
+	 * ever blocked for the time it takes to copy one step. If the database changes
+	 * between steps the copy starts over, so the backup is always a consistent snapshot.
+	 * 
+	 * The backup is written to a temporary file, and moved into place when complete.
+	 */
+	@Override
+	public boolean backup(File backupFile)
+	{
+		File tempFile = new File(backupFile.getPath() + ".tmp");
+		if (tempFile.exists())
+		{
+			tempFile.delete();
+		}
+		
+		Connection source = null;
+		String sql = null;
+		boolean copied = false;
+		try
+		{
+			source = DriverManager.getConnection(getConnectionString(schema, "", ""));
+			sql = "backup to \"" + tempFile.getAbsolutePath() + "\"";
+			Statement backup = source.createStatement();
+			backup.executeUpdate(sql);
+			backup.close();
+			copied = true;
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error backing up " + schema + ": " + ex.getMessage());
+			if (sql != null)
+			{
+				log.info(sql);
+			}
+			return false;
+		}
+		finally
+		{
+			closeConnection(source);
+			if (!copied)
+			{
+				tempFile.delete();
+			}
+		}
+		
+		if (backupFile.exists() && !backupFile.delete())
+		{
+			log.warning("Persistence: Can't replace backup " + backupFile.getName());
+			tempFile.delete();
+			return false;
+		}
+		if (!tempFile.renameTo(backupFile))
+		{
+			log.warning("Persistence: Can't rename backup " + tempFile.getName());
+			tempFile.delete();
+			return false;
+		}
+		
+		return true;
+	}
+	
+	protected static void closeConnection(Connection connection)
+	{
+		if (connection == null) return;
+		try
+		{
+			connection.close();
+		}
+		catch (SQLException ex)
+		{
+		}
+	}
 }
@@ -7,6 +7,7 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.elmakers.mine.craftbukkit.persistence.data.DataField;
@@ -18,6 +19,9 @@ import com.elmakers.mine.craftbukkit.persistence.data.DataType;
 /**
  * An abstract base clase for all JDBC-SQL-based stores.
  * 
+ * Each store has a single connection, so its public methods are synchronized-
+ * a store may be used from the main thread and the Persistence worker at the same time.
+ * 
  * @author NathanWolf
  *
  */
@@ -40,7 +44,7 @@ public abstract class SqlStore extends DataStore
 	}
 	
 	@Override
-	public boolean connect()
+	public synchronized boolean connect()
 	{
 		if (connection != null)
 		{
@@ -126,9 +130,12 @@ public abstract class SqlStore extends DataStore
 		String user = "";
 		String password = "";
 				
+		long start = System.nanoTime();
 		try
 		{
 			connection = DriverManager.getConnection(getConnectionString(schema, user, password));
+			changed = false;
+			metrics.recordConnect(start);
 		}
 		catch(SQLException e)
 		{
@@ -140,7 +147,7 @@ public abstract class SqlStore extends DataStore
 	}
 
 	@Override
-	public void disconnect()
+	public synchronized void disconnect()
 	{
 		if (connection != null)
 		{
@@ -156,7 +163,7 @@ public abstract class SqlStore extends DataStore
 		connection = null;
 	}
 
-	public boolean tableExists(String tableName)
+	public synchronized boolean tableExists(String tableName)
 	{
 		String checkQuery = "SELECT name FROM \"" + getMasterTableName() + "\" WHERE type='table' AND name='" + tableName + "'";
 		boolean tableExists = false;
@@ -178,7 +185,34 @@ public abstract class SqlStore extends DataStore
 	}
 	
 	@Override
-	public boolean create(DataTable table)
+	public synchronized boolean create(DataTable table)
+	{
+		String tableName = table.getName();
+		String createStatement = getCreateStatement(table);
+		if (createStatement == null)
+		{
+			log.warning("Persistence: class " + tableName + " has no fields");
+			return false;
+		}
+		
+		logStoreAccess("Persistence: Created table " + schema + "." + tableName);
+		markChanged();
+		try
+		{
+			PreparedStatement ps = connection.prepareStatement(createStatement);
+			logSqlStatement(createStatement);
+			ps.execute();
+		}
+		catch (SQLException ex)
+		{
+			log.severe("Peristence: error creating table: " + ex.getMessage());
+			log.info(createStatement);
+		}
+		
+		return true;
+	}
+	
+	protected String getCreateStatement(DataTable table)
 	{
 		String tableName = table.getName();
 		String createStatement = "CREATE TABLE \"" + tableName + "\" (";
@@ -195,6 +229,11 @@ public abstract class SqlStore extends DataStore
 			createStatement += "\"" + field.getName() + "\" " + getTypeName(field.getType());
 		}
 		
+		if (fieldCount == 0)
+		{
+			return null;
+		}
+		
 		List<String> idFields = table.getIdFieldNames();
 		createStatement += ", PRIMARY KEY (";
 		boolean firstField = true;
@@ -207,34 +246,206 @@ public abstract class SqlStore extends DataStore
 		}
 		createStatement += "))";
 		
-		if (fieldCount == 0)
+		return createStatement;
+	}
+	
+	@Override
+	protected boolean isColumnCompatible(DataField currentColumn, DataField column)
+	{
+		String currentType = getTypeName(currentColumn.getType());
+		String newType = getTypeName(column.getType());
+		
+		// Don't rebuild for types we can't name, it would happen every time
+		if (currentType == null || newType == null) return true;
+		
+		return currentType.equals(newType);
+	}
+	
+	@Override
+	protected boolean addColumns(DataTable table, List<DataField> columns)
+	{
+		String tableName = table.getName();
+		String alterSql = null;
+		markChanged();
+		try
 		{
-			log.warning("Persistence: class " + tableName + " has no fields");
+			connection.setAutoCommit(false);
+			for (DataField column : columns)
+			{
+				alterSql = "ALTER TABLE \"" + tableName + "\" ADD COLUMN \"" + column.getName() + "\" " + getTypeName(column.getType());
+				executeUpdate(alterSql);
+			}
+			connection.commit();
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error adding columns to " + tableName + ": " + ex.getMessage());
+			log.info(alterSql);
+			rollback();
 			return false;
 		}
+		finally
+		{
+			setAutoCommit();
+		}
 		
-		logStoreAccess("Persistence: Created table " + schema + "." + tableName);
+		return true;
+	}
+	
+	@Override
+	protected boolean rebuildTable(DataTable table, DataTable currentTable)
+	{
+		String tableName = table.getName();
+		String backupTableName = tableName + "_migrate";
+		String createStatement = getCreateStatement(table);
+		if (createStatement == null) return false;
+		
+		List<String> columns = new ArrayList<String>();
+		DataRow currentHeader = currentTable.getHeader();
+		for (DataField column : table.getHeader().getFields())
+		{
+			if (currentHeader.get(column.getName()) != null)
+			{
+				columns.add(column.getName());
+			}
+		}
+		
+		String sql = null;
+		markChanged();
 		try
 		{
-			PreparedStatement ps = connection.prepareStatement(createStatement);
-			logSqlStatement(createStatement);
-			ps.execute();
+			connection.setAutoCommit(false);
+			sql = "DROP TABLE IF EXISTS \"" + backupTableName + "\"";
+			executeUpdate(sql);
+			sql = "ALTER TABLE \"" + tableName + "\" RENAME TO \"" + backupTableName + "\"";
+			executeUpdate(sql);
+			sql = createStatement;
+			executeUpdate(sql);
+			sql = getCopyStatement(backupTableName, tableName, columns);
+			int rowCount = columns.size() == 0 ? 0 : executeUpdate(sql);
+			sql = "DROP TABLE \"" + backupTableName + "\"";
+			executeUpdate(sql);
+			connection.commit();
+			logStoreAccess("Persistence: copied %d rows into rebuilt table " + schema + "." + tableName, rowCount);
 		}
 		catch (SQLException ex)
 		{
-			log.severe("Peristence: error creating table: " + ex.getMessage());
-			log.info(createStatement);
+			log.warning("Persistence: Error rebuilding table " + tableName + ": " + ex.getMessage());
+			log.info(sql);
+			rollback();
+			return false;
+		}
+		finally
+		{
+			setAutoCommit();
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public synchronized boolean copyTable(String sourceTable, String destinationTable)
+	{
+		DataRow sourceHeader = getTableHeader(sourceTable).getHeader();
+		DataRow destinationHeader = getTableHeader(destinationTable).getHeader();
+		List<String> columns = new ArrayList<String>();
+		for (DataField column : destinationHeader.getFields())
+		{
+			if (sourceHeader.get(column.getName()) != null)
+			{
+				columns.add(column.getName());
+			}
+		}
+		if (columns.size() == 0) return false;
+		
+		String copySql = getCopyStatement(sourceTable, destinationTable, columns);
+		markChanged();
+		try
+		{
+			int rowCount = executeUpdate(copySql);
+			logStoreAccess("Persistence: copied %d rows from " + schema + "." + sourceTable + " to " + destinationTable, rowCount);
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error copying table " + sourceTable + " to " + destinationTable + ": " + ex.getMessage());
+			log.info(copySql);
+			return false;
 		}
 		
 		return true;
 	}
+	
+	@Override
+	public synchronized boolean execute(String statement)
+	{
+		markChanged();
+		try
+		{
+			executeUpdate(statement);
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error executing statement: " + ex.getMessage());
+			log.info(statement);
+			return false;
+		}
+		
+		return true;
+	}
+	
+	protected String getCopyStatement(String sourceTable, String destinationTable, List<String> columns)
+	{
+		String columnList = "";
+		for (String column : columns)
+		{
+			if (columnList.length() > 0)
+			{
+				columnList += ", ";
+			}
+			columnList += "\"" + column + "\"";
+		}
+		return "INSERT INTO \"" + destinationTable + "\" (" + columnList + ") SELECT " + columnList + " FROM \"" + sourceTable + "\"";
+	}
+	
+	protected int executeUpdate(String sql) throws SQLException
+	{
+		PreparedStatement ps = connection.prepareStatement(sql);
+		logSqlStatement(sql);
+		int rowCount = ps.executeUpdate();
+		ps.close();
+		return rowCount;
+	}
+	
+	protected void rollback()
+	{
+		try
+		{
+			connection.rollback();
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error rolling back: " + ex.getMessage());
+		}
+	}
+	
+	protected void setAutoCommit()
+	{
+		try
+		{
+			connection.setAutoCommit(true);
+		}
+		catch (SQLException ex)
+		{
+		}
+	}
 
 	@Override
-	public boolean drop(String tableName)
+	public synchronized boolean drop(String tableName)
 	{
 		if (tableExists(tableName))
 		{
 			String dropQuery = "DROP TABLE \"" + tableName + "\"";
+			markChanged();
 			try
 			{
 				PreparedStatement ps = connection.prepareStatement(dropQuery);
@@ -253,15 +464,18 @@ public abstract class SqlStore extends DataStore
 	}
 	
 	@Override
-	public boolean clear(DataTable table)
+	public synchronized boolean clear(DataTable table)
 	{
 		String deleteSql = "DELETE FROM \"" + table.getName() + "\"";
 		
+		markChanged();
+		long start = System.nanoTime();
 		try
 		{
 			PreparedStatement deleteStatement = connection.prepareStatement(deleteSql);
 			logSqlStatement(deleteSql);
 			deleteStatement.execute();
+			metrics.recordDelete(start, deleteStatement.getUpdateCount());
 		}
 		catch (SQLException ex)
 		{
@@ -281,6 +495,7 @@ public abstract class SqlStore extends DataStore
 	protected int load(DataTable table, String sqlQuery)
 	{
 		int rowCount = 0;
+		long start = System.nanoTime();
 		try
 		{
 			PreparedStatement ps = connection.prepareStatement(sqlQuery);
@@ -301,11 +516,12 @@ public abstract class SqlStore extends DataStore
 			return -1;
 		}
 		
+		metrics.recordLoad(start, rowCount);
 		return rowCount;
 	}
 
 	@Override
-	public boolean load(DataTable table)
+	public synchronized boolean load(DataTable table)
 	{
 		String tableName = table.getName();
 		
@@ -320,7 +536,107 @@ public abstract class SqlStore extends DataStore
 	}
 	
 	@Override
-	public boolean save(DataTable table)
+	public synchronized boolean loadChanged(DataTable table, String stampColumn, long since)
+	{
+		String tableName = table.getName();
+		String selectQuery = "SELECT * FROM \"" + tableName + "\" WHERE \"" + stampColumn + "\" > " + since;
+		
+		int rowCount = load(table, selectQuery);
+		logStoreAccess("Persistence: loaded %d changed objects from " + schema + "." + tableName, rowCount);
+		
+		return rowCount >= 0;
+	}
+	
+	@Override
+	public synchronized boolean loadIds(DataTable table, String idColumn, List<Object> ids)
+	{
+		String tableName = table.getName();
+		int rowCount = 0;
+		long start = System.nanoTime();
+		
+		// Keep well under the limit on statement parameters
+		for (int offset = 0; offset < ids.size(); offset += MAX_STATEMENT_IDS)
+		{
+			List<Object> batch = ids.subList(offset, Math.min(ids.size(), offset + MAX_STATEMENT_IDS));
+			String selectQuery = "SELECT * FROM \"" + tableName + "\" WHERE \"" + idColumn + "\" IN (";
+			for (int i = 0; i < batch.size(); i++)
+			{
+				if (i != 0) selectQuery += ", ";
+				selectQuery += "?";
+			}
+			selectQuery += ")";
+			
+			try
+			{
+				PreparedStatement ps = connection.prepareStatement(selectQuery);
+				int index = 1;
+				for (Object id : batch)
+				{
+					ps.setObject(index, id);
+					index++;
+				}
+				logSqlStatement(selectQuery);
+				ResultSet rs = ps.executeQuery();
+				while (rs.next())
+				{
+					table.addRow(new SqlDataRow(table, rs));
+					rowCount++;
+				}
+				rs.close();
+			}
+			catch (SQLException ex)
+			{
+				log.warning("Persistence: Error selecting from table " + tableName + ": " + ex.getMessage());
+				return false;
+			}
+		}
+		
+		metrics.recordLoad(start, rowCount);
+		logStoreAccess("Persistence: loaded %d objects from " + schema + "." + tableName, rowCount);
+		return true;
+	}
+	
+	@Override
+	public synchronized List<Object> getIds(String tableName, String idColumn)
+	{
+		DataTable idTable = new DataTable(tableName);
+		String selectQuery = "SELECT \"" + idColumn + "\" FROM \"" + tableName + "\"";
+		if (load(idTable, selectQuery) < 0) return null;
+		
+		List<Object> ids = new ArrayList<Object>();
+		for (DataRow row : idTable.getRows())
+		{
+			DataField idField = row.get(idColumn);
+			if (idField != null)
+			{
+				ids.add(idField.getValue());
+			}
+		}
+		return ids;
+	}
+	
+	@Override
+	public synchronized int count(String tableName)
+	{
+		String countQuery = "SELECT COUNT(*) FROM \"" + tableName + "\"";
+		try
+		{
+			PreparedStatement ps = connection.prepareStatement(countQuery);
+			logSqlStatement(countQuery);
+			ResultSet rs = ps.executeQuery();
+			int count = rs.next() ? rs.getInt(1) : 0;
+			rs.close();
+			return count;
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error counting table " + tableName + ": " + ex.getMessage());
+			return -1;
+		}
+	}
+	
+	@Override
+	public synchronized boolean save(DataTable table)
 	{
 		int rowCount = 0;
 		
@@ -354,12 +670,16 @@ public abstract class SqlStore extends DataStore
 		}
 		
 		String updateSql = "INSERT OR REPLACE INTO \"" + tableName + "\" (" + fieldList + ") VALUES (" + valueList + ")";
-		for (DataRow row : table.getRows())
-        {
-			try
-			{	
-				PreparedStatement updateStatement = connection.prepareStatement(updateSql);
-			
+		markChanged();
+		long start = System.nanoTime();
+		
+		// Save all rows in one transaction, rather than committing each row
+		try
+		{
+			connection.setAutoCommit(false);
+			PreparedStatement updateStatement = connection.prepareStatement(updateSql);
+			for (DataRow row : table.getRows())
+			{
 				int index = 1;
 				List<DataField> fields = row.getFields();
 				for (DataField field : fields)
@@ -367,20 +687,27 @@ public abstract class SqlStore extends DataStore
 					SqlDataField.setValue(updateStatement, index, field.getValue(), field.getType());	
 					index++;
 				}
-           
+				
 				rowCount++;
 				logSqlStatement(updateSql);
 				updateStatement.execute();
 			}
-			catch (SQLException ex)
-			{
-				log.warning("Persistence: Error updating table " + tableName + ": " + ex.getMessage());
-				log.info(updateSql);
-				return false;
-			}
-			
-        }
+			connection.commit();
+		}
+		catch (SQLException ex)
+		{
+			log.warning("Persistence: Error updating table " + tableName + ": " + ex.getMessage());
+			log.info(updateSql);
+			rollback();
+			metrics.recordSave(start, 0);
+			return false;
+		}
+		finally
+		{
+			setAutoCommit();
+		}
 		
+		metrics.recordSave(start, rowCount);
 		logStoreAccess("Persistence: saved %d objects to " + schema + "." + tableName, rowCount);
 		
 		return true;
@@ -388,7 +715,7 @@ public abstract class SqlStore extends DataStore
 	
 		
 	@Override
-	public boolean clearIds(DataTable table, List<Object> ids)
+	public synchronized boolean clearIds(DataTable table, List<Object> ids)
 	{
 		int rowCount = 0;
 		
@@ -399,37 +726,49 @@ public abstract class SqlStore extends DataStore
 		
 		String tableName = table.getName();
 		String idField = idFields.get(0);
-		String deleteSql = "DELETE FROM \"" + tableName + "\" WHERE \"" + idField + "\" IN (";
 		
-		boolean firstId = true;
-		for (int i = 0; i < ids.size(); i++)
-		{
-			if (!firstId) deleteSql += ", ";
-			firstId = false;
-			deleteSql += "?";
-			rowCount++;
-		}
-		deleteSql += ")";
+		markChanged();
+		long start = System.nanoTime();
+		int deletedCount = 0;
 		
-		try
+		// Keep well under the limit on statement parameters
+		for (int offset = 0; offset < ids.size(); offset += MAX_STATEMENT_IDS)
 		{
-			PreparedStatement deleteStatement = connection.prepareStatement(deleteSql);
+			List<Object> batch = ids.subList(offset, Math.min(ids.size(), offset + MAX_STATEMENT_IDS));
+			String deleteSql = "DELETE FROM \"" + tableName + "\" WHERE \"" + idField + "\" IN (";
 			
-			int index = 1;
-			for (Object id : ids)
+			boolean firstId = true;
+			for (int i = 0; i < batch.size(); i++)
 			{
-				deleteStatement.setObject(index, id);
-				index++;
+				if (!firstId) deleteSql += ", ";
+				firstId = false;
+				deleteSql += "?";
+				rowCount++;
+			}
+			deleteSql += ")";
+			
+			try
+			{
+				PreparedStatement deleteStatement = connection.prepareStatement(deleteSql);
+				
+				int index = 1;
+				for (Object id : batch)
+				{
+					deleteStatement.setObject(index, id);
+					index++;
+				}
+				logSqlStatement(deleteSql);
+				deleteStatement.execute();
+				deletedCount += deleteStatement.getUpdateCount();
+			}
+			catch (SQLException ex)
+			{
+				log.warning("Persistence: Error deleting ids " + tableName + ": " + ex.getMessage());
+				log.info(deleteSql);
+				return false;
 			}
-			logSqlStatement(deleteSql);
-			deleteStatement.execute();
-		}
-		catch (SQLException ex)
-		{
-			log.warning("Persistence: Error deleting ids " + tableName + ": " + ex.getMessage());
-			log.info(deleteSql);
-			return false;
 		}
+		metrics.recordDelete(start, deletedCount);
 		
 		if (table.getRows().size() > 0)
 		{
@@ -469,6 +808,7 @@ public abstract class SqlStore extends DataStore
 	}
 	
 	protected static boolean logSqlStatements = false;
+	protected static final int MAX_STATEMENT_IDS = 500;
 	
 	protected File dataFolder = null;
 	protected Connection connection = null;
@@ -0,0 +1,114 @@
+package com.elmakers.mine.craftbukkit.persistence.metrics;
+
+import com.elmakers.mine.craftbukkit.persistence.core.PersistedClass;
+
+/**
+ * Statistics for a single persisted class.
+ * 
+ * Counters are striped, so recording them on the get path takes no locks.
+ * Cached and dirty counts are read from the entity when requested.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class EntityMetrics implements EntityMetricsMBean
+{
+	public EntityMetrics(PersistedClass entity)
+	{
+		this.entity = entity;
+	}
+	
+	public void recordHit()
+	{
+		hits.increment();
+	}
+	
+	public void recordMiss()
+	{
+		misses.increment();
+	}
+	
+	public void recordIdConversion()
+	{
+		idConversions.increment();
+	}
+	
+	public void recordRowsLoaded(int rowCount)
+	{
+		rowsLoaded.add(rowCount);
+	}
+	
+	public void recordRowsSaved(int rowCount)
+	{
+		rowsSaved.add(rowCount);
+	}
+	
+	public long getHits()
+	{
+		return hits.get();
+	}
+	
+	public long getMisses()
+	{
+		return misses.get();
+	}
+	
+	public double getHitRate()
+	{
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		if (total == 0) return 0;
+		return (double)hitCount / total;
+	}
+	
+	public long getIdConversions()
+	{
+		return idConversions.get();
+	}
+	
+	public int getCachedCount()
+	{
+		return entity.getCachedCount();
+	}
+	
+	public int getDirtyCount()
+	{
+		return entity.getDirtyCount();
+	}
+	
+	public long getDedupedStrings()
+	{
+		return entity.getDedupedCount();
+	}
+	
+	public long getDedupedBytes()
+	{
+		return entity.getDedupedBytes();
+	}
+	
+	public long getRowsLoaded()
+	{
+		return rowsLoaded.get();
+	}
+	
+	public long getRowsSaved()
+	{
+		return rowsSaved.get();
+	}
+	
+	public void reset()
+	{
+		hits.reset();
+		misses.reset();
+		idConversions.reset();
+		rowsLoaded.reset();
+		rowsSaved.reset();
+	}
+	
+	protected final PersistedClass	entity;
+	protected final StripedCounter	hits			= new StripedCounter();
+	protected final StripedCounter	misses			= new StripedCounter();
+	protected final StripedCounter	idConversions	= new StripedCounter();
+	protected final StripedCounter	rowsLoaded		= new StripedCounter();
+	protected final StripedCounter	rowsSaved		= new StripedCounter();
+}
@@ -0,0 +1,22 @@
+package com.elmakers.mine.craftbukkit.persistence.metrics;
+
+/**
+ * JMX interface for per-entity statistics.
+ * 
+ * @author NathanWolf
+ *
+ */
+public interface EntityMetricsMBean
+{
+	public long getHits();
+	public long getMisses();
+	public double getHitRate();
+	public long getIdConversions();
+	public int getCachedCount();
+	public int getDirtyCount();
+	public long getRowsLoaded();
+	public long getRowsSaved();
+	public long getDedupedStrings();
+	public long getDedupedBytes();
+	public void reset();
+}
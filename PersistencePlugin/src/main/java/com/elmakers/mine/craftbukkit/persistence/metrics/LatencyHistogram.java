@@ -0,0 +1,103 @@
+package com.elmakers.mine.craftbukkit.persistence.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records operation times in power-of-two buckets.
+ * 
+ * Bucket 0 holds times under one microsecond, and bucket n holds times from
+ * 2^(n-1) up to 2^n microseconds. Percentiles are reported as the upper bound
+ * of the bucket they fall in, so they are accurate to within a factor of two.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class LatencyHistogram
+{
+	/**
+	 * Record the time since an operation started.
+	 * 
+	 * @param startTime The start time, from System.nanoTime()
+	 */
+	public void record(long startTime)
+	{
+		recordNanos(System.nanoTime() - startTime);
+	}
+	
+	public void recordNanos(long nanos)
+	{
+		long micros = nanos / 1000;
+		int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+		if (bucket >= BUCKET_COUNT)
+		{
+			bucket = BUCKET_COUNT - 1;
+		}
+		buckets.getAndIncrement(bucket);
+		count.increment();
+		totalNanos.add(nanos);
+	}
+	
+	public long getCount()
+	{
+		return count.get();
+	}
+	
+	public double getMeanMillis()
+	{
+		long samples = count.get();
+		if (samples == 0) return 0;
+		return totalNanos.get() / (double)samples / 1000000;
+	}
+	
+	/**
+	 * Estimate a percentile from the recorded times.
+	 * 
+	 * @param percentile The percentile to find, from 0 to 100
+	 * @return The upper bound of the bucket holding that percentile, in milliseconds
+	 */
+	public double getPercentileMillis(double percentile)
+	{
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) return 0;
+		
+		long target = (long)Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += counts[i];
+			if (seen >= target)
+			{
+				return (1L << i) / 1000.0;
+			}
+		}
+		return (1L << (BUCKET_COUNT - 1)) / 1000.0;
+	}
+	
+	public String getSummary()
+	{
+		return String.format("%d, mean %.2fms, p50 %.2fms, p99 %.2fms", getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99));
+	}
+	
+	public void reset()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			buckets.set(i, 0);
+		}
+		count.reset();
+		totalNanos.reset();
+	}
+	
+	protected final AtomicLongArray	buckets		= new AtomicLongArray(BUCKET_COUNT);
+	protected final StripedCounter	count		= new StripedCounter();
+	protected final StripedCounter	totalNanos	= new StripedCounter();
+	
+	// The last bucket holds anything over half an hour
+	protected static final int		BUCKET_COUNT	= 32;
+}
@@ -0,0 +1,82 @@
+package com.elmakers.mine.craftbukkit.persistence.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.elmakers.mine.bukkit.plugins.persistence.PersistencePlugin;
+
+/**
+ * Publishes entity and store statistics as JMX MBeans.
+ * 
+ * Failing to register is not an error- the statistics are still available
+ * through the stats command.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class MetricsRegistry
+{
+	public static String getEntityName(String schemaName, String entityName)
+	{
+		return DOMAIN + ":type=Entity,schema=" + ObjectName.quote(schemaName) + ",name=" + ObjectName.quote(entityName);
+	}
+	
+	public static String getStoreName(String schemaName)
+	{
+		return DOMAIN + ":type=Store,schema=" + ObjectName.quote(schemaName);
+	}
+	
+	public static void register(Object mbean, String name)
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			try
+			{
+				server.registerMBean(mbean, objectName);
+			}
+			catch (InstanceAlreadyExistsException ex)
+			{
+				// Left over from a previous load of this plugin
+				server.unregisterMBean(objectName);
+				server.registerMBean(mbean, objectName);
+			}
+		}
+		catch (JMException ex)
+		{
+			log.warning("Persistence: Can't register metrics " + name + ": " + ex.getMessage());
+		}
+		catch (SecurityException ex)
+		{
+			log.warning("Persistence: Can't register metrics " + name + ": " + ex.getMessage());
+		}
+	}
+	
+	public static void unregister(String name)
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if (server.isRegistered(objectName))
+			{
+				server.unregisterMBean(objectName);
+			}
+		}
+		catch (JMException ex)
+		{
+		}
+		catch (SecurityException ex)
+		{
+		}
+	}
+	
+	protected static final String	DOMAIN	= "com.elmakers.mine.persistence";
+	protected static Logger			log		= PersistencePlugin.getLogger();
+}
@@ -0,0 +1,115 @@
+package com.elmakers.mine.craftbukkit.persistence.metrics;
+
+/**
+ * Statistics for a single data store.
+ * 
+ * Each operation records its time from System.nanoTime(), and the number of rows it touched.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class StoreMetrics implements StoreMetricsMBean
+{
+	public void recordLoad(long startTime, int rowCount)
+	{
+		loads.record(startTime);
+		if (rowCount > 0)
+		{
+			rowsLoaded.add(rowCount);
+		}
+	}
+	
+	public void recordSave(long startTime, int rowCount)
+	{
+		saves.record(startTime);
+		rowsSaved.add(rowCount);
+	}
+	
+	public void recordDelete(long startTime, int rowCount)
+	{
+		deletes.record(startTime);
+		if (rowCount > 0)
+		{
+			rowsDeleted.add(rowCount);
+		}
+	}
+	
+	public void recordConnect(long startTime)
+	{
+		connects.record(startTime);
+	}
+	
+	public long getRowsLoaded()
+	{
+		return rowsLoaded.get();
+	}
+	
+	public long getRowsSaved()
+	{
+		return rowsSaved.get();
+	}
+	
+	public long getRowsDeleted()
+	{
+		return rowsDeleted.get();
+	}
+	
+	public LatencyHistogram getLoads()
+	{
+		return loads;
+	}
+	
+	public LatencyHistogram getSaves()
+	{
+		return saves;
+	}
+	
+	public LatencyHistogram getDeletes()
+	{
+		return deletes;
+	}
+	
+	public LatencyHistogram getConnects()
+	{
+		return connects;
+	}
+	
+	public String getLoadLatency()
+	{
+		return loads.getSummary();
+	}
+	
+	public String getSaveLatency()
+	{
+		return saves.getSummary();
+	}
+	
+	public String getDeleteLatency()
+	{
+		return deletes.getSummary();
+	}
+	
+	public String getConnectLatency()
+	{
+		return connects.getSummary();
+	}
+	
+	public void reset()
+	{
+		rowsLoaded.reset();
+		rowsSaved.reset();
+		rowsDeleted.reset();
+		loads.reset();
+		saves.reset();
+		deletes.reset();
+		connects.reset();
+	}
+	
+	protected final StripedCounter		rowsLoaded	= new StripedCounter();
+	protected final StripedCounter		rowsSaved	= new StripedCounter();
+	protected final StripedCounter		rowsDeleted	= new StripedCounter();
+	protected final LatencyHistogram	loads		= new LatencyHistogram();
+	protected final LatencyHistogram	saves		= new LatencyHistogram();
+	protected final LatencyHistogram	deletes		= new LatencyHistogram();
+	protected final LatencyHistogram	connects	= new LatencyHistogram();
+}
@@ -0,0 +1,21 @@
+package com.elmakers.mine.craftbukkit.persistence.metrics;
+
+/**
+ * JMX interface for per-store statistics.
+ * 
+ * Latencies are reported as summary strings, with a count, mean, p50 and p99.
+ * 
+ * @author NathanWolf
+ *
+ */
+public interface StoreMetricsMBean
+{
+	public long getRowsLoaded();
+	public long getRowsSaved();
+	public long getRowsDeleted();
+	public String getLoadLatency();
+	public String getSaveLatency();
+	public String getDeleteLatency();
+	public String getConnectLatency();
+	public void reset();
+}
@@ -0,0 +1,59 @@
+package com.elmakers.mine.craftbukkit.persistence.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that can be updated from many threads without contention.
+ * 
+ * Each thread adds to one of several stripes, spaced out so that they sit on
+ * separate cache lines. Reading the counter adds up all of the stripes, so
+ * reads are slower than writes- which is fine for statistics.
+ * 
+ * @author NathanWolf
+ *
+ */
+public class StripedCounter
+{
+	public void increment()
+	{
+		stripes.getAndIncrement(getStripe());
+	}
+	
+	public void add(long amount)
+	{
+		stripes.getAndAdd(getStripe(), amount);
+	}
+	
+	public long get()
+	{
+		long total = 0;
+		for (int i = 0; i < STRIPE_COUNT; i++)
+		{
+			total += stripes.get(i * STRIPE_SPACING);
+		}
+		return total;
+	}
+	
+	public void reset()
+	{
+		for (int i = 0; i < STRIPE_COUNT; i++)
+		{
+			stripes.set(i * STRIPE_SPACING, 0);
+		}
+	}
+	
+	protected static int getStripe()
+	{
+		// Thread ids are sequential, so mix them up a bit
+		int hash = (int)Thread.currentThread().getId() * 0x9E3779B9;
+		return ((hash >>> 24) & (STRIPE_COUNT - 1)) * STRIPE_SPACING;
+	}
+	
+	protected final AtomicLongArray	stripes			= new AtomicLongArray(STRIPE_COUNT * STRIPE_SPACING);
+	
+	// Must be a power of two
+	protected static final int		STRIPE_COUNT	= 8;
+	
+	// Eight longs to a 64-byte cache line
+	protected static final int		STRIPE_SPACING	= 8;
+}
@@ -2,10 +2,12 @@ package org.sample;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.material.MaterialData;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class SampleSpell extends Spell
@@ -14,14 +16,15 @@ public class SampleSpell extends Spell
 	private int	defaultAmount	= 1;
 
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		if (!isUnderwater())
+		Player player = context.getPlayer();
+		if (!context.isUnderwater())
 		{
-			noTargetThrough(Material.STATIONARY_WATER);
-			noTargetThrough(Material.WATER);
+			context.noTargetThrough(Material.STATIONARY_WATER);
+			context.noTargetThrough(Material.WATER);
 		}
-		Block target = getTargetBlock();
+		Block target = context.getTargetBlock();
 
 		if (target == null)
 		{
@@ -0,0 +1,702 @@
+package com.elmakers.mine.bukkit.plugins.spells;
+
+import java.util.List;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.Vector;
+
+import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
+
+/**
+ * The state of a single spell cast.
+ *
+ * Spells are shared by every player, so anything that belongs to one cast- the caster,
+ * parameters, targeting and the blocks the cast changes- lives here instead of on the Spell.
+ * A new context is created for each cast and passed to Spell.onCast.
+ *
+ * Blocks added to getBlocks() are added to the caster's undo queue when the cast finishes.
+ *
+ * Original targeting code ported from: HitBlox.java, Ho0ber@gmail.com
+ *
+ * @author NathanWolf
+ *
+ */
+public class SpellContext
+{
+	public SpellContext(Spell spell, Player player, String[] parameters)
+	{
+		this.spell = spell;
+		this.player = player;
+		this.parameters = parameters;
+
+		targetThrough(Material.AIR);
+		targetThrough(Material.WATER);
+		targetThrough(Material.STATIONARY_WATER);
+
+		initializeTargeting();
+	}
+
+	public Spell getSpell()
+	{
+		return spell;
+	}
+
+	public Player getPlayer()
+	{
+		return player;
+	}
+
+	public String[] getParameters()
+	{
+		return parameters;
+	}
+
+	/**
+	 * The world the player was in when they cast the spell.
+	 *
+	 * @return The caster's world
+	 */
+	public World getWorld()
+	{
+		return world;
+	}
+
+	/**
+	 * The player's location when they cast the spell.
+	 *
+	 * @return The caster's location
+	 */
+	public Location getLocation()
+	{
+		return playerLocation;
+	}
+
+	/**
+	 * Get the blocks changed by this cast.
+	 *
+	 * Add blocks here before changing them, and they'll be added to the player's
+	 * undo queue when the cast is done.
+	 *
+	 * @return The list of changed blocks
+	 */
+	public BlockList getBlocks()
+	{
+		return blocks;
+	}
+
+	/*
+	 * Messages and permissions
+	 */
+
+	public void castMessage(String message)
+	{
+		spell.castMessage(player, message);
+	}
+
+	public void sendMessage(String message)
+	{
+		spell.sendMessage(player, message);
+	}
+
+	public boolean hasSpellPermission()
+	{
+		return spell.hasSpellPermission(player);
+	}
+
+	public boolean otherSpellHasPermission(String spellName)
+	{
+		return spell.otherSpellHasPermission(spellName, player);
+	}
+
+	/*
+	 * General helper functions
+	 */
+	public ItemStack getBuildingMaterial()
+	{
+		ItemStack result = null;
+		List<Material> buildingMaterials = spell.spells.getBuildingMaterials();
+		Inventory inventory = player.getInventory();
+		ItemStack[] contents = inventory.getContents();
+
+		result = contents[8];
+		boolean isAir = result == null || result.getType() == Material.AIR;
+		if (!isAir && buildingMaterials.contains(result.getType()))
+		{
+			return result;
+		}
+
+		if (!isAir && !buildingMaterials.contains(result.getType()))
+		{
+			return null;
+		}
+
+		// Should be air now
+		result = null;
+
+		for (int i = 8; i >= 0; i--)
+		{
+			if (contents[i] == null) break;
+			Material candidate = contents[i].getType();
+			if (buildingMaterials.contains(candidate))
+			{
+				result = new ItemStack(Material.AIR);
+				break;
+			}
+		}
+
+		return result;
+	}
+
+	public boolean giveMaterial(Material materialType, int amount, short damage, byte data)
+	{
+		ItemStack itemStack = new ItemStack(materialType, amount, damage, data);
+		boolean active = false;
+		for (int i = 8; i >= 0; i--)
+		{
+			ItemStack current = player.getInventory().getItem(i);
+			if (current == null || current.getType() == Material.AIR)
+			{
+				player.getInventory().setItem(i, itemStack);
+				active = true;
+				break;
+			}
+		}
+
+		if (!active)
+		{
+			player.getInventory().addItem(itemStack);
+		}
+
+		return true;
+	}
+
+	/*
+	 * Targeting options
+	 */
+
+	public void targetThrough(Material mat)
+	{
+		targetThroughIds[mat.getId()] = TARGET_THROUGH;
+	}
+
+	public void noTargetThrough(Material mat)
+	{
+		targetThroughIds[mat.getId()] = TARGET_NOT_THROUGH;
+	}
+
+	public boolean isTargetable(Material mat)
+	{
+		return isTargetable(mat.getId());
+	}
+
+	/**
+	 * Check a block type by id, so targeting doesn't need a Block or Material.
+	 *
+	 * @param typeId The block type id
+	 * @return true if this type can be targeted
+	 */
+	public boolean isTargetable(int typeId)
+	{
+		byte checkMat = typeId >= 0 && typeId < targetThroughIds.length ? targetThroughIds[typeId] : TARGET_UNSET;
+		if (reverseTargeting)
+		{
+			return checkMat == TARGET_THROUGH;
+		}
+		return checkMat != TARGET_THROUGH;
+	}
+
+	public void setReverseTargeting(boolean reverse)
+	{
+		reverseTargeting = reverse;
+	}
+
+	public boolean isReverseTargeting()
+	{
+		return reverseTargeting;
+	}
+
+	public void setTargetHeightRequired(int height)
+	{
+		targetHeightRequired = height;
+	}
+
+	public int getTargetHeightRequired()
+	{
+		return targetHeightRequired;
+	}
+
+	public void setMaxRange(int range, boolean allow)
+	{
+		this.range = range;
+		this.allowMaxRange = allow;
+	}
+
+	/*
+	 * Ground / location search and test function functions
+	 */
+
+	public Location findPlaceToStand(Location playerLoc, boolean goUp)
+	{
+		int step;
+		if (goUp)
+		{
+			step = 1;
+		}
+		else
+		{
+			step = -1;
+		}
+
+		// get player position
+		int x = (int) Math.round(playerLoc.getX() - 0.5);
+		int y = (int) Math.round(playerLoc.getY() + step + step);
+		int z = (int) Math.round(playerLoc.getZ() - 0.5);
+
+		// search for a spot to stand
+		while (4 < y && y < 125)
+		{
+			Block block = world.getBlockAt(x, y, z);
+			Block blockOneUp = world.getBlockAt(x, y + 1, z);
+			Block blockTwoUp = world.getBlockAt(x, y + 2, z);
+			if
+			(
+				spell.isOkToStandOn(block.getType())
+			&&	spell.isOkToStandIn(blockOneUp.getType())
+			&& 	spell.isOkToStandIn(blockTwoUp.getType())
+			)
+			{
+				// spot found - return location
+				return new Location(world, (double) x + 0.5, (double) y + 1, (double) z + 0.5, playerLoc.getYaw(),
+						playerLoc.getPitch());
+			}
+			y += step;
+		}
+
+		// no spot found
+		return null;
+	}
+
+	/**
+	 * Get the block the player is standing on.
+	 *
+	 * @return The Block the player is standing on
+	 */
+	public Block getPlayerBlock()
+	{
+		return spell.getPlayerBlock(player);
+	}
+
+	/**
+	 * Check to see if the player is underwater
+	 *
+	 * @return true if the player is underwater
+	 */
+	public boolean isUnderwater()
+	{
+		return spell.isUnderwater(player);
+	}
+
+	/*
+	 * Direction functions
+	 */
+
+	/**
+	 * Get the direction the player is facing as a BlockFace.
+	 *
+	 * @return a BlockFace representing the direction the player is facing
+	 */
+	public BlockFace getPlayerFacing()
+	{
+		float playerRot = getPlayerRotation();
+
+		BlockFace direction = BlockFace.NORTH;
+		if (playerRot <= 45 || playerRot > 315)
+		{
+			direction = BlockFace.WEST;
+		}
+		else if (playerRot > 45 && playerRot <= 135)
+		{
+			direction = BlockFace.NORTH;
+		}
+		else if (playerRot > 135 && playerRot <= 225)
+		{
+			direction = BlockFace.EAST;
+		}
+		else if (playerRot > 225 && playerRot <= 315)
+		{
+			direction = BlockFace.SOUTH;
+		}
+
+		return direction;
+	}
+
+	/**
+	 * Find a good location to spawn a projectile, such as a fireball.
+	 *
+	 * @return The projectile spawn location
+	 */
+	public Location getProjectileSpawnLocation()
+	{
+		Block spawnBlock = getPlayerBlock();
+
+		int height = 2;
+		double hLength = 2;
+		double xOffset = (hLength * Math.cos(Math.toRadians(xRotation)));
+		double zOffset = (hLength * Math.sin(Math.toRadians(xRotation)));
+
+		Vector aimVector = new Vector(xOffset + 0.5, height + 0.5, zOffset + 0.5);
+
+		Location location = new Location(world, spawnBlock.getX() + aimVector.getX(), spawnBlock.getY()
+				+ aimVector.getY(), spawnBlock.getZ() + aimVector.getZ(), playerLocation.getYaw(),
+				playerLocation.getPitch());
+
+		return location;
+	}
+
+	/**
+	 * Get a Vector reprsenting the current aim direction
+	 *
+	 * @return The player's aim vector
+	 */
+	public Vector getAimVector()
+	{
+		return new Vector((0 - Math.sin(Math.toRadians(playerLocation.getYaw()))), (0 - Math.sin(Math
+				.toRadians(playerLocation.getPitch()))), Math.cos(Math.toRadians(playerLocation.getYaw())));
+	}
+
+	/**
+	 * Get the (simplified) player pitch.
+	 *
+	 * @return Player Y-axis rotation (pitch)
+	 */
+	public double getYRotation()
+	{
+		return yRotation;
+	}
+
+	/**
+	 * Get the (simplified) player yaw.
+	 * @return Player X-axis rotation (yaw)
+	 */
+	public double getXRotation()
+	{
+		return xRotation;
+	}
+
+	/**
+	 * Gets the normal player rotation.
+	 *
+	 * This differs from xRotation by 90 degrees. xRotation is ported from
+	 * HitBlox, I really need to get rid of or refactor all that code, but it may be
+	 * worth just waiting for the Bukkit targeting implementation at this point.
+	 *
+	 * @return The player X-rotation (yaw)
+	 */
+	public float getPlayerRotation()
+	{
+		float playerRot = playerLocation.getYaw();
+		while (playerRot < 0)
+			playerRot += 360;
+		while (playerRot > 360)
+			playerRot -= 360;
+		return playerRot;
+	}
+
+	/*
+	 * Time functions
+	 */
+
+	/**
+	 * Sets the current server time
+	 *
+	 * @param time specified server time (0-24000)
+	 */
+	public void setRelativeTime(long time)
+	{
+		long margin = (time - getTime()) % 24000;
+
+		if (margin < 0)
+		{
+			margin += 24000;
+		}
+		world.setTime(getTime() + margin);
+	}
+
+	/**
+	 * Return the in-game server time.
+	 *
+	 * @return server time
+	 */
+	public long getTime()
+	{
+		return world.getTime();
+	}
+
+	/*
+	 * HitBlox-ported code
+	 */
+
+	/**
+	 * Returns the block at the cursor, or null if out of range
+	 *
+	 * @return The target block
+	 */
+	public Block getTargetBlock()
+	{
+		findTargetBlock();
+		return getCurBlock();
+	}
+
+	/**
+	 * Returns the block attached to the face at the cursor, or null if out of
+	 * range
+	 *
+	 * @return The face block
+	 */
+	public Block getFaceBlock()
+	{
+		findTargetBlock();
+		if (getCurBlock() != null)
+		{
+			return getLastBlock();
+		}
+		else
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the face of the target block that the line of vision entered through.
+	 *
+	 * The face block is the block on the other side of this face.
+	 *
+	 * @return The face, or SELF if targeting hasn't left the player's own block
+	 */
+	public BlockFace getTargetFace()
+	{
+		findTargetBlock();
+		return targetFace;
+	}
+
+	/**
+	 * Move to the next block along line of vision and returns the block there
+	 *
+	 * @return The block at the new location
+	 */
+	public Block getNextBlock()
+	{
+		if (!nextTarget() && !allowMaxRange)
+		{
+			return null;
+		}
+
+		return getBlockAt(targetX, targetY, targetZ);
+	}
+
+	/**
+	 * Returns the current block along the line of vision
+	 *
+	 * @return The block
+	 */
+	public Block getCurBlock()
+	{
+		if (length > range && !allowMaxRange)
+		{
+			return null;
+		}
+		else
+		{
+			return getBlockAt(targetX, targetY, targetZ);
+		}
+	}
+
+	/**
+	 * Returns the previous block along the line of vision
+	 *
+	 * @return The block
+	 */
+	public Block getLastBlock()
+	{
+		return getBlockAt(lastX, lastY, lastZ);
+	}
+
+	/**
+	 * Returns the block at the specified location
+	 *
+	 * Just a wrapper for world.getBlock at this point.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return block The block at the specified coordinates
+	 */
+	public Block getBlockAt(int x, int y, int z)
+	{
+		return world.getBlockAt(x, y, z);
+	}
+
+	/**
+	 * Step to the next block along the line of vision.
+	 *
+	 * This is a voxel traversal (Amanatides and Woo, "A Fast Voxel Traversal Algorithm"):
+	 * each step crosses whichever block boundary is closest along the ray, so every block
+	 * the ray passes through is visited exactly once, and consecutive blocks always share a face.
+	 *
+	 * @return false if the new block is out of range
+	 */
+	protected boolean nextTarget()
+	{
+		lastX = targetX;
+		lastY = targetY;
+		lastZ = targetZ;
+
+		if (tMaxX < tMaxY && tMaxX < tMaxZ)
+		{
+			length = tMaxX;
+			targetX += stepX;
+			tMaxX += tDeltaX;
+			targetFace = stepX > 0 ? BlockFace.NORTH : BlockFace.SOUTH;
+		}
+		else if (tMaxY < tMaxZ)
+		{
+			length = tMaxY;
+			targetY += stepY;
+			tMaxY += tDeltaY;
+			targetFace = stepY > 0 ? BlockFace.DOWN : BlockFace.UP;
+		}
+		else
+		{
+			length = tMaxZ;
+			targetZ += stepZ;
+			tMaxZ += tDeltaZ;
+			targetFace = stepZ > 0 ? BlockFace.EAST : BlockFace.WEST;
+		}
+
+		return length <= range;
+	}
+
+	/**
+	 * Start targeting again from the player's current location.
+	 *
+	 * This resets the reverse targeting and height options, but keeps the
+	 * materials set with targetThrough and noTargetThrough.
+	 */
+	public void initializeTargeting()
+	{
+		playerLocation = player.getLocation();
+		world = player.getWorld();
+		length = 0;
+		targetHeightRequired = 1;
+		reverseTargeting = false;
+		xRotation = (playerLocation.getYaw() + 90) % 360;
+		yRotation = playerLocation.getPitch() * -1;
+
+		// Work out the view direction once, rather than on every step
+		double originX = playerLocation.getX();
+		double originY = playerLocation.getY() + viewHeight;
+		double originZ = playerLocation.getZ();
+		double hLength = Math.cos(Math.toRadians(yRotation));
+		double directionX = hLength * Math.cos(Math.toRadians(xRotation));
+		double directionY = Math.sin(Math.toRadians(yRotation));
+		double directionZ = hLength * Math.sin(Math.toRadians(xRotation));
+
+		targetX = (int) Math.floor(originX);
+		targetY = (int) Math.floor(originY);
+		targetZ = (int) Math.floor(originZ);
+		lastX = targetX;
+		lastY = targetY;
+		lastZ = targetZ;
+		targetFace = BlockFace.SELF;
+
+		// Distance along the ray to the first boundary on each axis, and between boundaries
+		stepX = directionX > 0 ? 1 : -1;
+		stepY = directionY > 0 ? 1 : -1;
+		stepZ = directionZ > 0 ? 1 : -1;
+		tDeltaX = directionX == 0 ? Double.MAX_VALUE : Math.abs(1 / directionX);
+		tDeltaY = directionY == 0 ? Double.MAX_VALUE : Math.abs(1 / directionY);
+		tDeltaZ = directionZ == 0 ? Double.MAX_VALUE : Math.abs(1 / directionZ);
+		tMaxX = directionX == 0 ? Double.MAX_VALUE : (stepX > 0 ? targetX + 1 - originX : originX - targetX) * tDeltaX;
+		tMaxY = directionY == 0 ? Double.MAX_VALUE : (stepY > 0 ? targetY + 1 - originY : originY - targetY) * tDeltaY;
+		tMaxZ = directionZ == 0 ? Double.MAX_VALUE : (stepZ > 0 ? targetZ + 1 - originZ : originZ - targetZ) * tDeltaZ;
+
+		targetingComplete = false;
+	}
+
+	protected void findTargetBlock()
+	{
+		if (targetingComplete)
+		{
+			return;
+		}
+
+		// Test block types by id, so no Blocks are created until a spell asks for one
+		while (nextTarget())
+		{
+			if (isTargetable(world.getBlockTypeIdAt(targetX, targetY, targetZ)))
+			{
+				boolean enoughSpace = true;
+				for (int i = 1; i < targetHeightRequired; i++)
+				{
+					if (!isTargetable(world.getBlockTypeIdAt(targetX, targetY + i, targetZ)))
+					{
+						enoughSpace = false;
+						break;
+					}
+				}
+				if (enoughSpace) break;
+			}
+		}
+		targetingComplete = true;
+	}
+
+	private static int getMaterialIdCount()
+	{
+		int maxId = 0;
+		for (Material material : Material.values())
+		{
+			maxId = Math.max(maxId, material.getId());
+		}
+		return maxId + 1;
+	}
+
+	/*
+	 * private data
+	 */
+
+	private final Spell							spell;
+	private final Player						player;
+	private final String[]						parameters;
+	private final BlockList						blocks					= new BlockList();
+
+	private boolean								allowMaxRange			= false;
+	private int									range					= 200;
+	private double								viewHeight				= 1.65;
+
+	private boolean								targetingComplete;
+	private int									targetHeightRequired	= 1;
+	private Location							playerLocation;
+	private World								world;
+	private double								xRotation, yRotation;
+	private double								length;
+	private int									stepX, stepY, stepZ;
+	private double								tMaxX, tMaxY, tMaxZ;
+	private double								tDeltaX, tDeltaY, tDeltaZ;
+	private int									lastX, lastY, lastZ;
+	private int									targetX, targetY, targetZ;
+	private BlockFace							targetFace				= BlockFace.SELF;
+	private final byte[]						targetThroughIds		= new byte[MATERIAL_ID_COUNT];
+	private boolean								reverseTargeting		= false;
+
+	private static final int					MATERIAL_ID_COUNT		= getMaterialIdCount();
+	private static final byte					TARGET_UNSET			= 0;
+	private static final byte					TARGET_THROUGH			= 1;
+	private static final byte					TARGET_NOT_THROUGH		= 2;
+}
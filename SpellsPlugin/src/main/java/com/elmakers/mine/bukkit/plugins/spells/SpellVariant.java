@@ -104,7 +104,7 @@ public class SpellVariant implements Comparable<SpellVariant>
 	public boolean hasSpellPermission(Player player)
 	{
 		if (player == null) return false;
-		PlayerData playerData = Persistence.getInstance().get(player.getName(), PlayerData.class);
+		PlayerData playerData = Persistence.getInstance().getSessions().getPlayerData(player);
 		if (playerData == null) return false;
 		return playerData.isSet(getPermissionNode());
 	}
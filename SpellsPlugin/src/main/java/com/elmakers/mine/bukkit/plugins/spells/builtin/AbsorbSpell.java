@@ -2,21 +2,24 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class AbsorbSpell extends Spell 
 {
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
-		if (!isUnderwater())
+		Player player = context.getPlayer();
+		if (!context.isUnderwater())
 		{
-			noTargetThrough(Material.STATIONARY_WATER);
-			noTargetThrough(Material.WATER);
+			context.noTargetThrough(Material.STATIONARY_WATER);
+			context.noTargetThrough(Material.WATER);
 		}
-		Block target = getTargetBlock();
+		Block target = context.getTargetBlock();
 		
 		if (target == null) 
 		{
@@ -27,7 +30,7 @@ public class AbsorbSpell extends Spell
 			
 		castMessage(player, "Absorbing some " + target.getType().name().toLowerCase());
 			
-		return giveMaterial(target.getType(), amount, (short)0 , target.getData());
+		return context.giveMaterial(target.getType(), amount, (short)0 , target.getData());
 	}
 
 	@Override
@@ -6,9 +6,11 @@ import java.util.List;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class AlterSpell extends Spell
@@ -26,9 +28,10 @@ public class AlterSpell extends Spell
 	private int recurseDistance = 32;	
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Block targetBlock = getTargetBlock();
+		Player player = context.getPlayer();
+		Block targetBlock = context.getTargetBlock();
 		if (targetBlock == null) 
 		{
 			castMessage(player, "No target");
@@ -40,7 +43,7 @@ public class AlterSpell extends Spell
 			return false;
 		}
 		
-		BlockList undoList = new BlockList();
+		BlockList undoList = context.getBlocks();
 		int originalData = targetBlock.getData();
 		
 		int materialIndex = adjustableMaterials.indexOf(targetBlock.getType());
@@ -54,7 +57,6 @@ public class AlterSpell extends Spell
 		
 		adjust(targetBlock, data, undoList, recursive, 0);
 		
-		spells.addToUndoQueue(player, undoList);
 		
 		castMessage(player, "Adjusting " + targetBlock.getType().name().toLowerCase() + " from " + originalData + " to " + data);
 		
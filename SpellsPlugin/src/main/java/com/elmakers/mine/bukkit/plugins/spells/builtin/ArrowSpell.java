@@ -3,14 +3,17 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 import org.bukkit.Material;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
 import org.bukkit.entity.Arrow;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class ArrowSpell extends Spell
 {
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
 		CraftPlayer cp = (CraftPlayer)player;
 		Arrow arrow = cp.shootArrow();
 		if (arrow == null)
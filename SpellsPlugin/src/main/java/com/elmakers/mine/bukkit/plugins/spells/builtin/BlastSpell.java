@@ -5,9 +5,11 @@ import java.util.List;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class BlastSpell extends Spell
@@ -26,9 +28,11 @@ public class BlastSpell extends Spell
 	}
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
+		Block target = context.getTargetBlock();
 		if (target == null)
 		{
 			castMessage(player, "No target");
@@ -57,7 +61,7 @@ public class BlastSpell extends Spell
 			}
 		}
 		
-		BlockList blastedBlocks = new BlockList();
+		BlockList blastedBlocks = context.getBlocks();
 		int diameter = radius * 2;
 		int midX = (diameter - 1) / 2;
 		int midY = (diameter - 1) / 2;
@@ -85,7 +89,6 @@ public class BlastSpell extends Spell
 			}
 		}
 
-		spells.addToUndoQueue(player, blastedBlocks);
 		castMessage(player, "Blasted " + blastedBlocks.size() + "blocks");
 
 		return true;
@@ -101,7 +104,7 @@ public class BlastSpell extends Spell
 		int x = centerPoint.getX() + dx - radius;
 		int y = centerPoint.getY() + dy - radius;
 		int z = centerPoint.getZ() + dz - radius;
-		Block block = player.getWorld().getBlockAt(x, y, z);
+		Block block = centerPoint.getWorld().getBlockAt(x, y, z);
 		if (!isDestructible(block))
 		{
 			return;
@@ -5,8 +5,10 @@ import org.bukkit.block.BlockFace;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class BlinkSpell extends Spell
@@ -33,9 +35,10 @@ public class BlinkSpell extends Spell
 		return "Teleport to your target";
 	}
 	
-	protected boolean ascend()
+	protected boolean ascend(SpellContext context)
 	{
-		Location location = findPlaceToStand(player.getLocation(), true);
+		Player player = context.getPlayer();
+		Location location = context.findPlaceToStand(player.getLocation(), true);
 		if (location != null) 
 		{
 			castMessage(player, "You ascend");
@@ -45,9 +48,10 @@ public class BlinkSpell extends Spell
 		return false;
 	}
 	
-	protected boolean descend()
+	protected boolean descend(SpellContext context)
 	{
-		Location location = findPlaceToStand(player.getLocation(), false);
+		Player player = context.getPlayer();
+		Location location = context.findPlaceToStand(player.getLocation(), false);
 		if (location != null) 
 		{
 			castMessage(player, "You descend");
@@ -58,13 +62,15 @@ public class BlinkSpell extends Spell
 	}
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
 		if (parameters.length > 0)
 		{
 			if (parameters[0].equalsIgnoreCase("ascend"))
 			{
-				if (!ascend())
+				if (!ascend(context))
 				{
 					castMessage(player, "Nowhere to go up");
 					return false;
@@ -74,7 +80,7 @@ public class BlinkSpell extends Spell
 			
 			if (parameters[0].equalsIgnoreCase("descend"))
 			{
-				if (!descend())
+				if (!descend(context))
 				{
 					castMessage(player, "Nowhere to go down");
 					return false;
@@ -89,17 +95,17 @@ public class BlinkSpell extends Spell
 		
 		// Auto ascend + descend
 		
-		if (getYRotation() < -80 && otherSpellHasPermission("descend") && autoDescend)
+		if (context.getYRotation() < -80 && context.otherSpellHasPermission("descend") && autoDescend)
 		{
-			if (descend())
+			if (descend(context))
 			{
 				return true;
 			}
 		}
 		
-		if (getYRotation() > 80 && otherSpellHasPermission("ascend") && autoAscend)
+		if (context.getYRotation() > 80 && context.otherSpellHasPermission("ascend") && autoAscend)
 		{
-			if (ascend())
+			if (ascend(context))
 			{
 				return true;
 			}
@@ -107,21 +113,21 @@ public class BlinkSpell extends Spell
 		
 		if (autoPassthrough)
 		{
-			Block firstBlock = getNextBlock();
+			Block firstBlock = context.getNextBlock();
 			if (firstBlock.getType() != Material.AIR)
 			{
-				setReverseTargeting(true);
-				setTargetHeightRequired(2);
-				targetThrough(Material.AIR);
+				context.setReverseTargeting(true);
+				context.setTargetHeightRequired(2);
+				context.targetThrough(Material.AIR);
 			}
 			else
 			{
-				targetThrough(Material.GLASS);
+				context.targetThrough(Material.GLASS);
 			}
 		}
 		
-		Block target = getTargetBlock();
-		Block face = getLastBlock();
+		Block target = context.getTargetBlock();
+		Block face = context.getLastBlock();
 		
 		if (target == null) 
 		{
@@ -140,7 +146,7 @@ public class BlinkSpell extends Spell
     	Block destination = face;
     	int distanceUp = 0;
     	int distanceDown = 0;
-    	if (isReverseTargeting())
+    	if (context.isReverseTargeting())
     	{
     		destination = target;
     	}
@@ -154,7 +160,7 @@ public class BlinkSpell extends Spell
     	
     	Block ledge = null;
     	// Also check for a ledge above the target
-    	if (!isReverseTargeting())
+    	if (!context.isReverseTargeting())
     	{
     		ledge = target;
     		Block inFront = face;
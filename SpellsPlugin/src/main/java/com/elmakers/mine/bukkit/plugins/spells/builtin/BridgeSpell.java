@@ -3,19 +3,22 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class BridgeSpell extends Spell 
 {
 	int MAX_SEARCH_DISTANCE = 16;
 	
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
-		Block playerBlock = getPlayerBlock();
+		Player player = context.getPlayer();
+		Block playerBlock = context.getPlayerBlock();
 		if (playerBlock == null) 
 		{
 			// no spot found to bridge
@@ -23,14 +26,14 @@ public class BridgeSpell extends Spell
 			return false;
 		}
 		
-		BlockFace direction = getPlayerFacing();
+		BlockFace direction = context.getPlayerFacing();
 		Block attachBlock = playerBlock;
 		Block targetBlock = attachBlock.getFace(direction);
 		
 		Material material = targetBlock.getType();
 		byte data = targetBlock.getData();
 		
-		ItemStack buildWith = getBuildingMaterial();
+		ItemStack buildWith = context.getBuildingMaterial();
 		if (buildWith != null)
 		{
 			material = buildWith.getType();
@@ -38,24 +41,23 @@ public class BridgeSpell extends Spell
 		}
 		
 		int distance = 0;
-		while (isTargetable(targetBlock.getType()) && distance <= MAX_SEARCH_DISTANCE)
+		while (context.isTargetable(targetBlock.getType()) && distance <= MAX_SEARCH_DISTANCE)
 		{
 			distance++;
 			attachBlock = targetBlock;
 			targetBlock = attachBlock.getFace(direction);
 		}
-		if (isTargetable(targetBlock.getType()))
+		if (context.isTargetable(targetBlock.getType()))
 		{
 			player.sendMessage("Can't bridge any further");
 			return false;
 		}
-		BlockList bridgeBlocks = new BlockList();
+		BlockList bridgeBlocks = context.getBlocks();
 		bridgeBlocks.add(targetBlock);
 		targetBlock.setType(material);
 		targetBlock.setData(data);
 		
 		castMessage(player, "A bridge extends!");
-		spells.addToUndoQueue(player, bridgeBlocks);
 		
 		//castMessage(player, "Facing " + playerRot + " : " + direction.name() + ", " + distance + " spaces to " + attachBlock.getType().name());
 		
@@ -5,10 +5,12 @@ import java.util.List;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class ConstructSpell extends Spell
@@ -50,16 +52,18 @@ public class ConstructSpell extends Spell
 	};
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		setMaxRange(defaultSearchDistance, true);
-		targetThrough(Material.GLASS);
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
+		context.setMaxRange(defaultSearchDistance, true);
+		context.targetThrough(Material.GLASS);
+		Block target = context.getTargetBlock();
 		if (target == null)
 		{
-			initializeTargeting(player);
-			noTargetThrough(Material.GLASS);
-			target = getTargetBlock();
+			context.initializeTargeting();
+			context.noTargetThrough(Material.GLASS);
+			target = context.getTargetBlock();
 			if (target == null)
 			{
 				castMessage(player, "No target");
@@ -71,7 +75,7 @@ public class ConstructSpell extends Spell
 		Material material = target.getType();
 		byte data = target.getData();
 		
-		ItemStack buildWith = getBuildingMaterial();
+		ItemStack buildWith = context.getBuildingMaterial();
 		if (buildWith != null)
 		{
 			material = buildWith.getType();
@@ -129,27 +133,27 @@ public class ConstructSpell extends Spell
 		
 		switch (conType)
 		{
-			case SPHERE: constructSphere(target, radius, material, data, !hollow); break;
-			case CUBOID: constructCuboid(target, radius, material, data, !hollow); break;
+			case SPHERE: constructSphere(context, target, radius, material, data, !hollow); break;
+			case CUBOID: constructCuboid(context, target, radius, material, data, !hollow); break;
 			default : return false;
 		}
 		
 		return true;
 	}
 	
-	public void constructCuboid(Block target, int radius, Material material, byte data, boolean fill)
+	public void constructCuboid(SpellContext context, Block target, int radius, Material material, byte data, boolean fill)
 	{
-		fillArea(target, radius, material, data, fill, false);
+		fillArea(context, target, radius, material, data, fill, false);
 	}
 	
-	public void constructSphere(Block target, int radius, Material material, byte data, boolean fill)
+	public void constructSphere(SpellContext context, Block target, int radius, Material material, byte data, boolean fill)
 	{
-		fillArea(target, radius, material, data, fill, true);
+		fillArea(context, target, radius, material, data, fill, true);
 	}
 	
-	public void fillArea(Block target, int radius, Material material, byte data, boolean fill, boolean sphere)
+	public void fillArea(SpellContext context, Block target, int radius, Material material, byte data, boolean fill, boolean sphere)
 	{
-		BlockList constructedBlocks = new BlockList();
+		BlockList constructedBlocks = context.getBlocks();
 		int diameter = radius * 2;
 		int midX = (diameter - 1) / 2;
 		int midY = (diameter - 1) / 2;
@@ -192,8 +196,7 @@ public class ConstructSpell extends Spell
 			}
 		}
 
-		spells.addToUndoQueue(player, constructedBlocks);
-		castMessage(player, "Constructed " + constructedBlocks.size() + "blocks");
+		castMessage(context.getPlayer(), "Constructed " + constructedBlocks.size() + "blocks");
 	}
 	
 	public int getDistance(int x, int y, int z)
@@ -206,7 +209,7 @@ public class ConstructSpell extends Spell
 		int x = centerPoint.getX() + dx - radius;
 		int y = centerPoint.getY() + dy - radius;
 		int z = centerPoint.getZ() + dz - radius;
-		Block block = player.getWorld().getBlockAt(x, y, z);
+		Block block = centerPoint.getWorld().getBlockAt(x, y, z);
 		if (!isDestructible(block))
 		{
 			return;
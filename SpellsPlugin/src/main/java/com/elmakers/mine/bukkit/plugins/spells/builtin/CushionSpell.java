@@ -4,9 +4,11 @@ import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.craftbukkit.CraftWorld;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class CushionSpell extends Spell
@@ -16,11 +18,12 @@ public class CushionSpell extends Spell
 	private int airBubble = 3;
 	
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
 		World world = player.getWorld();
     	CraftWorld craftWorld = (CraftWorld)world;
-  		Block targetFace = getTargetBlock();
+  		Block targetFace = context.getTargetBlock();
 		if (targetFace == null)
 		{
 			castMessage(player, "No target");
@@ -2,9 +2,11 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class DisintegrateSpell extends Spell
@@ -12,9 +14,10 @@ public class DisintegrateSpell extends Spell
 	private int				defaultSearchDistance	= 32;
 
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		Block target = context.getTargetBlock();
 		if (target == null)
 		{
 			castMessage(player, "No target");
@@ -26,10 +29,10 @@ public class DisintegrateSpell extends Spell
 			return false;
 		}
 		
-		BlockList disintigrated = new BlockList();
+		BlockList disintigrated = context.getBlocks();
 		disintigrated.add(target);
 		
-		if (isUnderwater())
+		if (context.isUnderwater())
 		{
 			target.setType(Material.STATIONARY_WATER);
 		}
@@ -38,7 +41,6 @@ public class DisintegrateSpell extends Spell
 			target.setType(Material.AIR);
 		}
 		
-		spells.addToUndoQueue(player, disintigrated);
 		castMessage(player, "ZAP!");
 		
 		return true;
@@ -24,11 +24,13 @@ import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.craftbukkit.CraftWorld;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
+import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerEvent;
 import org.bukkit.Location;
 import org.bukkit.Material;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.SpellEventType;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
@@ -110,8 +112,10 @@ public class FamiliarSpell extends Spell
 	}
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
 		PlayerFamiliar fam = getFamiliar(player.getName());
 		if (fam.hasFamiliar())
 		{
@@ -122,10 +126,10 @@ public class FamiliarSpell extends Spell
 		}
 		else
 		{
-			noTargetThrough(Material.STATIONARY_WATER);
-			noTargetThrough(Material.WATER);
+			context.noTargetThrough(Material.STATIONARY_WATER);
+			context.noTargetThrough(Material.WATER);
 			
-			Block target = getTargetBlock();
+			Block target = context.getTargetBlock();
 			if (target == null)
 			{
 				castMessage(player, "No target");
@@ -163,7 +167,7 @@ public class FamiliarSpell extends Spell
 				famType = FamiliarType.SQUID;
 			}
 			
-			EntityLiving entity =  spawnFamiliar(target, famType);
+			EntityLiving entity =  spawnFamiliar(player, target, famType);
 			if (entity == null)
 			{
 				sendMessage(player, "Your familiar is DOA");
@@ -176,7 +180,7 @@ public class FamiliarSpell extends Spell
 		}
 	}
 		
-	protected EntityLiving spawnFamiliar(Block target, FamiliarType famType)
+	protected EntityLiving spawnFamiliar(Player player, Block target, FamiliarType famType)
 	{
 		Location location = new Location(player.getWorld(), target.getX(), target.getY(), target.getZ(), player.getLocation().getYaw(), player.getLocation().getPitch());
 		EntityLiving e = null;
@@ -4,12 +4,14 @@ import java.util.HashMap;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import com.elmakers.mine.bukkit.gameplay.BlockRecurse;
 import com.elmakers.mine.bukkit.gameplay.ReplaceMaterialAction;
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class FillSpell extends Spell 
@@ -26,9 +28,11 @@ public class FillSpell extends Spell
 	}
 	
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
-		Block targetBlock = getTargetBlock();
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
+		Block targetBlock = context.getTargetBlock();
 		Material material = spells.finishMaterialUse(player);
 		byte data = spells.getMaterialData(player);
 		boolean singleBlock = false;
@@ -36,7 +40,7 @@ public class FillSpell extends Spell
 	
 		boolean overrideMaterial = false;
 		
-		ItemStack buildWith = getBuildingMaterial();
+		ItemStack buildWith = context.getBuildingMaterial();
 		if (buildWith != null)
 		{
 			material = buildWith.getType();
@@ -83,18 +87,17 @@ public class FillSpell extends Spell
 		}
 		else if (singleBlock)
 		{
-			BlockList filledBlocks = new BlockList();
+			BlockList filledBlocks = context.getBlocks();
 			
 			filledBlocks.add(targetBlock);
 			targetBlock.setType(material);
 			targetBlock.setData(data);
 			
 			castMessage(player, "Painting with " + material.name().toLowerCase());
-			spells.addToUndoQueue(player, filledBlocks);
 			return true;
 		}
 		
-		Block target = getTarget();
+		Block target = getTarget(player);
 		
 		if (target != null)
 		{			
@@ -126,7 +129,7 @@ public class FillSpell extends Spell
 			absy++;
 			absz++;
 			
-			BlockList filledBlocks = new BlockList();
+			BlockList filledBlocks = context.getBlocks();
 			castMessage(player, "Filling " + absx + "x" + absy + "x" + absz + " area with " + material.name().toLowerCase());
 			int x = target.getX();
 			int y = target.getY();
@@ -137,22 +140,21 @@ public class FillSpell extends Spell
 				{
 					for (int iz = 0; iz < absz; iz++)
 					{
-						Block block = getBlockAt(x + ix * dx, y + iy * dy, z + iz * dz);
+						Block block = context.getBlockAt(x + ix * dx, y + iy * dy, z + iz * dz);
 						filledBlocks.add(block);
 						block.setType(material);
 						block.setData(data);
 					}
 				}
 			}
-			spells.addToUndoQueue(player, filledBlocks);
 			
-			setTarget(null);
+			setTarget(player, null);
 			return true;
 		}
 		else
 		{
 			target = targetBlock;
-			setTarget(target);
+			setTarget(player, target);
 			spells.startMaterialUse(player, target.getType(), target.getData());
 			if (!overrideMaterial)
 			{
@@ -163,24 +165,24 @@ public class FillSpell extends Spell
 		}
 	}
 	
-	protected Block getTarget()
+	protected Block getTarget(Player player)
 	{
 		return playerTargets.get(player.getName());
 	}
 	
-	protected void setTarget(Block target)
+	protected void setTarget(Player player, Block target)
 	{
 		playerTargets.put(player.getName(), target);
 	}
 	
 	@Override
-	public void onCancel()
+	public void onCancel(Player player)
 	{
-		Block target = getTarget();
+		Block target = getTarget(player);
 		if (target != null)
 		{
 			player.sendMessage("Cancelled fill");
-			setTarget(null);
+			setTarget(player, null);
 		}
 	}
 
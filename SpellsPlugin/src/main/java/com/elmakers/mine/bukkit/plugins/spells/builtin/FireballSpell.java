@@ -11,15 +11,17 @@ import org.bukkit.craftbukkit.entity.CraftPlayer;
 import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.MathHelper;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.Vec3D;
 
 public class FireballSpell extends Spell {
 
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		Block target = context.getTargetBlock();
 		Location playerLoc = player.getLocation();
 		if (target == null) 
 		{
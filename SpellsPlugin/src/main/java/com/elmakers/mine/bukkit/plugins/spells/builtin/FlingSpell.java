@@ -2,18 +2,21 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
+import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class FlingSpell extends Spell
 {
 	private final int magnitude = 20;
 
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Vector velocity = getAimVector();
+		Player player = context.getPlayer();
+		Vector velocity = context.getAimVector();
 		velocity.multiply(magnitude);
 		CraftPlayer craftPlayer = (CraftPlayer)player;
 		craftPlayer.setVelocity(velocity);
@@ -3,9 +3,11 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class FrostSpell extends Spell
@@ -16,9 +18,11 @@ public class FrostSpell extends Spell
 	private int				verticalSearchDistance	= 8;
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
+		Block target = context.getTargetBlock();
 		if (target == null)
 		{
 			castMessage(player, "No target");
@@ -47,7 +51,7 @@ public class FrostSpell extends Spell
 			}
 		}
 		
-		BlockList frostedBlocks = new BlockList();
+		BlockList frostedBlocks = context.getBlocks();
 		int diameter = radius * 2;
 		int midX = (diameter - 1) / 2;
 		int midY = (diameter - 1) / 2;
@@ -74,7 +78,6 @@ public class FrostSpell extends Spell
 			}
 		}
 
-		spells.addToUndoQueue(player, frostedBlocks);
 		castMessage(player, "Frosted " + frostedBlocks.size() + " blocks");
 		
 		return true;
@@ -85,7 +88,7 @@ public class FrostSpell extends Spell
 		int x = centerPoint.getX() + dx - radius;
 		int y = centerPoint.getY() + dy - radius;
 		int z = centerPoint.getZ() + dz - radius;
-		Block block = player.getWorld().getBlockAt(x, y, z);
+		Block block = centerPoint.getWorld().getBlockAt(x, y, z);
 		int depth = 0;
 		
 		if (block.getType() == Material.AIR)
@@ -7,6 +7,7 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerMoveEvent;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.SpellEventType;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
@@ -57,8 +58,9 @@ public class GillsSpell extends Spell
 	private HashMap<String, PlayerGills> gillPlayers = new HashMap<String, PlayerGills>();
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
 		PlayerGills hasGills = gillPlayers.get(player.getName());
 		
 		if (hasGills != null)
@@ -106,7 +108,7 @@ public class GillsSpell extends Spell
 			if (gills.isTimeToHeal(healFrequency))
 			{
 					gills.heal();
-					if (isUnderwater())
+					if (isUnderwater(player))
 					{
 						int health = player.getHealth();
 						if (health < 20) 
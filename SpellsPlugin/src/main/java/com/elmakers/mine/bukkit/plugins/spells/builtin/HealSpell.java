@@ -1,14 +1,17 @@
 package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class HealSpell extends Spell 
 {
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
 		castMessage(player, "You heal yourself");
 		player.setHealth(20);
 		return true;
@@ -1,14 +1,17 @@
 package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class InvincibleSpell extends Spell 
 {
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
 		boolean invincible = !spells.isInvincible(player);
 		spells.setInvincible(player, invincible);
 		if (invincible)
@@ -2,19 +2,23 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class LavaSpell extends Spell
 {
 
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
+		Block target = context.getTargetBlock();
 		if (target == null) 
 		{
 			castMessage(player, "No target");
@@ -61,7 +65,7 @@ public class LavaSpell extends Spell
 		targetLoc.add(aim);
 		targetLoc.add(aim);
 		
-		BlockList burnedBlocks = new BlockList();
+		BlockList burnedBlocks = context.getBlocks();
 		for (int i = 0; i < lavaBlocks; i++)
 		{
 			Block currentTarget = target.getWorld().getBlockAt(targetLoc.getBlockX(), targetLoc.getBlockY(), targetLoc.getBlockZ());
@@ -80,7 +84,6 @@ public class LavaSpell extends Spell
 		if (burnedBlocks.size() > 0)
 		{
 			burnedBlocks.setTimeToLive(2);
-			spells.addToUndoQueue(player, burnedBlocks);
 		}
 		
 		castMessage(player, "Blasted " + burnedBlocks.size() + " lava blocks");
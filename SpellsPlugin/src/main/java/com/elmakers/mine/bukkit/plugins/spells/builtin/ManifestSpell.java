@@ -4,8 +4,10 @@ import java.util.List;
 import java.util.Random;
 
 import org.bukkit.Material;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class ManifestSpell extends Spell
@@ -14,8 +16,10 @@ public class ManifestSpell extends Spell
 	private int defaultAmount = 1;
 
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
 		Material material = Material.AIR;
 		List<Material> buildingMaterials = spells.getBuildingMaterials();
 		
@@ -42,7 +46,7 @@ public class ManifestSpell extends Spell
 		int amount = defaultAmount;
 		byte data = 0;
 		castMessage(player, "Manifesting some " + material.name().toLowerCase());
-		return giveMaterial(material, amount, (short)0 , data);
+		return context.giveMaterial(material, amount, (short)0 , data);
 	}
 
 	@Override
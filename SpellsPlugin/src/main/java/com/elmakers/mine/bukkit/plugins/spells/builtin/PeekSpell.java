@@ -5,9 +5,11 @@ import java.util.List;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class PeekSpell extends Spell
@@ -21,10 +23,12 @@ public class PeekSpell extends Spell
 
 
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		targetThrough(Material.GLASS);
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
+		context.targetThrough(Material.GLASS);
+		Block target = context.getTargetBlock();
 		if (target == null)
 		{
 			castMessage(player, "No target");
@@ -100,7 +104,7 @@ public class PeekSpell extends Spell
 		int x = centerPoint.getX() + dx - radius;
 		int y = centerPoint.getY() + dy - radius;
 		int z = centerPoint.getZ() + dz - radius;
-		Block block = player.getWorld().getBlockAt(x, y, z);
+		Block block = centerPoint.getWorld().getBlockAt(x, y, z);
 		if (!isPeekable(block))
 		{
 			return;
@@ -3,10 +3,12 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class PillarSpell extends Spell 
 {
@@ -18,9 +20,11 @@ public class PillarSpell extends Spell
 	}
 	
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
-		Block attachBlock = getTargetBlock();
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
+		Block attachBlock = context.getTargetBlock();
 		if (attachBlock == null)
 		{
 			castMessage(player, "No target");
@@ -36,13 +40,13 @@ public class PillarSpell extends Spell
 		Block targetBlock = attachBlock.getFace(direction);
 		int distance = 0;
 		
-		while (isTargetable(targetBlock.getType()) && distance <= MAX_SEARCH_DISTANCE)
+		while (context.isTargetable(targetBlock.getType()) && distance <= MAX_SEARCH_DISTANCE)
 		{
 			distance++;
 			attachBlock = targetBlock;
 			targetBlock = attachBlock.getFace(direction);
 		}
-		if (isTargetable(targetBlock.getType()))
+		if (context.isTargetable(targetBlock.getType()))
 		{
 			player.sendMessage("Can't pillar any further");
 			return false;
@@ -51,21 +55,20 @@ public class PillarSpell extends Spell
 		Material material = attachBlock.getType();
 		byte data = attachBlock.getData();
 		
-		ItemStack buildWith = getBuildingMaterial();
+		ItemStack buildWith = context.getBuildingMaterial();
 		if (buildWith != null)
 		{
 			material = buildWith.getType();
 			data = getItemData(buildWith);
 		}
 		
-		BlockList pillarBlocks = new BlockList();
-		Block pillar = getBlockAt(targetBlock.getX(), targetBlock.getY(), targetBlock.getZ());
+		BlockList pillarBlocks = context.getBlocks();
+		Block pillar = context.getBlockAt(targetBlock.getX(), targetBlock.getY(), targetBlock.getZ());
 		pillarBlocks.add(pillar);
 		pillar.setType(material);
 		pillar.setData(data);
 		
 		castMessage(player, "Creating a pillar of " + attachBlock.getType().name().toLowerCase());
-		spells.addToUndoQueue(player, pillarBlocks);
 		
 		return true;
 	}
@@ -4,12 +4,14 @@ import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
 import org.bukkit.util.BlockVector;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.gameplay.dao.BoundingBox;
 import com.elmakers.mine.bukkit.plugins.nether.NetherManager;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class PortalSpell extends Spell
 {
@@ -21,9 +23,10 @@ public class PortalSpell extends Spell
 	}
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		Block target = context.getTargetBlock();
 		if (target == null)
 		{
 			castMessage(player, "No target");
@@ -40,7 +43,7 @@ public class PortalSpell extends Spell
 		blockType = portalBase.getType();
 		if (blockType != Material.AIR)
 		{
-			portalBase = getFaceBlock();
+			portalBase = context.getFaceBlock();
 		}
 		
 		blockType = portalBase.getType();
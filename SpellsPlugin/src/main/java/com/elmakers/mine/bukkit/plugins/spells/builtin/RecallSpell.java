@@ -10,6 +10,7 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.entity.EntityDeathEvent;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.SpellEventType;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
@@ -40,8 +41,10 @@ public class RecallSpell extends Spell
 	}
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
 		if (parameters.length > 0 && parameters[0].equalsIgnoreCase("spawn"))
 		{
 			castMessage(player, "Returning you home");
@@ -51,9 +54,9 @@ public class RecallSpell extends Spell
 		
 		PlayerMarker marker = markers.get(player.getName());
 		
-		if (getYRotation() > 80)
+		if (context.getYRotation() > 80)
 		{
-			if (marker == null || !marker.isActive && otherSpellHasPermission("spawn") && autoSpawn)
+			if (marker == null || !marker.isActive && context.otherSpellHasPermission("spawn") && autoSpawn)
 			{
 				castMessage(player, "Returning you home");
 				player.teleportTo(player.getWorld().getSpawnLocation());
@@ -64,7 +67,7 @@ public class RecallSpell extends Spell
 				
 				double distance = getDistance(player.getLocation(), marker.location);
 
-				if (distance < disableDistance && otherSpellHasPermission("spawn") && autoSpawn)
+				if (distance < disableDistance && context.otherSpellHasPermission("spawn") && autoSpawn)
 				{
 					castMessage(player, "Returning you home");
 					player.teleportTo(player.getWorld().getSpawnLocation());
@@ -80,7 +83,7 @@ public class RecallSpell extends Spell
 		
 		if (marker == null || !marker.isActive)
 		{
-			return placeMarker(getTargetBlock());
+			return placeMarker(player, context.getTargetBlock(), context.getFaceBlock());
 		}
 		
 		double distance = getDistance(player.getLocation(), marker.location);
@@ -95,7 +98,7 @@ public class RecallSpell extends Spell
 			return removed;
 		}
 		
-		return placeMarker(getTargetBlock());
+		return placeMarker(player, context.getTargetBlock(), context.getFaceBlock());
 	}
 	
 	protected boolean removeMarker(PlayerMarker marker)
@@ -107,7 +110,7 @@ public class RecallSpell extends Spell
 		int x = (int)Math.floor(marker.location.getX());
 		int y = (int)Math.floor(marker.location.getY());
 		int z = (int)Math.floor(marker.location.getZ());
-		Block targetBlock = player.getWorld().getBlockAt(x, y, z);
+		Block targetBlock = marker.location.getWorld().getBlockAt(x, y, z);
 		if (targetBlock != null && targetBlock.getType() == markerMaterial)
 		{
 			targetBlock.setType(Material.AIR);
@@ -116,7 +119,7 @@ public class RecallSpell extends Spell
 		return true;
 	}
 	
-	protected boolean placeMarker(Block target)
+	protected boolean placeMarker(Player player, Block target, Block faceBlock)
 	{
 		if (target == null)
 		{
@@ -124,9 +127,9 @@ public class RecallSpell extends Spell
 			return false;
 		}
 		Block targetBlock = target.getFace(BlockFace.UP);
-		if (targetBlock.getType() != Material.AIR)
+		if (targetBlock.getType() != Material.AIR && faceBlock != null)
 		{
-			targetBlock = getFaceBlock();
+			targetBlock = faceBlock;
 		}
 		if (targetBlock.getType() != Material.AIR)
 		{
@@ -200,7 +203,7 @@ public class RecallSpell extends Spell
 			PlayerMarker marker = markers.get(player.getName());
 			if (marker == null || !marker.isActive)
 			{
-				placeMarker(getPlayerBlock());
+				placeMarker(player, getPlayerBlock(player), null);
 			}
 		}
 	}
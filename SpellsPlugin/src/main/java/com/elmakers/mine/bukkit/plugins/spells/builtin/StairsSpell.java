@@ -6,9 +6,11 @@ import java.util.List;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class StairsSpell extends Spell
@@ -22,24 +24,26 @@ public class StairsSpell extends Spell
 	private int torchFrequency = 4;
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Block targetBlock = getTargetBlock();
+		Player player = context.getPlayer();
+		Block targetBlock = context.getTargetBlock();
 		if (targetBlock == null) 
 		{
 			castMessage(player, "No target");
 			return false;
 		}
 		
-		createStairs(targetBlock);
+		createStairs(context, targetBlock);
 		
 		return true;
 	}
 	
-	protected void createStairs(Block targetBlock)
+	protected void createStairs(SpellContext context, Block targetBlock)
 	{
+		Player player = context.getPlayer();
 		BlockFace vertDirection = BlockFace.UP;
-		BlockFace horzDirection = getPlayerFacing();
+		BlockFace horzDirection = context.getPlayerFacing();
 		
 		int depth = defaultDepth;
 		int height = defaultHeight;
@@ -2,9 +2,11 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.block.Block;
 import org.bukkit.Material;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class TorchSpell extends Spell 
@@ -20,8 +22,10 @@ public class TorchSpell extends Spell
 	}
 	
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
 		if (parameters.length > 0)
 		{
 			long targetTime = 0;
@@ -44,29 +48,29 @@ public class TorchSpell extends Spell
 					targetTime = 0;
 				}
 			}
-			setRelativeTime(targetTime);	
+			context.setRelativeTime(targetTime);	
 			castMessage(player, "Changed time to " + timeDescription);
 			return true;
 		}
 		
-		if (getYRotation() > 80 && allowDay)
+		if (context.getYRotation() > 80 && allowDay)
 		{
 			castMessage(player, "FLAME ON!");
-			setRelativeTime(0);
+			context.setRelativeTime(0);
 			return true;
 		}
 		
 		
-		if (getYRotation() < -80 && allowNight)
+		if (context.getYRotation() < -80 && allowNight)
 		{
 			castMessage(player, "FLAME OFF!");
-			setRelativeTime(13000);
+			context.setRelativeTime(13000);
 			return true;
 		}
 		
 		
-		Block target = getTargetBlock();	
-		Block face = getLastBlock();
+		Block target = context.getTargetBlock();	
+		Block face = context.getLastBlock();
 		
 		if (target == null || face == null)
 		{
@@ -103,10 +107,9 @@ public class TorchSpell extends Spell
 		}	
 		
 		castMessage(player, "Flame on!");
-		BlockList torchBlock = new BlockList();
+		BlockList torchBlock = context.getBlocks();
 		target.setType(targetMaterial);
 		torchBlock.add(target);
-		spells.addToUndoQueue(player, torchBlock);
 		
 		return true;
 	}
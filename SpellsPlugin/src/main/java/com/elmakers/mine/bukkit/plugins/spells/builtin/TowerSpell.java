@@ -2,16 +2,19 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class TowerSpell extends Spell {
 
 	@Override
-	public boolean onCast(String[] parameters) 
+	public boolean onCast(SpellContext context)
 	{
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		Block target = context.getTargetBlock();
 		if (target == null) 
 		{
 			castMessage(player, "No target");
@@ -35,7 +38,7 @@ public class TowerSpell extends Spell {
 				height = height > maxHeight ? maxHeight : height;
 				break;
 			}
-			Block block = getBlockAt(midX, y, midZ);
+			Block block = context.getBlockAt(midX, y, midZ);
 			if (block.getType() != Material.AIR)
 			{
 				castMessage(player, "Found ceiling of " + block.getType().name().toLowerCase());
@@ -45,7 +48,7 @@ public class TowerSpell extends Spell {
 		}
 		
 		int blocksCreated = 0;
-		BlockList towerBlocks = new BlockList();
+		BlockList towerBlocks = context.getBlocks();
 		for (int i = 0; i < height; i++)
 		{
 			midY++;
@@ -60,14 +63,13 @@ public class TowerSpell extends Spell {
 					if (dx != 0 || dz != 0)
 					{
 						blocksCreated++;
-						Block block = getBlockAt(x, y, z);
+						Block block = context.getBlockAt(x, y, z);
 						towerBlocks.add(block);
 						block.setTypeId(material);
 					}					
 				}
 			}
 		}
-		spells.addToUndoQueue(player, towerBlocks);
 		castMessage(player, "Made tower " + height + " high with " + blocksCreated + " blocks");
 		return true;
 	}
@@ -2,26 +2,29 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockData;
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class TransmuteSpell extends Spell
 {
 
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{	
+		Player player = context.getPlayer();
 		BlockList transmuteAction = null;
 
 		/*
 		 * Use target if targeting
 		 */
 		boolean usedTarget = false;
-		targetThrough(Material.GLASS);
-		Block target = getTargetBlock();
+		context.targetThrough(Material.GLASS);
+		Block target = context.getTargetBlock();
 		
 		if (target != null)
 		{
@@ -40,7 +43,7 @@ public class TransmuteSpell extends Spell
 			return false;
 		}
 		
-		ItemStack targetItem = getBuildingMaterial();
+		ItemStack targetItem = context.getBuildingMaterial();
 		if (targetItem == null)
 		{
 			sendMessage(player, "Nothing to transmute with");
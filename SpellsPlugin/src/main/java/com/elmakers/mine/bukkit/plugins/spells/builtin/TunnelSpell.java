@@ -6,9 +6,11 @@ import java.util.List;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
 public class TunnelSpell extends Spell
@@ -23,9 +25,10 @@ public class TunnelSpell extends Spell
 	private int torchFrequency = 4;
 	
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		Block playerBlock = getPlayerBlock();
+		Player player = context.getPlayer();
+		Block playerBlock = context.getPlayerBlock();
 		if (playerBlock == null) 
 		{
 			// no spot found to tunnel
@@ -33,7 +36,7 @@ public class TunnelSpell extends Spell
 			return false;
 		}
 		
-		BlockFace direction = getPlayerFacing();
+		BlockFace direction = context.getPlayerFacing();
 		Block searchBlock = playerBlock.getFace(BlockFace.UP).getFace(BlockFace.UP);
 		
 		int searchDistance = 0;
@@ -47,7 +50,7 @@ public class TunnelSpell extends Spell
 		int height = defaultHeight;
 		int width = defaultWidth;
 		
-		BlockList tunneledBlocks = new BlockList();
+		BlockList tunneledBlocks = context.getBlocks();
 		
 		BlockFace toTheLeft = goLeft(direction);
 		BlockFace toTheRight = goRight(direction);
@@ -116,7 +119,6 @@ public class TunnelSpell extends Spell
 			bottomLeftBlock = bottomLeftBlock.getFace(direction);
 		}
 
-		spells.addToUndoQueue(player, tunneledBlocks);
 		castMessage(player, "Tunneled through " + tunneledBlocks.size() + "blocks");
 		
 		return true;
@@ -2,14 +2,18 @@ package com.elmakers.mine.bukkit.plugins.spells.builtin;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 
 public class UndoSpell extends Spell
 {
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
 		for (int i = 0; i < parameters.length; i++)
 		{
 			if (parameters[i].equalsIgnoreCase("player") && i < parameters.length - 1)
@@ -31,8 +35,8 @@ public class UndoSpell extends Spell
 		/*
 		 * Use target if targeting
 		 */
-		targetThrough(Material.GLASS);
-		Block target = getTargetBlock();
+		context.targetThrough(Material.GLASS);
+		Block target = context.getTargetBlock();
 		if (target != null)
 		{
 			boolean undone = spells.undo(player.getName(), target);
@@ -5,16 +5,47 @@ import java.util.List;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
 import org.bukkit.util.BlockVector;
 
 import com.elmakers.mine.bukkit.gameplay.BlockRequestListener;
 import com.elmakers.mine.bukkit.gameplay.dao.BlockList;
 import com.elmakers.mine.bukkit.plugins.nether.NetherManager;
 import com.elmakers.mine.bukkit.plugins.spells.Spell;
+import com.elmakers.mine.bukkit.plugins.spells.SpellContext;
 import com.elmakers.mine.bukkit.plugins.spells.utilities.PluginProperties;
 
-public class WindowSpell extends Spell implements BlockRequestListener
+public class WindowSpell extends Spell
 {
+	/**
+	 * Waits for the blocks of a single window, which may load after the cast is done.
+	 */
+	class WindowRequest implements BlockRequestListener
+	{
+		public WindowRequest(Player player, Block target, int radius)
+		{
+			this.player = player;
+			this.target = target;
+			this.radius = radius;
+		}
+		
+		public void onBlockListLoaded(List<Block> blocks)
+		{
+			BlockList peekedBlocks = peek(target, radius, blocks);
+			if (peekedBlocks == null)
+			{
+				return;
+			}
+			spells.scheduleCleanup(peekedBlocks);
+		
+			castMessage(player, "Windowed through  " + peekedBlocks.size() + "blocks");
+		}
+		
+		private final Player	player;
+		private final Block		target;
+		private final int		radius;
+	}
+	
 	static final String		DEFAULT_PEEKABLES		= "1,2,3,10,11,12,13";
 
 	private List<Material>	peekableMaterials		= new ArrayList<Material>();
@@ -22,8 +53,6 @@ public class WindowSpell extends Spell implements BlockRequestListener
 	private int				maxRadius				= 32;
 	private int				defaultSearchDistance	= 32;
 	
-	private int				radius					= defaultRadius;
-	private Block			targetBlock				= null;
 	private NetherManager	nether					= null;
 	
 	public WindowSpell(NetherManager nether)
@@ -32,10 +61,12 @@ public class WindowSpell extends Spell implements BlockRequestListener
 	}
 
 	@Override
-	public boolean onCast(String[] parameters)
+	public boolean onCast(SpellContext context)
 	{
-		targetThrough(Material.GLASS);
-		Block target = getTargetBlock();
+		Player player = context.getPlayer();
+		String[] parameters = context.getParameters();
+		context.targetThrough(Material.GLASS);
+		Block target = context.getTargetBlock();
 		if (target == null)
 		{
 			castMessage(player, "No target");
@@ -48,7 +79,7 @@ public class WindowSpell extends Spell implements BlockRequestListener
 		}
 
 		String worldName = null;
-		radius = defaultRadius;
+		int radius = defaultRadius;
 		
 		for (int i = 0; i < parameters.length; i++)
 		{
@@ -75,17 +106,8 @@ public class WindowSpell extends Spell implements BlockRequestListener
 			}
 		}
 		
-		if (targetBlock == null)
-		{
-			targetBlock = target;
-			
-			nether.requestBlockList(player.getWorld(), worldName, new BlockVector(target.getX(), target.getY(), target.getZ()), radius, this);
-		}
-		else
-		{
-			sendMessage(player, "You must wait for your previous window");
-			return false;
-		}
+		WindowRequest request = new WindowRequest(player, target, radius);
+		nether.requestBlockList(player.getWorld(), worldName, new BlockVector(target.getX(), target.getY(), target.getZ()), radius, request);
 
 		return true;
 	}
@@ -125,20 +147,6 @@ public class WindowSpell extends Spell implements BlockRequestListener
 	}
 	
 
-	public void onBlockListLoaded(List<Block> blocks)
-	{
-		BlockList peekedBlocks = peek(targetBlock, radius, blocks);
-		targetBlock = null;
-		if (peekedBlocks == null)
-		{
-			return;
-		}
-		spells.scheduleCleanup(peekedBlocks);
-	
-		castMessage(player, "Windowed through  " + peekedBlocks.size() + "blocks");
-	}
-	
-
 	public int checkPosition(int x, int y, int z, int R)
 	{
 		return (x * x) + (y * y) + (z * z) - (R * R);
@@ -149,7 +157,7 @@ public class WindowSpell extends Spell implements BlockRequestListener
 		int x = centerPoint.getX() + dx - radius;
 		int y = centerPoint.getY() + dy - radius;
 		int z = centerPoint.getZ() + dz - radius;
-		Block block = player.getWorld().getBlockAt(x, y, z);
+		Block block = centerPoint.getWorld().getBlockAt(x, y, z);
 		if (!isWindowable(block))
 		{
 			return;